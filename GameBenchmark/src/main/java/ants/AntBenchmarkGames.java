@@ -0,0 +1,275 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import basis.Bot;
+import basis.GameManager;
+
+/**
+ * This class builds the ant games measured by the benchmarks: games on the shipped maps
+ * or on synthetic large maps, filled with a given number of ants per bot. Maps drawn by
+ * the map generator can be measured as well, e.g. for capacity tests.
+ * @class
+ * @author Nicolas
+ */
+final class AntBenchmarkGames
+{
+	/**
+	 * The directory of the shipped maps.
+	 */
+	private static final String MAPS_DIR = System.getProperty("maps.dir",
+			"../GameServer/res/maps");
+	
+	/**
+	 * The prefix of the names of the synthetic maps: "synthetic-<size>-p<bot count>".
+	 */
+	private static final String SYNTHETIC = "synthetic-";
+	
+	/**
+	 * The prefix of the names of the generated maps: "generated-<size>-p<bot count>".
+	 */
+	private static final String GENERATED = "generated-";
+	
+	/**
+	 * The seed of the generated maps, so every run measures the same maps.
+	 */
+	private static final long GENERATED_SEED = 42L;
+	
+	/**
+	 * The directions of the moves, in the format of a "gameactions" message.
+	 */
+	private static final String[] DIRECTIONS = { "N", "E", "S", "W" };
+	
+	private AntBenchmarkGames()
+	{
+	}
+	
+	/**
+	 * Loads a map template, either a map file of the maps directory, a synthetic map
+	 * named "synthetic-<size>-p<bot count>", e.g. "synthetic-256-p4", or a map drawn by
+	 * the map generator named "generated-<size>-p<bot count>", e.g. "generated-900-p10".
+	 * @param name the name of the map.
+	 * @return the map template.
+	 * @throws IOException if the map file cannot be read.
+	 * @throws InvalidMapFormatException if the map is not valid.
+	 */
+	static AntMapTemplate loadMap(String name) throws IOException,
+			InvalidMapFormatException
+	{
+		AntMapTemplate template = new AntMapTemplate();
+		if (name.startsWith(SYNTHETIC))
+		{
+			String[] parts = name.substring(SYNTHETIC.length()).split("-p");
+			template.load(new StringReader(generateMap(Integer.parseInt(parts[0]),
+					Integer.parseInt(parts[1]))));
+		}
+		else if (name.startsWith(GENERATED))
+		{
+			String[] parts = name.substring(GENERATED.length()).split("-p");
+			int size = Integer.parseInt(parts[0]);
+			template.generate(Integer.parseInt(parts[1]), size, size, GENERATED_SEED);
+		}
+		else
+		{
+			try (Reader reader = new InputStreamReader(
+					new FileInputStream(new File(MAPS_DIR, name)), "UTF-8"))
+			{
+				template.load(reader);
+			}
+		}
+		return template;
+	}
+	
+	/**
+	 * Generates a square map: the hills are on the diagonal, food spawns are scattered
+	 * and short walls are laid out on a grid.
+	 * @see Documentation/specifications/mapformat.html
+	 * @param size the number of rows and columns.
+	 * @param botCount the number of bots.
+	 * @return the map, in the format of the map files.
+	 */
+	private static String generateMap(int size, int botCount)
+	{
+		char[][] cells = new char[size][size];
+		for (int row = 0; row < size; row++)
+		{
+			for (int col = 0; col < size; col++)
+			{
+				if (row % 16 == 8 && col % 16 >= 4 && col % 16 < 12)
+				{
+					cells[row][col] = '%';
+				}
+				else if ((row * 7 + col * 13) % 97 == 0)
+				{
+					cells[row][col] = '*';
+				}
+				else
+				{
+					cells[row][col] = '.';
+				}
+			}
+		}
+		for (int i = 0; i < botCount; i++)
+		{
+			int pos = (2 * i + 1) * size / (2 * botCount);
+			cells[pos][pos] = (char) ('0' + i);
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("players ").append(botCount).append('\n');
+		sb.append("rows ").append(size).append('\n');
+		sb.append("cols ").append(size).append('\n');
+		for (int row = 0; row < size; row++)
+		{
+			sb.append("m ").append(cells[row]).append('\n');
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Creates an initialized game played by fake bots, and adds ants around the hills
+	 * until each bot owns the given number of ants. The ants of a bot fill the free cells
+	 * closest to its first hill, so a small map may hold fewer ants.
+	 * @param template the map template of the game.
+	 * @param antsPerBot the number of ants of each bot.
+	 * @return the game.
+	 */
+	static AntGame createGame(AntMapTemplate template, int antsPerBot)
+	{
+		AntGame game = new AntGame(new ArrayList<Bot>(), GameManager.MAX_ROUND,
+				GameManager.RESPONSE_TIME_MS, 0, template,
+				AntGameManager.FOOD_RESPAWN_DELAY, AntGameManager.VIEW_RADIUS_2,
+				AntGameManager.ATTACK_RADIUS_2);
+		game.init();
+		AntGameMap map = game.getMap();
+		int maxRadius = Math.min(map.getCols(), map.getRows()) / 2;
+		Iterator<Bot> botIt = game.getBotIterator();
+		while (botIt.hasNext())
+		{
+			Bot bot = botIt.next();
+			AntBotGameInfo botInfo = (AntBotGameInfo) game.getBotInfo(bot);
+			AntHill hill = botInfo.getHillIterator().next();
+			int count = botInfo.getAntCount();
+			// Walk the rings of cells around the hill.
+			for (int radius = 1; radius <= maxRadius && count < antsPerBot; radius++)
+			{
+				for (int i = -radius; i <= radius && count < antsPerBot; i++)
+				{
+					for (int j = -radius; j <= radius && count < antsPerBot; j++)
+					{
+						if (Math.abs(i) != radius && Math.abs(j) != radius) continue;
+						int col = hill.getCol() + j;
+						int row = hill.getRow() + i;
+						if (map.getGameObjectsAt(col, row).isEmpty())
+						{
+							col = (col % map.getCols() + map.getCols()) % map.getCols();
+							row = (row % map.getRows() + map.getRows()) % map.getRows();
+							game.addAnt(new Ant(map, col, row, bot, botInfo.getId(),
+									game.getCurRound()));
+							count++;
+						}
+					}
+				}
+			}
+		}
+		return game;
+	}
+	
+	/**
+	 * Plays rounds of a game, the bots moving their ants randomly.
+	 * @param game the game.
+	 * @param roundCount the number of rounds to play.
+	 * @param rand the random generator of the moves.
+	 * @throws JSONException if the moves cannot be built.
+	 */
+	static void playRounds(AntGame game, int roundCount, Random rand)
+			throws JSONException
+	{
+		for (int i = 0; i < roundCount && !game.isFinished(); i++)
+		{
+			Iterator<Bot> botIt = game.getBotIterator();
+			while (botIt.hasNext())
+			{
+				Bot bot = botIt.next();
+				JSONObject moves = randomMoves(game, bot, rand);
+				game.executeActions(bot, moves, game.getCurRound());
+			}
+			game.update();
+		}
+	}
+	
+	/**
+	 * Builds the content of a "gameactions" message moving every ant of a bot in a
+	 * random direction.
+	 * @see Documentation/protocol/gameactions.html
+	 * @param game the game.
+	 * @param bot the bot giving the moves.
+	 * @param rand the random generator of the moves.
+	 * @return the content of the "gameactions" message.
+	 * @throws JSONException if the moves cannot be built.
+	 */
+	static JSONObject randomMoves(AntGame game, Bot bot, Random rand)
+			throws JSONException
+	{
+		JSONArray moves = new JSONArray();
+		Iterator<Ant> antIt = ((AntBotGameInfo) game.getBotInfo(bot)).getAntIterator();
+		while (antIt.hasNext())
+		{
+			Ant ant = antIt.next();
+			JSONArray move = new JSONArray();
+			move.put(ant.getRow());
+			move.put(ant.getCol());
+			move.put(DIRECTIONS[rand.nextInt(DIRECTIONS.length)]);
+			moves.put(move);
+		}
+		JSONObject actions = new JSONObject();
+		actions.put("moves", moves);
+		return actions;
+	}
+	
+	/**
+	 * Gets the bots of a game.
+	 * @param game the game.
+	 * @return the bots, ordered as in the game.
+	 */
+	static Bot[] getBots(AntGame game)
+	{
+		ArrayList<Bot> bots = new ArrayList<Bot>();
+		Iterator<Bot> botIt = game.getBotIterator();
+		while (botIt.hasNext())
+		{
+			bots.add(botIt.next());
+		}
+		return bots.toArray(new Bot[bots.size()]);
+	}
+}
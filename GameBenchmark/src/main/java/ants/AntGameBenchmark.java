@@ -0,0 +1,317 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import basis.Bot;
+import basis.JSONEncoder;
+
+/**
+ * The benchmarks of the hot paths of the ant game engine: the update of a round, the
+ * moves of the bots, the game states, the view mask and the replay.
+ * Each benchmark is measured on the shipped maps and on a synthetic large map, with
+ * 10 to 5000 ants per bot. The benchmarks are run with the GC profiler, which reports
+ * the allocation rate and the garbage collections of each benchmark.
+ * The update and the moves change the game, so they are measured as single shots over
+ * a batch of games built before each iteration.
+ * { @code
+ *   java -jar target/benchmarks.jar AntGameBenchmark.update -p antsPerBot=1000 }
+ * @class
+ * @author Nicolas
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AntGameBenchmark
+{
+	/**
+	 * The number of rounds played before measuring the game states, the view mask and
+	 * the replay, so they are measured on a game in progress.
+	 */
+	private static final int PLAYED_ROUNDS = 100;
+	
+	/**
+	 * The seed of the random moves, so every run measures the same games.
+	 */
+	private static final long SEED = 42;
+	
+	/**
+	 * The number of fresh games built before each iteration of the benchmarks which
+	 * change the game. Each invocation plays on its own game, so building the games is
+	 * not measured, and the iteration runs exactly this number of invocations.
+	 */
+	private static final int BATCH_SIZE = 20;
+	
+	/**
+	 * The map and the ant density of the measured games.
+	 */
+	@State(Scope.Benchmark)
+	public static class MapState
+	{
+		@Param({ "HA_cell_maze_p02_20.map", "HA_cell_maze_p04_19.map",
+				"synthetic-256-p4" })
+		public String map;
+	
+		@Param({ "10", "100", "1000", "5000" })
+		public int antsPerBot;
+	
+		AntMapTemplate template;
+	
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			template = AntBenchmarkGames.loadMap(map);
+		}
+	}
+	
+	/**
+	 * A batch of fresh games and the moves of their bots for the first round. The games
+	 * are created for each iteration because the measured methods change them.
+	 */
+	@State(Scope.Thread)
+	public static class RoundState
+	{
+		AntGame[] games = new AntGame[BATCH_SIZE];
+	
+		Bot[][] bots = new Bot[BATCH_SIZE][];
+	
+		JSONObject[][] moves = new JSONObject[BATCH_SIZE][];
+	
+		int next;
+	
+		private Random rand = new Random(SEED);
+	
+		@Setup(Level.Iteration)
+		public void setup(MapState mapState) throws JSONException
+		{
+			AntMapTemplate template = mapState.template;
+			int antsPerBot = mapState.antsPerBot;
+			for (int i = 0; i < BATCH_SIZE; i++)
+			{
+				AntGame game = AntBenchmarkGames.createGame(template, antsPerBot);
+				games[i] = game;
+				bots[i] = AntBenchmarkGames.getBots(game);
+				moves[i] = new JSONObject[bots[i].length];
+				for (int j = 0; j < bots[i].length; j++)
+				{
+					moves[i][j] = AntBenchmarkGames.randomMoves(game, bots[i][j], rand);
+				}
+			}
+			next = 0;
+		}
+	}
+	
+	/**
+	 * A batch of fresh games whose bots already ordered their moves, ready to be updated.
+	 */
+	@State(Scope.Thread)
+	public static class MovedState
+	{
+		AntGame[] games = new AntGame[BATCH_SIZE];
+	
+		int next;
+	
+		private Random rand = new Random(SEED);
+	
+		@Setup(Level.Iteration)
+		public void setup(MapState mapState) throws JSONException
+		{
+			AntMapTemplate template = mapState.template;
+			int antsPerBot = mapState.antsPerBot;
+			for (int i = 0; i < BATCH_SIZE; i++)
+			{
+				AntGame game = AntBenchmarkGames.createGame(template, antsPerBot);
+				for (Bot bot : AntBenchmarkGames.getBots(game))
+				{
+					JSONObject moves = AntBenchmarkGames.randomMoves(game, bot, rand);
+					game.executeActions(bot, moves, game.getCurRound());
+				}
+				games[i] = game;
+			}
+			next = 0;
+		}
+	}
+	
+	/**
+	 * A game in progress, which is not changed by the measured methods.
+	 */
+	@State(Scope.Thread)
+	public static class PlayedState
+	{
+		AntGame game;
+	
+		Bot[] bots;
+	
+		AntGameMapMask viewMask;
+	
+		JSONEncoder encoder = new JSONEncoder(4096);
+	
+		@Setup(Level.Trial)
+		public void setup(MapState mapState) throws JSONException
+		{
+			game = AntBenchmarkGames.createGame(mapState.template, mapState.antsPerBot);
+			AntBenchmarkGames.playRounds(game, PLAYED_ROUNDS, new Random(SEED));
+			bots = AntBenchmarkGames.getBots(game);
+			viewMask = new AntGameMapMask(AntGameManager.VIEW_RADIUS_2);
+		}
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5, batchSize = BATCH_SIZE)
+	@Measurement(iterations = 10, batchSize = BATCH_SIZE)
+	public void update(MovedState state)
+	{
+		state.games[state.next++].update();
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5, batchSize = BATCH_SIZE)
+	@Measurement(iterations = 10, batchSize = BATCH_SIZE)
+	public void executeActions(RoundState state) throws JSONException
+	{
+		int index = state.next++;
+		AntGame game = state.games[index];
+		Bot[] bots = state.bots[index];
+		for (int i = 0; i < bots.length; i++)
+		{
+			game.executeActions(bots[i], state.moves[index][i], game.getCurRound());
+		}
+	}
+	
+	@Benchmark
+	public void genGameStateMessageContent(PlayedState state, Blackhole blackhole)
+	{
+		for (Bot bot : state.bots)
+		{
+			blackhole.consume(state.game.genGameStateMessageContent(bot));
+		}
+	}
+	
+	@Benchmark
+	public void writeGameStateMessageContent(PlayedState state, Blackhole blackhole)
+	{
+		for (Bot bot : state.bots)
+		{
+			state.encoder.reset();
+			state.game.writeGameStateMessageContent(bot, state.encoder);
+			blackhole.consume(state.encoder.size());
+		}
+	}
+	
+	@Benchmark
+	public void applyMask(PlayedState state, Blackhole blackhole)
+	{	// Apply the view mask around every ant of the first bot.
+		AntGameMap map = state.game.getMap();
+		Iterator<Ant> antIt =
+				((AntBotGameInfo) state.game.getBotInfo(state.bots[0])).getAntIterator();
+		while (antIt.hasNext())
+		{
+			Ant ant = antIt.next();
+			blackhole.consume(map.applyMask(ant.getCol(), ant.getRow(), state.viewMask));
+		}
+	}
+	
+	@Benchmark
+	public long writeReplay(PlayedState state) throws JSONException
+	{
+		CountingWriter output = new CountingWriter();
+		state.game.getReplay().write(new JSONWriter(output));
+		return output.count;
+	}
+	
+	/**
+	 * A writer which only counts the written characters, so the replay benchmark
+	 * measures the serialization of the replay and not a sink.
+	 */
+	private static class CountingWriter extends Writer
+	{
+		long count;
+	
+		@Override
+		public void write(int c)
+		{
+			count++;
+		}
+	
+		@Override
+		public void write(char[] cbuf, int off, int len)
+		{
+			count += len;
+		}
+	
+		@Override
+		public void write(String str, int off, int len)
+		{
+			count += len;
+		}
+	
+		@Override
+		public void flush()
+		{
+		}
+	
+		@Override
+		public void close()
+		{
+		}
+	}
+	
+	/**
+	 * Runs the benchmarks with the GC profiler. The arguments are the options of JMH,
+	 * e.g. a benchmark name filter or "-p antsPerBot=1000".
+	 * @param args the command line arguments.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
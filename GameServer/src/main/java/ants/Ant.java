@@ -43,6 +43,11 @@ public class Ant extends AntGameObject
 	 */
 	private Bot bot;
 	
+	/**
+	 * The identifier of the bot that owns the ant in the game.
+	 */
+	private int botId;
+	
 	/**
 	 * Whether the ant holds food.
 	 */
@@ -54,17 +59,42 @@ public class Ant extends AntGameObject
 	private boolean dead;
 	
 	/**
-	 * The replay data for this ant, stored in a JSON array.
-	 * [ row, col, pop_round, dth_round, owner_id, move_string ]
+	 * The game round at which the ant spawned.
+	 */
+	private int spawnRound;
+	
+	/**
+	 * The number of moves of the ant, blank moves included.
+	 */
+	private int moveCount;
+	
+	/**
+	 * The replay where the track of the ant is recorded, or null.
 	 * @see Documentation/protocol/replayformat.html
 	 */
-	private JSONArray replayData;
+	private AntGameReplayData replay;
+	
+	/**
+	 * The identifier of the track of the ant in the replay.
+	 */
+	private int replayTrack;
 	
 	/**
 	 * Whether the ant has moved for this round.
 	 */
 	private boolean moved;
 	
+	/**
+	 * The registry keeping the state of the ant, or null if the ant is not registered.
+	 * The fields food, dead and moved are only used while the ant is not registered.
+	 */
+	private AntRegistry registry;
+	
+	/**
+	 * The handle of the ant in its registry.
+	 */
+	private int handle;
+	
 	/**
 	 * Creates a new ant for a bot from a column and a row identifier.
 	 * @constructor
@@ -72,7 +102,7 @@ public class Ant extends AntGameObject
 	 * @param col the initial column identifier of the ant.
 	 * @param row the initial row identifier of the ant.
 	 * @param bot the bot that owns the ant.
-	 * @param botId the id associated with the bot (used for replay data).
+	 * @param botId the id associated with the bot (used for replay data and map layers).
 	 * @param round the current game round (used for replay data).
 	 */
 	public Ant(AntGameMapCallback moveHandler, int col, int row, Bot bot, int botId,
@@ -80,9 +110,13 @@ public class Ant extends AntGameObject
 	{
 		super(moveHandler, col, row, true, true);
 		this.bot = bot;
+		this.botId = botId;
 		food = false;
 		dead = false;
-		createReplayData(botId, round);
+		spawnRound = round;
+		moveCount = 0;
+		registry = null;
+		handle = AntRegistry.NO_HANDLE;
 	}
 	
 	/**
@@ -91,39 +125,66 @@ public class Ant extends AntGameObject
 	 * @param moveHandler the handler used to moved the ant on the game map.
 	 * @param cell the cell descriptor that positions the ant on the map.
 	 * @param bot the bot that owns the ant.
-	 * @param botId the id associated with the bot (used for replay data).
+	 * @param botId the id associated with the bot (used for replay data and map layers).
 	 * @param round the current game round (used for replay data).
 	 */
 	public Ant(AntGameMapCallback moveHandler, Cell cell, Bot bot, int botId, int round)
 	{
 		super(moveHandler, cell, true, true);
 		this.bot = bot;
+		this.botId = botId;
 		food = false;
 		dead = false;
-		createReplayData(botId, round);
+		spawnRound = round;
+		moveCount = 0;
+		registry = null;
+		handle = AntRegistry.NO_HANDLE;
+	}
+	
+	/**
+	 * Notifies the ant that its state is now kept by a registry.
+	 * @param registry the registry of the ant.
+	 * @param handle the handle of the ant in the registry.
+	 */
+	void attach(AntRegistry registry, int handle)
+	{
+		this.registry = registry;
+		this.handle = handle;
 	}
 	
 	/**
-	 * Creates replay data for the ant.
+	 * Notifies the ant that it was removed from its registry, and gives it back its state.
+	 * @param food whether the ant holds food.
+	 * @param dead whether the ant is dead.
+	 * @param moved whether the ant has moved for this round.
+	 */
+	void detach(boolean food, boolean dead, boolean moved)
+	{
+		this.food = food;
+		this.dead = dead;
+		this.moved = moved;
+		registry = null;
+		handle = AntRegistry.NO_HANDLE;
+	}
+	
+	/**
+	 * Gets the handle of the ant in its registry.
+	 * @return the handle of the ant, or AntRegistry.NO_HANDLE if it is not registered.
+	 */
+	public int getHandle()
+	{
+		return handle;
+	}
+	
+	/**
+	 * Sets the replay where the track of the ant is recorded, and starts the track.
 	 * @see Documentation/protocol/replayformat.html
-	 * @param botId the id associated with the bot.
-	 * @param round the current game round.
+	 * @param replay the replay of the game.
 	 */
-	private void createReplayData(int botId, int round)
+	public void setReplay(AntGameReplayData replay)
 	{
-		replayData = new JSONArray();
-		try
-		{
-			replayData.put(0, row);
-			replayData.put(1, col);
-			replayData.put(2, round);
-			replayData.put(4, botId);
-			replayData.put(5, "");
-		}
-		catch (JSONException e)
-		{
-			LOGGER.error("Cannot create replay data for an ant ({})", e.getMessage());
-		}
+		this.replay = replay;
+		replayTrack = replay.addAnt(row, col, spawnRound, botId);
 	}
 	
 	/**
@@ -132,13 +193,19 @@ public class Ant extends AntGameObject
 	 */
 	public void addBlankMove()
 	{
-		try
-		{
-			replayData.put(5, replayData.getString(5) + "-");
-		}
-		catch (JSONException e)
+		addReplayMove('-');
+	}
+	
+	/**
+	 * Adds a move to the move string of the replay data of the ant.
+	 * @param move the move character.
+	 */
+	private void addReplayMove(char move)
+	{
+		moveCount++;
+		if (replay != null)
 		{
-			LOGGER.error("Error adding a blank move to an ant ({})", e.getMessage());
+			replay.addAntMove(replayTrack, move);
 		}
 	}
 	
@@ -150,24 +217,17 @@ public class Ant extends AntGameObject
 	public void move(Move direction)
 	{
 		super.move(direction);
-		try
-		{	// Add the move in the move string.
-			String moveChar = Move.toString(direction).toLowerCase();
-			replayData.put(5, replayData.getString(5) + moveChar);
-			// ---------------------------------------------------------------------------
-			// Now, we set a boolean 'moved' to true to remember that a move was already
-			// added in the move string of this ant during the current game round.
-			// After each round, the game will check for ants that did not move and add a
-			// blank move in the move string for these ants to ensure the consistency of
-			// the move string over time.
-			// Hence, 'moved' should be reset to false at the end of a game round.
-			// ---------------------------------------------------------------------------
-			moved = true;
-		}
-		catch (JSONException e)
-		{
-			LOGGER.error("Error adding a move to an ant ({})", e.getMessage());
-		}
+		// Add the move in the move string.
+		addReplayMove(Character.toLowerCase(Move.toString(direction).charAt(0)));
+		// -------------------------------------------------------------------------------
+		// Now, we set a boolean 'moved' to true to remember that a move was already added
+		// in the move string of this ant during the current game round.
+		// After each round, the game will check for ants that did not move and add a
+		// blank move in the move string for these ants to ensure the consistency of the
+		// move string over time.
+		// Hence, 'moved' should be reset to false at the end of a game round.
+		// -------------------------------------------------------------------------------
+		setMoved(true);
 	}
 	
 	/**
@@ -181,7 +241,7 @@ public class Ant extends AntGameObject
 		JSONArray array = new JSONArray();
 		try
 		{
-			array.put(0, !dead ? !food ? "A" : "B" : "X");
+			array.put(0, !isDead() ? !hasFood() ? "A" : "B" : "X");
 			array.put(1, row);
 			array.put(2, col);
 			array.put(3, botId);
@@ -202,12 +262,22 @@ public class Ant extends AntGameObject
 		return bot;
 	}
 	
+	/**
+	 * Gets the identifier of the bot the ant belongs to in the game.
+	 * @return the game identifier of the bot that owns the ant.
+	 */
+	public int getBotId()
+	{
+		return botId;
+	}
+	
 	/**
 	 * Returns whether the ant holds food.
 	 * @return true if the ant holds food, false otherwise.
 	 */
 	public boolean hasFood()
 	{
+		if (registry != null) return registry.hasFood(registry.getSlot(handle));
 		return food;
 	}
 	
@@ -217,24 +287,17 @@ public class Ant extends AntGameObject
 	 */
 	public boolean isDead()
 	{
+		if (registry != null) return registry.isDead(registry.getSlot(handle));
 		return dead;
 	}
 	
-	/**
-	 * Gets the replay data for this ant.
-	 * @return the replay data of the ant.
-	 */
-	public JSONArray getReplayData()
-	{
-		return replayData;
-	}
-	
 	/**
 	 * Returns whether the ant has moved for this round.
 	 * @return true if the ant moved, false otherwise.
 	 */
 	public boolean hasMoved()
 	{
+		if (registry != null) return registry.hasMoved(registry.getSlot(handle));
 		return moved;
 	}
 	
@@ -244,6 +307,11 @@ public class Ant extends AntGameObject
 	 */
 	public void setFood(boolean food)
 	{
+		if (registry != null)
+		{
+			registry.setFood(registry.getSlot(handle), food);
+			return;
+		}
 		this.food = food;
 	}
 	
@@ -253,14 +321,18 @@ public class Ant extends AntGameObject
 	 */
 	public void kill(int round)
 	{
-		dead = true;
-		try
+		if (registry != null)
 		{
-			replayData.put(3, round);
+			registry.setDead(registry.getSlot(handle));
 		}
-		catch (JSONException e)
+		else
 		{
-			LOGGER.error("Error killing an ant ({})", e.getMessage());
+			dead = true;
+		}
+		getMoveHandler().killAnt(this);
+		if (replay != null)
+		{
+			replay.setAntDeath(replayTrack, round);
 		}
 	}
 	
@@ -269,15 +341,8 @@ public class Ant extends AntGameObject
 	 */
 	public void kill()
 	{
-		try
-		{
-			// kill round = spawn round + number of movements
-			kill(replayData.getInt(2) + ((String) replayData.get(5)).length());
-		}
-		catch (JSONException e)
-		{
-			LOGGER.error("Error killing an ant ({})", e.getMessage());
-		}
+		// kill round = spawn round + number of movements
+		kill(spawnRound + moveCount);
 	}
 	
 	/**
@@ -286,6 +351,33 @@ public class Ant extends AntGameObject
 	 */
 	public void setMoved(boolean moved)
 	{
+		if (registry != null)
+		{
+			registry.setMoved(registry.getSlot(handle), moved);
+			return;
+		}
 		this.moved = moved;
 	}
+	
+	/**
+	 * Sets the column identifier of the ant, in its registry too.
+	 * @param col the column identifier of the ant.
+	 */
+	@Override
+	public void setCol(int col)
+	{
+		super.setCol(col);
+		if (registry != null) registry.setPosition(registry.getSlot(handle), col, row);
+	}
+	
+	/**
+	 * Sets the row identifier of the ant, in its registry too.
+	 * @param row the row identifier of the ant.
+	 */
+	@Override
+	public void setRow(int row)
+	{
+		super.setRow(row);
+		if (registry != null) registry.setPosition(registry.getSlot(handle), col, row);
+	}
 }
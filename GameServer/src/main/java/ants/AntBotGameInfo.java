@@ -49,9 +49,19 @@ public class AntBotGameInfo extends BotGameInfo implements Comparable<AntBotGame
 	private int nbrOfBotsEncountered;
 	
 	/**
-	 * The list of ants that belong to the bot.
+	 * The registry of the ants of the game, which keeps the ants of each bot.
 	 */
-	private ArrayList<Ant> ants;
+	private AntRegistry ants;
+	
+	/**
+	 * The scoreboard of the game, notified when the game score of the bot changes.
+	 */
+	private AntScoreboard scoreboard;
+	
+	/**
+	 * The moves ordered by the bot, waiting to be applied by the game.
+	 */
+	private AntMoveBuffer moves;
 	
 	/**
 	 * The list of hills that belong to the bot.
@@ -78,15 +88,25 @@ public class AntBotGameInfo extends BotGameInfo implements Comparable<AntBotGame
 	 */
 	private int rank;
 	
+	/**
+	 * The sorted state keys of the game objects sent in the previous "gamestate" message
+	 * of the bot, or null if no game state was sent yet. Used for delta game states.
+	 */
+	private long[] lastGameState;
+	
 	/**
 	 * Creates a new ant game state holder for a bot playing in this ant game.
 	 * @constructor
 	 * @param id the bot identifier for this game.
+	 * @param ants the registry of the ants of the game.
+	 * @param scoreboard the scoreboard of the game.
 	 */
-	public AntBotGameInfo(int id)
+	public AntBotGameInfo(int id, AntRegistry ants, AntScoreboard scoreboard)
 	{
 		super(id);
-		ants = new ArrayList<Ant>();
+		this.ants = ants;
+		this.scoreboard = scoreboard;
+		moves = new AntMoveBuffer();
 		hills = new ArrayList<AntHill>(1);
 		relativeBotIds = new HashMap<Bot, Integer>();
 	}
@@ -99,7 +119,6 @@ public class AntBotGameInfo extends BotGameInfo implements Comparable<AntBotGame
 	{
 		super.init();
 		// Make sure everything is cleared.
-		ants.clear();
 		hills.clear();
 		relativeBotIds.clear();
 		// Make the bot viewing itself as being bot 0.
@@ -108,6 +127,9 @@ public class AntBotGameInfo extends BotGameInfo implements Comparable<AntBotGame
 		hive = 0;
 		deathReason = "survived";
 		deathTurn = -1;
+		lastGameState = null;
+		moves.clear();
+		scoreboard.updateScore(getId());
 	}
 	
 	/**
@@ -144,13 +166,7 @@ public class AntBotGameInfo extends BotGameInfo implements Comparable<AntBotGame
 	 */
 	public int getAntCount()
 	{
-		int count = 0;
-		Iterator<Ant> antIt = ants.iterator();
-		while (antIt.hasNext())
-		{
-			if (!antIt.next().isDead()) count++;
-		}
-		return count;
+		return ants.getAliveCount(getId());
 	}
 	
 	/**
@@ -172,12 +188,31 @@ public class AntBotGameInfo extends BotGameInfo implements Comparable<AntBotGame
 	}
 	
 	/**
-	 * Gets an iterator over ants of the bot.
+	 * Gets an iterator over ants of the bot, including the ants that died during the
+	 * last round.
 	 * @return an iterator over ants of the bot.
 	 */
 	public Iterator<Ant> getAntIterator()
 	{
-		return ants.iterator();
+		return ants.iterator(getId());
+	}
+	
+	/**
+	 * Gets the buffer of the moves ordered by the bot.
+	 * @return the move buffer of the bot.
+	 */
+	public AntMoveBuffer getMoveBuffer()
+	{
+		return moves;
+	}
+	
+	/**
+	 * Gets the number of hills of the bot.
+	 * @return the number of hills of the bot.
+	 */
+	public int getHillCount()
+	{
+		return hills.size();
 	}
 	
 	/**
@@ -226,21 +261,25 @@ public class AntBotGameInfo extends BotGameInfo implements Comparable<AntBotGame
 	}
 	
 	/**
-	 * Adds an ant in the list of ants that belong to the bot.
-	 * @param ant the ant to add to the ants list.
+	 * Sets the game score of the bot and updates the scoreboard.
+	 * @param gameScore the new game score of the bot.
 	 */
-	public void addAnt(Ant ant)
+	@Override
+	public void setGameScore(int gameScore)
 	{
-		ants.add(ant);
+		super.setGameScore(gameScore);
+		scoreboard.updateScore(getId());
 	}
 	
 	/**
-	 * Removes an ant from the list of ants that belong to the bot.
-	 * @param ant The ant to remove from the ants list.
+	 * Adds points to the game score of the bot and updates the scoreboard.
+	 * @param points the number of points to add, can be negative.
 	 */
-	public void removeAnt(Ant ant)
+	@Override
+	public void addGameScore(int points)
 	{
-		ants.remove(ant);
+		super.addGameScore(points);
+		scoreboard.updateScore(getId());
 	}
 	
 	/**
@@ -303,6 +342,24 @@ public class AntBotGameInfo extends BotGameInfo implements Comparable<AntBotGame
 		}
 	}
 	
+	/**
+	 * Gets the state keys of the game objects sent in the previous game state.
+	 * @return the sorted state keys, or null if no game state was sent yet.
+	 */
+	public long[] getLastGameState()
+	{
+		return lastGameState;
+	}
+	
+	/**
+	 * Sets the state keys of the game objects sent in the last game state.
+	 * @param lastGameState the sorted state keys.
+	 */
+	public void setLastGameState(long[] lastGameState)
+	{
+		this.lastGameState = lastGameState;
+	}
+	
 	/**
 	 * Sets the rank of the bot for this ant game.
 	 * @param rank the rank of the bot.
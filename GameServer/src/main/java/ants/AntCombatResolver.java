@@ -0,0 +1,204 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.util.Arrays;
+
+/**
+ * This class resolves the battles of an ant game. It finds the enemies of each ant by
+ * reading the ant-owner layer of the game map in the attack mask, so no list of game
+ * objects is built. The ants keep their slot of the ant registry, and the state of the
+ * resolution is kept in arrays indexed by slot that are reused every round.
+ * Rule: an ant dies if one of its enemies has as many or fewer enemies than itself.
+ * @class
+ * @author Nicolas
+ */
+public class AntCombatResolver
+{
+	/**
+	 * The value of a cell that holds no ant in the slot layer.
+	 */
+	private static final int NONE = -1;
+	
+	/**
+	 * The game map where the battles take place.
+	 */
+	private AntGameMap map;
+	
+	/**
+	 * The mask giving the cells in the attack radius of an ant.
+	 */
+	private AntGameMapMask attackMask;
+	
+	/**
+	 * The slot of the ant in each cell of the game map, or NONE.
+	 */
+	private int[] cellSlots;
+	
+	/**
+	 * The cell of the ant in each slot.
+	 */
+	private int[] slotCells;
+	
+	/**
+	 * The game identifier of the bot that owns the ant in each slot.
+	 */
+	private int[] slotOwners;
+	
+	/**
+	 * The number of enemies in the attack radius of the ant in each slot.
+	 */
+	private int[] weaknesses;
+	
+	/**
+	 * Whether the ant in each slot loses its battle.
+	 */
+	private boolean[] losers;
+	
+	/**
+	 * The cells of the attack mask of the current ant.
+	 */
+	private int[] maskCells;
+	
+	/**
+	 * Creates a combat resolver for a game map.
+	 * @constructor
+	 * @param map the game map where the battles take place.
+	 * @param attackMask the mask giving the cells in the attack radius of an ant.
+	 */
+	public AntCombatResolver(AntGameMap map, AntGameMapMask attackMask)
+	{
+		this.map = map;
+		this.attackMask = attackMask;
+		cellSlots = new int[map.getCols() * map.getRows()];
+		Arrays.fill(cellSlots, NONE);
+		slotCells = new int[0];
+		slotOwners = new int[0];
+		weaknesses = new int[0];
+		losers = new boolean[0];
+		maskCells = new int[attackMask.getColOffsets().length];
+	}
+	
+	/**
+	 * Resolves the battles between the ants of a registry and kills the ants that lose.
+	 * The ants must all be alive and on the game map, one ant per cell at most, which is
+	 * the case once the ants that collided have been removed.
+	 * @param ants the ant registry of the game.
+	 */
+	public void resolve(AntRegistry ants)
+	{
+		int antCount = ants.size();
+		ensureCapacity(antCount);
+		// The ants keep their slot of the registry.
+		for (int slot = 0; slot < antCount; slot++)
+		{
+			setSlot(slot, ants.getCol(slot), ants.getRow(slot), ants.getOwner(slot));
+		}
+		resolveSlots(antCount);
+		for (int slot = 0; slot < antCount; slot++)
+		{
+			if (losers[slot]) ants.get(slot).kill();
+		}
+	}
+	
+	/**
+	 * Makes sure the slot arrays can hold a number of ants.
+	 * @param antCount the number of ants.
+	 */
+	private void ensureCapacity(int antCount)
+	{
+		if (slotCells.length < antCount)
+		{	// Grow the slot arrays, they are reused for the next rounds.
+			int capacity = Math.max(antCount, slotCells.length * 2);
+			slotCells = new int[capacity];
+			slotOwners = new int[capacity];
+			weaknesses = new int[capacity];
+			losers = new boolean[capacity];
+		}
+	}
+	
+	/**
+	 * Gives a slot to an ant.
+	 * @param slot the slot of the ant.
+	 * @param col the column identifier of the ant.
+	 * @param row the row identifier of the ant.
+	 * @param owner the game identifier of the bot that owns the ant.
+	 */
+	private void setSlot(int slot, int col, int row, int owner)
+	{
+		int cell = map.getCellIndex(col, row);
+		slotCells[slot] = cell;
+		slotOwners[slot] = owner;
+		cellSlots[cell] = slot;
+	}
+	
+	/**
+	 * Finds the ants that lose their battle among the ants in the slots.
+	 * @param antCount the number of ants in the slots.
+	 */
+	private void resolveSlots(int antCount)
+	{
+		int cols = map.getCols();
+		// Count the enemies of each ant.
+		for (int slot = 0; slot < antCount; slot++)
+		{
+			int owner = slotOwners[slot];
+			int cell = slotCells[slot];
+			int cellCount = map.getMaskCells(cell % cols, cell / cols, attackMask,
+					maskCells);
+			int weakness = 0;
+			for (int i = 0; i < cellCount; i++)
+			{
+				int cellOwner = map.getAntOwner(maskCells[i]);
+				if (cellOwner != AntGameMap.NO_OWNER && cellOwner != owner)
+				{
+					weakness++;
+				}
+			}
+			weaknesses[slot] = weakness;
+		}
+		// An ant loses if it has a weaker or equally weak enemy.
+		for (int slot = 0; slot < antCount; slot++)
+		{
+			losers[slot] = false;
+			int weakness = weaknesses[slot];
+			if (weakness == 0) continue;
+			int owner = slotOwners[slot];
+			int cell = slotCells[slot];
+			int cellCount = map.getMaskCells(cell % cols, cell / cols, attackMask,
+					maskCells);
+			for (int i = 0; i < cellCount; i++)
+			{
+				int cellOwner = map.getAntOwner(maskCells[i]);
+				if (cellOwner != AntGameMap.NO_OWNER && cellOwner != owner
+						&& weaknesses[cellSlots[maskCells[i]]] <= weakness)
+				{
+					losers[slot] = true;
+					break;
+				}
+			}
+		}
+		// Clear the slot layer for the next round.
+		for (int slot = 0; slot < antCount; slot++)
+		{
+			cellSlots[slotCells[slot]] = NONE;
+		}
+	}
+}
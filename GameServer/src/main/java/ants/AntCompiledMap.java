@@ -0,0 +1,391 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import util.Cell;
+
+/**
+ * This class is the compiled form of a map template. It is built once when the template
+ * is loaded and never modified afterwards, so it is shared by all the games played on
+ * the map.
+ * The walls are kept in a bitset indexed by cell, {@code row * cols + col}, and are not
+ * added to the game maps: a game map asks the compiled map whether a cell is a wall.
+ * The wall game objects seen by the bots are created once, the first time they are
+ * needed, and shared by the games as well. The hills and the food spawns are kept as
+ * arrays of cell indexes, in the order of the map file.
+ * The packed arrays can be written to the map cache and read back without parsing the
+ * map file again.
+ * @see AntMapCache
+ * @see AntMapTemplate#getCompiledMap
+ * @class
+ * @author Nicolas
+ */
+public class AntCompiledMap
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(AntCompiledMap.class);
+	
+	/**
+	 * The number of columns of the map.
+	 */
+	private final int cols;
+	
+	/**
+	 * The number of rows of the map.
+	 */
+	private final int rows;
+	
+	/**
+	 * The wall bitset, one bit per cell.
+	 */
+	private final long[] wallBits;
+	
+	/**
+	 * The number of walls before each word of the wall bitset.
+	 */
+	private final int[] wallRanks;
+	
+	/**
+	 * The shared wall game objects, indexed by wall rank, created when first needed.
+	 */
+	private final AtomicReferenceArray<AntWall> walls;
+	
+	/**
+	 * The cells of the hills of each bot, indexed by bot identifier.
+	 */
+	private final int[][] hillCells;
+	
+	/**
+	 * The cells of the food spawns.
+	 */
+	private final int[] foodSpawnCells;
+	
+	/**
+	 * The "map" attribute of the replays of the games played on the map, built when
+	 * first needed.
+	 */
+	private JSONObject replayMap;
+	
+	/**
+	 * Compiles the content of a map template.
+	 * @constructor
+	 * @param cols the number of columns of the map.
+	 * @param rows the number of rows of the map.
+	 * @param hills the list of ant hills for each bot on the map.
+	 * @param foodSpawns the list of food spawns placed on the map.
+	 * @param walls the list of walls on the map.
+	 */
+	AntCompiledMap(int cols, int rows, ArrayList<ArrayList<Cell>> hills,
+			ArrayList<Cell> foodSpawns, ArrayList<Cell> walls)
+	{
+		this(cols, rows, toWallBits(cols, rows, walls), toHillCells(cols, hills),
+				toCellIndexes(cols, foodSpawns));
+	}
+	
+	/**
+	 * Creates a compiled map from its packed arrays, e.g. read from the map cache.
+	 * The arrays are not copied.
+	 * @constructor
+	 * @param cols the number of columns of the map.
+	 * @param rows the number of rows of the map.
+	 * @param wallBits the wall bitset, one bit per cell.
+	 * @param hillCells the cells of the hills of each bot, indexed by bot identifier.
+	 * @param foodSpawnCells the cells of the food spawns.
+	 */
+	AntCompiledMap(int cols, int rows, long[] wallBits, int[][] hillCells,
+			int[] foodSpawnCells)
+	{
+		this.cols = cols;
+		this.rows = rows;
+		this.wallBits = wallBits;
+		this.hillCells = hillCells;
+		this.foodSpawnCells = foodSpawnCells;
+		// Count the walls before each word of the bitset.
+		wallRanks = new int[wallBits.length];
+		int wallCount = 0;
+		for (int i = 0; i < wallBits.length; i++)
+		{
+			wallRanks[i] = wallCount;
+			wallCount += Long.bitCount(wallBits[i]);
+		}
+		this.walls = new AtomicReferenceArray<AntWall>(wallCount);
+	}
+	
+	/**
+	 * Builds the wall bitset of a map from a list of walls.
+	 * @param cols the number of columns of the map.
+	 * @param rows the number of rows of the map.
+	 * @param walls the list of walls on the map.
+	 * @return the wall bitset, one bit per cell.
+	 */
+	private static long[] toWallBits(int cols, int rows, ArrayList<Cell> walls)
+	{
+		long[] wallBits = new long[getWallWordCount(cols, rows)];
+		for (Cell wall : walls)
+		{
+			int cell = wall.getRow() * cols + wall.getCol();
+			wallBits[cell >>> 6] |= 1L << cell;
+		}
+		return wallBits;
+	}
+	
+	/**
+	 * Converts the lists of hills of each bot to arrays of cell indexes.
+	 * @param cols the number of columns of the map.
+	 * @param hills the list of ant hills for each bot on the map.
+	 * @return the indexes of the cells of the hills of each bot.
+	 */
+	private static int[][] toHillCells(int cols, ArrayList<ArrayList<Cell>> hills)
+	{
+		int[][] indexes = new int[hills.size()][];
+		for (int botId = 0; botId < indexes.length; botId++)
+		{
+			indexes[botId] = toCellIndexes(cols, hills.get(botId));
+		}
+		return indexes;
+	}
+	
+	/**
+	 * Converts a list of cells to an array of cell indexes.
+	 * @param cols the number of columns of the map.
+	 * @param cells the list of cells.
+	 * @return the indexes of the cells, in the same order.
+	 */
+	private static int[] toCellIndexes(int cols, ArrayList<Cell> cells)
+	{
+		int[] indexes = new int[cells.size()];
+		for (int i = 0; i < indexes.length; i++)
+		{
+			indexes[i] = cells.get(i).getRow() * cols + cells.get(i).getCol();
+		}
+		return indexes;
+	}
+	
+	/**
+	 * Gets the number of words of the wall bitset of a map.
+	 * @param cols the number of columns of the map.
+	 * @param rows the number of rows of the map.
+	 * @return the number of 64-bit words needed to hold one bit per cell.
+	 */
+	static int getWallWordCount(int cols, int rows)
+	{
+		return (cols * rows + 63) >>> 6;
+	}
+	
+	/**
+	 * Gets the number of columns of the map.
+	 * @return the number of columns of the map.
+	 */
+	public int getCols()
+	{
+		return cols;
+	}
+	
+	/**
+	 * Gets the number of rows of the map.
+	 * @return the number of rows of the map.
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+	
+	/**
+	 * Returns whether a cell of the map is a wall.
+	 * @param cell the index of the cell, {@code row * cols + col}.
+	 * @return true if the cell is a wall, false otherwise.
+	 */
+	public boolean isWall(int cell)
+	{
+		return (wallBits[cell >>> 6] & (1L << cell)) != 0;
+	}
+	
+	/**
+	 * Gets the shared wall game object of a cell. The wall has no game map to move it,
+	 * and it must not be added to a game map.
+	 * @param cell the index of the cell, {@code row * cols + col}.
+	 * @return the wall of the cell, or null if the cell is not a wall.
+	 */
+	public AntWall getWall(int cell)
+	{
+		long word = wallBits[cell >>> 6];
+		long bit = 1L << cell;
+		if ((word & bit) == 0) return null;
+		int rank = wallRanks[cell >>> 6] + Long.bitCount(word & (bit - 1));
+		AntWall wall = walls.get(rank);
+		if (wall == null)
+		{	// Create the wall, another thread may create it at the same time.
+			walls.compareAndSet(rank, null, new AntWall(null, cell % cols, cell / cols));
+			wall = walls.get(rank);
+		}
+		return wall;
+	}
+	
+	/**
+	 * Gets the first wall cell at or after a given cell, to iterate over the walls.
+	 * @param cell the index of the cell to start from.
+	 * @return the index of the next wall cell, or -1 if there is no more wall.
+	 */
+	public int nextWallCell(int cell)
+	{
+		int word = cell >>> 6;
+		if (word >= wallBits.length) return -1;
+		long bits = wallBits[word] & (-1L << cell);
+		while (bits == 0)
+		{
+			if (++word == wallBits.length) return -1;
+			bits = wallBits[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(bits);
+	}
+	
+	/**
+	 * Gets the number of walls of the map.
+	 * @return the number of walls.
+	 */
+	public int getWallCount()
+	{
+		return walls.length();
+	}
+	
+	/**
+	 * Gets the number of bots the map is designed for.
+	 * @return the number of bots.
+	 */
+	public int getBotCount()
+	{
+		return hillCells.length;
+	}
+	
+	/**
+	 * Gets the number of hills of a bot.
+	 * @param botId the identifier of the bot on the map.
+	 * @return the number of hills of the bot.
+	 */
+	public int getHillCount(int botId)
+	{
+		return hillCells[botId].length;
+	}
+	
+	/**
+	 * Gets the cell of a hill of a bot.
+	 * @param botId the identifier of the bot on the map.
+	 * @param index the index of the hill, in the order of the map file.
+	 * @return the index of the cell of the hill, {@code row * cols + col}.
+	 */
+	public int getHillCell(int botId, int index)
+	{
+		return hillCells[botId][index];
+	}
+	
+	/**
+	 * Gets the number of food spawns of the map.
+	 * @return the number of food spawns.
+	 */
+	public int getFoodSpawnCount()
+	{
+		return foodSpawnCells.length;
+	}
+	
+	/**
+	 * Gets the cell of a food spawn.
+	 * @param index the index of the food spawn, in the order of the map file.
+	 * @return the index of the cell of the food spawn, {@code row * cols + col}.
+	 */
+	public int getFoodSpawnCell(int index)
+	{
+		return foodSpawnCells[index];
+	}
+	
+	/**
+	 * Gets the word of the wall bitset holding the bits of 64 cells.
+	 * @param index the index of the word.
+	 * @return the bits of the cells {@code 64 * index} to {@code 64 * index + 63}.
+	 */
+	long getWallWord(int index)
+	{
+		return wallBits[index];
+	}
+	
+	/**
+	 * Gets the rows of the map, in the format of the map files.
+	 * As in the map files, a cell holds a wall, a food spawn, a hill or the ground.
+	 * @see Documentation/specifications/mapformat.html
+	 * @return the strings representing the rows of the map.
+	 */
+	public String[] toRowStrings()
+	{
+		char[] cells = new char[cols * rows];
+		Arrays.fill(cells, '.');
+		for (int botId = 0; botId < hillCells.length; botId++)
+		{
+			for (int cell : hillCells[botId]) cells[cell] = (char) ('0' + botId);
+		}
+		for (int cell : foodSpawnCells) cells[cell] = '*';
+		// Walls are placed at the end, other game objects cannot override them.
+		for (int cell = nextWallCell(0); cell != -1; cell = nextWallCell(cell + 1))
+		{
+			cells[cell] = '%';
+		}
+		String[] rowStrings = new String[rows];
+		for (int row = 0; row < rows; row++)
+		{
+			rowStrings[row] = new String(cells, row * cols, cols);
+		}
+		return rowStrings;
+	}
+	
+	/**
+	 * Gets the JSON representation of the map used in the "map" attribute of the
+	 * replays. It is built the first time it is needed, and then shared, so it must not
+	 * be modified.
+	 * @see Documentation/protocol/replayformat.html
+	 * @return the JSONObject representing the map.
+	 */
+	public synchronized JSONObject toJSON()
+	{
+		if (replayMap == null)
+		{
+			JSONObject object = new JSONObject();
+			try
+			{
+				object.put("cols", cols);
+				object.put("rows", rows);
+				object.put("data", new JSONArray(Arrays.asList(toRowStrings())));
+			}
+			catch (JSONException e)
+			{
+				LOGGER.error("Cannot create the json representation of a map ({})",
+						e.getMessage());
+			}
+			replayMap = object;
+		}
+		return replayMap;
+	}
+}
@@ -19,45 +19,38 @@
 
 package ants;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Random;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import util.Move;
 import basis.Bot;
 import basis.FakeCommunicator;
 
 /**
  * This class represents a fake communicator that aims to play with a bot in training
- * mode. Messages are not sent over the network. The communicator immediately handles game
- * state messages.
+ * mode. Messages are not sent over the network.
+ * The fake communicator is played in process: it reads the game map and stages the moves
+ * of its ants directly, without building nor parsing any message.
  * @class
  * @author JMN
  */
-public class AntFakeCommunicator extends FakeCommunicator
+public class AntFakeCommunicator extends FakeCommunicator implements AntInProcessBot
 {
-	private static final Logger LOGGER =
-			LoggerFactory.getLogger(AntFakeCommunicator.class);
-	
 	/**
-	 * The interface giving a reading access to the game map.
+	 * The generator of the random moves.
 	 */
-	private AntGameMapView mapView;
+	private Random rand;
 	
 	/**
-	 * Creates a fake communicator that will send game actions to a training game.
+	 * Creates a fake communicator that will play in a training game.
 	 * @constructor
-	 * @param mapView the interface giving a reading access to the game map.
 	 */
-	public AntFakeCommunicator(AntGameMapView mapView)
+	public AntFakeCommunicator()
 	{
 		super();
-		this.mapView = mapView;
+		rand = new Random();
 	}
 	
 	@Override
@@ -67,108 +60,90 @@ public class AntFakeCommunicator extends FakeCommunicator
 	}
 	
 	/**
-	 * Gets game objects one cell away in a direction from a specified cell.
+	 * Returns whether the cell one cell away in a direction from a specified cell holds a
+	 * solid object.
+	 * @param mapView the interface giving a reading access to the game map.
 	 * @param row the row index of the origin cell.
 	 * @param col the column index of the origin cell.
-	 * @param direction the direction token from the origin.
-	 * @return a list of game objects.
+	 * @param direction the direction from the origin.
+	 * @return true if an ant cannot move in this direction.
 	 */
-	private List<AntGameObject> getObjectsAround(int row, int col, char direction)
+	private static boolean isBlockedAround(AntGameMapView mapView, int row, int col,
+			Move direction)
 	{
 		switch (direction)
 		{
-		case 'N':
+		case NORTH:
 			row -= 1;
 			break;
-		case 'E':
+		case EAST:
 			col += 1;
 			break;
-		case 'W':
+		case WEST:
 			col -= 1;
 			break;
-		case 'S':
+		case SOUTH:
 			row += 1;
 			break;
 		}
-		return mapView.getGameObjectsAt(col, row);
+		return mapView.isBlocked(col, row);
+	}
+	
+	/**
+	 * Chooses a random move for an ant, towards a cell without solid object if possible.
+	 * @param mapView the interface giving a reading access to the game map.
+	 * @param row the row index of the ant.
+	 * @param col the column index of the ant.
+	 * @return the direction of the move.
+	 */
+	private Move chooseMove(AntGameMapView mapView, int row, int col)
+	{
+		StringBuilder untriedMoves = new StringBuilder("NEWS");
+		Move move = Move.NORTH;
+		while (untriedMoves.length() > 0)
+		{
+			// Take a random move not already tried
+			int index = rand.nextInt(untriedMoves.length());
+			move = Move.fromChar(untriedMoves.charAt(index));
+			untriedMoves.deleteCharAt(index);
+			// Solid object : we can't go there. If this zone empty, it's ok
+			if (!isBlockedAround(mapView, row, col, move)) break;
+		}
+		// We should check here that there is not already another of our ants in this
+		// direction
+		return move;
+	}
+	
+	/**
+	 * Chooses the moves of the ants of the fake bot, reading the game map directly.
+	 * @param mapView the interface giving a reading access to the game map.
+	 * @param ants an iterator over ants of the bot.
+	 * @param moves the move buffer where the moves of the ants are staged.
+	 */
+	@Override
+	public void play(AntGameMapView mapView, Iterator<Ant> ants, AntMoveBuffer moves)
+	{
+		while (ants.hasNext())
+		{
+			Ant ant = ants.next();
+			if (ant.isDead()) continue;
+			int row = ant.getRow();
+			int col = ant.getCol();
+			moves.stage(col, row, chooseMove(mapView, row, col));
+		}
 	}
 	
 	/**
 	 * This method overrides the communicator's sendGameState method.
-	 * No message is sent over the network. The fake communicator reads the input and
-	 * returns its game actions immediately.
+	 * No message is sent over the network. An ant game does not send game states to its
+	 * fake bots, it lets them play in process instead, see {@link #play}.
 	 * @see Documentation/protocol/gamestate.html
 	 * @param content the content of the "gamestate" message.
 	 */
 	@Override
 	public void sendGameState(JSONObject content)
 	{
-		Random rand = new Random();
-		try
-		{
-			ArrayList<JSONArray> myAnts = new ArrayList<JSONArray>();
-			ArrayList<Character> myMoves = new ArrayList<Character>();
-			
-			JSONArray objects = content.getJSONArray("gameobjects");
-			for (int i = 0; i < objects.length(); i++)
-			{
-				JSONArray object = objects.getJSONArray(i);
-				String type = object.getString(0).toLowerCase();
-				if ((type.equals("a") || type.equals("b")) && object.getInt(3) == 0)
-				{
-					myAnts.add(object);
-					StringBuilder untriedMoves = new StringBuilder("NEWS");
-					char move = 'N';
-					while (untriedMoves.length() > 0)
-					{
-						// Take a random move not already tried
-						int index = rand.nextInt(untriedMoves.length());
-						move = untriedMoves.charAt(index);
-						untriedMoves.deleteCharAt(index);
-						// Get objects in this direction
-						List<AntGameObject> objectsAt = getObjectsAround(
-								object.getInt(1), object.getInt(2), move);
-						boolean moveAvailable = true;
-						for (AntGameObject gob : objectsAt)
-						{
-							// Solid object : we can't go there
-							if (gob.isCollideable())
-							{
-								moveAvailable = false;
-								break;
-							}
-						}
-						// If this zone empty, it's ok
-						if (moveAvailable) break;
-					}
-					// We should check here that there is not already another of our ants
-					// in this direction
-					myMoves.add(move);
-				}
-			}
-			
-			// Fill the result with the computed moves.
-			JSONArray moves = new JSONArray();
-			
-			for (int i = 0; i < myAnts.size(); i++)
-			{
-				JSONArray move = new JSONArray();
-				move.put(0, myAnts.get(i).getInt(1)); // row
-				move.put(1, myAnts.get(i).getInt(2)); // col
-				move.put(2, myMoves.get(i)); // move
-				moves.put(move);
-			}
-			
-			JSONObject actions = new JSONObject();
-			actions.put("moves", moves);
-			
-			// "Send" the result to the game.
-			bot.getGame().receiveActions(bot, actions);
-		}
-		catch (JSONException e)
-		{
-			LOGGER.error("Error while taking actions ({})", e.getMessage());
-		}
+		// Do nothing
 	}
 	
 	@Override
@@ -178,7 +153,7 @@ public class AntFakeCommunicator extends FakeCommunicator
 	}
 	
 	@Override
-	public void sendGameEnd(JSONObject content)
+	public void sendGameEnd(byte[] message)
 	{
 		// Do nothing
 	}
@@ -48,11 +48,15 @@ public class AntFoodSpawn extends AntGameObject
 	private int lastHarvestRound;
 	
 	/**
-	 * The replay data of the food currently present in the spawn.
-	 * [ row, col, pop_round, gth_round, bot_id ]
+	 * The replay where the tracks of the food units are recorded, or null.
 	 * @see Documentation/protocol/replayformat.html
 	 */
-	private JSONArray replayData;
+	private AntGameReplayData replay;
+	
+	/**
+	 * The identifier of the track of the food currently present in the spawn.
+	 */
+	private int replayTrack;
 	
 	/**
 	 * Creates a new food spawn from a column and row identifier.
@@ -81,22 +85,25 @@ public class AntFoodSpawn extends AntGameObject
 		lastHarvestRound = 0;
 	}
 	
+	/**
+	 * Sets the replay where the tracks of the food units of the spawn are recorded.
+	 * @see Documentation/protocol/replayformat.html
+	 * @param replay the replay of the game.
+	 */
+	public void setReplay(AntGameReplayData replay)
+	{
+		this.replay = replay;
+	}
+	
 	/**
 	 * Creates food on the food spawn.
 	 * @param round the game round at which the food is spawned.
 	 */
 	public void createFood(int round)
 	{
-		replayData = new JSONArray();
-		try
+		if (replay != null)
 		{
-			replayData.put(0, row);
-			replayData.put(1, col);
-			replayData.put(2, round);
-		}
-		catch (JSONException e)
-		{
-			LOGGER.error("Error creating replay data for food ({})", e.getMessage());
+			replayTrack = replay.addFood(row, col, round);
 		}
 		food = true;
 	}
@@ -108,18 +115,10 @@ public class AntFoodSpawn extends AntGameObject
 	 */
 	public void harvestFood(int botId, int round)
 	{
-		try
-		{
-			replayData.put(3, round);
-			replayData.put(4, botId);
-		}
-		catch (JSONException e)
+		if (replay != null)
 		{
-			LOGGER.error("Error saving harvesting food data ({})", e.getMessage());
+			replay.setFoodGathered(replayTrack, round, botId);
 		}
-		replayData = null;
-		// replay data is cleared here, but there's still a reference to it in the food
-		// track list in the game replay data class.
 		food = false;
 		lastHarvestRound = round;
 	}
@@ -132,15 +131,10 @@ public class AntFoodSpawn extends AntGameObject
 	{
 		if(food)
 		{
-			try
+			if (replay != null)
 			{
-				replayData.put(3, round);
+				replay.setFoodCleaned(replayTrack, round);
 			}
-			catch (JSONException e)
-			{
-				LOGGER.error("Error cleaning food ({})", e.getMessage());
-			}
-			replayData = null;
 			food = false;
 			lastHarvestRound = round;
 		}
@@ -188,12 +182,4 @@ public class AntFoodSpawn extends AntGameObject
 		return lastHarvestRound;
 	}
 	
-	/**
-	 * Gets the replay data for the food unit currently present in the spawn.
-	 * @return the replay data of the food unit.
-	 */
-	public JSONArray getReplayData()
-	{
-		return replayData;
-	}
 }
@@ -19,8 +19,12 @@
 
 package ants;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -28,19 +32,25 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import util.Cell;
 import util.Move;
+import basis.BinaryFrames;
+import basis.BinaryWriter;
 import basis.Bot;
 import basis.BotGameInfo;
 import basis.BotMode;
 import basis.Game;
+import basis.JSONEncoder;
+import basis.ReplayArchive;
+import basis.StreamedContent;
 
 /**
  * This class represents an ant game being played. It overloads the generic Game class to
@@ -54,12 +64,49 @@ public class AntGame extends Game
 {
 	private static final Logger LOGGER = LoggerFactory.getLogger(AntGame.class);
 	
+	/**
+	 * The number of ant games created, used to give a distinct number to each game.
+	 */
+	private static final AtomicInteger GAME_COUNT = new AtomicInteger(0);
+	
+	/**
+	 * The tokens of the game objects in a "gamestate" message, indexed by the type field
+	 * of a game object state key.
+	 * @see Documentation/protocol/gamestate.html
+	 */
+	private static final String STATE_TOKENS = "WFHABX";
+	
+	/**
+	 * The tokens of the game objects as strings, indexed like the state tokens.
+	 */
+	private static final String[] STATE_TOKEN_STRINGS = { "W", "F", "H", "A", "B", "X" };
+	
+	/**
+	 * The kinds of a binary "gamestate" frame: the list of the visible game objects, a
+	 * full snapshot or the changes of a delta game state.
+	 * @see Documentation/protocol/binary.html
+	 */
+	private static final int BINARY_GAME_OBJECTS = 0;
+	private static final int BINARY_FULL = 1;
+	private static final int BINARY_DELTA = 2;
+	
+	/**
+	 * The maximum number of digits of a row or a column in a packed move string, so the
+	 * number cannot overflow.
+	 */
+	private static final int MAX_PACKED_DIGITS = 9;
+	
 	/**
 	 * The static map template used to initialize the game objects of the game map.
 	 * It represents the generic layout of the game map.
 	 */
 	private AntMapTemplate mapTemplate;
 	
+	/**
+	 * The compiled form of the map template, shared with the other games on the map.
+	 */
+	private AntCompiledMap compiledMap;
+	
 	/**
 	 * The dynamic map storing all the game objects of the game.
 	 * It represents the current state of the game.
@@ -67,9 +114,9 @@ public class AntGame extends Game
 	private AntGameMap map;
 	
 	/**
-	 * The list of ants present on the map.
+	 * The registry of the ants present on the map.
 	 */
-	private ArrayList<Ant> ants;
+	private AntRegistry ants;
 	
 	/**
 	 * The list of food spawns present on the map.
@@ -91,6 +138,16 @@ public class AntGame extends Game
 	 */
 	private AntGameMapMask attackMask;
 	
+	/**
+	 * The scoreboard keeping the bots ordered by game score.
+	 */
+	private AntScoreboard scoreboard;
+	
+	/**
+	 * The resolver of the battles between the ants.
+	 */
+	private AntCombatResolver combatResolver;
+	
 	/**
 	 * The class that holds replay data for the ant game.
 	 */
@@ -101,6 +158,17 @@ public class AntGame extends Game
 	 */
 	private Date startDate;
 	
+	/**
+	 * The number of the game on the server, it distinguishes the games that started in
+	 * the same second.
+	 */
+	private int gameNumber;
+	
+	/**
+	 * The archive where the replay is written when the game ends, or null.
+	 */
+	private ReplayArchive replayArchive;
+	
 	/**
 	 * Creates a new ant game from a map template and a list of bots playing in this game.
 	 * Fake bots are created to play with the other bots if there is not enough bots.
@@ -119,22 +187,25 @@ public class AntGame extends Game
 			float attackRadius2)
 	{
 		this.startDate = new Date();
+		gameNumber = GAME_COUNT.incrementAndGet();
 		this.mapTemplate = mapTemplate;
 		// Create game map and game objects.
-		map = new AntGameMap(mapTemplate.getCols(), mapTemplate.getRows());
-		ants = new ArrayList<Ant>();
+		compiledMap = mapTemplate.getCompiledMap();
+		map = new AntGameMap(compiledMap);
 		foodSpawns = new ArrayList<AntFoodSpawn>();
 		// Add fake bots to supply the correct bot count for the map.
 		int fakeBotCount = mapTemplate.getBotCount() - bots.size();
 		for (int i = 0; i < fakeBotCount; i++)
 		{	// Create communicators and bots for fake bots.
-			AntFakeCommunicator fakeCom = new AntFakeCommunicator(map);
+			AntFakeCommunicator fakeCom = new AntFakeCommunicator();
 			Bot fakeBot = new Bot(fakeCom, "CPU" + i, BotMode.TRAINING, 0, null);
 			fakeCom.setBot(fakeBot);
 			fakeBot.setGame(this);
 			bots.add(fakeBot);
 		}
 		this.bots = bots;
+		ants = new AntRegistry(bots.size());
+		scoreboard = new AntScoreboard(bots.size());
 		// Create bot game info for each bot.
 		botInfos = new HashMap<Bot, BotGameInfo>(bots.size());
 		Iterator<Bot> botIt = bots.iterator();
@@ -142,11 +213,15 @@ public class AntGame extends Game
 		while (botIt.hasNext())
 		{
 			Bot bot = botIt.next();
-			botInfos.put(bot, new AntBotGameInfo(botId++));
+			AntBotGameInfo botInfo = new AntBotGameInfo(botId++, ants, scoreboard);
+			botInfos.put(bot, botInfo);
+			scoreboard.addBot(botInfo);
 		}
 		// Create fog war masks.
 		viewMask = new AntGameMapMask(viewRadius2);
 		attackMask = new AntGameMapMask(attackRadius2);
+		map.enableVision(bots.size(), viewMask);
+		combatResolver = new AntCombatResolver(map, attackMask);
 		// Init settings
 		this.maxRound = maxRound;
 		this.loadTimeMs = loadTime;
@@ -159,37 +234,22 @@ public class AntGame extends Game
 	
 	/**
 	 * Adds an ant to the game.
-	 * @param ant the ant to add to the ants lists.
+	 * @param ant the ant to add to the ant registry.
 	 */
 	protected void addAnt(Ant ant)
 	{
-		replay.addAntData(ant.getReplayData());
+		ant.setReplay(replay);
 		ants.add(ant);
-		((AntBotGameInfo) botInfos.get(ant.getBot())).addAnt(ant);
 		map.addGameObject(ant);
 	}
 	
 	/**
-	 * Removes an ant from the game.
-	 * @param ant the ant to remove from the ants lists.
+	 * Removes an ant from the game. The last ant of the registry takes its slot.
+	 * @param ant the ant to remove from the ant registry.
 	 */
 	protected void removeAnt(Ant ant)
 	{
 		ants.remove(ant);
-		((AntBotGameInfo) botInfos.get(ant.getBot())).removeAnt(ant);
-		map.removeGameObject(ant);
-	}
-	
-	/**
-	 * Removes an ant from the game, while being safe used in a loop.
-	 * @param ant the ant to remove from the ants lists.
-	 * @param antIt the iterator used in the loop (used for safe removal, must be an
-	 * 		  iterator on the "ants" array).
-	 */
-	protected void removeAnt(Ant ant, Iterator<Ant> antIt)
-	{
-		antIt.remove();
-		((AntBotGameInfo) botInfos.get(ant.getBot())).removeAnt(ant);
 		map.removeGameObject(ant);
 	}
 
@@ -199,7 +259,7 @@ public class AntGame extends Game
 	 */
 	protected void addHill(AntHill hill)
 	{
-		replay.addHillData(hill.getReplayData());
+		hill.setReplay(replay);
 		((AntBotGameInfo) botInfos.get(hill.getBot())).addHill(hill);
 		map.addGameObject(hill);
 	}
@@ -238,42 +298,37 @@ public class AntGame extends Game
 			((AntBotGameInfo) entry.getValue()).init(entry.getKey());
 		}
 		// Clears the map.
+		ants.clear();
 		map.clear();
-		// Create walls on the map.
-		Iterator<Cell> wallIt = mapTemplate.getWallIterator();
-		while (wallIt.hasNext())
-		{
-			map.addGameObject(new AntWall(map, wallIt.next()));
-		}
-		// Create food spawns on the map.
+		// The walls are read from the compiled map. Create food spawns on the map.
+		int cols = compiledMap.getCols();
 		foodSpawns.clear();
-		Iterator<Cell> foodSpawnIt = mapTemplate.getFoodSpawnIterator();
-		while (foodSpawnIt.hasNext())
+		for (int i = 0; i < compiledMap.getFoodSpawnCount(); i++)
 		{
-			AntFoodSpawn foodSpawn = new AntFoodSpawn(map, foodSpawnIt.next());
+			int cell = compiledMap.getFoodSpawnCell(i);
+			AntFoodSpawn foodSpawn = new AntFoodSpawn(map, cell % cols, cell / cols);
 			foodSpawns.add(foodSpawn);
 			map.addGameObject(foodSpawn);
+			foodSpawn.setReplay(replay);
 			// Pop initial food.
 			foodSpawn.createFood(curRound);
-			replay.addFoodData(foodSpawn.getReplayData());
 		}
 		// Create initial ant(s) and hill(s) for each bot on the map.
-		Iterator<ArrayList<Cell>> botHillsIt = mapTemplate.getHillIterator();
 		Iterator<Bot> botIt = bots.iterator();
-		while (botHillsIt.hasNext())
+		for (int hillBot = 0; hillBot < compiledMap.getBotCount(); hillBot++)
 		{
 			Bot bot = botIt.next();
 			AntBotGameInfo botInfo = (AntBotGameInfo) botInfos.get(bot);
-			ArrayList<Cell> botHills = botHillsIt.next();
-			Iterator<Cell> hillIt = botHills.iterator();
-			while (hillIt.hasNext())
+			for (int i = 0; i < compiledMap.getHillCount(hillBot); i++)
 			{
-				Cell hillCell = hillIt.next();
+				int cell = compiledMap.getHillCell(hillBot, i);
 				// Create the hill on the map for the bot.
-				AntHill hill = new AntHill(map, hillCell, bot, botInfo.getId());
+				AntHill hill = new AntHill(map, cell % cols, cell / cols, bot,
+						botInfo.getId());
 				addHill(hill);
 				// Create an initial ant inside the created hill for the bot.
-				Ant ant = new Ant(map, hillCell, bot, botInfo.getId(), curRound);
+				Ant ant = new Ant(map, cell % cols, cell / cols, bot, botInfo.getId(),
+						curRound);
 				addAnt(ant);
 				// Each bot start with 1 point per hill.
 				botInfo.addGameScore(+1);
@@ -291,9 +346,9 @@ public class AntGame extends Game
 		// TODO : Bonus points
 		// (i.e. remaining ants get points for the remaining hills)
 		// Kill remaining ants
-		for (Ant ant : ants)
+		for (int slot = 0; slot < ants.size(); slot++)
 		{
-			ant.kill(curRound + 1);
+			ants.get(slot).kill(curRound + 1);
 		}
 		// Clear reamining food
 		for (AntFoodSpawn foodSpawn : foodSpawns)
@@ -301,11 +356,9 @@ public class AntGame extends Game
 			foodSpawn.cleanFood(curRound + 1);
 		}
 		// Set bot end_turn and raze remaining hills
-		ArrayList<AntBotGameInfo> rankedList = new ArrayList<AntBotGameInfo>();
 		for (BotGameInfo botInfo : botInfos.values())
 		{
 			AntBotGameInfo antBotInfo = (AntBotGameInfo) botInfo;
-			rankedList.add(antBotInfo);
 			if (antBotInfo.getDeathTurn() == -1)
 			{
 				antBotInfo.setDeath(curRound);
@@ -317,86 +370,8 @@ public class AntGame extends Game
 				hill.raze(curRound + 1);
 			}
 		}
-		
-		//Compute bots ranks
-		Collections.sort(rankedList);
-		int currentRank = 0;
-		int previousScore = -1;
-		for (int i = 0; i < rankedList.size(); i++)
-		{
-			AntBotGameInfo botInfo = rankedList.get(i);
-			int score = botInfo.getGameScore();
-			if (score != previousScore)
-			{
-				currentRank = i;
-				previousScore = score;
-			}
-			botInfo.setRank(currentRank);
-		}
-	}
-	
-	/**
-	 * Returns whether the rank is stabilized (i.e. no player with at least one remaining 
-	 *  hill can beat the score of any of his opponents).
-	 * @return true if the rank is stabilized, false otherwise.
-	 */
-	private boolean isRankStabilized()
-	{
-		for (BotGameInfo player : botInfos.values())
-		{
-			AntBotGameInfo botInfo = (AntBotGameInfo) player;
-			if (botInfo.isAlive() && botInfo.hasHills())
-			{
-				// There are 2 cases :
-				// - The opponent has the same score as the player
-				//   In this case, the player must be able to get a score strictly
-				//    superior to the opponent for the rank to change
-				// - The opponent has a higher score than the player
-				//   In this case, the player must be able to get at least the same score
-				//    as the opponent for the rank to change
-				int maxPlayerScore = botInfo.getGameScore(),
-						minEqualOpponentScore = Integer.MAX_VALUE,
-						minSuperiorOpponentScore = Integer.MAX_VALUE;
-				for (BotGameInfo opponent : botInfos.values())
-				{
-					AntBotGameInfo opponentInfo = (AntBotGameInfo) opponent;
-					if (opponent == player ||
-							botInfo.getGameScore() > opponentInfo.getGameScore())
-					{
-						continue;
-					}
-					int currentMinOpponentScore = opponentInfo.getGameScore();
-					Iterator<AntHill> hillIt = opponentInfo.getHillIterator();
-					while (hillIt.hasNext())
-					{
-						hillIt.next();
-						currentMinOpponentScore -= 1;
-						maxPlayerScore += 2;
-					}
-					if (botInfo.getGameScore() == opponentInfo.getGameScore())
-					{
-						if (currentMinOpponentScore < minEqualOpponentScore)
-						{
-							minEqualOpponentScore = currentMinOpponentScore;
-						}
-					}
-					else
-					{
-						if (currentMinOpponentScore < minSuperiorOpponentScore)
-						{
-							minSuperiorOpponentScore = currentMinOpponentScore;
-						}
-					}
-				}
-				// If we can catch up, the rank is not stabilized yet
-				if (maxPlayerScore >= minSuperiorOpponentScore
-						|| maxPlayerScore > minEqualOpponentScore)
-				{
-					return false;
-				}
-			}
-		}
-		return true;
+		// The scoreboard keeps the bots ordered by score, compute bots ranks.
+		scoreboard.rank();
 	}
 	
 	/**
@@ -416,14 +391,7 @@ public class AntGame extends Game
 			return true;
 		}
 		// Alive player rules (extermination / lone survivor)
-		int remainingPlayers = 0;
-		for (BotGameInfo bgi : botInfos.values())
-		{
-			if (((AntBotGameInfo) bgi).isAlive())
-			{
-				remainingPlayers++;
-			}
-		}
+		int remainingPlayers = scoreboard.getAliveCount();
 		if (remainingPlayers == 0)
 		{
 			replay.setCutoff("extermination");
@@ -435,7 +403,7 @@ public class AntGame extends Game
 			return true;
 		}
 		// Rank stabilization rule
-		if (isRankStabilized())
+		if (scoreboard.isRankStabilized())
 		{
 			replay.setCutoff("rank stabilized");
 			return true;
@@ -450,6 +418,8 @@ public class AntGame extends Game
 	@Override
 	public void update()
 	{
+		// Apply the moves staged by the bots during the round.
+		applyMoves();
 		curRound++;
 		// Save hives and scores state
 		for (BotGameInfo botInfo : botInfos.values())
@@ -458,68 +428,29 @@ public class AntGame extends Game
 			replay.addHiveHistoryRecord(antBotInfo.getId(), antBotInfo.getHive());
 			replay.addScoresRecord(antBotInfo.getId(), antBotInfo.getGameScore());
 		}
-		for (Ant ant : ants)
+		for (int slot = 0; slot < ants.size(); slot++)
 		{
 			// Check that the ant did not go into a wall (or another ant).
-			ArrayList<AntGameObject> gobs = map.getGameObjectsAt(ant);
-			Iterator<AntGameObject> gobIt = gobs.iterator();
-			while (gobIt.hasNext())
-			{
-				AntGameObject gob = gobIt.next();
-				if (gob != ant && gob.isCollideable())
-				{	// The ant in on a wall, kill it instantly.
-					ant.kill();
-					break;
-				}
+			Ant ant = ants.get(slot);
+			if (map.collides(ant))
+			{	// The ant in on a wall, kill it instantly.
+				ant.kill();
 			}
 		}
 		// Remove ants which died last round.
-		for (Iterator<Ant> antIt = ants.iterator(); antIt.hasNext();)
+		for (int slot = 0; slot < ants.size();)
 		{
-			Ant ant = antIt.next();
-			if (ant.isDead())
-			{
-				// Avoid random ConcurrentModificationException by removing using the
-				// iterator
-				removeAnt(ant, antIt);
-			}
-		}
-		// Resolve battles.
-		HashMap<Ant, ArrayList<Ant>> nearbyEnemies = new HashMap<Ant, ArrayList<Ant>>();
-		for (Ant ant : ants)
-		{
-			Bot owner = ant.getBot();
-			ArrayList<Ant> antEnemies = new ArrayList<Ant>();
-			ArrayList<AntGameObject> attackable = map.applyMask(ant.getCol(),
-					ant.getRow(), attackMask);
-			for (AntGameObject obj : attackable)
-			{
-				if (obj instanceof Ant && ((Ant) obj).getBot() != owner)
-				{
-					antEnemies.add((Ant) obj);
-				}
-			}
-			nearbyEnemies.put(ant, antEnemies);
-		}
-		for (Ant ant : ants)
-		{
-			ArrayList<Ant> enemies = nearbyEnemies.get(ant);
-			int weakness = enemies.size();
-			if (weakness == 0) continue;
-			int minEnemyWeakness = Integer.MAX_VALUE;
-			for (Ant enemy : enemies)
-			{
-				int enemyWeakness = nearbyEnemies.get(enemy).size(); 
-				if (enemyWeakness < minEnemyWeakness)
-				{
-					minEnemyWeakness = enemyWeakness;
-				}
+			if (ants.isDead(slot))
+			{	// The last ant takes the slot, check the slot again.
+				removeAnt(ants.get(slot));
 			}
-			if (minEnemyWeakness <= weakness)
+			else
 			{
-				ant.kill();
+				slot++;
 			}
 		}
+		// Resolve battles.
+		combatResolver.resolve(ants);
 		// Raze hills & spawn ants.
 		for (Map.Entry<Bot, BotGameInfo> entry : botInfos.entrySet())
 		{
@@ -594,23 +525,20 @@ public class AntGame extends Game
 						curRound - foodSpawn.getLastHarvestRound() > foodRespawnDelay)
 				{	// Time to add food.
 					foodSpawn.createFood(curRound);
-					replay.addFoodData(foodSpawn.getReplayData());
 				}
 			}
 		}
 		// Detect ants that did not move during this round.
-		Iterator<Ant> antIt = ants.iterator();
-		while (antIt.hasNext())
+		for (int slot = 0; slot < ants.size(); slot++)
 		{
-			Ant ant = antIt.next();
-			if (!ant.isDead() && !ant.hasMoved())
+			if (!ants.isDead(slot) && !ants.hasMoved(slot))
 			{	// If an alive ant did not move during this round, just add a blank
 				// move in its replay track.
-				ant.addBlankMove();
+				ants.get(slot).addBlankMove();
 			}
 			else
 			{	// Enable the ant to move again
-				ant.setMoved(false);
+				ants.setMoved(slot, false);
 			}
 		}
 		// Detect dead bots
@@ -638,37 +566,205 @@ public class AntGame extends Game
 	}
 	
 	/**
-	 * Executes the ant moves ordered by a bot.
+	 * Stages the ant moves ordered by a bot. This method is called from the thread of
+	 * the bot communicator, so it only decodes the moves in the move buffer of the bot.
+	 * The moves are applied by the game thread at the beginning of the next update.
 	 * @see Documentation/protocol/gameactions.html
 	 * @param bot the bot which gave the moves.
 	 * @param content the content of the "gameactions" message.
+	 * @param round the round of the game state the bot replied to.
 	 * @throws JSONException if the actions object is not correctly formed.
 	 */
 	@Override
-	protected void executeActions(Bot bot, JSONObject content) throws JSONException
+	protected void executeActions(Bot bot, JSONObject content, int round)
+			throws JSONException
+	{
+		AntMoveBuffer buffer = ((AntBotGameInfo) botInfos.get(bot)).getMoveBuffer();
+		buffer.resetStaged();
+		Object moveList = content.get("moves");
+		if (moveList instanceof String)
+		{	// The moves are packed in a string.
+			stagePackedMoves(buffer, (String) moveList);
+		}
+		else
+		{
+			JSONArray moves = content.getJSONArray("moves");
+			int len = moves.length();
+			for (int i = 0; i < len; i++)
+			{	// Extract action attributes.
+				JSONArray move = moves.getJSONArray(i);
+				int row = move.getInt(0);
+				int col = move.getInt(1);
+				buffer.stage(col, row, Move.fromString(move.getString(2)));
+			}
+		}
+		buffer.publish(round);
+	}
+	
+	/**
+	 * Stages the ant moves ordered by a bot in a binary frame: the number of moves, then
+	 * for each move the row and the column of the ant as varints and the letter of the
+	 * direction.
+	 * Like the moves of a "gameactions" message, the moves are applied by the game thread
+	 * at the beginning of the next update.
+	 * @see Documentation/protocol/binary.html
+	 * @param bot the bot which gave the moves.
+	 * @param actions the payload of the "gameactions" frame.
+	 * @param round the round of the game state the bot replied to.
+	 * @throws JSONException if the moves are not correctly formed.
+	 */
+	@Override
+	protected void executeActions(Bot bot, ByteBuffer actions, int round)
+			throws JSONException
+	{
+		AntMoveBuffer buffer = ((AntBotGameInfo) botInfos.get(bot)).getMoveBuffer();
+		buffer.resetStaged();
+		try
+		{
+			int count = BinaryFrames.readVarint(actions);
+			if (count < 0) throw new IllegalArgumentException("Negative move count");
+			for (int i = 0; i < count; i++)
+			{
+				int row = BinaryFrames.readVarint(actions);
+				int col = BinaryFrames.readVarint(actions);
+				if (row < 0 || col < 0)
+				{	// A varint of 5 bytes can overflow.
+					throw new IllegalArgumentException("Negative coordinates");
+				}
+				buffer.stage(col, row, Move.fromChar((char) actions.get()));
+			}
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e)
+		{
+			throw new JSONException("Malformed binary moves");
+		}
+		buffer.publish(round);
+	}
+	
+	/**
+	 * Returns whether a bot is played in process, which is the case of the fake bots of
+	 * the training games.
+	 * @see AntInProcessBot
+	 * @param bot the bot to test.
+	 * @return true if the communicator of the bot plays in process, false otherwise.
+	 */
+	@Override
+	protected boolean isPlayedInProcess(Bot bot)
+	{
+		return bot.getCommunicator() instanceof AntInProcessBot;
+	}
+	
+	/**
+	 * Lets a fake bot of a training game play in process. The bot reads the game map
+	 * directly and stages the moves of its ants in its move buffer, so neither the game
+	 * state nor the game actions are serialized.
+	 * @see AntInProcessBot
+	 * @param bot the fake bot to play.
+	 */
+	@Override
+	protected void playInProcess(Bot bot)
+	{
+		AntBotGameInfo botInfo = (AntBotGameInfo) botInfos.get(bot);
+		AntMoveBuffer buffer = botInfo.getMoveBuffer();
+		buffer.resetStaged();
+		((AntInProcessBot) bot.getCommunicator()).play(map, botInfo.getAntIterator(),
+				buffer);
+		buffer.publish(curRound);
+	}
+	
+	/**
+	 * Stages the moves of a packed move string, read character by character without
+	 * creating any object. The moves are separated by ';' and each move is written
+	 * "row,col,direction", e.g. "18,25,N;66,117,S".
+	 * The row and the column are written in decimal digits, without sign.
+	 * @see Documentation/protocol/gameactions.html
+	 * @param buffer the move buffer of the bot.
+	 * @param moves the packed move string.
+	 * @throws JSONException if a move is not correctly formed.
+	 */
+	private static void stagePackedMoves(AntMoveBuffer buffer, String moves)
+			throws JSONException
 	{
-		JSONArray moves = content.getJSONArray("moves");
 		int len = moves.length();
-		for (int i = 0; i < len; i++)
-		{	// Extract action attributes.
-			JSONArray move = moves.getJSONArray(i);
-			int row = move.getInt(0);
-			int col = move.getInt(1);
-			Move direction = Move.fromString(move.getString(2));
-			// Get game objects from the game map.
-			Ant ant = map.getAntAt(col, row);
-			if (ant != null && ant.getBot() == bot && !ant.hasMoved())
-			{	// there's an alive ant at this cell and this ant belongs to the bot.
-				// We can move it in the desired direction.
-				ant.move(direction);
-				// We can't check here if the ant walked into a wall or another ant
-				// Since not every ant has moved.
+		int i = 0;
+		while (i < len)
+		{
+			if (moves.charAt(i) == ';')
+			{	// Tolerate empty moves, e.g. a trailing separator.
+				i++;
+				continue;
+			}
+			int start = i;
+			int row = 0;
+			int col = 0;
+			for (int field = 0; field < 2; field++)
+			{	// Read the row, then the column, which cannot be negative.
+				int value = 0;
+				int digits = 0;
+				char c;
+				while (i < len && (c = moves.charAt(i)) >= '0' && c <= '9')
+				{
+					value = value * 10 + (c - '0');
+					digits++;
+					i++;
+				}
+				if (digits == 0 || digits > MAX_PACKED_DIGITS || i == len ||
+						moves.charAt(i) != ',')
+				{
+					throw new JSONException("Malformed packed move at " + start);
+				}
+				i++;
+				if (field == 0) row = value;
+				else col = value;
+			}
+			if (i == len || moves.charAt(i) == ';' ||
+					(i + 1 < len && moves.charAt(i + 1) != ';'))
+			{	// A move ends with a single direction letter.
+				throw new JSONException("Malformed packed move at " + start);
+			}
+			try
+			{
+				buffer.stage(col, row, Move.fromChar(moves.charAt(i)));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new JSONException("Malformed packed move at " + start);
+			}
+			i++;
+		}
+	}
+	
+	/**
+	 * Applies the ant moves the bots ordered for the current round, bot after bot.
+	 */
+	private void applyMoves()
+	{
+		Iterator<Bot> botIt = bots.iterator();
+		while (botIt.hasNext())
+		{
+			Bot bot = botIt.next();
+			AntMoveBuffer buffer = ((AntBotGameInfo) botInfos.get(bot)).getMoveBuffer();
+			int count = buffer.take(curRound);
+			for (int i = 0; i < count; i++)
+			{	// Get game objects from the game map.
+				Ant ant = map.getAntAt(buffer.getCol(i), buffer.getRow(i));
+				if (ant != null && ant.getBot() == bot && !ant.hasMoved())
+				{	// there's an alive ant at this cell and this ant belongs to the bot.
+					// We can move it in the desired direction.
+					ant.move(buffer.getDirection(i));
+					// We can't check here if the ant walked into a wall or another ant
+					// Since not every ant has moved.
+				}
 			}
 		}
 	}
 	
 	/**
-	 * Generates the content of a "gamestate" message for a specific bot.
+	 * Generates the content of a "gamestate" message for a specific bot, as a JSON tree
+	 * listing all the visible game objects. An ant game does not send it: the clients get
+	 * their game states from {@link #writeGameStateMessageContent(Bot, JSONEncoder)} or
+	 * as binary frames, and the fake bots play in process. The tree is the reference the
+	 * written game states are checked against.
 	 * @see Documentation/protocol/gamestate.html
 	 * @param bot the bot that will receive the message.
 	 * @return the content of the "gamestate" message.
@@ -677,22 +773,8 @@ public class AntGame extends Game
 	protected JSONObject genGameStateMessageContent(Bot bot)
 	{
 		JSONObject content = new JSONObject();
-		// Get visible game objects.
-		HashSet<AntGameObject> visibleGobs = new HashSet<AntGameObject>();
 		AntBotGameInfo botInfo = (AntBotGameInfo) botInfos.get(bot);
-		Iterator<Ant> antIt = botInfo.getAntIterator();
-		while (antIt.hasNext())
-		{
-			Ant ant = antIt.next();
-			if (!ant.isDead())
-			{	// If the ant is alive, show all the game objects in its vision radius.
-				visibleGobs.addAll(map.applyMask(ant.getCol(), ant.getRow(), viewMask));
-			}
-			else
-			{	// The ant is dead, just notify the player it is dead.
-				visibleGobs.add(ant);
-			}
-		}
+		HashSet<AntGameObject> visibleGobs = getVisibleGameObjects(botInfo);
 		// Create the message.
 		JSONArray gobs = new JSONArray();
 		Iterator<AntGameObject> gobIt = visibleGobs.iterator();
@@ -728,6 +810,339 @@ public class AntGame extends Game
 		return content;
 	}
 	
+	/**
+	 * Writes the content of a "gamestate" message for a specific bot straight on the
+	 * encoder of the message, from the state keys of the visible game objects.
+	 * @see Documentation/protocol/gamestate.html
+	 * @param bot the bot that will receive the message.
+	 * @param encoder the encoder of the message.
+	 */
+	@Override
+	protected void writeGameStateMessageContent(Bot bot, JSONEncoder encoder)
+	{
+		writeGameState(bot, new JSONGameStateWriter(encoder));
+	}
+	
+	/**
+	 * Generates the payload of a binary "gamestate" frame for a specific bot, from the
+	 * state keys of the visible game objects.
+	 * @see Documentation/protocol/binary.html
+	 * @param bot the bot that will receive the frame.
+	 * @return the payload of the "gamestate" frame.
+	 */
+	@Override
+	protected byte[] genBinaryGameStateMessageContent(Bot bot)
+	{
+		BinaryGameStateWriter writer = new BinaryGameStateWriter();
+		writeGameState(bot, writer);
+		return writer.toByteArray();
+	}
+	
+	/**
+	 * Computes the game state of a bot and writes it with a game state writer: the list
+	 * of the visible game objects for a bot receiving full game states, and a full
+	 * snapshot or the changes since the previous game state for a bot receiving delta
+	 * game states. A full snapshot is sent for the first game state, and whenever the
+	 * delta would not be smaller than the snapshot.
+	 * @see Documentation/protocol/gamestate.html
+	 * @param bot the bot that will receive the game state.
+	 * @param writer the writer of the game state.
+	 */
+	private void writeGameState(Bot bot, GameStateWriter writer)
+	{
+		AntBotGameInfo botInfo = (AntBotGameInfo) botInfos.get(bot);
+		long[] state = getState(getVisibleGameObjects(botInfo), botInfo);
+		if (!bot.getCommunicator().hasDeltaGameStates())
+		{
+			writer.writeGameObjects(state);
+			return;
+		}
+		long[] lastState = botInfo.getLastGameState();
+		botInfo.setLastGameState(state);
+		if (lastState == null)
+		{	// First game state, send a full snapshot.
+			writer.writeFull(state);
+			return;
+		}
+		long[] appeared = subtract(state, lastState);
+		long[] disappeared = subtract(lastState, state);
+		if (appeared.length + disappeared.length >= state.length)
+		{	// Send a full snapshot.
+			writer.writeFull(state);
+		}
+		else
+		{
+			writer.writeDelta(appeared, disappeared);
+		}
+	}
+	
+	/**
+	 * Gets the game objects a bot sees: the game objects in the vision radius of its
+	 * alive ants, and its ants that died during the last round.
+	 * @param botInfo the game info of the bot.
+	 * @return the game objects visible by the bot.
+	 */
+	private HashSet<AntGameObject> getVisibleGameObjects(AntBotGameInfo botInfo)
+	{
+		HashSet<AntGameObject> visibleGobs = new HashSet<AntGameObject>();
+		// The map keeps the game objects in the vision radius of the alive ants.
+		map.getVisibleGameObjects(botInfo.getId(), visibleGobs);
+		Iterator<Ant> antIt = botInfo.getAntIterator();
+		while (antIt.hasNext())
+		{
+			Ant ant = antIt.next();
+			if (ant.isDead())
+			{	// The ant is dead, just notify the player it is dead.
+				visibleGobs.add(ant);
+			}
+		}
+		return visibleGobs;
+	}
+	
+	/**
+	 * Computes the sorted state keys of the game objects visible by a bot.
+	 * @param visibleGobs the game objects visible by the bot.
+	 * @param botInfo the game info of the bot.
+	 * @return the sorted state keys of the game objects that are sent to the bot.
+	 */
+	private static long[] getState(HashSet<AntGameObject> visibleGobs,
+			AntBotGameInfo botInfo)
+	{
+		long[] state = new long[visibleGobs.size()];
+		int count = 0;
+		for (AntGameObject gob : visibleGobs)
+		{
+			long key = getStateKey(gob, botInfo);
+			if (key != -1) state[count++] = key;
+		}
+		state = Arrays.copyOf(state, count);
+		Arrays.sort(state);
+		return state;
+	}
+	
+	/**
+	 * Subtracts a sorted list of state keys from another. Keys can be repeated, each
+	 * excluded key excludes one key.
+	 * @param state the sorted state keys.
+	 * @param excluded the sorted state keys to exclude.
+	 * @return the sorted state keys of the state that are not excluded.
+	 */
+	private static long[] subtract(long[] state, long[] excluded)
+	{
+		long[] keys = new long[state.length];
+		int count = 0;
+		int j = 0;
+		for (long key : state)
+		{
+			while (j < excluded.length && excluded[j] < key) j++;
+			if (j < excluded.length && excluded[j] == key)
+			{
+				j++;
+				continue;
+			}
+			keys[count++] = key;
+		}
+		return Arrays.copyOf(keys, count);
+	}
+	
+	/**
+	 * Packs the state of a game object as viewed by a bot in a single key. Keys are
+	 * ordered by row, then by column. Two game objects have the same key if and only if
+	 * they are sent the same way in a "gamestate" message.
+	 * @param gob the game object.
+	 * @param botInfo the game info of the bot that views the game object.
+	 * @return the state key of the game object, or -1 if the game object is not sent.
+	 */
+	private static long getStateKey(AntGameObject gob, AntBotGameInfo botInfo)
+	{
+		char token;
+		int owner = -1;
+		if (gob instanceof Ant)
+		{
+			Ant ant = (Ant) gob;
+			token = !ant.isDead() ? !ant.hasFood() ? 'A' : 'B' : 'X';
+			owner = botInfo.getBotId(ant.getBot());
+		}
+		else if (gob instanceof AntHill)
+		{
+			token = 'H';
+			owner = botInfo.getBotId(((AntHill) gob).getBot());
+		}
+		else if (gob instanceof AntWall)
+		{
+			token = 'W';
+		}
+		else if (gob instanceof AntFoodSpawn && ((AntFoodSpawn) gob).hasFood())
+		{
+			token = 'F';
+		}
+		else
+		{	// The game object is not sent (e.g. a food spawn that has no food unit).
+			return -1;
+		}
+		return ((long) gob.getRow() << 37) | ((long) gob.getCol() << 13)
+				| (STATE_TOKENS.indexOf(token) << 10) | (owner + 1);
+	}
+	
+	/**
+	 * Writes the game objects of a "gamestate" message, from the sorted state keys of the
+	 * game objects a bot sees. The game state is computed by
+	 * {@link AntGame#writeGameState}, which tells the writer what to write.
+	 */
+	private interface GameStateWriter
+	{
+		/**
+		 * Writes the game objects of a bot that receives full game states.
+		 * @param state the state keys of the visible game objects.
+		 */
+		void writeGameObjects(long[] state);
+	
+		/**
+		 * Writes a full snapshot for a bot that receives delta game states.
+		 * @param state the state keys of the visible game objects.
+		 */
+		void writeFull(long[] state);
+	
+		/**
+		 * Writes the changes since the previous game state, for a bot that receives delta
+		 * game states.
+		 * @param appeared the state keys of the game objects that appeared.
+		 * @param disappeared the state keys of the game objects that disappeared.
+		 */
+		void writeDelta(long[] appeared, long[] disappeared);
+	}
+	
+	/**
+	 * Writes a game state as the content of a JSON "gamestate" message. Each game object
+	 * is written like the array of the game object in a generated game state.
+	 */
+	private static class JSONGameStateWriter implements GameStateWriter
+	{
+		private JSONEncoder encoder;
+	
+		JSONGameStateWriter(JSONEncoder encoder)
+		{
+			this.encoder = encoder;
+		}
+	
+		@Override
+		public void writeGameObjects(long[] state)
+		{
+			encoder.object().key("gameobjects");
+			writeStateKeys(state);
+			encoder.endObject();
+		}
+	
+		@Override
+		public void writeFull(long[] state)
+		{
+			encoder.object().key("gameobjects");
+			writeStateKeys(state);
+			encoder.key("full").value(true).endObject();
+		}
+	
+		@Override
+		public void writeDelta(long[] appeared, long[] disappeared)
+		{
+			encoder.object().key("appeared");
+			writeStateKeys(appeared);
+			encoder.key("disappeared");
+			writeStateKeys(disappeared);
+			encoder.key("full").value(false).endObject();
+		}
+	
+		/**
+		 * Writes a JSON array of game objects: for each one, its token, row, column and
+		 * relative owner if it has one.
+		 * @param keys the state keys of the game objects.
+		 */
+		private void writeStateKeys(long[] keys)
+		{
+			encoder.array();
+			for (long key : keys)
+			{
+				encoder.array();
+				encoder.value(STATE_TOKEN_STRINGS[(int) (key >>> 10) & 0x7]);
+				encoder.value((int) (key >>> 37));
+				encoder.value((int) (key >>> 13) & 0xFFFFFF);
+				int owner = (int) (key & 0x3FF) - 1;
+				if (owner >= 0) encoder.value(owner);
+				encoder.endArray();
+			}
+			encoder.endArray();
+		}
+	}
+	
+	/**
+	 * Writes a game state as the payload of a binary "gamestate" frame: the kind of the
+	 * frame, then the lists of game objects.
+	 * @see Documentation/protocol/binary.html
+	 */
+	private static class BinaryGameStateWriter implements GameStateWriter
+	{
+		private BinaryWriter writer;
+	
+		@Override
+		public void writeGameObjects(long[] state)
+		{
+			start(BINARY_GAME_OBJECTS, state.length);
+			writeStateKeys(state);
+		}
+	
+		@Override
+		public void writeFull(long[] state)
+		{
+			start(BINARY_FULL, state.length);
+			writeStateKeys(state);
+		}
+	
+		@Override
+		public void writeDelta(long[] appeared, long[] disappeared)
+		{	// The appeared game objects, then the disappeared ones.
+			start(BINARY_DELTA, appeared.length + disappeared.length);
+			writeStateKeys(appeared);
+			writeStateKeys(disappeared);
+		}
+	
+		/**
+		 * Gets the payload of the frame.
+		 * @return the bytes written.
+		 */
+		byte[] toByteArray()
+		{
+			return writer.toByteArray();
+		}
+	
+		/**
+		 * Starts the payload of the frame.
+		 * @param kind the kind of the frame.
+		 * @param count the number of game objects of the frame.
+		 */
+		private void start(int kind, int count)
+		{	// Most game objects take 4 to 6 bytes.
+			writer = new BinaryWriter(8 + count * 6);
+			writer.writeByte(kind);
+		}
+	
+		/**
+		 * Writes a list of game objects: the number of game objects, then for each one
+		 * its token, row, column and relative owner plus one (0 when the game object has
+		 * no owner).
+		 * @param keys the state keys of the game objects.
+		 */
+		private void writeStateKeys(long[] keys)
+		{
+			writer.writeVarint(keys.length);
+			for (long key : keys)
+			{
+				writer.writeByte(STATE_TOKENS.charAt((int) (key >>> 10) & 0x7));
+				writer.writeVarint((int) (key >>> 37));
+				writer.writeVarint((int) (key >>> 13) & 0xFFFFFF);
+				writer.writeVarint((int) (key & 0x3FF));
+			}
+		}
+	}
+	
 	/**
 	 * Generates the content of a "gamestart" message for a specific bot.
 	 * @see Documentation/protocol/gamestart.html
@@ -764,74 +1179,169 @@ public class AntGame extends Game
 	}
 	
 	/**
-	 * Generates the content of a "gameend" message for a specific bot.
+	 * Sends a "gameend" message to all the bots in the game, and submits the replay of
+	 * the game to the replay archive if there is one. The replay is written later by the
+	 * I/O thread of the archive.
+	 */
+	@Override
+	public void sendGameEnd()
+	{
+		super.sendGameEnd();
+		if (replayArchive != null)
+		{
+			replayArchive.submit(getReplayName(), getReplayContent());
+		}
+	}
+	
+	/**
+	 * Writes the replay of the game in the replay archive if there is one, on the calling
+	 * thread.
+	 */
+	public void archiveReplay()
+	{
+		if (replayArchive == null) return;
+		String name = getReplayName();
+		try
+		{
+			replayArchive.write(name, getReplayContent());
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("Cannot archive the replay '" + name + "' ({})", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Gets the name of the replay of the game in the replay archive.
+	 * @return the name of the replay, without extension.
+	 */
+	private String getReplayName()
+	{
+		return "replay-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(startDate)
+				+ "-" + gameNumber;
+	}
+	
+	/**
+	 * Gets the replay of the game, as it is written in the replay archive.
+	 * @return the replay, streamed as a single JSON value.
+	 */
+	private StreamedContent getReplayContent()
+	{
+		return new StreamedContent()
+		{
+			@Override
+			public void write(JSONWriter writer) throws JSONException
+			{
+				writeReplay(writer);
+			}
+		};
+	}
+	
+	/**
+	 * Generates the content of the "gameend" message.
 	 * @see Documentation/protocol/gameend.html
-	 * @param bot the bot that will receive the message.
 	 * @return the content of the "gameend" message.
 	 */
 	@Override
-	protected JSONObject genGameEndMessageContent(Bot bot)
+	protected StreamedContent genGameEndMessageContent()
 	{
-		try
+		return new StreamedContent()
 		{
-			JSONObject jsonContent = new JSONObject();
-			JSONObject jsonReplay = new JSONObject();
-			jsonReplay.put("replaydata", replay.toJSONObject());
-			JSONArray jsonStatus = new JSONArray();
-			JSONArray jsonRank = new JSONArray();
-			JSONArray jsonScore = new JSONArray();
-			JSONArray jsonPlayerTurns = new JSONArray();
-			JSONArray jsonPlayerNames = new JSONArray();
-			JSONArray jsonSubmissionIds = new JSONArray();
-			JSONArray jsonUserIds = new JSONArray();
-			JSONArray jsonChallengeRank = new JSONArray();
-			JSONArray jsonChallengeSkill = new JSONArray();
-			for (Entry<Bot, BotGameInfo> entry : botInfos.entrySet())
+			@Override
+			public void write(JSONWriter writer) throws JSONException
 			{
-				Bot b = entry.getKey();
-				AntBotGameInfo botInfo = (AntBotGameInfo) entry.getValue();
-				int id = botInfo.getId();
-				jsonStatus.put(id, botInfo.getDeathReason());
-				jsonRank.put(id, botInfo.getRank());
-				jsonPlayerTurns.put(id, botInfo.getDeathTurn());
-				jsonScore.put(id, botInfo.getGameScore());
-				jsonPlayerNames.put(id, b.getNick());
-				jsonSubmissionIds.put(id, "0");
-				jsonUserIds.put(id, "0");
-				jsonChallengeRank.put(id, "0");
-				jsonChallengeSkill.put(id, "0");
+				writer.object();
+				writer.key("replay");
+				writeReplay(writer);
+				writer.endObject();
 			}
-			jsonReplay.put("status", jsonStatus);
-			jsonReplay.put("rank", jsonRank);
-			jsonReplay.put("playerturns", jsonPlayerTurns);
-			jsonReplay.put("score", jsonScore);
-			jsonReplay.put("playernames", jsonPlayerNames);
-			jsonReplay.put("submission_ids", jsonSubmissionIds);
-			jsonReplay.put("user_ids", jsonUserIds);
-			jsonReplay.put("challenge_rank", jsonChallengeRank);
-			jsonReplay.put("challenge_skill", jsonChallengeSkill);
-			
-			jsonReplay.put("post_id", 0);
-			jsonReplay.put("matchup_id", 0);
-			jsonReplay.put("challenge", "ants");
-			jsonReplay.put("replayformat", "json");
-			jsonReplay.put("location", "Polytech");
-			jsonReplay.put("game_length", curRound);
-			jsonReplay.put("user_url", "about:blank");
-			jsonReplay.put("game_url", "about:blank");
-			SimpleDateFormat dateFormat =
-					new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
-			jsonReplay.put("date", dateFormat.format(startDate));
-			jsonReplay.put("game_id", 0);
-			jsonReplay.put("worker_id", 0);
+		};
+	}
 			
-			jsonContent.put("replay", jsonReplay);
-			return jsonContent;
-		}
-		catch (JSONException e)
+	/**
+	 * Writes the replay of the game on a JSON writer, in the format of the AIChallenge.
+	 * The replay data is streamed from the replay recorder.
+	 * @see Documentation/protocol/replayformat.html
+	 * @param writer the JSON writer to write on.
+	 * @throws JSONException if the replay cannot be written.
+	 */
+	private void writeReplay(JSONWriter writer) throws JSONException
+	{
+		JSONArray jsonStatus = new JSONArray();
+		JSONArray jsonRank = new JSONArray();
+		JSONArray jsonScore = new JSONArray();
+		JSONArray jsonPlayerTurns = new JSONArray();
+		JSONArray jsonPlayerNames = new JSONArray();
+		JSONArray jsonSubmissionIds = new JSONArray();
+		JSONArray jsonUserIds = new JSONArray();
+		JSONArray jsonChallengeRank = new JSONArray();
+		JSONArray jsonChallengeSkill = new JSONArray();
+		for (Entry<Bot, BotGameInfo> entry : botInfos.entrySet())
 		{
-			LOGGER.error("Could not generate the game end message content.");
-			return null;
+			Bot b = entry.getKey();
+			AntBotGameInfo botInfo = (AntBotGameInfo) entry.getValue();
+			int id = botInfo.getId();
+			jsonStatus.put(id, botInfo.getDeathReason());
+			jsonRank.put(id, botInfo.getRank());
+			jsonPlayerTurns.put(id, botInfo.getDeathTurn());
+			jsonScore.put(id, botInfo.getGameScore());
+			jsonPlayerNames.put(id, b.getNick());
+			jsonSubmissionIds.put(id, "0");
+			jsonUserIds.put(id, "0");
+			jsonChallengeRank.put(id, "0");
+			jsonChallengeSkill.put(id, "0");
 		}
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+		writer.object();
+		writer.key("replaydata");
+		replay.write(writer);
+		writer.key("status").value(jsonStatus);
+		writer.key("rank").value(jsonRank);
+		writer.key("playerturns").value(jsonPlayerTurns);
+		writer.key("score").value(jsonScore);
+		writer.key("playernames").value(jsonPlayerNames);
+		writer.key("submission_ids").value(jsonSubmissionIds);
+		writer.key("user_ids").value(jsonUserIds);
+		writer.key("challenge_rank").value(jsonChallengeRank);
+		writer.key("challenge_skill").value(jsonChallengeSkill);
+		writer.key("post_id").value(0);
+		writer.key("matchup_id").value(0);
+		writer.key("challenge").value("ants");
+		writer.key("replayformat").value("json");
+		writer.key("location").value("Polytech");
+		writer.key("game_length").value(curRound);
+		writer.key("user_url").value("about:blank");
+		writer.key("game_url").value("about:blank");
+		writer.key("date").value(dateFormat.format(startDate));
+		writer.key("game_id").value(0);
+		writer.key("worker_id").value(0);
+		writer.endObject();
+	}
+			
+	/**
+	 * Gets the dynamic map storing the game objects of the game.
+	 * @return the game map.
+	 */
+	AntGameMap getMap()
+	{
+		return map;
+	}
+	
+	/**
+	 * Gets the replay data recorded by the game.
+	 * @return the replay data.
+	 */
+	AntGameReplayData getReplay()
+	{
+		return replay;
+	}
+	
+	/**
+	 * Sets the archive where the replay of the game is written when the game ends.
+	 * @param replayArchive the replay archive, or null to not archive the replay.
+	 */
+	public void setReplayArchive(ReplayArchive replayArchive)
+	{
+		this.replayArchive = replayArchive;
 	}
 }
@@ -26,6 +26,7 @@ import basis.Bot;
 import basis.BotMode;
 import basis.GameHandler;
 import basis.GameManager;
+import basis.ReplayArchive;
 
 /**
  * This class is responsible for creating ant games when appropriated.
@@ -37,19 +38,24 @@ import basis.GameManager;
 public class AntGameManager extends GameManager
 {
 	/** The number of rounds required for food to respawn. */
-	private static final int FOOD_RESPAWN_DELAY = 25;
+	static final int FOOD_RESPAWN_DELAY = 25;
 	
 	/** The squared radius of the view mask. */
-	private static final float VIEW_RADIUS_2 = 77.0f;
+	static final float VIEW_RADIUS_2 = 77.0f;
 	
 	/** The squared radius of the attack mask. */
-	private static final float ATTACK_RADIUS_2 = 5.0f;
+	static final float ATTACK_RADIUS_2 = 5.0f;
 	
 	/**
 	 * The list of playable map templates.
 	 */
 	private ArrayList<AntMapTemplate> maps;
 	
+	/**
+	 * The archive where the replays of the games are written, or null.
+	 */
+	private ReplayArchive replayArchive;
+	
 	private Random rand = new Random();
 	
 	/**
@@ -67,11 +73,10 @@ public class AntGameManager extends GameManager
 	/**
 	 * Creates ant game for bots if appropriated.
 	 * { @code
-	 *   import java.util.timer;
-	 *   Timer timer = new Timer();
+	 *   GameScheduler scheduler = new GameScheduler();
 	 *   long whenToStart = 0;
 	 *   long interval = 3000;
-	 *   timer.scheduleAtFixedRate(gameManager, whenToStart, interval); }
+	 *   scheduler.scheduleAtFixedRate(gameManager, whenToStart, interval); }
 	 */
 	@Override
 	public void run()
@@ -81,13 +86,7 @@ public class AntGameManager extends GameManager
 		AntMapTemplate map = maps.get(rand.nextInt(maps.size()));
 		nbPlayers = map.getBotCount();
 		
-		fillChallengers();
-		ArrayList<ArrayList<Bot>> potentialMatchs = findCompatibleLists(nbPlayers);
-		if (potentialMatchs != null)
-		{	// Null pointer exception fixed.
-			ArrayList<ArrayList<Bot>> fights = chooseFights(potentialMatchs);
-			setBotsInFight(fights, map);
-		}
+		setBotsInFight(matchBots(nbPlayers), map);
 	}
 	
 	/**
@@ -104,6 +103,7 @@ public class AntGameManager extends GameManager
 		{	// For each game to create...
 			AntGame game = new AntGame(botsInGame, MAX_ROUND, RESPONSE_TIME_MS, LOAD_TIME_MS, map,
 					FOOD_RESPAWN_DELAY, VIEW_RADIUS_2, ATTACK_RADIUS_2);
+			game.setReplayArchive(replayArchive);
 			for (Bot bot : botsInGame)
 			{	// For each bot in the game...
 				bot.setGame(game);
@@ -134,6 +134,7 @@ public class AntGameManager extends GameManager
 			// Create the ant game and run it on the server.
 			AntGame game = new AntGame(bots, MAX_ROUND, RESPONSE_TIME_MS, LOAD_TIME_MS,
 					map, FOOD_RESPAWN_DELAY, VIEW_RADIUS_2, ATTACK_RADIUS_2);
+			game.setReplayArchive(replayArchive);
 			bot.setGame(game);
 			gameHandler.addGame(game);
 		}
@@ -142,4 +143,13 @@ public class AntGameManager extends GameManager
 			super.addBot(bot);
 		}
 	}
+	
+	/**
+	 * Sets the archive where the replays of the games created from now on are written.
+	 * @param replayArchive the replay archive, or null to not archive the replays.
+	 */
+	public void setReplayArchive(ReplayArchive replayArchive)
+	{
+		this.replayArchive = replayArchive;
+	}
 }
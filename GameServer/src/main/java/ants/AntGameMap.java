@@ -20,19 +20,56 @@
 package ants;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collection;
 
-import util.Cell;
 import util.Move;
 
 /**
  * This class represents the dynamic game map of an ant game. It holds all the game
  * objects and their status at the current round of a game.
+ * The cells are stored in flat arrays (layers) indexed by {@code row * cols + col}, so
+ * a map does not allocate anything per cell. The game objects themselves are stored in
+ * an object table and chained cell by cell.
+ * When vision is enabled, the map also keeps for each bot the number of its alive ants
+ * that see each cell, updated as ants spawn, move, die and leave the map.
+ * The walls of a game map built from a compiled map are not in the object table, they
+ * are read from the compiled map shared by every game played on it.
  * @class
  * @author Benjamin
  */
 public class AntGameMap implements AntGameMapCallback, AntGameMapView
 {
+	/**
+	 * The value of the ant-owner layer for a cell that holds no ant.
+	 */
+	public static final short NO_OWNER = -1;
+	
+	/**
+	 * Terrain flag set when the cell holds a wall.
+	 */
+	private static final byte WALL = 1;
+	
+	/**
+	 * Terrain flag set when the cell holds a food spawn.
+	 */
+	private static final byte FOOD_SPAWN = 2;
+	
+	/**
+	 * Terrain flag set when the cell holds a hill.
+	 */
+	private static final byte HILL = 4;
+	
+	/**
+	 * The object identifier used to terminate a chain of the object table.
+	 */
+	private static final int NONE = -1;
+	
+	/**
+	 * The initial capacity of the object table.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+	
 	/**
 	 * The number of columns of the game map.
 	 */
@@ -44,11 +81,89 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 	private int rows;
 	
 	/**
-	 * The array of cells of the map. This is a 3-dimensional array.
-	 * The first dimension references map rows, the second one map columns and the last
-	 * one is used to store several game objects in the same cell.
+	 * The compiled map holding the walls of the game map, or null.
+	 */
+	private AntCompiledMap compiledMap;
+	
+	/**
+	 * The terrain layer. Each cell holds a combination of the WALL, FOOD_SPAWN and HILL
+	 * flags.
+	 */
+	private byte[] terrain;
+	
+	/**
+	 * The ant-owner layer. Each cell holds the game identifier of the bot that owns the
+	 * first ant of the cell, or NO_OWNER if there is no ant in the cell.
+	 */
+	private short[] antOwners;
+	
+	/**
+	 * The identifier of the first game object of each cell, or NONE if the cell is empty.
+	 */
+	private int[] cellHeads;
+	
+	/**
+	 * The object table, indexed by object identifier.
+	 */
+	private AntGameObject[] gobs;
+	
+	/**
+	 * The identifier of the next game object in the same cell, indexed by object
+	 * identifier. Free identifiers are chained the same way.
+	 */
+	private int[] nextGobs;
+	
+	/**
+	 * The index of the cell each game object of the table is placed in.
 	 */
-	private ArrayList<ArrayList<ArrayList<AntGameObject>>> cells;
+	private int[] gobCells;
+	
+	/**
+	 * Whether each game object of the table is an alive ant counted in the vision layers.
+	 */
+	private boolean[] gobSights;
+	
+	/**
+	 * The number of identifiers ever used in the object table.
+	 */
+	private int gobCount;
+	
+	/**
+	 * The first free identifier of the object table, or NONE.
+	 */
+	private int freeGob;
+	
+	/**
+	 * The mask of the cells seen by an ant, or null if vision is not enabled.
+	 */
+	private AntGameMapMask viewMask;
+	
+	/**
+	 * The vision layers, indexed by bot identifier. Each cell holds the number of alive
+	 * ants of the bot that see the cell.
+	 */
+	private short[][] visionCounts;
+	
+	/**
+	 * The cells seen by each bot, indexed by bot identifier. The list may still hold
+	 * cells that are no longer seen, they are dropped when the list is read.
+	 */
+	private int[][] visibleCells;
+	
+	/**
+	 * The number of cells in the list of visible cells of each bot.
+	 */
+	private int[] visibleCellCounts;
+	
+	/**
+	 * Whether each cell is in the list of visible cells of each bot.
+	 */
+	private boolean[][] listedCells;
+	
+	/**
+	 * A buffer holding the cell indexes of a mask, used to update the vision layers.
+	 */
+	private int[] maskCells;
 	
 	/**
 	 * Creates a new game map from a column count and a row count.
@@ -60,18 +175,26 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 	{
 		this.cols = cols;
 		this.rows = rows;
-		cells = new ArrayList<ArrayList<ArrayList<AntGameObject>>>(rows);
-		for (int i = 0; i < rows; i++)
-		{	// Create map row.
-			ArrayList<ArrayList<AntGameObject>> row =
-					new ArrayList<ArrayList<AntGameObject>>(cols);
-			cells.add(row);
-			for (int j = 0; j < cols; j++)
-			{	// Create map column.
-				row.add(new ArrayList<AntGameObject>(1));
-			}
-		}
-		
+		terrain = new byte[cols * rows];
+		antOwners = new short[cols * rows];
+		cellHeads = new int[cols * rows];
+		gobs = new AntGameObject[INITIAL_CAPACITY];
+		nextGobs = new int[INITIAL_CAPACITY];
+		gobCells = new int[INITIAL_CAPACITY];
+		gobSights = new boolean[INITIAL_CAPACITY];
+		clear();
+	}
+	
+	/**
+	 * Creates a new game map from a compiled map. The walls of the compiled map are not
+	 * copied, and they stay on the game map when it is cleared.
+	 * @constructor
+	 * @param compiledMap the compiled map that holds the walls of the game map.
+	 */
+	public AntGameMap(AntCompiledMap compiledMap)
+	{
+		this(compiledMap.getCols(), compiledMap.getRows());
+		this.compiledMap = compiledMap;
 	}
 	
 	/**
@@ -79,25 +202,58 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 	 */
 	public void clear()
 	{
-		Iterator<ArrayList<ArrayList<AntGameObject>>> rowIt = cells.iterator();
-		while (rowIt.hasNext())
+		Arrays.fill(terrain, (byte) 0);
+		Arrays.fill(antOwners, NO_OWNER);
+		Arrays.fill(cellHeads, NONE);
+		for (int id = 0; id < gobCount; id++)
 		{
-			ArrayList<ArrayList<AntGameObject>> row = rowIt.next();
-			Iterator<ArrayList<AntGameObject>> colIt = row.iterator();
-			while (colIt.hasNext())
+			if (gobs[id] != null) gobs[id].mapId = NONE;
+		}
+		Arrays.fill(gobs, null);
+		gobCount = 0;
+		freeGob = NONE;
+		if (viewMask != null)
+		{
+			for (int botId = 0; botId < visionCounts.length; botId++)
 			{
-				colIt.next().clear();
+				Arrays.fill(visionCounts[botId], (short) 0);
+				Arrays.fill(listedCells[botId], false);
+				visibleCellCounts[botId] = 0;
 			}
 		}
 	}
 	
+	/**
+	 * Enables the vision layers of the game map. From now on, the map keeps track of the
+	 * cells seen by the alive ants of each bot.
+	 * @param botCount the number of bots in the game, ant bot identifiers should be lower.
+	 * @param viewMask the mask of the cells seen by an ant.
+	 */
+	public void enableVision(int botCount, AntGameMapMask viewMask)
+	{
+		this.viewMask = viewMask;
+		visionCounts = new short[botCount][cols * rows];
+		visibleCells = new int[botCount][INITIAL_CAPACITY];
+		visibleCellCounts = new int[botCount];
+		listedCells = new boolean[botCount][cols * rows];
+		maskCells = new int[viewMask.getCells().size()];
+		for (int id = 0; id < gobCount; id++)
+		{	// Count the ants that are already on the map.
+			if (gobs[id] != null) gobSights[id] = addSight(gobs[id]);
+		}
+	}
+	
 	/**
 	 * Adds a game object on the game map.
 	 * @param gob the game object to add.
 	 */
 	public void addGameObject(AntGameObject gob)
 	{
-		cells.get(gob.getRow()).get(gob.getCol()).add(gob);
+		int id = allocateId();
+		gobs[id] = gob;
+		gob.mapId = id;
+		linkGameObject(gob);
+		gobSights[id] = addSight(gob);
 	}
 	
 	/**
@@ -106,7 +262,20 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 	 */
 	public void removeGameObject(AntGameObject gob)
 	{
-		cells.get(gob.getRow()).get(gob.getCol()).remove(gob);
+		int id = gob.mapId;
+		if (id == NONE || id >= gobCount || gobs[id] != gob) return;
+		unlinkGameObject(gob);
+		if (gobSights[id])
+		{
+			Ant ant = (Ant) gob;
+			updateVision(ant.getBotId(), ant.getCol(), ant.getRow(), viewMask, -1);
+			gobSights[id] = false;
+		}
+		// Release the identifier.
+		gobs[id] = null;
+		nextGobs[id] = freeGob;
+		freeGob = id;
+		gob.mapId = NONE;
 	}
 	
 	/**
@@ -117,8 +286,19 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 	@Override
 	public void moveGameObject(AntGameObject gob, Move direction)
 	{
+		int id = gob.mapId;
+		if (id == NONE || id >= gobCount || gobs[id] != gob)
+		{	// The game object is not on the map yet, it is added in its new cell.
+			id = NONE;
+		}
 		// Remove the game object from its cell.
-		removeGameObject(gob);
+		boolean sight = id != NONE && gobSights[id];
+		if (id != NONE) unlinkGameObject(gob);
+		if (sight)
+		{	// Only the cells on the trailing edge of the view mask are no longer seen.
+			updateVision(((Ant) gob).getBotId(), gob.getCol(), gob.getRow(),
+					viewMask.getLeavingMask(direction), -1);
+		}
 		// Update the cell identifier.
 		switch (direction)
 		{
@@ -136,7 +316,171 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 			break;
 		}
 		// Add the game object in its new cell.
-		addGameObject(gob);
+		if (id == NONE)
+		{
+			addGameObject(gob);
+			return;
+		}
+		linkGameObject(gob);
+		if (sight)
+		{	// Only the cells on the leading edge of the view mask are newly seen.
+			updateVision(((Ant) gob).getBotId(), gob.getCol(), gob.getRow(),
+					viewMask.getEnteringMask(direction), +1);
+		}
+	}
+	
+	/**
+	 * Notifies the game map that an ant died, so that it no longer sees anything.
+	 * @param ant the ant that died.
+	 */
+	@Override
+	public void killAnt(Ant ant)
+	{
+		int id = ant.mapId;
+		if (id == NONE || id >= gobCount || gobs[id] != ant || !gobSights[id]) return;
+		updateVision(ant.getBotId(), ant.getCol(), ant.getRow(), viewMask, -1);
+		gobSights[id] = false;
+	}
+	
+	/**
+	 * Adds the game objects seen by a bot to a collection. The game objects seen are the
+	 * content of the cells in the view mask of its alive ants.
+	 * Vision must have been enabled on the game map.
+	 * @param botId the game identifier of the bot.
+	 * @param visibleGobs the collection to fill.
+	 */
+	public void getVisibleGameObjects(int botId, Collection<AntGameObject> visibleGobs)
+	{
+		short[] counts = visionCounts[botId];
+		boolean[] listed = listedCells[botId];
+		int[] list = visibleCells[botId];
+		int count = 0;
+		for (int i = 0; i < visibleCellCounts[botId]; i++)
+		{
+			int cell = list[i];
+			if (counts[cell] == 0)
+			{	// The cell is no longer seen, drop it from the list.
+				listed[cell] = false;
+				continue;
+			}
+			list[count++] = cell;
+			if (isCompiledWall(cell)) visibleGobs.add(compiledMap.getWall(cell));
+			for (int id = cellHeads[cell]; id != NONE; id = nextGobs[id])
+			{
+				visibleGobs.add(gobs[id]);
+			}
+		}
+		visibleCellCounts[botId] = count;
+	}
+	
+	/**
+	 * Links a game object at the end of the chain of its cell and updates the layers.
+	 * @param gob the game object, it should have an identifier in the object table.
+	 */
+	private void linkGameObject(AntGameObject gob)
+	{
+		int id = gob.mapId;
+		int cell = getCellIndex(gob.getCol(), gob.getRow());
+		gobCells[id] = cell;
+		nextGobs[id] = NONE;
+		// Append the object at the end of the cell chain.
+		if (cellHeads[cell] == NONE)
+		{
+			cellHeads[cell] = id;
+		}
+		else
+		{
+			int last = cellHeads[cell];
+			while (nextGobs[last] != NONE) last = nextGobs[last];
+			nextGobs[last] = id;
+		}
+		// Update the layers.
+		if (gob instanceof Ant)
+		{
+			if (antOwners[cell] == NO_OWNER)
+			{
+				antOwners[cell] = (short) ((Ant) gob).getBotId();
+			}
+		}
+		else
+		{
+			terrain[cell] |= getTerrainFlag(gob);
+		}
+	}
+	
+	/**
+	 * Unlinks a game object from the chain of its cell and updates the layers.
+	 * @param gob the game object, it should be on the map.
+	 */
+	private void unlinkGameObject(AntGameObject gob)
+	{
+		int id = gob.mapId;
+		int cell = gobCells[id];
+		if (cellHeads[cell] == id)
+		{
+			cellHeads[cell] = nextGobs[id];
+		}
+		else
+		{
+			int prev = cellHeads[cell];
+			while (nextGobs[prev] != id) prev = nextGobs[prev];
+			nextGobs[prev] = nextGobs[id];
+		}
+		if (gob instanceof Ant)
+		{
+			updateAntOwner(cell);
+		}
+		else
+		{
+			terrain[cell] &= ~getTerrainFlag(gob);
+		}
+	}
+	
+	/**
+	 * Counts a new game object in the vision layers if it is an alive ant.
+	 * @param gob the game object added on the map.
+	 * @return true if the game object was counted.
+	 */
+	private boolean addSight(AntGameObject gob)
+	{
+		if (viewMask == null || !(gob instanceof Ant)) return false;
+		Ant ant = (Ant) gob;
+		if (ant.isDead() || ant.getBotId() < 0 || ant.getBotId() >= visionCounts.length)
+		{
+			return false;
+		}
+		updateVision(ant.getBotId(), ant.getCol(), ant.getRow(), viewMask, +1);
+		return true;
+	}
+	
+	/**
+	 * Adds a value to the vision layer of a bot for each cell of a mask.
+	 * The cells that become seen are added to the list of visible cells of the bot.
+	 * @param botId the game identifier of the bot.
+	 * @param col the column identifier of the center of the mask.
+	 * @param row the row identifier of the center of the mask.
+	 * @param mask the mask to apply at this position.
+	 * @param delta +1 when an ant starts seeing the cells, -1 when it stops.
+	 */
+	private void updateVision(int botId, int col, int row, AntGameMapMask mask, int delta)
+	{
+		short[] counts = visionCounts[botId];
+		int cellCount = getMaskCells(col, row, mask, maskCells);
+		for (int i = 0; i < cellCount; i++)
+		{
+			int cell = maskCells[i];
+			counts[cell] += delta;
+			if (counts[cell] > 0 && !listedCells[botId][cell])
+			{
+				listedCells[botId][cell] = true;
+				if (visibleCellCounts[botId] == visibleCells[botId].length)
+				{
+					visibleCells[botId] = Arrays.copyOf(visibleCells[botId],
+							visibleCells[botId].length * 2);
+				}
+				visibleCells[botId][visibleCellCounts[botId]++] = cell;
+			}
+		}
 	}
 	
 	/**
@@ -154,18 +498,99 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 		// toroidal nature of the map, some objects will be added twice in the array.
 		// You can fix this by using a Set/HashSet instead of a simple ArrayList.
 		// -------------------------------------------------------------------------------
-		ArrayList<AntGameObject> gobs = new ArrayList<AntGameObject>();
-		ArrayList<Cell> maskCells = mask.getCells();
-		int vRow, vCol;
-		for (int i = 0; i < maskCells.size(); i++)
+		final ArrayList<AntGameObject> gobs = new ArrayList<AntGameObject>();
+		visitMask(col, row, mask, new AntGameMapVisitor()
 		{
-			vRow = ((maskCells.get(i).getRow() + row) % rows + rows) % rows;
-			vCol = ((maskCells.get(i).getCol() + col) % cols + cols) % cols;
-			gobs.addAll(cells.get(vRow).get(vCol));
-		}
+			@Override
+			public void visit(AntGameObject gob)
+			{
+				gobs.add(gob);
+			}
+		});
 		return gobs;
 	}
 	
+	/**
+	 * Calls a visitor for each game object present in the mask, cell by cell in the order
+	 * of the cells of the mask. Unlike applyMask, it does not allocate anything.
+	 * The center of the mask is given by the column and row identifiers.
+	 * The method takes the toroidal shape of the map in account.
+	 * @param col the column identifier of the position.
+	 * @param row the row identifier of the position.
+	 * @param mask the mask to apply at this position.
+	 * @param visitor the visitor called for each game object in the mask.
+	 */
+	public void visitMask(int col, int row, AntGameMapMask mask, AntGameMapVisitor visitor)
+	{
+		col = (col % cols + cols) % cols;
+		row = (row % rows + rows) % rows;
+		int bound = mask.getBound();
+		int[] colOffsets = mask.getColOffsets();
+		int[] rowOffsets = mask.getRowOffsets();
+		if (col >= bound && col + bound < cols && row >= bound && row + bound < rows)
+		{	// The mask does not cross the edges of the map, no wrapping is needed.
+			int center = row * cols + col;
+			int[] flatOffsets = mask.getFlatOffsets(cols);
+			for (int i = 0; i < flatOffsets.length; i++)
+			{
+				visitCell(center + flatOffsets[i], visitor);
+			}
+		}
+		else if (bound < cols && bound < rows)
+		{	// The mask crosses an edge, wrap each offset at most once.
+			for (int i = 0; i < colOffsets.length; i++)
+			{
+				int maskCol = col + colOffsets[i];
+				if (maskCol < 0) maskCol += cols;
+				else if (maskCol >= cols) maskCol -= cols;
+				int maskRow = row + rowOffsets[i];
+				if (maskRow < 0) maskRow += rows;
+				else if (maskRow >= rows) maskRow -= rows;
+				visitCell(maskRow * cols + maskCol, visitor);
+			}
+		}
+		else
+		{	// The mask is larger than the map itself.
+			for (int i = 0; i < colOffsets.length; i++)
+			{
+				visitCell(getCellIndex(col + colOffsets[i], row + rowOffsets[i]), visitor);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the indexes of the cells of a mask applied at a given position.
+	 * The method takes the toroidal shape of the map in account.
+	 * @param col the column identifier of the position.
+	 * @param row the row identifier of the position.
+	 * @param mask the mask to apply at this position.
+	 * @param cells the array to fill, it should be as large as the mask.
+	 * @return the number of cells of the mask.
+	 */
+	int getMaskCells(int col, int row, AntGameMapMask mask, int[] cells)
+	{
+		int bound = mask.getBound();
+		int[] colOffsets = mask.getColOffsets();
+		int[] rowOffsets = mask.getRowOffsets();
+		if (col >= bound && col + bound < cols && row >= bound && row + bound < rows)
+		{
+			int center = row * cols + col;
+			int[] flatOffsets = mask.getFlatOffsets(cols);
+			for (int i = 0; i < flatOffsets.length; i++)
+			{
+				cells[i] = center + flatOffsets[i];
+			}
+		}
+		else
+		{
+			for (int i = 0; i < colOffsets.length; i++)
+			{
+				cells[i] = getCellIndex(col + colOffsets[i], row + rowOffsets[i]);
+			}
+		}
+		return colOffsets.length;
+	}
+	
 	/**
 	 * Gets the number of columns of the game map.
 	 * @return the number of columns of the map.
@@ -184,6 +609,18 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 		return rows;
 	}
 	
+	/**
+	 * Gets the index of a cell in the layers of the game map.
+	 * The method takes the toroidal shape of the map in account.
+	 * @param col the column identifier of the cell.
+	 * @param row the row identifier of the cell.
+	 * @return the index of the cell, {@code row * cols + col}.
+	 */
+	public int getCellIndex(int col, int row)
+	{
+		return ((row % rows + rows) % rows) * cols + (col % cols + cols) % cols;
+	}
+	
 	/**
 	 * Gets the list of game objects present in a specific cell of the game map.
 	 * The method takes the toroidal shape of the map in account.
@@ -193,7 +630,9 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 	 */
 	public ArrayList<AntGameObject> getGameObjectsAt(int col, int row)
 	{
-		return cells.get((row % rows + rows) % rows).get((col % cols + cols) % cols);
+		ArrayList<AntGameObject> content = new ArrayList<AntGameObject>(1);
+		addCellContent(getCellIndex(col, row), content);
+		return content;
 	}
 	
 	/**
@@ -215,41 +654,197 @@ public class AntGameMap implements AntGameMapCallback, AntGameMapView
 	 */
 	public Ant getAntAt(int col, int row)
 	{
-		AntGameObject gob = null;
-		// Get all the game objects in the cell.
-		ArrayList<AntGameObject> gobs = getGameObjectsAt(col, row);
-		Iterator<AntGameObject> gobIt = gobs.iterator();
-		while (gobIt.hasNext())
-		{	// Search an alive ant in the list.
-			gob = gobIt.next();
+		int cell = getCellIndex(col, row);
+		// Most cells hold no ant at all, the ant-owner layer tells it right away.
+		if (antOwners[cell] == NO_OWNER) return null;
+		for (int id = cellHeads[cell]; id != NONE; id = nextGobs[id])
+		{	// Search an alive ant in the chain.
+			AntGameObject gob = gobs[id];
 			if (gob instanceof Ant && !((Ant) gob).isDead()) return (Ant) gob;
 		}
 		return null;
 	}
 	
+	/**
+	 * Gets the game identifier of the bot that owns the ant in a given cell.
+	 * @param col the column identifier of the cell.
+	 * @param row the row identifier of the cell.
+	 * @return the owner of the ant in this cell, NO_OWNER if there is no ant.
+	 */
+	public int getAntOwnerAt(int col, int row)
+	{
+		return antOwners[getCellIndex(col, row)];
+	}
+	
+	/**
+	 * Gets the game identifier of the bot that owns the ant in a given cell.
+	 * @param cell the index of the cell.
+	 * @return the owner of the ant in this cell, NO_OWNER if there is no ant.
+	 */
+	int getAntOwner(int cell)
+	{
+		return antOwners[cell];
+	}
+	
+	/**
+	 * Returns whether a given cell of the game map holds a wall.
+	 * @param col the column identifier of the cell.
+	 * @param row the row identifier of the cell.
+	 * @return true if the cell is a wall, false otherwise.
+	 */
+	public boolean isWall(int col, int row)
+	{
+		int cell = getCellIndex(col, row);
+		return (terrain[cell] & WALL) != 0 || isCompiledWall(cell);
+	}
+	
+	/**
+	 * Returns whether a cell is a wall of the compiled map of the game map.
+	 * @param cell the index of the cell.
+	 * @return true if the cell is a wall of the compiled map, false otherwise.
+	 */
+	private boolean isCompiledWall(int cell)
+	{
+		return compiledMap != null && compiledMap.isWall(cell);
+	}
+	
+	/**
+	 * Returns whether a game object shares its cell with a collideable game object.
+	 * @param gob the game object to test, it should be on the map.
+	 * @return true if another collideable game object is in the same cell.
+	 */
+	public boolean collides(AntGameObject gob)
+	{
+		return isBlocked(getCellIndex(gob.getCol(), gob.getRow()), gob);
+	}
+	
+	/**
+	 * Returns whether a given cell of the game map holds a wall or a collideable game
+	 * object. The method takes the toroidal shape of the map in account.
+	 * @param col the column identifier of the cell.
+	 * @param row the row identifier of the cell.
+	 * @return true if a game object cannot move in this cell, false otherwise.
+	 */
+	@Override
+	public boolean isBlocked(int col, int row)
+	{
+		return isBlocked(getCellIndex(col, row), null);
+	}
+	
+	/**
+	 * Returns whether a cell holds a wall or a collideable game object.
+	 * @param cell the index of the cell.
+	 * @param ignored a game object of the cell that is not tested, or null.
+	 * @return true if the cell is a wall or holds another collideable game object.
+	 */
+	private boolean isBlocked(int cell, AntGameObject ignored)
+	{
+		if ((terrain[cell] & WALL) != 0 || isCompiledWall(cell)) return true;
+		for (int id = cellHeads[cell]; id != NONE; id = nextGobs[id])
+		{
+			if (gobs[id] != ignored && gobs[id].isCollideable()) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds the game objects of a cell at the end of a list.
+	 * @param cell the index of the cell.
+	 * @param content the list to fill.
+	 */
+	private void addCellContent(int cell, ArrayList<AntGameObject> content)
+	{
+		if (isCompiledWall(cell)) content.add(compiledMap.getWall(cell));
+		for (int id = cellHeads[cell]; id != NONE; id = nextGobs[id])
+		{
+			content.add(gobs[id]);
+		}
+	}
+	
+	/**
+	 * Calls a visitor for each game object of a cell.
+	 * @param cell the index of the cell.
+	 * @param visitor the visitor to call.
+	 */
+	private void visitCell(int cell, AntGameMapVisitor visitor)
+	{
+		if (isCompiledWall(cell)) visitor.visit(compiledMap.getWall(cell));
+		for (int id = cellHeads[cell]; id != NONE; id = nextGobs[id])
+		{
+			visitor.visit(gobs[id]);
+		}
+	}
+	
+	/**
+	 * Sets the ant-owner layer of a cell from the first ant of its chain.
+	 * @param cell the index of the cell to update.
+	 */
+	private void updateAntOwner(int cell)
+	{
+		antOwners[cell] = NO_OWNER;
+		for (int id = cellHeads[cell]; id != NONE; id = nextGobs[id])
+		{
+			if (gobs[id] instanceof Ant)
+			{
+				antOwners[cell] = (short) ((Ant) gobs[id]).getBotId();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Gets an identifier of the object table, growing the table when it is full.
+	 * @return a free object identifier.
+	 */
+	private int allocateId()
+	{
+		if (freeGob != NONE)
+		{	// Recycle the identifier of a removed game object.
+			int id = freeGob;
+			freeGob = nextGobs[id];
+			return id;
+		}
+		if (gobCount == gobs.length)
+		{
+			int capacity = gobs.length * 2;
+			gobs = Arrays.copyOf(gobs, capacity);
+			nextGobs = Arrays.copyOf(nextGobs, capacity);
+			gobCells = Arrays.copyOf(gobCells, capacity);
+			gobSights = Arrays.copyOf(gobSights, capacity);
+		}
+		return gobCount++;
+	}
+	
+	/**
+	 * Gets the terrain flag raised by a static game object.
+	 * @param gob the game object.
+	 * @return the terrain flag of the game object, 0 if it has none.
+	 */
+	private static byte getTerrainFlag(AntGameObject gob)
+	{
+		if (gob instanceof AntWall) return WALL;
+		else if (gob instanceof AntFoodSpawn) return FOOD_SPAWN;
+		else if (gob instanceof AntHill) return HILL;
+		return 0;
+	}
+	
 	/**
 	 * Prints the game map on the console.
 	 */
 	public void _DEBUG_print_map()
 	{
-		Iterator<ArrayList<ArrayList<AntGameObject>>> rowIt = cells.iterator();
-		while (rowIt.hasNext())
+		for (int i = 0; i < rows; i++)
 		{
-			String rowString = "";
-			Iterator<ArrayList<AntGameObject>> colIt = rowIt.next().iterator();
-			while (colIt.hasNext())
+			StringBuilder rowString = new StringBuilder(cols);
+			for (int j = 0; j < cols; j++)
 			{
-				Iterator<AntGameObject> gobIt = colIt.next().iterator();
-				String c = ".";
-				while (gobIt.hasNext())
-				{
-					AntGameObject gob = gobIt.next();
-					if (gob instanceof AntWall) { c = "#"; break; }
-					else if (gob instanceof Ant) { c = "a"; break; }
-					else if (gob instanceof AntHill) { c = "@"; break; }
-					else if (gob instanceof AntFoodSpawn) { c = "*"; break; }
-				}
-				rowString += c;
+				int cell = i * cols + j;
+				char c = '.';
+				if ((terrain[cell] & WALL) != 0 || isCompiledWall(cell)) c = '#';
+				else if (antOwners[cell] != NO_OWNER) c = 'a';
+				else if ((terrain[cell] & HILL) != 0) c = '@';
+				else if ((terrain[cell] & FOOD_SPAWN) != 0) c = '*';
+				rowString.append(c);
 			}
 			System.out.println(rowString);
 		}
@@ -22,8 +22,8 @@ package ants;
 import util.Move;
 
 /**
- * This interface provides a method that can be called by a game object to move itself on
- * the game map.
+ * This interface provides the methods that can be called by a game object to move itself
+ * on the game map, or to notify the game map of its death.
  * @interface
  * @author Nicolas
  */
@@ -35,4 +35,10 @@ public interface AntGameMapCallback
 	 * @param direction where to move the game object.
 	 */
 	public void moveGameObject(AntGameObject gob, Move dir);
+	
+	/**
+	 * Notifies the game map that an ant died.
+	 * @param ant the ant that died.
+	 */
+	public void killAnt(Ant ant);
 }
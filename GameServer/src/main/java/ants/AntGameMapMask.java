@@ -22,6 +22,7 @@ package ants;
 import java.util.ArrayList;
 
 import util.Cell;
+import util.Move;
 
 /**
  * This class represents a mask or a pattern that can be applied an a board map to select
@@ -41,6 +42,44 @@ public class AntGameMapMask
 	 */
 	private float radius2;
 	
+	/**
+	 * The greatest row or column offset of the cells of the mask.
+	 */
+	private int bound;
+	
+	/**
+	 * The column offsets of the cells of the mask.
+	 */
+	private int[] colOffsets;
+	
+	/**
+	 * The row offsets of the cells of the mask.
+	 */
+	private int[] rowOffsets;
+	
+	/**
+	 * The number of columns of the game map the flat offset table was compiled for.
+	 */
+	private int compiledCols;
+	
+	/**
+	 * The offsets of the cells of the mask in the layers of a game map, that is
+	 * {@code rowOffset * cols + colOffset}.
+	 */
+	private int[] flatOffsets;
+	
+	/**
+	 * The cells that enter the mask when its center moves in a given direction, relative
+	 * to the new center, indexed by direction.
+	 */
+	private AntGameMapMask[] enteringMasks;
+	
+	/**
+	 * The cells that leave the mask when its center moves in a given direction, relative
+	 * to the old center, indexed by direction.
+	 */
+	private AntGameMapMask[] leavingMasks;
+	
 	/**
 	 * Creates a circular mask from a radius value.
 	 * @param radius2 the squared radius of the circle.
@@ -49,7 +88,7 @@ public class AntGameMapMask
 	{
 		this.radius2 = radius2;
 		cells = new ArrayList<Cell>();
-		int bound = (int) Math.floor(Math.sqrt(radius2));
+		bound = (int) Math.floor(Math.sqrt(radius2));
 		for (int i = -bound; i <= bound; i++)
 		{
 			for (int j = -bound; j <= bound; j++)
@@ -60,6 +99,76 @@ public class AntGameMapMask
 				}
 			}
 		}
+		compileOffsets();
+		// Compute the edges of the mask for each direction.
+		enteringMasks = new AntGameMapMask[Move.values().length];
+		leavingMasks = new AntGameMapMask[Move.values().length];
+		for (Move direction : Move.values())
+		{
+			int dCol = getColDelta(direction);
+			int dRow = getRowDelta(direction);
+			enteringMasks[direction.ordinal()] = new AntGameMapMask(getEdge(dCol, dRow));
+			leavingMasks[direction.ordinal()] = new AntGameMapMask(getEdge(-dCol, -dRow));
+		}
+	}
+	
+	/**
+	 * Creates a mask from a list of cells, used for the edges of a circular mask.
+	 * @param cells the cells of the mask.
+	 */
+	private AntGameMapMask(ArrayList<Cell> cells)
+	{
+		this.cells = cells;
+		for (Cell cell : cells)
+		{
+			bound = Math.max(bound, Math.max(Math.abs(cell.getCol()),
+					Math.abs(cell.getRow())));
+		}
+		compileOffsets();
+	}
+	
+	/**
+	 * Fills the offset arrays from the list of cells of the mask.
+	 */
+	private void compileOffsets()
+	{
+		colOffsets = new int[cells.size()];
+		rowOffsets = new int[cells.size()];
+		for (int i = 0; i < cells.size(); i++)
+		{
+			colOffsets[i] = cells.get(i).getCol();
+			rowOffsets[i] = cells.get(i).getRow();
+		}
+		compiledCols = -1;
+	}
+	
+	/**
+	 * Gets the cells of the mask that are not in the mask once shifted backward by a given
+	 * offset. Applied at the shifted center, these are the cells that enter the mask.
+	 * @param dCol the column offset.
+	 * @param dRow the row offset.
+	 * @return the list of cells of the edge.
+	 */
+	private ArrayList<Cell> getEdge(int dCol, int dRow)
+	{
+		int size = 2 * bound + 1;
+		boolean[] inside = new boolean[size * size];
+		for (Cell cell : cells)
+		{
+			inside[(cell.getRow() + bound) * size + cell.getCol() + bound] = true;
+		}
+		ArrayList<Cell> edge = new ArrayList<Cell>();
+		for (Cell cell : cells)
+		{
+			int col = cell.getCol() + dCol + bound;
+			int row = cell.getRow() + dRow + bound;
+			if (col < 0 || col >= size || row < 0 || row >= size
+					|| !inside[row * size + col])
+			{
+				edge.add(cell);
+			}
+		}
+		return edge;
 	}
 	
 	/**
@@ -79,4 +188,104 @@ public class AntGameMapMask
 	{
 		return radius2;
 	}
+	
+	/**
+	 * Gets the greatest row or column offset of the cells of the mask.
+	 * @return the bound of the mask.
+	 */
+	public int getBound()
+	{
+		return bound;
+	}
+
+	/**
+	 * Gets the column offsets of the cells of the mask.
+	 * @return the column offset of each cell of the mask.
+	 */
+	int[] getColOffsets()
+	{
+		return colOffsets;
+	}
+	
+	/**
+	 * Gets the row offsets of the cells of the mask.
+	 * @return the row offset of each cell of the mask.
+	 */
+	int[] getRowOffsets()
+	{
+		return rowOffsets;
+	}
+	
+	/**
+	 * Gets the offsets of the cells of the mask in the layers of a game map. The table is
+	 * compiled once for a given number of columns and kept for the next calls.
+	 * @param cols the number of columns of the game map.
+	 * @return the flat offset of each cell of the mask.
+	 */
+	int[] getFlatOffsets(int cols)
+	{
+		if (compiledCols != cols)
+		{
+			int[] offsets = new int[colOffsets.length];
+			for (int i = 0; i < offsets.length; i++)
+			{
+				offsets[i] = rowOffsets[i] * cols + colOffsets[i];
+			}
+			flatOffsets = offsets;
+			compiledCols = cols;
+		}
+		return flatOffsets;
+	}
+	
+	/**
+	 * Gets the cells that enter the mask when its center moves in a given direction.
+	 * The cells are given relative to the new center.
+	 * @param direction the direction of the move.
+	 * @return the mask made of the entering cells.
+	 */
+	AntGameMapMask getEnteringMask(Move direction)
+	{
+		return enteringMasks[direction.ordinal()];
+	}
+
+	/**
+	 * Gets the cells that leave the mask when its center moves in a given direction.
+	 * The cells are given relative to the old center.
+	 * @param direction the direction of the move.
+	 * @return the mask made of the leaving cells.
+	 */
+	AntGameMapMask getLeavingMask(Move direction)
+	{
+		return leavingMasks[direction.ordinal()];
+	}
+	
+	/**
+	 * Gets the column offset of a move in a given direction.
+	 * @param direction the direction of the move.
+	 * @return -1, 0 or +1.
+	 */
+	private static int getColDelta(Move direction)
+	{
+		switch (direction)
+		{
+		case EAST: return 1;
+		case WEST: return -1;
+		default: return 0;
+		}
+	}
+	
+	/**
+	 * Gets the row offset of a move in a given direction.
+	 * @param direction the direction of the move.
+	 * @return -1, 0 or +1.
+	 */
+	private static int getRowDelta(Move direction)
+	{
+		switch (direction)
+		{
+		case NORTH: return -1;
+		case SOUTH: return 1;
+		default: return 0;
+		}
+	}
 }
@@ -37,4 +37,14 @@ public interface AntGameMapView
 	 * @return the content of the cell.
 	 */
 	public List<AntGameObject> getGameObjectsAt(int col, int row);
+	
+	/**
+	 * Returns whether a specific cell of the game map holds a wall or a collideable game
+	 * object, without listing the content of the cell.
+	 * The method takes the toroidal shape of the map in account.
+	 * @param col the column identifier of the cell.
+	 * @param row the row identifier of the cell.
+	 * @return true if an ant cannot move in this cell, false otherwise.
+	 */
+	public boolean isBlocked(int col, int row);
 }
@@ -0,0 +1,36 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+/**
+ * This interface is implemented by the objects that walk through the game objects of a
+ * region of the game map without building a list of them.
+ * @see AntGameMap#visitMask(int, int, AntGameMapMask, AntGameMapVisitor)
+ * @interface
+ * @author Nicolas
+ */
+public interface AntGameMapVisitor
+{
+	/**
+	 * Called for each game object found in the visited region of the game map.
+	 * @param gob the game object found.
+	 */
+	public void visit(AntGameObject gob);
+}
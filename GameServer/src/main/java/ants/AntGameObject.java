@@ -60,6 +60,13 @@ public class AntGameObject
 	 */
 	private AntGameMapCallback moveHandler;
 	
+	/**
+	 * The identifier of the game object in the object table of the game map it is placed
+	 * on, or -1 if the game object is not on a map.
+	 * @see AntGameMap
+	 */
+	int mapId = -1;
+	
 	/**
 	 * Creates a new game object from a column and a row identifier.
 	 * @constructor
@@ -102,6 +109,15 @@ public class AntGameObject
 		if (movable) moveHandler.moveGameObject(this, direction);
 	}
 	
+	/**
+	 * Gets the handler notified of the moves of the game object.
+	 * @return the game map the game object is placed on.
+	 */
+	protected AntGameMapCallback getMoveHandler()
+	{
+		return moveHandler;
+	}
+	
 	/**
 	 * Gets a JSON representation of the game object.
 	 * @see Documentation/protocol/gamestate.html
@@ -19,15 +19,20 @@
 
 package ants;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 /**
  * This class stores the evolution of the state of an ant game. It can be exported as JSON
  * and then used in the AIVisualizer to replay the game.
+ * The tracks of the game objects are stored in columns of primitive arrays indexed by
+ * track identifier, and they are streamed as JSON at the end of the game.
  * @see Documentation/protocol/replayformat.html
  * @class
  * @author Nicolas
@@ -37,17 +42,74 @@ public class AntGameReplayData
 	/** The name of the cut-off rule that ended the game. */
 	private String cutoff;
 	
-	/** The list of bot ants tracks. */
-	private ArrayList<JSONArray> ants;
+	/** The value of a turn that did not happen yet, or of a bot that does not exist. */
+	private static final int NONE = -1;
 	
-	/** The list of food units tracks. */
-	private ArrayList<JSONArray> food;
+	/** The initial capacity of the track columns. */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** The initial capacity of the move string of an ant. */
+	private static final int INITIAL_MOVE_CAPACITY = 16;
+	
+	/** The number of ant tracks. */
+	private int antCount;
+	
+	/** The spawn row of each ant track. */
+	private int[] antRows;
+	
+	/** The spawn column of each ant track. */
+	private int[] antCols;
+	
+	/** The spawn turn of each ant track. */
+	private int[] antSpawnTurns;
+	
+	/** The death turn of each ant track, or NONE. */
+	private int[] antDeathTurns;
+	
+	/** The identifier of the bot that owns the ant of each ant track. */
+	private int[] antOwners;
+	
+	/** The move characters of each ant track. */
+	private byte[][] antMoves;
+	
+	/** The length of the move string of each ant track. */
+	private int[] antMoveCounts;
+	
+	/** The number of food tracks. */
+	private int foodCount;
+	
+	/** The row of each food track. */
+	private int[] foodRows;
+	
+	/** The column of each food track. */
+	private int[] foodCols;
+	
+	/** The spawn turn of each food track. */
+	private int[] foodSpawnTurns;
+	
+	/** The turn the food of each food track was gathered or cleaned, or NONE. */
+	private int[] foodEndTurns;
+	
+	/** The identifier of the bot that gathered the food of each food track, or NONE. */
+	private int[] foodGatherers;
 	
 	/** Hive history track of each bot. */
 	private ArrayList<ArrayList<Integer>> hiveHistory;
 	
-	/** The list of ant hills tracks. */
-	private ArrayList<JSONArray> hills;
+	/** The number of hill tracks. */
+	private int hillCount;
+	
+	/** The row of each hill track. */
+	private int[] hillRows;
+	
+	/** The column of each hill track. */
+	private int[] hillCols;
+	
+	/** The identifier of the bot that owns the hill of each hill track. */
+	private int[] hillOwners;
+	
+	/** The turn the hill of each hill track was razed, or NONE. */
+	private int[] hillRazeTurns;
 	
 	/** The map template data. */
 	private JSONObject map;
@@ -100,15 +162,31 @@ public class AntGameReplayData
 		int i;
 		
 		cutoff = "";
-		ants = new ArrayList<JSONArray>();
-		food = new ArrayList<JSONArray>();
+		antCount = 0;
+		antRows = new int[INITIAL_CAPACITY];
+		antCols = new int[INITIAL_CAPACITY];
+		antSpawnTurns = new int[INITIAL_CAPACITY];
+		antDeathTurns = new int[INITIAL_CAPACITY];
+		antOwners = new int[INITIAL_CAPACITY];
+		antMoves = new byte[INITIAL_CAPACITY][];
+		antMoveCounts = new int[INITIAL_CAPACITY];
+		foodCount = 0;
+		foodRows = new int[INITIAL_CAPACITY];
+		foodCols = new int[INITIAL_CAPACITY];
+		foodSpawnTurns = new int[INITIAL_CAPACITY];
+		foodEndTurns = new int[INITIAL_CAPACITY];
+		foodGatherers = new int[INITIAL_CAPACITY];
 		hiveHistory = new ArrayList<ArrayList<Integer>>(botCount);
 		for (i = 0; i < botCount; i++)
 		{
 			hiveHistory.add(new ArrayList<Integer>());
 		}
-		hills = new ArrayList<JSONArray>();
-		map = mapTemplate.toJSON();
+		hillCount = 0;
+		hillRows = new int[INITIAL_CAPACITY];
+		hillCols = new int[INITIAL_CAPACITY];
+		hillOwners = new int[INITIAL_CAPACITY];
+		hillRazeTurns = new int[INITIAL_CAPACITY];
+		map = mapTemplate.getCompiledMap().toJSON();
 		bonus = new ArrayList<Integer>(botCount);
 		for (i = 0; i < botCount; i++)
 		{
@@ -130,50 +208,82 @@ public class AntGameReplayData
 	}
 	
 	/**
-	 * Generates the replay of an ant game as a JSON object.
-	 * @return a JSON object containing replay data for this game.
-	 * @throws JSONException if replay data cannot be accessed.
+	 * Writes the replay of an ant game on a JSON writer, as a JSON object. The tracks are
+	 * streamed from the columns, no JSON object is built for them.
+	 * @see Documentation/protocol/replayformat.html
+	 * @param writer the JSON writer to write on.
+	 * @throws JSONException if the replay cannot be written.
 	 */
-	public JSONObject toJSONObject() throws JSONException
+	public void write(JSONWriter writer) throws JSONException
 	{
-		int botCount = players;
 		int i;
 		
-		JSONArray hiveHistory = new JSONArray();
-		for (i = 0; i < botCount; i++)
+		writer.object();
+		writer.key("cutoff").value(cutoff);
+		writer.key("ants").array();
+		for (i = 0; i < antCount; i++)
+		{	// [ row, col, pop_round, dth_round, owner_id, move_string ]
+			writer.array();
+			writer.value(antRows[i]).value(antCols[i]).value(antSpawnTurns[i]);
+			writer.value(antDeathTurns[i] != NONE ? antDeathTurns[i] : JSONObject.NULL);
+			writer.value(antOwners[i]);
+			writer.value(new String(antMoves[i], 0, antMoveCounts[i],
+					StandardCharsets.US_ASCII));
+			writer.endArray();
+		}
+		writer.endArray();
+		writer.key("food").array();
+		for (i = 0; i < foodCount; i++)
+		{	// [ row, col, pop_round, gth_round, bot_id ]
+			writer.array();
+			writer.value(foodRows[i]).value(foodCols[i]).value(foodSpawnTurns[i]);
+			if (foodEndTurns[i] != NONE)
+			{
+				writer.value(foodEndTurns[i]);
+				if (foodGatherers[i] != NONE) writer.value(foodGatherers[i]);
+			}
+			writer.endArray();
+		}
+		writer.endArray();
+		writer.key("hive_history").array();
+		for (i = 0; i < players; i++)
 		{
-			hiveHistory.put(i, new JSONArray(this.hiveHistory.get(i)));
+			writer.value(new JSONArray(hiveHistory.get(i)));
 		}
-		JSONArray scores = new JSONArray();
-		for (i = 0; i < botCount; i++)
+		writer.endArray();
+		writer.key("player_seed").value(0);
+		writer.key("hills").array();
+		for (i = 0; i < hillCount; i++)
+		{	// [ row, col, owner_id, turn_death ]
+			writer.array();
+			writer.value(hillRows[i]).value(hillCols[i]).value(hillOwners[i]);
+			if (hillRazeTurns[i] != NONE) writer.value(hillRazeTurns[i]);
+			writer.endArray();
+		}
+		writer.endArray();
+		writer.key("food_rate").value(5);
+		writer.key("revision").value(3);
+		writer.key("map").value(map);
+		writer.key("bonus").value(new JSONArray(bonus));
+		writer.key("winning_turn").value(winningTurn);
+		writer.key("scores").array();
+		for (i = 0; i < players; i++)
 		{
-			scores.put(i, new JSONArray(this.scores.get(i)));
+			writer.value(new JSONArray(scores.get(i)));
 		}
-		JSONObject replaydata = new JSONObject();
-		replaydata.put("cutoff", cutoff);
-		replaydata.put("ants", new JSONArray(ants));
-		replaydata.put("food", new JSONArray(food));
-		replaydata.put("hive_history", hiveHistory);
-		replaydata.put("player_seed", 0);
-		replaydata.put("hills", new JSONArray(hills));
-		replaydata.put("food_rate", 5);
-		replaydata.put("revision", 3);
-		replaydata.put("map", map);
-		replaydata.put("bonus", new JSONArray(bonus));
-		replaydata.put("winning_turn", winningTurn);
-		replaydata.put("scores", scores);
-		replaydata.put("ranking_turn", rankingTurn);
-		replaydata.put("spawnradius2", 1);
-		replaydata.put("engine_seed", 0);
-		replaydata.put("viewradius2", viewRadius2);
-		replaydata.put("loadtime", loadTime);
-		replaydata.put("turns", turns);
-		replaydata.put("attackradius2", attackRadius2);
-		replaydata.put("players", players);
-		replaydata.put("food_turn", 0);
-		replaydata.put("food_start", 0);
-		replaydata.put("turntime", turnTime);
-		return replaydata;
+		writer.endArray();
+		writer.key("ranking_turn").value(rankingTurn);
+		writer.key("spawnradius2").value(1);
+		writer.key("engine_seed").value(0);
+		writer.key("viewradius2").value(Float.valueOf(viewRadius2));
+		writer.key("loadtime").value(loadTime);
+		writer.key("turns").value(turns);
+		writer.key("attackradius2").value(Float.valueOf(attackRadius2));
+		writer.key("players").value(players);
+		writer.key("food_turn").value(0);
+		writer.key("food_start").value(0);
+		writer.key("turntime").value(turnTime);
+		writer.endObject();
 	}
 	
 	/**
@@ -187,20 +297,109 @@ public class AntGameReplayData
 	
 	/**
 	 * Adds an ant track in the replay.
-	 * @param antData the ant track to add.
+	 * @param row the row identifier where the ant spawned.
+	 * @param col the column identifier where the ant spawned.
+	 * @param round the game round at which the ant spawned.
+	 * @param botId the game identifier of the bot that owns the ant.
+	 * @return the identifier of the ant track.
 	 */
-	public void addAntData(JSONArray antData)
+	public int addAnt(int row, int col, int round, int botId)
 	{
-		ants.add(antData);
+		if (antCount == antRows.length)
+		{
+			int capacity = antCount * 2;
+			antRows = Arrays.copyOf(antRows, capacity);
+			antCols = Arrays.copyOf(antCols, capacity);
+			antSpawnTurns = Arrays.copyOf(antSpawnTurns, capacity);
+			antDeathTurns = Arrays.copyOf(antDeathTurns, capacity);
+			antOwners = Arrays.copyOf(antOwners, capacity);
+			antMoves = Arrays.copyOf(antMoves, capacity);
+			antMoveCounts = Arrays.copyOf(antMoveCounts, capacity);
+		}
+		int track = antCount++;
+		antRows[track] = row;
+		antCols[track] = col;
+		antSpawnTurns[track] = round;
+		antDeathTurns[track] = NONE;
+		antOwners[track] = botId;
+		antMoves[track] = new byte[INITIAL_MOVE_CAPACITY];
+		antMoveCounts[track] = 0;
+		return track;
 	}
 	
 	/**
-	 * Adds an ant track in the replay.
-	 * @param foodData the food track to add.
+	 * Adds a move at the end of the move string of an ant track.
+	 * @param track the identifier of the ant track.
+	 * @param move the move character, 'n', 'e', 's', 'w' or '-' for no move.
 	 */
-	public void addFoodData(JSONArray foodData)
+	public void addAntMove(int track, char move)
 	{
-		food.add(foodData);
+		byte[] moves = antMoves[track];
+		if (antMoveCounts[track] == moves.length)
+		{
+			moves = Arrays.copyOf(moves, moves.length * 2);
+			antMoves[track] = moves;
+		}
+		moves[antMoveCounts[track]++] = (byte) move;
+	}
+	
+	/**
+	 * Sets the death turn of an ant track.
+	 * @param track the identifier of the ant track.
+	 * @param round the game round at which the ant died.
+	 */
+	public void setAntDeath(int track, int round)
+	{
+		antDeathTurns[track] = round;
+	}
+	
+	/**
+	 * Adds a food track in the replay.
+	 * @param row the row identifier of the food unit.
+	 * @param col the column identifier of the food unit.
+	 * @param round the game round at which the food unit spawned.
+	 * @return the identifier of the food track.
+	 */
+	public int addFood(int row, int col, int round)
+	{
+		if (foodCount == foodRows.length)
+		{
+			int capacity = foodCount * 2;
+			foodRows = Arrays.copyOf(foodRows, capacity);
+			foodCols = Arrays.copyOf(foodCols, capacity);
+			foodSpawnTurns = Arrays.copyOf(foodSpawnTurns, capacity);
+			foodEndTurns = Arrays.copyOf(foodEndTurns, capacity);
+			foodGatherers = Arrays.copyOf(foodGatherers, capacity);
+		}
+		int track = foodCount++;
+		foodRows[track] = row;
+		foodCols[track] = col;
+		foodSpawnTurns[track] = round;
+		foodEndTurns[track] = NONE;
+		foodGatherers[track] = NONE;
+		return track;
+	}
+	
+	/**
+	 * Ends a food track with the gathering of the food unit by a bot.
+	 * @param track the identifier of the food track.
+	 * @param round the game round at which the food unit was gathered.
+	 * @param botId the game identifier of the bot that gathered the food unit.
+	 */
+	public void setFoodGathered(int track, int round, int botId)
+	{
+		foodEndTurns[track] = round;
+		foodGatherers[track] = botId;
+	}
+	
+	/**
+	 * Ends a food track with the food unit disappearing (at the end of the game).
+	 * @param track the identifier of the food track.
+	 * @param round the game round at which the food unit was cleaned.
+	 */
+	public void setFoodCleaned(int track, int round)
+	{
+		foodEndTurns[track] = round;
 	}
 	
 	/**
@@ -216,11 +415,37 @@ public class AntGameReplayData
 	
 	/**
 	 * Adds a hill track in the replay.
-	 * @param hillData the hill track to add.
+	 * @param row the row identifier of the hill.
+	 * @param col the column identifier of the hill.
+	 * @param botId the game identifier of the bot that owns the hill.
+	 * @return the identifier of the hill track.
+	 */
+	public int addHill(int row, int col, int botId)
+	{
+		if (hillCount == hillRows.length)
+		{
+			int capacity = hillCount * 2;
+			hillRows = Arrays.copyOf(hillRows, capacity);
+			hillCols = Arrays.copyOf(hillCols, capacity);
+			hillOwners = Arrays.copyOf(hillOwners, capacity);
+			hillRazeTurns = Arrays.copyOf(hillRazeTurns, capacity);
+		}
+		int track = hillCount++;
+		hillRows[track] = row;
+		hillCols[track] = col;
+		hillOwners[track] = botId;
+		hillRazeTurns[track] = NONE;
+		return track;
+	}
+	
+	/**
+	 * Sets the turn at which the hill of a hill track was razed.
+	 * @param track the identifier of the hill track.
+	 * @param round the game round at which the hill was razed.
 	 */
-	public void addHillData(JSONArray hillData)
+	public void setHillRazed(int track, int round)
 	{
-		hills.add(hillData);
+		hillRazeTurns[track] = round;
 	}
 	
 	/**
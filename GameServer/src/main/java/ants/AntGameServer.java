@@ -20,14 +20,14 @@
 package ants;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Timer;
+import java.util.concurrent.ScheduledFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import basis.GameServer;
+import basis.ReplayArchive;
 
 /**
  * This class implements a game server specific to the game of ants.
@@ -40,9 +40,14 @@ public class AntGameServer extends GameServer
 	protected static final Logger LOGGER = LoggerFactory.getLogger(AntGameServer.class);
 	
 	/**
-	 * The timer used to schedule the game management.
+	 * The periodic task of the game scheduler running the game management.
 	 */
-	private Timer managerTimer;
+	private ScheduledFuture<?> managerTask;
+	
+	/**
+	 * The archive where the replays of the games are written, or null.
+	 */
+	private ReplayArchive replayArchive;
 	
 	/**
 	 * Creates a new game server for an ant game.
@@ -58,12 +63,23 @@ public class AntGameServer extends GameServer
 			LOGGER.error("No map could be loaded");
 			System.exit(-1);
 		}
-		gameManager = new AntGameManager(this, mapTemplates);
+		AntGameManager antGameManager = new AntGameManager(this, mapTemplates);
+		// Archive the compressed replays of the games only if a directory is configured,
+		// with -Dhelloant.replays=DIR, relative to the working directory of the server.
+		// -Dhelloant.replays.keep=N keeps only the N most recent replays.
+		String replayDirectory = System.getProperty("helloant.replays");
+		if (replayDirectory != null)
+		{
+			replayArchive = new ReplayArchive(new File(replayDirectory), true,
+					Integer.getInteger("helloant.replays.keep", 0));
+			antGameManager.setReplayArchive(replayArchive);
+			LOGGER.info("replays archived in " + replayArchive.getDirectory());
+		}
+		gameManager = antGameManager;
 		// Schedule game creation task
-		managerTimer = new Timer();
 		long delay = 1000L; // 1s
 		long period = 3000L; // 3s
-		managerTimer.scheduleAtFixedRate(gameManager, delay, period);
+		managerTask = scheduler.scheduleAtFixedRate(gameManager, delay, period);
 	}
 	
 	/**
@@ -72,44 +88,24 @@ public class AntGameServer extends GameServer
 	@Override
 	public void close()
 	{
-		managerTimer.cancel();
+		managerTask.cancel(false);
 		super.close();
+		if (replayArchive != null)
+		{	// Write the replays of the last games.
+			replayArchive.close();
+		}
 	}
 	
 	/**
 	 * Loads all maps files available in GameServer/res/maps/.
+	 * The compiled maps are cached in GameServer/cache/maps/ for the next start.
 	 * @return map templates loaded from the map folder.
 	 */
 	private ArrayList<AntMapTemplate> loadMapFiles()
 	{
 		LOGGER.info("working directory: " + System.getProperty("user.dir"));
-		ArrayList<AntMapTemplate> mapTemplates = new ArrayList<AntMapTemplate>();
-		// Get all the files in GameServer/res/maps/
-		File f = new File("./res/maps/");
-		File[] files = f.listFiles();
-		for (File file : files)
-		{
-			if (!file.isDirectory())
-			{
-				String filename = file.getName();
-				LOGGER.info("map loaded: " + filename);
-				try
-				{	// Attempt to parse the file.
-					AntMapTemplate map = new AntMapTemplate();
-					map.loadFromFile(filename);
-					mapTemplates.add(map);
-				}
-				catch (InvalidMapFormatException e)
-				{	// May not be a map file...
-					LOGGER.error("Cannot parse file '" + filename + "': " +
-							e.getMessage());
-				}
-				catch (IOException e)
-				{
-					LOGGER.error("Cannot read file '" + filename + "'");
-				}
-			}
-		}
-		return mapTemplates;
+		// Get all the files in GameServer/res/maps/, compiled in GameServer/cache/maps/
+		AntMapCache mapCache = new AntMapCache(new File("./cache/maps/"));
+		return mapCache.loadMaps(new File("./res/maps/"));
 	}
 }
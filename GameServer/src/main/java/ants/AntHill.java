@@ -48,11 +48,20 @@ public class AntHill extends AntGameObject implements Comparable<AntHill>
 	private int lastVisitRound;
 	
 	/**
-	 * The replay data for this hill. Stored in a JSON array.
-	 * [ row, col, owner_id, turn_death ]
+	 * The identifier of the bot that owns the hill in the game.
+	 */
+	private int botId;
+	
+	/**
+	 * The replay where the track of the hill is recorded, or null.
 	 * @see Documentation/protocol/replayformat.html
 	 */
-	private JSONArray replayData;
+	private AntGameReplayData replay;
+	
+	/**
+	 * The identifier of the track of the hill in the replay.
+	 */
+	private int replayTrack;
 	
 	/**
 	 * Creates a new ant hill for a bot from a column and a row identifier.
@@ -67,7 +76,7 @@ public class AntHill extends AntGameObject implements Comparable<AntHill>
 	{
 		super(moveHandler, col, row, false, false);
 		this.bot = bot;
-		createReplayData(botId);
+		this.botId = botId;
 	}
 	
 	/**
@@ -82,27 +91,18 @@ public class AntHill extends AntGameObject implements Comparable<AntHill>
 	{
 		super(moveHandler, cell, false, false);
 		this.bot = bot;
-		createReplayData(botId);
+		this.botId = botId;
 	}
 	
 	/**
-	 * Creates replay data for the ant.
-	 * @param botId the id associated with the bot.
-	 * @param round the current game round.
+	 * Sets the replay where the track of the hill is recorded, and starts the track.
+	 * @see Documentation/protocol/replayformat.html
+	 * @param replay the replay of the game.
 	 */
-	private void createReplayData(int botId)
+	public void setReplay(AntGameReplayData replay)
 	{
-		replayData = new JSONArray();
-		try
-		{
-			replayData.put(0, row);
-			replayData.put(1, col);
-			replayData.put(2, botId);
-		}
-		catch (JSONException e)
-		{
-			LOGGER.error("Cannot create replay data for an ant hill ({})", e.getMessage());
-		}
+		this.replay = replay;
+		replayTrack = replay.addHill(row, col, botId);
 	}
 	
 	/**
@@ -111,13 +111,9 @@ public class AntHill extends AntGameObject implements Comparable<AntHill>
 	 */
 	public void raze(int round)
 	{
-		try
-		{
-			replayData.put(3, round);
-		}
-		catch (JSONException e)
+		if (replay != null)
 		{
-			LOGGER.error("Error while razing an ant hill ({})", e.getMessage());
+			replay.setHillRazed(replayTrack, round);
 		}
 	}
 	
@@ -163,15 +159,6 @@ public class AntHill extends AntGameObject implements Comparable<AntHill>
 		return bot;
 	}
 	
-	/**
-	 * Gets the replay data for this hill.
-	 * @return the replay data of the hill.
-	 */
-	public JSONArray getReplayData()
-	{
-		return replayData;
-	}
-	
 	/**
 	 * Gets the last time an ant was on top of the hill.
 	 * @return the last time an ant was on top of the hill.
@@ -0,0 +1,45 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.util.Iterator;
+
+/**
+ * This interface is implemented by the bots played by the server itself, like the CPU
+ * opponents of training games. Such a bot does not receive "gamestate" messages and does
+ * not send "gameactions" messages: the game lets it read the game map through a view and
+ * write the moves of its ants directly in its move buffer, without any serialization.
+ * @see AntGame#playInProcess
+ * @interface
+ * @author Nicolas
+ */
+public interface AntInProcessBot
+{
+	/**
+	 * Chooses the moves of the ants of the bot for the current round.
+	 * This method is called on a thread of the game state pool while the game map is not
+	 * changing, so it must only read the game map.
+	 * @param mapView the interface giving a reading access to the game map.
+	 * @param ants an iterator over ants of the bot, including the ants that died during
+	 *        the last round.
+	 * @param moves the move buffer where the moves of the ants are staged.
+	 */
+	public void play(AntGameMapView mapView, Iterator<Ant> ants, AntMoveBuffer moves);
+}
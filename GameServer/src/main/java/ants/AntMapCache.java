@@ -0,0 +1,354 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The map cache keeps the compiled form of the map files in binary files, so the server
+ * does not parse the map files again each time it starts.
+ * A cache file is keyed by the path, the size and the modification time of its map file.
+ * Cached maps are read through memory-mapped I/O, the walls are read in one bulk copy of
+ * the wall bitset. New or changed map files are parsed and validated in parallel, and
+ * their cache file is written again.
+ * Cache file layout (big-endian): the magic number and the version of the format, the
+ * key of the map file (path length, UTF-8 path, size, modification time), then the bot
+ * count, the column count, the row count, the hill cells of each bot (count, cells), the
+ * food spawn cells (count, cells) and the words of the wall bitset.
+ * @see AntCompiledMap
+ * @class
+ * @author Nicolas
+ */
+public class AntMapCache
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(AntMapCache.class);
+	
+	/** The magic number starting a cache file, "ANTM". */
+	private static final int MAGIC = 0x414E544D;
+	
+	/** The version of the format of the cache files. */
+	private static final int VERSION = 1;
+	
+	/** The extension of the cache files. */
+	private static final String EXTENSION = ".bin";
+	
+	/**
+	 * The directory of the cache files.
+	 */
+	private File directory;
+	
+	/**
+	 * Creates a map cache.
+	 * @constructor
+	 * @param directory the directory of the cache files, created when a file is cached.
+	 */
+	public AntMapCache(File directory)
+	{
+		this.directory = directory;
+	}
+	
+	/**
+	 * Loads all the map files of a directory, in parallel. A map file that cannot be
+	 * parsed or loaded is logged and skipped.
+	 * @param mapDirectory the directory of the map files.
+	 * @return the list of the loaded maps.
+	 */
+	public ArrayList<AntMapTemplate> loadMaps(File mapDirectory)
+	{
+		ArrayList<AntMapTemplate> mapTemplates = new ArrayList<AntMapTemplate>();
+		File[] files = mapDirectory.listFiles();
+		if (files == null) return mapTemplates;
+		ArrayList<Callable<AntMapTemplate>> tasks =
+				new ArrayList<Callable<AntMapTemplate>>(files.length);
+		ArrayList<File> mapFiles = new ArrayList<File>(files.length);
+		for (final File file : files)
+		{
+			if (file.isDirectory()) continue;
+			mapFiles.add(file);
+			tasks.add(new Callable<AntMapTemplate>()
+			{
+				@Override
+				public AntMapTemplate call()
+				{
+					return loadMap(file);
+				}
+			});
+		}
+		int threadCount = Math.max(1, Math.min(tasks.size(),
+				Runtime.getRuntime().availableProcessors()));
+		ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+		try
+		{
+			List<Future<AntMapTemplate>> futures = pool.invokeAll(tasks);
+			for (int i = 0; i < futures.size(); i++)
+			{
+				try
+				{
+					AntMapTemplate map = futures.get(i).get();
+					if (map != null) mapTemplates.add(map);
+				}
+				catch (ExecutionException e)
+				{	// Skip this map only, the other ones are loaded.
+					LOGGER.error("Cannot load the map " + mapFiles.get(i).getName()
+							+ " ({})", e.getCause().toString());
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		return mapTemplates;
+	}
+	
+	/**
+	 * Loads a map file, from its cache file when it is up to date.
+	 * @param file the map file.
+	 * @return the loaded map, or null if the map file cannot be parsed.
+	 */
+	public AntMapTemplate loadMap(File file)
+	{
+		String filename = file.getName();
+		File cacheFile = new File(directory, filename + EXTENSION);
+		AntMapTemplate map = new AntMapTemplate();
+		try
+		{	// Attempt to read the cache file.
+			AntCompiledMap compiledMap = read(cacheFile, file);
+			if (compiledMap != null)
+			{
+				map.load(compiledMap);
+				LOGGER.info("map loaded from cache: " + filename);
+				return map;
+			}
+		}
+		catch (IOException | InvalidMapFormatException e)
+		{	// The cache file is corrupted, parse the map file again.
+			LOGGER.warn("Cannot read the cache of '" + filename + "': " + e.getMessage());
+		}
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(),
+				StandardCharsets.UTF_8))
+		{	// Attempt to parse the file.
+			map.load(reader);
+			LOGGER.info("map loaded: " + filename);
+		}
+		catch (InvalidMapFormatException e)
+		{	// May not be a map file...
+			LOGGER.error("Cannot parse file '" + filename + "': " + e.getMessage());
+			return null;
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("Cannot read file '" + filename + "'");
+			return null;
+		}
+		try
+		{
+			write(cacheFile, file, map.getCompiledMap());
+		}
+		catch (IOException e)
+		{
+			LOGGER.warn("Cannot write the cache of '" + filename + "': " +
+					e.getMessage());
+		}
+		return map;
+	}
+	
+	/**
+	 * Gets the key of a map file written in its cache file.
+	 * @param file the map file.
+	 * @return the path of the map file, in UTF-8.
+	 */
+	private static byte[] getPathKey(File file)
+	{
+		return file.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Reads the compiled map of a cache file through memory-mapped I/O.
+	 * @param cacheFile the cache file.
+	 * @param file the map file the cache file should match.
+	 * @return the compiled map, or null if the cache file does not exist or does not
+	 *         match the map file.
+	 * @throws IOException if the cache file cannot be read.
+	 * @throws InvalidMapFormatException if the cache file is corrupted.
+	 */
+	private static AntCompiledMap read(File cacheFile, File file)
+			throws IOException, InvalidMapFormatException
+	{
+		if (!cacheFile.isFile()) return null;
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(),
+				StandardOpenOption.READ))
+		{
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			// Check the format and the key of the map file.
+			if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+			byte[] pathKey = getPathKey(file);
+			if (in.getInt() != pathKey.length) return null;
+			byte[] cachedPathKey = new byte[pathKey.length];
+			in.get(cachedPathKey);
+			if (!Arrays.equals(pathKey, cachedPathKey) || in.getLong() != file.length() ||
+					in.getLong() != file.lastModified())
+			{	// The map file changed.
+				return null;
+			}
+			// Read the compiled map.
+			int botCount = in.getInt();
+			int cols = in.getInt();
+			int rows = in.getInt();
+			if (botCount < 0 || cols <= 0 || rows <= 0 ||
+					(long) cols * rows > Integer.MAX_VALUE)
+			{
+				throw new InvalidMapFormatException("Invalid map size");
+			}
+			int[][] hillCells = new int[botCount][];
+			for (int b = 0; b < botCount; b++)
+			{
+				hillCells[b] = readCells(in, cols * rows);
+			}
+			int[] foodSpawnCells = readCells(in, cols * rows);
+			long[] wallBits = new long[AntCompiledMap.getWallWordCount(cols, rows)];
+			in.asLongBuffer().get(wallBits);
+			in.position(in.position() + wallBits.length * 8);
+			if (in.hasRemaining())
+			{
+				throw new InvalidMapFormatException("Trailing data");
+			}
+			return new AntCompiledMap(cols, rows, wallBits, hillCells, foodSpawnCells);
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new InvalidMapFormatException("Truncated cache file");
+		}
+	}
+	
+	/**
+	 * Reads an array of cell indexes: the number of cells, then the cells.
+	 * @param in the buffer to read.
+	 * @param cellCount the number of cells of the map.
+	 * @return the cell indexes.
+	 * @throws InvalidMapFormatException if a cell is out of the map.
+	 */
+	private static int[] readCells(MappedByteBuffer in, int cellCount)
+			throws InvalidMapFormatException
+	{
+		int count = in.getInt();
+		if (count < 0 || count > in.remaining() / 4)
+		{
+			throw new InvalidMapFormatException("Invalid cell count");
+		}
+		int[] cells = new int[count];
+		in.asIntBuffer().get(cells);
+		in.position(in.position() + count * 4);
+		for (int cell : cells)
+		{
+			if (cell < 0 || cell >= cellCount)
+			{
+				throw new InvalidMapFormatException("Cell out of the map");
+			}
+		}
+		return cells;
+	}
+	
+	/**
+	 * Writes the cache file of a map. The file is written aside and then moved, so a
+	 * cache file is never read partially written.
+	 * @param cacheFile the cache file.
+	 * @param file the map file.
+	 * @param compiledMap the compiled map.
+	 * @throws IOException if the cache file cannot be written.
+	 */
+	private static void write(File cacheFile, File file, AntCompiledMap compiledMap)
+			throws IOException
+	{
+		Files.createDirectories(cacheFile.getParentFile().toPath());
+		Path tempFile = Files.createTempFile(cacheFile.getParentFile().toPath(),
+				cacheFile.getName(), ".tmp");
+		try
+		{
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(tempFile))))
+			{
+				byte[] pathKey = getPathKey(file);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(pathKey.length);
+				out.write(pathKey);
+				out.writeLong(file.length());
+				out.writeLong(file.lastModified());
+				int cols = compiledMap.getCols();
+				int rows = compiledMap.getRows();
+				out.writeInt(compiledMap.getBotCount());
+				out.writeInt(cols);
+				out.writeInt(rows);
+				for (int b = 0; b < compiledMap.getBotCount(); b++)
+				{
+					out.writeInt(compiledMap.getHillCount(b));
+					for (int i = 0; i < compiledMap.getHillCount(b); i++)
+					{
+						out.writeInt(compiledMap.getHillCell(b, i));
+					}
+				}
+				out.writeInt(compiledMap.getFoodSpawnCount());
+				for (int i = 0; i < compiledMap.getFoodSpawnCount(); i++)
+				{
+					out.writeInt(compiledMap.getFoodSpawnCell(i));
+				}
+				for (int i = 0; i < AntCompiledMap.getWallWordCount(cols, rows); i++)
+				{
+					out.writeLong(compiledMap.getWallWord(i));
+				}
+			}
+			Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(tempFile);
+		}
+	}
+}
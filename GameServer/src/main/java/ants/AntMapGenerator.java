@@ -0,0 +1,505 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class generates random symmetric maps, so that no bot is favoured by the layout.
+ * The same seed and the same settings always generate the same map.
+ * The cells of the map are grouped in orbits: the images of a cell by the symmetries of
+ * the map. A random value is drawn for each orbit rather than for each cell, so every
+ * bot finds the same walls, food spawns and hills around its own hills. The walls are
+ * random noise smoothed into caves; the cells that cannot be reached from the hills are
+ * filled with walls, and a map whose hills are not connected is drawn again with fewer
+ * walls.
+ * Symmetries, depending on the number of bots:
+ * - 2 bots: rotation by 180 degrees, or mirror between the left and the right halves;
+ * - 4 bots: rotations by 90 degrees on a square map, or mirrors on both axes;
+ * - other bot counts: translations on a grid of a x b bots, where the columns are
+ *   divisible by a and the rows by b. It is the only symmetry that fits any bot count on
+ *   a toroidal map.
+ * @see AntMapTemplate#generate
+ * @class
+ * @author Nicolas
+ */
+public class AntMapGenerator
+{
+	/**
+	 * The symmetry preferred by the generator. The translation is used when the
+	 * preferred symmetry does not fit the number of bots.
+	 */
+	public enum Symmetry
+	{
+		ROTATION,
+		MIRROR,
+		TRANSLATION
+	}
+	
+	/** Rotation by 180 degrees. */
+	private static final int ROTATE_180 = 0;
+	
+	/** Rotations by 90 degrees, on a square map. */
+	private static final int ROTATE_90 = 1;
+	
+	/** Mirror between the left and the right halves. */
+	private static final int MIRROR_X = 2;
+	
+	/** Mirrors on both axes. */
+	private static final int MIRROR_XY = 3;
+	
+	/** Translations on a grid of bots. */
+	private static final int TRANSLATE = 4;
+	
+	/** The number of smoothing passes applied to the wall noise. */
+	private static final int SMOOTHING_PASSES = 3;
+	
+	/** The number of maps drawn before giving up the walls to connect the hills. */
+	private static final int MAX_ATTEMPTS = 8;
+	
+	/** The number of random positions tried for each hill. */
+	private static final int HILL_CANDIDATES = 64;
+	
+	/** The distance from a hill to the walls, in cells. */
+	private static final int HILL_CLEARING = 2;
+	
+	/** The salt of the random values drawn for the food spawns. */
+	private static final long FOOD_SALT = 0x5DEECE66DL;
+	
+	/**
+	 * The seed of the generator.
+	 */
+	private long seed;
+	
+	/**
+	 * The preferred symmetry.
+	 */
+	private Symmetry symmetry;
+	
+	/**
+	 * The density of the wall noise, before it is smoothed.
+	 */
+	private double wallDensity;
+	
+	/**
+	 * The density of the food spawns in the free cells.
+	 */
+	private double foodDensity;
+	
+	/**
+	 * The number of hills of each bot.
+	 */
+	private int hillCount;
+	
+	/*
+	 * The map being generated.
+	 */
+	private int cols;
+	private int rows;
+	private int botCount;
+	private int kind;
+	private int gridCols;
+	
+	/**
+	 * Creates a map generator with the default settings: rotations, caves covering
+	 * about a sixth of the map, scarce food spawns and one hill per bot.
+	 * @constructor
+	 * @param seed the seed of the generator.
+	 */
+	public AntMapGenerator(long seed)
+	{
+		this.seed = seed;
+		symmetry = Symmetry.ROTATION;
+		wallDensity = 0.4;
+		foodDensity = 0.015;
+		hillCount = 1;
+	}
+	
+	/**
+	 * Sets the preferred symmetry of the generated maps.
+	 * @param symmetry the preferred symmetry.
+	 */
+	public void setSymmetry(Symmetry symmetry)
+	{
+		this.symmetry = symmetry;
+	}
+	
+	/**
+	 * Sets the density of the wall noise. The noise is smoothed into caves: the walls
+	 * cover about a sixth of the map with 0.4, and a third or more with 0.5, since the
+	 * caves that cannot be reached are filled.
+	 * @param wallDensity the density, in [0; 1].
+	 */
+	public void setWallDensity(double wallDensity)
+	{
+		this.wallDensity = wallDensity;
+	}
+	
+	/**
+	 * Sets the density of the food spawns in the free cells.
+	 * @param foodDensity the density, in [0; 1].
+	 */
+	public void setFoodDensity(double foodDensity)
+	{
+		this.foodDensity = foodDensity;
+	}
+	
+	/**
+	 * Sets the number of hills of each bot.
+	 * @param hillCount the number of hills, at least 1.
+	 */
+	public void setHillCount(int hillCount)
+	{
+		this.hillCount = hillCount;
+	}
+	
+	/**
+	 * Generates a map.
+	 * @param botCount the number of bots the map is designed for.
+	 * @param cols the number of columns.
+	 * @param rows the number of rows.
+	 * @return the compiled map.
+	 * @throws IllegalArgumentException if the map cannot have this size or this number
+	 *         of bots.
+	 */
+	public AntCompiledMap generate(int botCount, int cols, int rows)
+	{
+		if (botCount < AntMapTemplate.MIN_BOTCOUNT ||
+				botCount > AntMapTemplate.MAX_BOTCOUNT ||
+				cols < AntMapTemplate.MIN_COLS || cols > AntMapTemplate.MAX_COLS ||
+				rows < AntMapTemplate.MIN_ROWS || rows > AntMapTemplate.MAX_ROWS ||
+				hillCount < 1)
+		{
+			throw new IllegalArgumentException("Invalid map settings");
+		}
+		this.botCount = botCount;
+		this.cols = cols;
+		this.rows = rows;
+		kind = getSymmetryKind();
+		// Place the hills of the first bot, the other hills are their images.
+		Random rand = new Random(seed);
+		int[] hills = new int[hillCount];
+		for (int h = 0; h < hillCount; h++)
+		{
+			hills[h] = placeHill(rand, hills, h);
+		}
+		// Draw the walls until the hills are connected.
+		byte[] walls = new byte[cols * rows];
+		boolean[] reachable = new boolean[cols * rows];
+		double density = wallDensity;
+		for (int attempt = 0; ; attempt++)
+		{
+			if (attempt == MAX_ATTEMPTS - 1) density = 0;
+			drawWalls(walls, density, seed + attempt);
+			for (int h = 0; h < hillCount; h++)
+			{
+				clearHill(walls, hills[h]);
+			}
+			if (fill(walls, hills, reachable)) break;
+			density *= 0.9;
+		}
+		// Pack the map: unreachable cells are walls, food spawns are on free cells.
+		long[] wallBits = new long[AntCompiledMap.getWallWordCount(cols, rows)];
+		int[] foods = new int[16];
+		int foodCount = 0;
+		boolean[] hillCells = new boolean[cols * rows];
+		int[][] botHills = new int[botCount][hillCount];
+		for (int b = 0; b < botCount; b++)
+		{
+			for (int h = 0; h < hillCount; h++)
+			{
+				botHills[b][h] = transform(b, hills[h]);
+				hillCells[botHills[b][h]] = true;
+			}
+		}
+		for (int cell = 0; cell < cols * rows; cell++)
+		{
+			if (!reachable[cell])
+			{
+				wallBits[cell >>> 6] |= 1L << cell;
+			}
+			else if (!hillCells[cell] && draw(cell, seed ^ FOOD_SALT) < foodDensity)
+			{
+				if (foodCount == foods.length)
+				{
+					foods = Arrays.copyOf(foods, foodCount * 2);
+				}
+				foods[foodCount++] = cell;
+			}
+		}
+		return new AntCompiledMap(cols, rows, wallBits, botHills,
+				Arrays.copyOf(foods, foodCount));
+	}
+	
+	/**
+	 * Chooses the symmetry that fits the number of bots and the size of the map.
+	 * @return the kind of symmetry.
+	 */
+	private int getSymmetryKind()
+	{
+		if (botCount == 2 && symmetry == Symmetry.ROTATION) return ROTATE_180;
+		if (botCount == 2 && symmetry == Symmetry.MIRROR) return MIRROR_X;
+		if (botCount == 4 && symmetry == Symmetry.ROTATION && cols == rows)
+		{
+			return ROTATE_90;
+		}
+		if (botCount == 4 && symmetry != Symmetry.TRANSLATION) return MIRROR_XY;
+		for (gridCols = botCount; gridCols >= 1; gridCols--)
+		{	// Prefer a single row of bots.
+			if (botCount % gridCols == 0 && cols % gridCols == 0 &&
+					rows % (botCount / gridCols) == 0)
+			{
+				return TRANSLATE;
+			}
+		}
+		throw new IllegalArgumentException("The map cannot be split between the bots");
+	}
+	
+	/**
+	 * Gets the image of a cell by a symmetry of the map. The image by the symmetry of a
+	 * bot of a hill of the first bot is the hill of this bot.
+	 * @param botId the index of the symmetry, 0 is the identity.
+	 * @param cell the index of the cell.
+	 * @return the index of the image of the cell.
+	 */
+	private int transform(int botId, int cell)
+	{
+		int col = cell % cols;
+		int row = cell / cols;
+		switch (kind)
+		{
+		case ROTATE_180:
+			if (botId == 1)
+			{
+				col = cols - 1 - col;
+				row = rows - 1 - row;
+			}
+			break;
+		case ROTATE_90:
+			for (int i = 0; i < botId; i++)
+			{
+				int rotated = rows - 1 - row;
+				row = col;
+				col = rotated;
+			}
+			break;
+		case MIRROR_X:
+			if (botId == 1) col = cols - 1 - col;
+			break;
+		case MIRROR_XY:
+			if ((botId & 1) != 0) col = cols - 1 - col;
+			if ((botId & 2) != 0) row = rows - 1 - row;
+			break;
+		case TRANSLATE:
+			col = (col + (botId % gridCols) * (cols / gridCols)) % cols;
+			row = (row + (botId / gridCols) * (rows / (botCount / gridCols))) % rows;
+			break;
+		}
+		return row * cols + col;
+	}
+	
+	/**
+	 * Draws a random value for the orbit of a cell, the same for all its images.
+	 * @param cell the index of the cell.
+	 * @param salt the seed of the random values.
+	 * @return a value in [0; 1).
+	 */
+	private double draw(int cell, long salt)
+	{
+		int orbit = cell;
+		for (int b = 1; b < botCount; b++)
+		{
+			orbit = Math.min(orbit, transform(b, cell));
+		}
+		// SplitMix64 finalizer.
+		long z = salt + (orbit + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 * Gets the squared distance between two cells on the toroidal map.
+	 * @param a the index of the first cell.
+	 * @param b the index of the second cell.
+	 * @return the squared distance between the cells.
+	 */
+	private int getDistance2(int a, int b)
+	{
+		int dc = Math.abs(a % cols - b % cols);
+		int dr = Math.abs(a / cols - b / cols);
+		dc = Math.min(dc, cols - dc);
+		dr = Math.min(dr, rows - dr);
+		return dc * dc + dr * dr;
+	}
+	
+	/**
+	 * Places a hill of the first bot, as far as possible from the other hills, among
+	 * random positions.
+	 * @param rand the random generator.
+	 * @param hills the hills of the first bot already placed.
+	 * @param count the number of hills already placed.
+	 * @return the cell of the hill.
+	 */
+	private int placeHill(Random rand, int[] hills, int count)
+	{
+		int best = -1;
+		int bestDistance2 = 0;
+		for (int i = 0; i < HILL_CANDIDATES; i++)
+		{
+			int cell = rand.nextInt(cols * rows);
+			// The closest pair of hills, among the images of the candidate and the
+			// images of the hills already placed.
+			int distance2 = Integer.MAX_VALUE;
+			for (int b = 0; b < botCount; b++)
+			{
+				int image = transform(b, cell);
+				for (int other = b + 1; other < botCount; other++)
+				{
+					distance2 = Math.min(distance2, getDistance2(image,
+							transform(other, cell)));
+				}
+				for (int h = 0; h < count; h++)
+				{
+					for (int other = 0; other < botCount; other++)
+					{
+						distance2 = Math.min(distance2, getDistance2(image,
+								transform(other, hills[h])));
+					}
+				}
+			}
+			if (distance2 > bestDistance2)
+			{
+				best = cell;
+				bestDistance2 = distance2;
+			}
+		}
+		if (best == -1)
+		{
+			throw new IllegalArgumentException("The map is too small for its hills");
+		}
+		return best;
+	}
+	
+	/**
+	 * Draws the walls: random noise on the orbits, smoothed into caves.
+	 * @param walls the wall layer to fill, 1 for a wall and 0 for a free cell.
+	 * @param density the density of the noise.
+	 * @param salt the seed of the random values.
+	 */
+	private void drawWalls(byte[] walls, double density, long salt)
+	{
+		for (int cell = 0; cell < walls.length; cell++)
+		{
+			walls[cell] = (byte) (draw(cell, salt) < density ? 1 : 0);
+		}
+		// The smoothing treats every cell alike, so it keeps the symmetries.
+		byte[] next = new byte[walls.length];
+		for (int pass = 0; pass < SMOOTHING_PASSES; pass++)
+		{
+			for (int row = 0; row < rows; row++)
+			{
+				int up = ((row + rows - 1) % rows) * cols;
+				int center = row * cols;
+				int down = ((row + 1) % rows) * cols;
+				for (int col = 0; col < cols; col++)
+				{
+					int left = (col + cols - 1) % cols;
+					int right = (col + 1) % cols;
+					int count = walls[up + left] + walls[up + col] + walls[up + right] +
+							walls[center + left] + walls[center + right] +
+							walls[down + left] + walls[down + col] + walls[down + right];
+					boolean wall = count > 4 || (count == 4 && walls[center + col] != 0);
+					next[center + col] = (byte) (wall ? 1 : 0);
+				}
+			}
+			System.arraycopy(next, 0, walls, 0, walls.length);
+		}
+	}
+	
+	/**
+	 * Removes the walls around the images of a hill.
+	 * @param walls the wall layer.
+	 * @param hill the cell of a hill of the first bot.
+	 */
+	private void clearHill(byte[] walls, int hill)
+	{
+		for (int b = 0; b < botCount; b++)
+		{
+			int image = transform(b, hill);
+			for (int dr = -HILL_CLEARING; dr <= HILL_CLEARING; dr++)
+			{
+				for (int dc = -HILL_CLEARING; dc <= HILL_CLEARING; dc++)
+				{
+					int col = ((image % cols + dc) % cols + cols) % cols;
+					int row = ((image / cols + dr) % rows + rows) % rows;
+					walls[row * cols + col] = 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the free cells that can be reached from the first hill, and checks that all
+	 * the hills are among them.
+	 * @param walls the wall layer.
+	 * @param hills the hills of the first bot.
+	 * @param reachable the array to fill, true for the cells that can be reached.
+	 * @return true if all the hills are connected.
+	 */
+	private boolean fill(byte[] walls, int[] hills, boolean[] reachable)
+	{
+		Arrays.fill(reachable, false);
+		int[] queue = new int[cols * rows];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = hills[0];
+		reachable[hills[0]] = true;
+		while (head < tail)
+		{
+			int cell = queue[head++];
+			int col = cell % cols;
+			int row = cell / cols;
+			for (int direction = 0; direction < 4; direction++)
+			{	// East, west, south and north neighbours.
+				int neighbour;
+				if (direction == 0) neighbour = row * cols + (col + 1) % cols;
+				else if (direction == 1) neighbour = row * cols + (col + cols - 1) % cols;
+				else if (direction == 2) neighbour = ((row + 1) % rows) * cols + col;
+				else neighbour = ((row + rows - 1) % rows) * cols + col;
+				if (!reachable[neighbour] && walls[neighbour] == 0)
+				{
+					reachable[neighbour] = true;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+		for (int b = 0; b < botCount; b++)
+		{
+			for (int hill : hills)
+			{
+				if (!reachable[transform(b, hill)]) return false;
+			}
+		}
+		return true;
+	}
+}
@@ -22,6 +22,8 @@ package ants;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -29,6 +31,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.Random;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -55,24 +58,24 @@ public class AntMapTemplate
 	private static final Logger LOGGER = LoggerFactory.getLogger(AntMapTemplate.class);
 	
 	/** The minimum number of bots a map can take in. */
-	private static final int MIN_BOTCOUNT = 2;
+	static final int MIN_BOTCOUNT = 2;
 	
 	/** The maximum number of bots a map can have. */
 	// Warning: the maximum number of bots should be less than or equals to 10.
 	//          this constraint is imposed by the map file format.
-	private static final int MAX_BOTCOUNT = 10;
+	static final int MAX_BOTCOUNT = 10;
 	
 	/** The minimum number of columns a map can have. */
-	private static final int MIN_COLS = 30;
+	static final int MIN_COLS = 30;
 	
 	/** The maximum number of columns a map can have. */
-	private static final int MAX_COLS = 900;
+	static final int MAX_COLS = 900;
 	
 	/** The minimum number of rows a map can have. */
-	private static final int MIN_ROWS = 30;
+	static final int MIN_ROWS = 30;
 	
 	/** The maximum number of rows a map can have. */
-	private static final int MAX_ROWS = 900;
+	static final int MAX_ROWS = 900;
 	
 	/**
 	 * The number of bots the map is designed for.
@@ -108,6 +111,11 @@ public class AntMapTemplate
 	 */
 	private ArrayList<Cell> walls;
 	
+	/**
+	 * The compiled form of the map, shared by the games played on the map.
+	 */
+	private AntCompiledMap compiledMap;
+	
 	/**
 	 * Creates a new ant map template.
 	 * There is no parameter for this constructor because the map template is supposed to
@@ -122,14 +130,49 @@ public class AntMapTemplate
 	}
 	
 	/**
-	 * Generates a map template.
+	 * Generates a random symmetric map template, with the default settings of the map
+	 * generator.
+	 * @see AntMapGenerator
 	 * @param botCount the number of bots the map is designed for.
 	 * @param cols the desired number of columns.
 	 * @param rows the desired number of rows.
 	 */
 	public void generate(int botCount, int cols, int rows)
 	{
-		// TODO: for future projects, implement this method.
+		generate(botCount, cols, rows, new Random().nextLong());
+	}
+	
+	/**
+	 * Generates a random symmetric map template from a seed, with the default settings
+	 * of the map generator. The same seed always generates the same map.
+	 * @see AntMapGenerator
+	 * @param botCount the number of bots the map is designed for.
+	 * @param cols the desired number of columns.
+	 * @param rows the desired number of rows.
+	 * @param seed the seed of the map generator.
+	 */
+	public void generate(int botCount, int cols, int rows, long seed)
+	{
+		generate(new AntMapGenerator(seed), botCount, cols, rows);
+	}
+	
+	/**
+	 * Generates a random symmetric map template with a map generator.
+	 * @param generator the map generator.
+	 * @param botCount the number of bots the map is designed for.
+	 * @param cols the desired number of columns.
+	 * @param rows the desired number of rows.
+	 */
+	public void generate(AntMapGenerator generator, int botCount, int cols, int rows)
+	{
+		try
+		{
+			load(generator.generate(botCount, cols, rows));
+		}
+		catch (InvalidMapFormatException e)
+		{	// The generator checks the size of the map.
+			throw new IllegalArgumentException(e.getMessage());
+		}
 	}
 	
 	/**
@@ -144,6 +187,24 @@ public class AntMapTemplate
 		// Get the path of the map file.
 		Path file = FileSystems.getDefault().getPath("res/maps/", filename);
 		Charset charset = Charset.forName("utf-8");
+		// http://goo.gl/PQDwqp
+		try (BufferedReader reader = Files.newBufferedReader(file, charset))
+		{
+			load(reader);
+		}
+	}
+	
+	/**
+	 * Loads an ant map from a reader, e.g. a map generated in memory. All the map
+	 * parameters previously present in the structure will be replaced if the parsing is
+	 * successful. The reader is not closed.
+	 * @see Documentation/specifications/mapformat.html
+	 * @param input the reader of the map, in the format of the map files.
+	 */
+	public void load(Reader input) throws IOException, InvalidMapFormatException
+	{
+		BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input
+				: new BufferedReader(input);
 		// Create temporary parameters.
 		// If the file parsing fails, everything should be deleted.
 		int _botCount = -1;
@@ -156,8 +217,6 @@ public class AntMapTemplate
 		int i = 0;	// row iterator
 		int j = 0;	// column iterator
 		// Read the lines of the map file one by one.
-		// http://goo.gl/PQDwqp
-		BufferedReader reader = Files.newBufferedReader(file, charset);
 		String line = reader.readLine();
 		while (line != null)
 		{
@@ -279,6 +338,99 @@ public class AntMapTemplate
 		foodSpawns = _foodSpawns;
 		walls = _walls;
 		// The previous map parameters will be garbage collected soon.
+		compile();
+	}
+	
+	/**
+	 * Compiles the map parameters into the form shared by the games played on the map.
+	 */
+	private synchronized void compile()
+	{
+		compiledMap = new AntCompiledMap(cols, rows, hills, foodSpawns, walls);
+	}
+	
+	/**
+	 * Loads an ant map from its compiled form, e.g. read from the map cache. All the map
+	 * parameters previously present in the structure will be replaced if the compiled
+	 * map is valid. The lists of cells of the map are only rebuilt when they are needed.
+	 * @see AntMapCache
+	 * @param compiledMap the compiled map.
+	 */
+	synchronized void load(AntCompiledMap compiledMap) throws InvalidMapFormatException
+	{
+		int _botCount = compiledMap.getBotCount();
+		if (_botCount > MAX_BOTCOUNT || _botCount < MIN_BOTCOUNT)
+		{
+			throw new InvalidMapFormatException("Number of players is out of bounds");
+		}
+		if (compiledMap.getRows() > MAX_ROWS || compiledMap.getRows() < MIN_ROWS)
+		{
+			throw new InvalidMapFormatException("Number of rows is out of bounds");
+		}
+		if (compiledMap.getCols() > MAX_COLS || compiledMap.getCols() < MIN_COLS)
+		{
+			throw new InvalidMapFormatException("Number of columns is out of bounds");
+		}
+		botCount = _botCount;
+		cols = compiledMap.getCols();
+		rows = compiledMap.getRows();
+		hills = null;
+		foodSpawns = null;
+		walls = null;
+		this.compiledMap = compiledMap;
+	}
+	
+	/**
+	 * Rebuilds the lists of cells of a map loaded from its compiled form.
+	 */
+	private synchronized void expandCells()
+	{
+		if (walls != null) return;
+		ArrayList<ArrayList<Cell>> _hills = new ArrayList<ArrayList<Cell>>(botCount);
+		for (int b = 0; b < botCount; b++)
+		{
+			ArrayList<Cell> botHills = new ArrayList<Cell>();
+			for (int i = 0; i < compiledMap.getHillCount(b); i++)
+			{
+				botHills.add(toCell(compiledMap.getHillCell(b, i)));
+			}
+			_hills.add(botHills);
+		}
+		ArrayList<Cell> _foodSpawns = new ArrayList<Cell>();
+		for (int i = 0; i < compiledMap.getFoodSpawnCount(); i++)
+		{
+			_foodSpawns.add(toCell(compiledMap.getFoodSpawnCell(i)));
+		}
+		ArrayList<Cell> _walls = new ArrayList<Cell>(compiledMap.getWallCount());
+		for (int cell = compiledMap.nextWallCell(0); cell != -1;
+				cell = compiledMap.nextWallCell(cell + 1))
+		{
+			_walls.add(toCell(cell));
+		}
+		hills = _hills;
+		foodSpawns = _foodSpawns;
+		walls = _walls;
+	}
+	
+	/**
+	 * Gets the cell descriptor of a cell index of the compiled map.
+	 * @param cell the index of the cell, {@code row * cols + col}.
+	 * @return the cell descriptor.
+	 */
+	private Cell toCell(int cell)
+	{
+		return new Cell(cell % cols, cell / cols);
+	}
+	
+	/**
+	 * Gets the compiled form of the map, shared by all the games played on the map.
+	 * The map is compiled when it is loaded.
+	 * @return the compiled map.
+	 */
+	public synchronized AntCompiledMap getCompiledMap()
+	{
+		if (compiledMap == null) compile();
+		return compiledMap;
 	}
 	
 	/**
@@ -296,20 +448,7 @@ public class AntMapTemplate
 		// http://goo.gl/PQDwqp
 		try (BufferedWriter writer = Files.newBufferedWriter(file, charset))
 		{
-			writer.write("# " + Calendar.getInstance().getTime() + "\r\n");
-			writer.write("players " + botCount + "\r\n");
-			writer.write("rows " + rows + "\r\n");
-			writer.write("cols " + cols + "\r\n");
-			// Call the _toStringArray that does all the map parsing.
-			ArrayList<StringBuilder> stringBuilders = _toStringArray();
-			// Write the rows one by one.
-			Iterator<StringBuilder> stringBuilderIt = stringBuilders.iterator();
-			StringBuilder stringBuilder;
-			while (stringBuilderIt.hasNext())
-			{
-				stringBuilder = stringBuilderIt.next();
-				writer.write("m " + stringBuilder.toString() + "\r\n");
-			}
+			save(writer);
 		}
 		catch (IOException e)
 		{
@@ -318,6 +457,32 @@ public class AntMapTemplate
 		}
 	}
 	
+	/**
+	 * Writes the ant map to a writer with respect to the map format conventions, e.g.
+	 * to build a set of generated maps out of the maps directory. The writer is not
+	 * closed.
+	 * @see Documentation/specifications/mapformat.html
+	 * @param writer the writer of the map.
+	 * @throws IOException if the map cannot be written.
+	 */
+	public void save(Writer writer) throws IOException
+	{
+		writer.write("# " + Calendar.getInstance().getTime() + "\r\n");
+		writer.write("players " + botCount + "\r\n");
+		writer.write("rows " + rows + "\r\n");
+		writer.write("cols " + cols + "\r\n");
+		// Call the _toStringArray that does all the map parsing.
+		ArrayList<StringBuilder> stringBuilders = _toStringArray();
+		// Write the rows one by one.
+		Iterator<StringBuilder> stringBuilderIt = stringBuilders.iterator();
+		StringBuilder stringBuilder;
+		while (stringBuilderIt.hasNext())
+		{
+			stringBuilder = stringBuilderIt.next();
+			writer.write("m " + stringBuilder.toString() + "\r\n");
+		}
+	}
+	
 	/**
 	 * Exports the map as a JSON object containing the map data.
 	 * This method is used to generate the content of the "map" attribute of the replay
@@ -365,6 +530,7 @@ public class AntMapTemplate
 	private ArrayList<StringBuilder> _toStringArray()
 	{
 		// The string array to return.
+		expandCells();
 		ArrayList<StringBuilder> stringBuilders = new ArrayList<StringBuilder>(rows);
 		int i, j;
 		// First, init all cells to ground
@@ -443,6 +609,7 @@ public class AntMapTemplate
 	 */
 	public Iterator<ArrayList<Cell>> getHillIterator()
 	{
+		expandCells();
 		return hills.iterator();
 	}
 	
@@ -452,6 +619,7 @@ public class AntMapTemplate
 	 */
 	public Iterator<Cell> getFoodSpawnIterator()
 	{
+		expandCells();
 		return foodSpawns.iterator();
 	}
 	
@@ -461,6 +629,7 @@ public class AntMapTemplate
 	 */
 	public Iterator<Cell> getWallIterator()
 	{
+		expandCells();
 		return walls.iterator();
 	}
 }
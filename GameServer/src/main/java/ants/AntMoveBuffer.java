@@ -0,0 +1,207 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.util.Arrays;
+
+import util.Move;
+
+/**
+ * The move buffer of a bot stages the ant moves it ordered for a round. The thread of
+ * the bot communicator only decodes the "gameactions" message into the buffer, and the
+ * game thread applies the moves of every bot in one batch when it updates the game, so
+ * the game map is only changed by the game thread.
+ * The moves are kept in primitive arrays, and the buffer holds three sets of arrays:
+ * the staged moves written by the communicator, the published moves waiting for the
+ * game, and the taken moves read by the game. Publishing and taking the moves only
+ * swap the arrays.
+ * @see AntGame#executeActions
+ * @class
+ * @author Nicolas
+ */
+public class AntMoveBuffer
+{
+	private static final int INITIAL_CAPACITY = 16;
+	
+	/**
+	 * The move directions, indexed by ordinal.
+	 */
+	private static final Move[] DIRECTIONS = Move.values();
+	
+	/**
+	 * The staged moves, only used by the communicator thread.
+	 */
+	private int[] stagedCols;
+	private int[] stagedRows;
+	private byte[] stagedDirections;
+	private int stagedCount;
+	
+	/**
+	 * The published moves, shared by both threads.
+	 */
+	private int[] publishedCols;
+	private int[] publishedRows;
+	private byte[] publishedDirections;
+	private int publishedCount;
+	
+	/**
+	 * The round the published moves were ordered for.
+	 */
+	private int publishedRound;
+	
+	/**
+	 * The taken moves, only used by the game thread.
+	 */
+	private int[] takenCols;
+	private int[] takenRows;
+	private byte[] takenDirections;
+	
+	/**
+	 * Creates an empty move buffer.
+	 * @constructor
+	 */
+	public AntMoveBuffer()
+	{
+		stagedCols = new int[INITIAL_CAPACITY];
+		stagedRows = new int[INITIAL_CAPACITY];
+		stagedDirections = new byte[INITIAL_CAPACITY];
+		publishedCols = new int[INITIAL_CAPACITY];
+		publishedRows = new int[INITIAL_CAPACITY];
+		publishedDirections = new byte[INITIAL_CAPACITY];
+		takenCols = new int[INITIAL_CAPACITY];
+		takenRows = new int[INITIAL_CAPACITY];
+		takenDirections = new byte[INITIAL_CAPACITY];
+		publishedRound = -1;
+	}
+	
+	/**
+	 * Discards the moves staged by the communicator thread.
+	 */
+	public void resetStaged()
+	{
+		stagedCount = 0;
+	}
+	
+	/**
+	 * Stages a move, from the communicator thread.
+	 * @param col the column of the ant to move.
+	 * @param row the row of the ant to move.
+	 * @param direction the direction of the move.
+	 */
+	public void stage(int col, int row, Move direction)
+	{
+		if (stagedCount == stagedCols.length)
+		{
+			int capacity = stagedCount * 2;
+			stagedCols = Arrays.copyOf(stagedCols, capacity);
+			stagedRows = Arrays.copyOf(stagedRows, capacity);
+			stagedDirections = Arrays.copyOf(stagedDirections, capacity);
+		}
+		stagedCols[stagedCount] = col;
+		stagedRows[stagedCount] = row;
+		stagedDirections[stagedCount] = (byte) direction.ordinal();
+		stagedCount++;
+	}
+	
+	/**
+	 * Publishes the staged moves for the game thread, from the communicator thread.
+	 * Moves published earlier and not taken yet are replaced.
+	 * @param round the round the moves were ordered for.
+	 */
+	public synchronized void publish(int round)
+	{
+		int[] cols = publishedCols;
+		int[] rows = publishedRows;
+		byte[] directions = publishedDirections;
+		publishedCols = stagedCols;
+		publishedRows = stagedRows;
+		publishedDirections = stagedDirections;
+		publishedCount = stagedCount;
+		publishedRound = round;
+		stagedCols = cols;
+		stagedRows = rows;
+		stagedDirections = directions;
+		stagedCount = 0;
+	}
+	
+	/**
+	 * Takes the moves published for a round, from the game thread. The moves are then
+	 * read with {@link #getCol}, {@link #getRow} and {@link #getDirection}. Moves
+	 * published for another round came too late and are dropped.
+	 * @param round the round being updated.
+	 * @return the number of taken moves.
+	 */
+	public synchronized int take(int round)
+	{
+		int count = publishedRound == round ? publishedCount : 0;
+		int[] cols = takenCols;
+		int[] rows = takenRows;
+		byte[] directions = takenDirections;
+		takenCols = publishedCols;
+		takenRows = publishedRows;
+		takenDirections = publishedDirections;
+		publishedCols = cols;
+		publishedRows = rows;
+		publishedDirections = directions;
+		publishedCount = 0;
+		publishedRound = -1;
+		return count;
+	}
+	
+	/**
+	 * Drops every move of the buffer.
+	 */
+	public synchronized void clear()
+	{
+		stagedCount = 0;
+		publishedCount = 0;
+		publishedRound = -1;
+	}
+	
+	/**
+	 * Gets the column of a taken move.
+	 * @param index the index of the move.
+	 * @return the column of the ant to move.
+	 */
+	public int getCol(int index)
+	{
+		return takenCols[index];
+	}
+	
+	/**
+	 * Gets the row of a taken move.
+	 * @param index the index of the move.
+	 * @return the row of the ant to move.
+	 */
+	public int getRow(int index)
+	{
+		return takenRows[index];
+	}
+	
+	/**
+	 * Gets the direction of a taken move.
+	 * @param index the index of the move.
+	 * @return the direction of the move.
+	 */
+	public Move getDirection(int index)
+	{
+		return DIRECTIONS[takenDirections[index]];
+	}
+}
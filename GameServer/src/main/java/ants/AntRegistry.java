@@ -0,0 +1,516 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The ant registry is the central store of the ants of a game. The state of the ants
+ * (position, owner, food, dead, moved) is kept in parallel arrays indexed by slot, and
+ * the slots of the registered ants are dense: removing an ant moves the last ant in its
+ * slot. Iterating the ants is then a loop over the slots, and adding or removing an ant
+ * takes constant time. The registry also keeps the list of the ants of each bot and the
+ * number of alive ants of each bot.
+ * An ant is identified by a handle that does not change while the ant is registered.
+ * The handle holds a generation number, so the handle of a removed ant is never taken
+ * for the handle of another ant.
+ * @see Ant
+ * @class
+ * @author Nicolas
+ */
+public class AntRegistry
+{
+	/**
+	 * The value of a handle that identifies no ant.
+	 */
+	public static final int NO_HANDLE = -1;
+	
+	/**
+	 * The number of bits of a handle used by the identifier, the other bits hold the
+	 * generation of the identifier.
+	 */
+	private static final int ID_BITS = 20;
+	
+	/**
+	 * The mask of the identifier in a handle.
+	 */
+	private static final int ID_MASK = (1 << ID_BITS) - 1;
+	
+	/**
+	 * The mask of the generation in a handle, once shifted.
+	 */
+	private static final int GENERATION_MASK = (1 << (31 - ID_BITS)) - 1;
+	
+	/**
+	 * The value of an identifier or a slot that is not used.
+	 */
+	private static final int NONE = -1;
+	
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/**
+	 * The number of registered ants, which is also the number of slots in use.
+	 */
+	private int count;
+	
+	/**
+	 * The ant in each slot.
+	 */
+	private Ant[] ants;
+	
+	/**
+	 * The column identifier of the ant in each slot.
+	 */
+	private int[] cols;
+	
+	/**
+	 * The row identifier of the ant in each slot.
+	 */
+	private int[] rows;
+	
+	/**
+	 * The game identifier of the bot that owns the ant in each slot.
+	 */
+	private int[] owners;
+	
+	/**
+	 * Whether the ant in each slot holds food.
+	 */
+	private boolean[] food;
+	
+	/**
+	 * Whether the ant in each slot is dead.
+	 */
+	private boolean[] dead;
+	
+	/**
+	 * Whether the ant in each slot has moved for this round.
+	 */
+	private boolean[] moved;
+	
+	/**
+	 * The identifier of the ant in each slot.
+	 */
+	private int[] slotIds;
+	
+	/**
+	 * The slot of each identifier, or NONE if the identifier is free.
+	 */
+	private int[] idSlots;
+	
+	/**
+	 * The generation of each identifier, incremented each time the identifier is freed.
+	 */
+	private int[] generations;
+	
+	/**
+	 * The next free identifier after each free identifier, or NONE.
+	 */
+	private int[] nextFreeIds;
+	
+	/**
+	 * The first free identifier, or NONE.
+	 */
+	private int freeId;
+	
+	/**
+	 * The number of identifiers ever used.
+	 */
+	private int idCount;
+	
+	/**
+	 * The identifiers of the ants of each bot.
+	 */
+	private int[][] botIds;
+	
+	/**
+	 * The number of ants of each bot.
+	 */
+	private int[] botCounts;
+	
+	/**
+	 * The index of each identifier in the list of the ants of its bot.
+	 */
+	private int[] idBotIndexes;
+	
+	/**
+	 * The number of alive ants of each bot.
+	 */
+	private int[] aliveCounts;
+	
+	/**
+	 * Creates an empty ant registry.
+	 * @constructor
+	 * @param botCount the number of bots in the game, ant bot identifiers should be lower.
+	 */
+	public AntRegistry(int botCount)
+	{
+		ants = new Ant[INITIAL_CAPACITY];
+		cols = new int[INITIAL_CAPACITY];
+		rows = new int[INITIAL_CAPACITY];
+		owners = new int[INITIAL_CAPACITY];
+		food = new boolean[INITIAL_CAPACITY];
+		dead = new boolean[INITIAL_CAPACITY];
+		moved = new boolean[INITIAL_CAPACITY];
+		slotIds = new int[INITIAL_CAPACITY];
+		idSlots = new int[INITIAL_CAPACITY];
+		generations = new int[INITIAL_CAPACITY];
+		nextFreeIds = new int[INITIAL_CAPACITY];
+		idBotIndexes = new int[INITIAL_CAPACITY];
+		botIds = new int[botCount][INITIAL_CAPACITY];
+		botCounts = new int[botCount];
+		aliveCounts = new int[botCount];
+		clear();
+	}
+	
+	/**
+	 * Removes all the ants from the registry. The removed ants keep their state.
+	 */
+	public void clear()
+	{
+		for (int slot = 0; slot < count; slot++)
+		{
+			ants[slot].detach(food[slot], dead[slot], moved[slot]);
+			ants[slot] = null;
+			// The handle of the removed ant is no longer valid.
+			int id = slotIds[slot];
+			idSlots[id] = NONE;
+			generations[id] = (generations[id] + 1) & GENERATION_MASK;
+		}
+		count = 0;
+		freeId = NONE;
+		idCount = 0;
+		Arrays.fill(botCounts, 0);
+		Arrays.fill(aliveCounts, 0);
+	}
+	
+	/**
+	 * Registers an ant. The state of the ant is now kept by the registry.
+	 * @param ant the ant to register, it should not be registered already.
+	 * @return the handle of the ant.
+	 */
+	public int add(Ant ant)
+	{
+		int id = allocateId();
+		int slot = count++;
+		if (slot == ants.length)
+		{
+			int capacity = ants.length * 2;
+			ants = Arrays.copyOf(ants, capacity);
+			cols = Arrays.copyOf(cols, capacity);
+			rows = Arrays.copyOf(rows, capacity);
+			owners = Arrays.copyOf(owners, capacity);
+			food = Arrays.copyOf(food, capacity);
+			dead = Arrays.copyOf(dead, capacity);
+			moved = Arrays.copyOf(moved, capacity);
+			slotIds = Arrays.copyOf(slotIds, capacity);
+		}
+		int owner = ant.getBotId();
+		ants[slot] = ant;
+		cols[slot] = ant.getCol();
+		rows[slot] = ant.getRow();
+		owners[slot] = owner;
+		food[slot] = ant.hasFood();
+		dead[slot] = ant.isDead();
+		moved[slot] = ant.hasMoved();
+		slotIds[slot] = id;
+		idSlots[id] = slot;
+		// Append the ant to the list of its bot.
+		int index = botCounts[owner]++;
+		if (index == botIds[owner].length)
+		{
+			botIds[owner] = Arrays.copyOf(botIds[owner], index * 2);
+		}
+		botIds[owner][index] = id;
+		idBotIndexes[id] = index;
+		if (!dead[slot]) aliveCounts[owner]++;
+		int handle = (generations[id] << ID_BITS) | id;
+		ant.attach(this, handle);
+		return handle;
+	}
+	
+	/**
+	 * Removes an ant from the registry. The ant keeps its state.
+	 * @param ant the ant to remove.
+	 */
+	public void remove(Ant ant)
+	{
+		int handle = ant.getHandle();
+		if (!isValid(handle)) return;
+		int id = handle & ID_MASK;
+		int slot = idSlots[id];
+		int owner = owners[slot];
+		ant.detach(food[slot], dead[slot], moved[slot]);
+		if (!dead[slot]) aliveCounts[owner]--;
+		// Remove the ant from the list of its bot, the last ant of the bot takes its place.
+		int index = idBotIndexes[id];
+		int lastId = botIds[owner][--botCounts[owner]];
+		botIds[owner][index] = lastId;
+		idBotIndexes[lastId] = index;
+		// The last ant takes the slot of the removed ant.
+		int last = --count;
+		if (slot != last)
+		{
+			ants[slot] = ants[last];
+			cols[slot] = cols[last];
+			rows[slot] = rows[last];
+			owners[slot] = owners[last];
+			food[slot] = food[last];
+			dead[slot] = dead[last];
+			moved[slot] = moved[last];
+			slotIds[slot] = slotIds[last];
+			idSlots[slotIds[slot]] = slot;
+		}
+		ants[last] = null;
+		// Release the identifier, the next ant to get it will have another handle.
+		idSlots[id] = NONE;
+		generations[id] = (generations[id] + 1) & GENERATION_MASK;
+		nextFreeIds[id] = freeId;
+		freeId = id;
+	}
+	
+	/**
+	 * Gets a free identifier.
+	 * @return the identifier.
+	 */
+	private int allocateId()
+	{
+		if (freeId != NONE)
+		{
+			int id = freeId;
+			freeId = nextFreeIds[id];
+			return id;
+		}
+		if (idCount > ID_MASK)
+		{
+			throw new IllegalStateException("Too many ants in the registry");
+		}
+		if (idCount == idSlots.length)
+		{
+			int capacity = idSlots.length * 2;
+			idSlots = Arrays.copyOf(idSlots, capacity);
+			generations = Arrays.copyOf(generations, capacity);
+			nextFreeIds = Arrays.copyOf(nextFreeIds, capacity);
+			idBotIndexes = Arrays.copyOf(idBotIndexes, capacity);
+		}
+		return idCount++;
+	}
+	
+	/**
+	 * Returns whether a handle identifies an ant of the registry.
+	 * @param handle the handle of an ant.
+	 * @return true if the ant is registered, false otherwise.
+	 */
+	public boolean isValid(int handle)
+	{
+		if (handle < 0) return false;
+		int id = handle & ID_MASK;
+		return id < idCount && idSlots[id] != NONE
+				&& generations[id] == handle >>> ID_BITS;
+	}
+	
+	/**
+	 * Gets the slot of a registered ant. The slot of an ant changes when another ant is
+	 * removed, it should not be kept.
+	 * @param handle the handle of the ant.
+	 * @return the slot of the ant.
+	 */
+	public int getSlot(int handle)
+	{
+		return idSlots[handle & ID_MASK];
+	}
+	
+	/**
+	 * Gets the number of registered ants. The slots of the ants are 0 to size - 1.
+	 * @return the number of ants.
+	 */
+	public int size()
+	{
+		return count;
+	}
+	
+	/**
+	 * Gets the ant in a slot.
+	 * @param slot the slot.
+	 * @return the ant.
+	 */
+	public Ant get(int slot)
+	{
+		return ants[slot];
+	}
+	
+	/**
+	 * Gets the column identifier of the ant in a slot.
+	 * @param slot the slot.
+	 * @return the column identifier of the ant.
+	 */
+	public int getCol(int slot)
+	{
+		return cols[slot];
+	}
+	
+	/**
+	 * Gets the row identifier of the ant in a slot.
+	 * @param slot the slot.
+	 * @return the row identifier of the ant.
+	 */
+	public int getRow(int slot)
+	{
+		return rows[slot];
+	}
+	
+	/**
+	 * Gets the game identifier of the bot that owns the ant in a slot.
+	 * @param slot the slot.
+	 * @return the game identifier of the owner.
+	 */
+	public int getOwner(int slot)
+	{
+		return owners[slot];
+	}
+	
+	/**
+	 * Returns whether the ant in a slot holds food.
+	 * @param slot the slot.
+	 * @return true if the ant holds food, false otherwise.
+	 */
+	public boolean hasFood(int slot)
+	{
+		return food[slot];
+	}
+	
+	/**
+	 * Returns whether the ant in a slot is dead.
+	 * @param slot the slot.
+	 * @return true if the ant is dead, false otherwise.
+	 */
+	public boolean isDead(int slot)
+	{
+		return dead[slot];
+	}
+	
+	/**
+	 * Returns whether the ant in a slot has moved for this round.
+	 * @param slot the slot.
+	 * @return true if the ant moved, false otherwise.
+	 */
+	public boolean hasMoved(int slot)
+	{
+		return moved[slot];
+	}
+	
+	/**
+	 * Sets the position of the ant in a slot.
+	 * @param slot the slot.
+	 * @param col the column identifier of the ant.
+	 * @param row the row identifier of the ant.
+	 */
+	void setPosition(int slot, int col, int row)
+	{
+		cols[slot] = col;
+		rows[slot] = row;
+	}
+	
+	/**
+	 * Sets whether the ant in a slot holds food.
+	 * @param slot the slot.
+	 * @param food true if the ant holds food, false otherwise.
+	 */
+	void setFood(int slot, boolean food)
+	{
+		this.food[slot] = food;
+	}
+	
+	/**
+	 * Marks the ant in a slot as dead.
+	 * @param slot the slot.
+	 */
+	void setDead(int slot)
+	{
+		if (dead[slot]) return;
+		dead[slot] = true;
+		aliveCounts[owners[slot]]--;
+	}
+	
+	/**
+	 * Sets whether the ant in a slot has moved for this round.
+	 * @param slot the slot.
+	 * @param moved true if the ant moved, false otherwise.
+	 */
+	public void setMoved(int slot, boolean moved)
+	{
+		this.moved[slot] = moved;
+	}
+	
+	/**
+	 * Gets the number of ants of a bot, dead ants not removed yet included.
+	 * @param botId the game identifier of the bot.
+	 * @return the number of ants of the bot.
+	 */
+	public int getAntCount(int botId)
+	{
+		return botCounts[botId];
+	}
+	
+	/**
+	 * Gets the number of alive ants of a bot.
+	 * @param botId the game identifier of the bot.
+	 * @return the number of alive ants of the bot.
+	 */
+	public int getAliveCount(int botId)
+	{
+		return aliveCounts[botId];
+	}
+	
+	/**
+	 * Gets an iterator over the ants of a bot, dead ants not removed yet included.
+	 * The registry should not be changed during the iteration.
+	 * @param botId the game identifier of the bot.
+	 * @return an iterator over the ants of the bot.
+	 */
+	public Iterator<Ant> iterator(final int botId)
+	{
+		return new Iterator<Ant>()
+		{
+			private int index = 0;
+	
+			@Override
+			public boolean hasNext()
+			{
+				return index < botCounts[botId];
+			}
+	
+			@Override
+			public Ant next()
+			{
+				if (index >= botCounts[botId]) throw new NoSuchElementException();
+				return ants[idSlots[botIds[botId][index++]]];
+			}
+	
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
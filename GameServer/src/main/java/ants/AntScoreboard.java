@@ -0,0 +1,209 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+/**
+ * The scoreboard of an ant game keeps the bots ordered by game score. The order is
+ * updated each time the score of a bot changes, so the end of game conditions are
+ * checked in a single pass over the bots and the ranks are ready when the game ends.
+ * The numbers of alive ants and hills of a bot are read in constant time from its game
+ * informations.
+ * @class
+ * @author Nicolas
+ */
+public class AntScoreboard
+{
+	/**
+	 * The game informations of each bot, indexed by bot identifier.
+	 */
+	private AntBotGameInfo[] botInfos;
+	
+	/**
+	 * The bot identifiers, ordered by decreasing game score.
+	 */
+	private int[] order;
+	
+	/**
+	 * The index of each bot in the order, indexed by bot identifier.
+	 */
+	private int[] positions;
+	
+	/**
+	 * The number of bots on the scoreboard.
+	 */
+	private int botCount;
+	
+	/**
+	 * Creates an empty scoreboard.
+	 * @constructor
+	 * @param capacity the number of bots in the game, bot identifiers should be lower.
+	 */
+	public AntScoreboard(int capacity)
+	{
+		botInfos = new AntBotGameInfo[capacity];
+		order = new int[capacity];
+		positions = new int[capacity];
+		botCount = 0;
+	}
+	
+	/**
+	 * Adds a bot on the scoreboard.
+	 * @param botInfo the game informations of the bot.
+	 */
+	public void addBot(AntBotGameInfo botInfo)
+	{
+		int botId = botInfo.getId();
+		botInfos[botId] = botInfo;
+		order[botCount] = botId;
+		positions[botId] = botCount;
+		botCount++;
+		updateScore(botId);
+	}
+	
+	/**
+	 * Moves a bot in the order after its game score changed.
+	 * @param botId the identifier of the bot.
+	 */
+	public void updateScore(int botId)
+	{
+		if (botInfos[botId] == null) return;
+		int score = botInfos[botId].getGameScore();
+		int pos = positions[botId];
+		// Scores change by a few points, the bot only passes a few neighbours.
+		while (pos > 0 && botInfos[order[pos - 1]].getGameScore() < score)
+		{
+			swap(pos, pos - 1);
+			pos--;
+		}
+		while (pos < botCount - 1 && botInfos[order[pos + 1]].getGameScore() > score)
+		{
+			swap(pos, pos + 1);
+			pos++;
+		}
+	}
+	
+	/**
+	 * Swaps two bots in the order.
+	 * @param i the index of the first bot.
+	 * @param j the index of the second bot.
+	 */
+	private void swap(int i, int j)
+	{
+		int botId = order[i];
+		order[i] = order[j];
+		order[j] = botId;
+		positions[order[i]] = i;
+		positions[order[j]] = j;
+	}
+	
+	/**
+	 * Gets the number of bots still playing, i.e. that control one ant at least.
+	 * @return the number of alive bots.
+	 */
+	public int getAliveCount()
+	{
+		int count = 0;
+		for (int i = 0; i < botCount; i++)
+		{
+			if (botInfos[order[i]].isAlive()) count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns whether the rank is stabilized (i.e. no player with at least one remaining
+	 * hill can beat the score of any of his opponents).
+	 * A player can at most win 2 points per hill of the opponents whose score is higher
+	 * or equal, and an opponent can at most lose 1 point per hill it has. The bots are
+	 * walked by decreasing score, so these bounds are known for each group of bots with
+	 * the same score from the groups above it.
+	 * @return true if the rank is stabilized, false otherwise.
+	 */
+	public boolean isRankStabilized()
+	{
+		// The hills of the bots above the current group, and the lowest score they can
+		// fall to.
+		int hillsAbove = 0;
+		int minScoreAbove = Integer.MAX_VALUE;
+		int start = 0;
+		while (start < botCount)
+		{
+			int score = botInfos[order[start]].getGameScore();
+			// Find the group of bots with the same score, and its largest hill counts.
+			int end = start;
+			int groupHills = 0;
+			int maxHills = -1;
+			int secondMaxHills = -1;
+			while (end < botCount && botInfos[order[end]].getGameScore() == score)
+			{
+				int hills = botInfos[order[end]].getHillCount();
+				groupHills += hills;
+				if (hills > maxHills)
+				{
+					secondMaxHills = maxHills;
+					maxHills = hills;
+				}
+				else if (hills > secondMaxHills)
+				{
+					secondMaxHills = hills;
+				}
+				end++;
+			}
+			for (int i = start; i < end; i++)
+			{
+				AntBotGameInfo botInfo = botInfos[order[i]];
+				if (!botInfo.isAlive() || !botInfo.hasHills()) continue;
+				int hills = botInfo.getHillCount();
+				int maxPlayerScore = score + 2 * (hillsAbove + groupHills - hills);
+				// The lowest score an opponent with the same score can fall to.
+				int otherMaxHills = hills == maxHills ? secondMaxHills : maxHills;
+				int minEqualScore = end - start > 1 ? score - otherMaxHills
+						: Integer.MAX_VALUE;
+				// If we can catch up, the rank is not stabilized yet
+				if (maxPlayerScore >= minScoreAbove || maxPlayerScore > minEqualScore)
+				{
+					return false;
+				}
+			}
+			hillsAbove += groupHills;
+			minScoreAbove = Math.min(minScoreAbove, score - maxHills);
+			start = end;
+		}
+		return true;
+	}
+	
+	/**
+	 * Sets the rank of each bot from the order. Bots with the same score share the same
+	 * rank, which is the number of bots with a higher score.
+	 */
+	public void rank()
+	{
+		int currentRank = 0;
+		for (int i = 0; i < botCount; i++)
+		{
+			AntBotGameInfo botInfo = botInfos[order[i]];
+			if (i > 0 && botInfo.getGameScore() != botInfos[order[i - 1]].getGameScore())
+			{
+				currentRank = i;
+			}
+			botInfo.setRank(currentRank);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.util.Iterator;
+
+import basis.Bot;
+
+/**
+ * The result of an ant game played by the simulator: the map, the length of the game and
+ * the final state of each bot.
+ * @class
+ * @author Nicolas
+ */
+public class AntSimulationResult
+{
+	/**
+	 * The name of the map file the game was played on.
+	 */
+	private String mapName;
+	
+	/**
+	 * The number of rounds played.
+	 */
+	private int roundCount;
+	
+	/**
+	 * The time spent playing the game (in milliseconds).
+	 */
+	private long durationMs;
+	
+	/**
+	 * The nicks of the bots, indexed by bot identifier.
+	 */
+	private String[] nicks;
+	
+	/**
+	 * The game scores of the bots, indexed by bot identifier.
+	 */
+	private int[] scores;
+	
+	/**
+	 * The ranks of the bots, indexed by bot identifier. The best rank is 0.
+	 */
+	private int[] ranks;
+	
+	/**
+	 * The reasons why the bots stopped playing, indexed by bot identifier.
+	 */
+	private String[] statuses;
+	
+	/**
+	 * Creates the result of a terminated ant game.
+	 * @constructor
+	 * @param mapName the name of the map file the game was played on.
+	 * @param game the terminated game.
+	 * @param durationMs the time spent playing the game (in milliseconds).
+	 */
+	public AntSimulationResult(String mapName, AntGame game, long durationMs)
+	{
+		this.mapName = mapName;
+		this.durationMs = durationMs;
+		roundCount = game.getCurRound();
+		int botCount = 0;
+		Iterator<Bot> botIt = game.getBotIterator();
+		while (botIt.hasNext())
+		{
+			botIt.next();
+			botCount++;
+		}
+		nicks = new String[botCount];
+		scores = new int[botCount];
+		ranks = new int[botCount];
+		statuses = new String[botCount];
+		botIt = game.getBotIterator();
+		while (botIt.hasNext())
+		{
+			Bot bot = botIt.next();
+			AntBotGameInfo botInfo = (AntBotGameInfo) game.getBotInfo(bot);
+			int id = botInfo.getId();
+			nicks[id] = bot.getNick();
+			scores[id] = botInfo.getGameScore();
+			ranks[id] = botInfo.getRank();
+			statuses[id] = botInfo.getDeathReason();
+		}
+	}
+	
+	/**
+	 * Gets the name of the map file the game was played on.
+	 * @return the name of the map file.
+	 */
+	public String getMapName()
+	{
+		return mapName;
+	}
+	
+	/**
+	 * Gets the number of rounds played.
+	 * @return the number of rounds.
+	 */
+	public int getRoundCount()
+	{
+		return roundCount;
+	}
+	
+	/**
+	 * Gets the time spent playing the game.
+	 * @return the duration of the game (in milliseconds).
+	 */
+	public long getDurationMs()
+	{
+		return durationMs;
+	}
+	
+	/**
+	 * Gets the number of bots in the game.
+	 * @return the bot count.
+	 */
+	public int getBotCount()
+	{
+		return nicks.length;
+	}
+	
+	/**
+	 * Gets the nick of a bot.
+	 * @param botId the identifier of the bot in the game.
+	 * @return the nick of the bot.
+	 */
+	public String getNick(int botId)
+	{
+		return nicks[botId];
+	}
+	
+	/**
+	 * Gets the final game score of a bot.
+	 * @param botId the identifier of the bot in the game.
+	 * @return the game score of the bot.
+	 */
+	public int getScore(int botId)
+	{
+		return scores[botId];
+	}
+	
+	/**
+	 * Gets the rank of a bot at the end of the game. The best rank is 0.
+	 * @param botId the identifier of the bot in the game.
+	 * @return the rank of the bot.
+	 */
+	public int getRank(int botId)
+	{
+		return ranks[botId];
+	}
+	
+	/**
+	 * Gets the reason why a bot stopped playing (e.g. "survived", "eliminated".)
+	 * @param botId the identifier of the bot in the game.
+	 * @return the status of the bot.
+	 */
+	public String getStatus(int botId)
+	{
+		return statuses[botId];
+	}
+	
+	/**
+	 * Returns a line describing the result, as printed by the simulator.
+	 * @return a string representation of the result.
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(mapName).append(": ").append(roundCount).append(" rounds in ")
+				.append(durationMs).append(" ms");
+		for (int i = 0; i < nicks.length; i++)
+		{
+			sb.append(i == 0 ? ", " : "; ").append(nicks[i]).append(" rank ")
+					.append(ranks[i]).append(" score ").append(scores[i]).append(" (")
+					.append(statuses[i]).append(")");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,282 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import basis.Bot;
+import basis.GameManager;
+import basis.ReplayArchive;
+
+/**
+ * The simulator plays ant games headless, without database, network or game server.
+ * The games are played by the fake bots of the game, which play as soon as they receive
+ * their game state, so a game never waits for loading or game actions. Games are played
+ * in parallel, one game per thread, and give their results and optionally their replays.
+ * { @code
+ *   AntSimulator simulator = new AntSimulator(4);
+ *   simulator.addMap("HA_cell_maze_p04_19.map");
+ *   List<AntSimulationResult> results = simulator.run(1000);
+ *   simulator.shutdown(); }
+ * It can also be run from the command line:
+ * { @code
+ *   java ants.AntSimulator [-games N] [-threads N] [-rounds N] [-replays DIR] [map...] }
+ * @class
+ * @author Nicolas
+ */
+public class AntSimulator
+{
+	/**
+	 * The names of the map files, in the order they were added.
+	 */
+	private ArrayList<String> mapNames;
+	
+	/**
+	 * The map templates the games are played on, in the order they were added.
+	 */
+	private ArrayList<AntMapTemplate> maps;
+	
+	/**
+	 * The maximum number of rounds of a game.
+	 */
+	private int maxRound;
+	
+	/**
+	 * The archive where the replays of the games are written, or null.
+	 */
+	private ReplayArchive replayArchive;
+	
+	/**
+	 * The pool of threads playing the games.
+	 */
+	private ExecutorService executor;
+	
+	/**
+	 * Creates a simulator.
+	 * @constructor
+	 * @param threadCount the number of games played at the same time.
+	 */
+	public AntSimulator(int threadCount)
+	{
+		mapNames = new ArrayList<String>();
+		maps = new ArrayList<AntMapTemplate>();
+		maxRound = GameManager.MAX_ROUND;
+		replayArchive = null;
+		executor = Executors.newFixedThreadPool(threadCount);
+	}
+	
+	/**
+	 * Adds a map the games can be played on.
+	 * @param filename the name of the map file in the maps directory.
+	 * @throws IOException if the map file cannot be read.
+	 * @throws InvalidMapFormatException if the map file is not a valid map.
+	 */
+	public void addMap(String filename) throws IOException, InvalidMapFormatException
+	{
+		AntMapTemplate map = new AntMapTemplate();
+		map.loadFromFile(filename);
+		mapNames.add(filename);
+		maps.add(map);
+	}
+	
+	/**
+	 * Plays games on the maps of the simulator and waits for their results.
+	 * The maps are used in turn: the game i is played on the map i modulo the map count.
+	 * @param gameCount the number of games to play.
+	 * @return the results of the games, in the order the games were asked.
+	 * @throws IllegalStateException if the simulator has no map.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public List<AntSimulationResult> run(int gameCount) throws InterruptedException
+	{
+		if (maps.isEmpty())
+		{
+			throw new IllegalStateException("The simulator has no map to play on");
+		}
+		ArrayList<Future<AntSimulationResult>> futures =
+				new ArrayList<Future<AntSimulationResult>>(gameCount);
+		for (int i = 0; i < gameCount; i++)
+		{
+			final int mapId = i % maps.size();
+			futures.add(executor.submit(new Callable<AntSimulationResult>()
+			{
+				@Override
+				public AntSimulationResult call()
+				{
+					return play(mapNames.get(mapId), maps.get(mapId));
+				}
+			}));
+		}
+		ArrayList<AntSimulationResult> results =
+				new ArrayList<AntSimulationResult>(gameCount);
+		for (Future<AntSimulationResult> future : futures)
+		{
+			try
+			{
+				results.add(future.get());
+			}
+			catch (ExecutionException e)
+			{	// A broken game is a bug of the game, not of the simulation.
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw new IllegalStateException(cause);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Plays a game on a map in the calling thread.
+	 * @param mapName the name of the map file, reported in the result.
+	 * @param map the template of the map.
+	 * @return the result of the game.
+	 */
+	public AntSimulationResult play(String mapName, AntMapTemplate map)
+	{
+		long startNs = System.nanoTime();
+		// An empty bot list: the game is filled with fake bots.
+		AntGame game = new AntGame(new ArrayList<Bot>(), maxRound,
+				GameManager.RESPONSE_TIME_MS, 0, map, AntGameManager.FOOD_RESPAWN_DELAY,
+				AntGameManager.VIEW_RADIUS_2, AntGameManager.ATTACK_RADIUS_2);
+		game.setReplayArchive(replayArchive);
+		// Same phases as a game task, without the waits: fake bots play immediately.
+		game.init();
+		game.sendGameStart();
+		while (!game.isFinished())
+		{
+			game.sendGameState();
+			game.muteNonPlayerBots();
+			game.update();
+		}
+		game.terminate();
+		game.computeBotScores();
+		// Nobody reads the "gameend" message, only the replay is kept.
+		game.archiveReplay();
+		return new AntSimulationResult(mapName, game,
+				(System.nanoTime() - startNs) / 1000000);
+	}
+	
+	/**
+	 * Stops the threads of the simulator once the games being played are over.
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+	
+	/**
+	 * Sets the maximum number of rounds of the games played from now on.
+	 * @param maxRound the maximum round count.
+	 */
+	public void setMaxRound(int maxRound)
+	{
+		this.maxRound = maxRound;
+	}
+	
+	/**
+	 * Sets the archive where the replays of the games played from now on are written.
+	 * @param replayArchive the replay archive, or null to not archive the replays.
+	 */
+	public void setReplayArchive(ReplayArchive replayArchive)
+	{
+		this.replayArchive = replayArchive;
+	}
+	
+	/**
+	 * Plays games from the command line and prints their results.
+	 * Options are -games (number of games, 1 per map by default), -threads (number of
+	 * games played at the same time, 1 per processor by default), -rounds (maximum
+	 * number of rounds) and -replays (directory where the gzipped replays are written).
+	 * The other arguments are map files of the maps directory, every map by default.
+	 * @param args the command line arguments.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		int gameCount = -1;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		int maxRound = GameManager.MAX_ROUND;
+		File replayDir = null;
+		ArrayList<String> mapFiles = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-games"))
+			{
+				gameCount = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-threads"))
+			{
+				threadCount = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-rounds"))
+			{
+				maxRound = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-replays"))
+			{
+				replayDir = new File(args[++i]);
+			}
+			else
+			{
+				mapFiles.add(args[i]);
+			}
+		}
+		if (mapFiles.isEmpty())
+		{	// Play on every map of the maps directory.
+			File[] files = new File("res/maps/").listFiles();
+			if (files != null)
+			{
+				for (File file : files)
+				{
+					if (file.getName().endsWith(".map")) mapFiles.add(file.getName());
+				}
+			}
+		}
+		AntSimulator simulator = new AntSimulator(threadCount);
+		for (String mapFile : mapFiles)
+		{
+			simulator.addMap(mapFile);
+		}
+		simulator.setMaxRound(maxRound);
+		if (replayDir != null)
+		{
+			simulator.setReplayArchive(new ReplayArchive(replayDir, true));
+		}
+		if (gameCount < 0) gameCount = mapFiles.size();
+		long startNs = System.nanoTime();
+		List<AntSimulationResult> results = simulator.run(gameCount);
+		long elapsedMs = Math.max(1, (System.nanoTime() - startNs) / 1000000);
+		simulator.shutdown();
+		for (AntSimulationResult result : results)
+		{
+			System.out.println(result);
+		}
+		System.out.println(gameCount + " games in " + elapsedMs + " ms on " + threadCount
+				+ " threads (" + (gameCount * 60000L / elapsedMs) + " games per minute)");
+	}
+}
@@ -0,0 +1,126 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary framing of the protocol. A client can ask at login to exchange binary
+ * frames instead of JSON lines. A frame starts with its length as a varint, followed by
+ * a type byte and the payload of the frame. Any message can be sent in a JSON frame,
+ * whose payload is the usual JSON message, and the game messages sent every round have
+ * a compact typed encoding.
+ * Varints are unsigned integers written 7 bits at a time, lowest bits first, the high
+ * bit of a byte being set when more bytes follow.
+ * @see Documentation/protocol/binary.html
+ * @class
+ * @author Nicolas
+ */
+public final class BinaryFrames
+{
+	/**
+	 * The type of a frame holding a JSON message, in both directions.
+	 */
+	public static final byte JSON = 0;
+	
+	/**
+	 * The type of a frame holding a typed "gamestate" message, sent by the server.
+	 */
+	public static final byte GAMESTATE = 1;
+	
+	/**
+	 * The type of a frame holding a typed "gameactions" message, sent by the client.
+	 */
+	public static final byte GAMEACTIONS = 2;
+	
+	/**
+	 * The maximum number of bytes of a varint.
+	 */
+	public static final int MAX_VARINT_SIZE = 5;
+	
+	private BinaryFrames()
+	{
+	}
+	
+	/**
+	 * Builds the header of a frame: the length of the frame and its type.
+	 * @param type the type of the frame.
+	 * @param payloadLength the number of bytes of the payload.
+	 * @return the bytes of the header.
+	 */
+	public static byte[] header(byte type, int payloadLength)
+	{
+		int length = payloadLength + 1;
+		byte[] header = new byte[varintSize(length) + 1];
+		int pos = writeVarint(header, 0, length);
+		header[pos] = type;
+		return header;
+	}
+	
+	/**
+	 * Gets the number of bytes of a varint.
+	 * @param value the value of the varint, should not be negative.
+	 * @return the number of bytes needed to write the value.
+	 */
+	public static int varintSize(int value)
+	{
+		int size = 1;
+		while ((value >>>= 7) != 0) size++;
+		return size;
+	}
+	
+	/**
+	 * Writes a varint in an array.
+	 * @param bytes the array to write in, should be large enough.
+	 * @param pos the index of the first byte to write.
+	 * @param value the value to write, should not be negative.
+	 * @return the index following the last written byte.
+	 */
+	public static int writeVarint(byte[] bytes, int pos, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[pos++] = (byte) value;
+		return pos;
+	}
+	
+	/**
+	 * Reads a varint from a buffer.
+	 * @param buffer the buffer to read.
+	 * @return the value of the varint.
+	 * @throws BufferUnderflowException if the buffer ends before the varint.
+	 * @throws IllegalArgumentException if the varint is longer than 5 bytes.
+	 */
+	public static int readVarint(ByteBuffer buffer)
+	{
+		int value = 0;
+		for (int shift = 0; shift < 7 * MAX_VARINT_SIZE; shift += 7)
+		{
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+		throw new IllegalArgumentException("Varint too long");
+	}
+}
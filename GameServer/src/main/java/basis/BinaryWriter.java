@@ -0,0 +1,93 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of bytes used to write the payload of a binary frame.
+ * @see BinaryFrames
+ * @class
+ * @author Nicolas
+ */
+public class BinaryWriter
+{
+	/**
+	 * The bytes written so far, followed by free space.
+	 */
+	private byte[] bytes;
+	
+	/**
+	 * The number of bytes written.
+	 */
+	private int size;
+	
+	/**
+	 * Creates an empty writer.
+	 * @constructor
+	 * @param capacity the number of bytes the writer can take before growing.
+	 */
+	public BinaryWriter(int capacity)
+	{
+		bytes = new byte[Math.max(capacity, 16)];
+		size = 0;
+	}
+	
+	/**
+	 * Makes room for a number of bytes.
+	 * @param count the number of bytes about to be written.
+	 */
+	private void ensureCapacity(int count)
+	{
+		if (size + count > bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+		}
+	}
+	
+	/**
+	 * Writes a byte.
+	 * @param value the byte to write.
+	 */
+	public void writeByte(int value)
+	{
+		ensureCapacity(1);
+		bytes[size++] = (byte) value;
+	}
+	
+	/**
+	 * Writes a varint.
+	 * @param value the value to write, should not be negative.
+	 */
+	public void writeVarint(int value)
+	{
+		ensureCapacity(BinaryFrames.MAX_VARINT_SIZE);
+		size = BinaryFrames.writeVarint(bytes, size, value);
+	}
+	
+	/**
+	 * Gets the bytes written.
+	 * @return a copy of the bytes written.
+	 */
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(bytes, size);
+	}
+}
@@ -207,7 +207,7 @@ public class Bot
 		{	// If the handler is null, it probably means that the bot does not want its
 			// score to be updated in the database.
 			// Actually, I use it to prevent the score of a fake bot from being updated
-			// (see GameThread.java, AntGame.java in ants pkg)
+			// (see GameTask.java, AntGame.java in ants pkg)
 			// Poor fix but... It works! neeh-
 			this.score = score;
 			dbHandler.updateBotScore(this);
@@ -54,6 +54,13 @@ public class BotGameInfo
 	 */
 	private long gamestateTimestampMs;
 	
+	/**
+	 * The round of the current game state, memorized with its timestamp.
+	 * The actions the bot sends in reply are only applied to this round, even if the game
+	 * has already moved on to the next round when they are received.
+	 */
+	private int gamestateRound;
+	
 	/**
 	 * Whether the bot was muted in its game.
 	 */
@@ -81,6 +88,7 @@ public class BotGameInfo
 	{
 		played = true;
 		gamestateTimestampMs = 0;
+		gamestateRound = -1;
 		muted = false;
 		gameScore = 0;
 	}
@@ -112,6 +120,15 @@ public class BotGameInfo
 		return gamestateTimestampMs;
 	}
 	
+	/**
+	 * Gets the round of the last game state sent to this bot.
+	 * @return the round of the last "gamestate" message sent by the server.
+	 */
+	public int getGamestateRound()
+	{
+		return gamestateRound;
+	}
+	
 	/**
 	 * Gets whether the bot is muted for the game.
 	 * @return true if the bot is muted, false otherwise.
@@ -149,6 +166,16 @@ public class BotGameInfo
 		this.gamestateTimestampMs = gamestateTimestampMs;
 	}
 	
+	/**
+	 * Sets the round of the last game state sent to this bot.
+	 * @param gamestateRound the round of the last "gamestate" message sent by the
+	 *        server.
+	 */
+	public void setGamestateRound(int gamestateRound)
+	{
+		this.gamestateRound = gamestateRound;
+	}
+	
 	/**
 	 * Mutes or unmutes the bot for the game.
 	 * @param muted true to mute the bot, false otherwise.
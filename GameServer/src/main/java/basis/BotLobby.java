@@ -0,0 +1,311 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Represents the bots waiting for a game in the lobby.
+ * The lobby keeps the compatibility relation between its bots: a bot accepts to fight the
+ * bots whose score is in a window centered on its own score and widened by its priority.
+ * Each bot has a slot in the lobby, and the bots it accepts are kept as a bitset of
+ * slots.
+ * The bitsets are updated when a bot joins or leaves the lobby, or when its priority
+ * grows, so that the cost of an update only depends on the bots it concerns.
+ * @class
+ * @author Nicolas
+ */
+public class BotLobby
+{
+	/**
+	 * The slots of the bots in the lobby.
+	 */
+	private HashMap<Bot, Integer> slots = new HashMap<>();
+	
+	/**
+	 * The bots of the lobby, indexed by slot.
+	 */
+	private ArrayList<Bot> bots = new ArrayList<>();
+	
+	/**
+	 * The scores of the bots of the lobby when they were indexed, indexed by slot.
+	 */
+	private ArrayList<Double> scores = new ArrayList<>();
+	
+	/**
+	 * The slots which are not used by a bot.
+	 */
+	private BitSet freeSlots = new BitSet();
+	
+	/**
+	 * The slots of the bots accepted by the bot of a slot.
+	 */
+	private ArrayList<BitSet> accepted = new ArrayList<>();
+	
+	/**
+	 * The slots of the bots accepting the bot of a slot.
+	 */
+	private ArrayList<BitSet> acceptedBy = new ArrayList<>();
+	
+	/**
+	 * The slots of the bots of the lobby, indexed by score.
+	 */
+	private TreeMap<Double, BitSet> scoreIndex = new TreeMap<>();
+	
+	/**
+	 * The highest priority a bot of the lobby has had since the lobby was last empty.
+	 */
+	private int maxPriority;
+	
+	/**
+	 * Gets the number of bots in the lobby.
+	 * @return the number of bots.
+	 */
+	public int size()
+	{
+		return slots.size();
+	}
+	
+	/**
+	 * Gets the bots of the lobby.
+	 * @return the set of bots, which must not be modified.
+	 */
+	public Set<Bot> getBots()
+	{
+		return slots.keySet();
+	}
+	
+	/**
+	 * Returns whether a bot is in the lobby.
+	 * @param bot the bot.
+	 * @return true if the bot is in the lobby.
+	 */
+	public boolean contains(Bot bot)
+	{
+		return slots.containsKey(bot);
+	}
+	
+	/**
+	 * Returns whether a bot of the lobby accepts to fight another bot of the lobby.
+	 * @param bot the bot.
+	 * @param other the other bot.
+	 * @return true if the score of the other bot is in the window of the bot.
+	 */
+	public boolean accepts(Bot bot, Bot other)
+	{
+		Integer slot = slots.get(bot);
+		Integer otherSlot = slots.get(other);
+		return slot != null && otherSlot != null && accepted.get(slot).get(otherSlot);
+	}
+	
+	/**
+	 * Gets the bots accepted by a bot of the lobby.
+	 * @param bot the bot.
+	 * @return the list of bots, in slot order.
+	 */
+	public ArrayList<Bot> getAccepted(Bot bot)
+	{
+		ArrayList<Bot> list = new ArrayList<>();
+		BitSet set = accepted.get(slots.get(bot));
+		for (int slot = set.nextSetBit(0); slot >= 0; slot = set.nextSetBit(slot + 1))
+		{
+			list.add(bots.get(slot));
+		}
+		return list;
+	}
+	
+	/**
+	 * Adds a bot in the lobby.
+	 * The bot is linked to the bots it accepts and to the bots accepting it.
+	 * @param bot the bot to add.
+	 * @return true if the bot was not already in the lobby.
+	 */
+	public boolean add(Bot bot)
+	{
+		if (slots.containsKey(bot))
+		{
+			return false;
+		}
+		int slot = freeSlots.nextSetBit(0);
+		if (slot < 0)
+		{	// Every slot is used, create a new one.
+			slot = bots.size();
+			bots.add(bot);
+			scores.add(null);
+			accepted.add(new BitSet());
+			acceptedBy.add(new BitSet());
+		}
+		else
+		{
+			freeSlots.clear(slot);
+			bots.set(slot, bot);
+		}
+		slots.put(bot, slot);
+		double score = bot.getScore();
+		scores.set(slot, score);
+		maxPriority = Math.max(maxPriority, bot.getPriority());
+		// Only the bots closer than the highest priority can accept the bot.
+		for (BitSet set : scoreIndex.subMap(score - maxPriority - 1, true,
+				score + maxPriority + 1, true).values())
+		{
+			for (int other = set.nextSetBit(0); other >= 0;
+					other = set.nextSetBit(other + 1))
+			{
+				Bot otherBot = bots.get(other);
+				if (isInWindow(bot, otherBot.getScore()))
+				{
+					link(slot, other);
+				}
+				if (isInWindow(otherBot, score))
+				{
+					link(other, slot);
+				}
+			}
+		}
+		BitSet set = scoreIndex.get(score);
+		if (set == null)
+		{
+			set = new BitSet();
+			scoreIndex.put(score, set);
+		}
+		set.set(slot);
+		return true;
+	}
+	
+	/**
+	 * Removes a bot from the lobby.
+	 * The bot is unlinked from the bots it accepts and from the bots accepting it.
+	 * @param bot the bot to remove.
+	 * @return true if the bot was in the lobby.
+	 */
+	public boolean remove(Bot bot)
+	{
+		Integer slot = slots.remove(bot);
+		if (slot == null)
+		{
+			return false;
+		}
+		BitSet set = accepted.get(slot);
+		for (int other = set.nextSetBit(0); other >= 0; other = set.nextSetBit(other + 1))
+		{
+			acceptedBy.get(other).clear(slot);
+		}
+		set.clear();
+		set = acceptedBy.get(slot);
+		for (int other = set.nextSetBit(0); other >= 0; other = set.nextSetBit(other + 1))
+		{
+			accepted.get(other).clear(slot);
+		}
+		set.clear();
+		double score = scores.get(slot);
+		set = scoreIndex.get(score);
+		set.clear(slot);
+		if (set.isEmpty())
+		{
+			scoreIndex.remove(score);
+		}
+		bots.set(slot, null);
+		scores.set(slot, null);
+		freeSlots.set(slot);
+		if (slots.isEmpty())
+		{
+			maxPriority = 0;
+		}
+		return true;
+	}
+	
+	/**
+	 * Increments the priority of a bot of the lobby.
+	 * The window of the bot is widened by one on each side, so the bot is only linked to
+	 * the bots on the edges of its new window.
+	 * @param bot the bot.
+	 */
+	public void incPriority(Bot bot)
+	{
+		int slot = slots.get(bot);
+		double score = bot.getScore();
+		int priority = bot.getPriority();
+		bot.incPriority();
+		maxPriority = Math.max(maxPriority, priority + 1);
+		linkAll(slot, scoreIndex.subMap(score - (priority + 1), true,
+				score - priority, false));
+		linkAll(slot, scoreIndex.subMap(score + priority, false,
+				score + (priority + 1), true));
+	}
+	
+	/**
+	 * Increments the priority of every bot of the lobby.
+	 */
+	public void incPriorities()
+	{
+		for (Bot bot : slots.keySet())
+		{
+			incPriority(bot);
+		}
+	}
+	
+	/**
+	 * Returns whether a score is in the window of a bot.
+	 * @param bot the bot.
+	 * @param score the score.
+	 * @return true if the bot accepts the bots with this score.
+	 */
+	private static boolean isInWindow(Bot bot, double score)
+	{
+		return score >= bot.getScore() - bot.getPriority()
+				&& score <= bot.getScore() + bot.getPriority();
+	}
+	
+	/**
+	 * Links the bot of a slot to the bots of a part of the score index.
+	 * @param slot the slot of the bot.
+	 * @param range the part of the score index.
+	 */
+	private void linkAll(int slot, Map<Double, BitSet> range)
+	{
+		for (BitSet set : range.values())
+		{
+			for (int other = set.nextSetBit(0); other >= 0;
+					other = set.nextSetBit(other + 1))
+			{
+				link(slot, other);
+			}
+		}
+	}
+	
+	/**
+	 * Makes the bot of a slot accept the bot of another slot.
+	 * @param slot the slot of the bot.
+	 * @param other the slot of the accepted bot.
+	 */
+	private void link(int slot, int other)
+	{
+		if (slot != other)
+		{
+			accepted.get(slot).set(other);
+			acceptedBy.get(other).set(slot);
+		}
+	}
+}
@@ -19,9 +19,15 @@
 
 package basis;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -40,6 +46,12 @@ public abstract class Game
 {
 	private static final Logger LOGGER = LoggerFactory.getLogger(Game.class);
 	
+	/**
+	 * The pool shared by all the games to build the game states of their bots in
+	 * parallel.
+	 */
+	private static final ForkJoinPool STATE_POOL = new ForkJoinPool();
+	
 	/**
 	 * The list of bots in the game.
 	 * If a bot was kicked during the match, it remains in this list but no longer
@@ -53,11 +65,16 @@ public abstract class Game
 	protected Map<Bot, BotGameInfo> botInfos;
 	
 	/**
-	 * Whether all bots that should play during the current round have sent their game
-	 * actions. This boolean can be tested to stop waiting for game actions when the game
-	 * won't receive those anymore.
+	 * The barrier released when all bots that should play during the current round have
+	 * sent their game actions. The game waits on it to stop waiting for game actions as
+	 * soon as the game won't receive those anymore.
+	 */
+	private final TurnBarrier turnBarrier = new TurnBarrier();
+	
+	/**
+	 * The time spent by the game waiting for game actions, and why the waits ended.
 	 */
-	private boolean ready;
+	private final TurnMetrics turnMetrics = new TurnMetrics();
 	
 	/**
 	 * The time the server has to wait after "gamestart" message. (in milliseconds)
@@ -72,9 +89,10 @@ public abstract class Game
 	
 	/**
 	 * The current round identifier of the game.
-	 * @note the counter should be manually incremented in the update method.
+	 * @note the counter should be manually incremented in the update method. It is read
+	 *       by the communicator threads when they receive game actions.
 	 */
-	protected int curRound;
+	protected volatile int curRound;
 	
 	/**
 	 * The maximum round count of the game.
@@ -184,11 +202,30 @@ public abstract class Game
 	 * @see Documentation/protocol/gameactions.html
 	 * @param bot the bot which gave the actions.
 	 * @param content the content of the "gameactions" message.
+	 * @param round the round of the game state the bot replied to, the actions must only
+	 *        be applied to this round.
 	 * @throws JSONException if the actions object is not correctly formed.
 	 */
-	protected abstract void executeActions(Bot bot, JSONObject content) throws
+	protected abstract void executeActions(Bot bot, JSONObject content, int round) throws
 		JSONException;
 	
+	/**
+	 * Executes the actions of a bot received in a binary frame. You should override this
+	 * method if your game has a binary encoding of its actions, by default the actions
+	 * are rejected.
+	 * @see Documentation/protocol/binary.html
+	 * @param bot the bot which gave the actions.
+	 * @param actions the payload of the "gameactions" frame.
+	 * @param round the round of the game state the bot replied to, the actions must only
+	 *        be applied to this round.
+	 * @throws JSONException if the actions are not correctly formed.
+	 */
+	protected void executeActions(Bot bot, ByteBuffer actions, int round)
+			throws JSONException
+	{
+		throw new JSONException("Binary game actions are not supported by this game");
+	}
+	
 	/**
 	 * Receives the actions of a bot for the current round.
 	 * Returns the error ID associated with the message: 104 if the bot was too late to
@@ -201,6 +238,34 @@ public abstract class Game
 	 * @throws JSONException if the content is not correctly formed.
 	 */
 	public int receiveActions(Bot bot, JSONObject content) throws JSONException
+	{
+		return receiveActions(bot, content, null);
+	}
+	
+	/**
+	 * Receives the actions of a bot for the current round, sent in a binary frame.
+	 * Returns the same error IDs as the JSON "gameactions" message.
+	 * @see Documentation/protocol/binary.html
+	 * @param bot the bot who gave the actions.
+	 * @param actions the payload of the "gameactions" frame.
+	 * @return the error ID of the "gameactions" message.
+	 * @throws JSONException if the actions are not correctly formed.
+	 */
+	public int receiveActions(Bot bot, ByteBuffer actions) throws JSONException
+	{
+		return receiveActions(bot, null, actions);
+	}
+	
+	/**
+	 * Receives the actions of a bot for the current round, in either form.
+	 * @param bot the bot who gave the actions.
+	 * @param content the content of the "gameactions" message, or null.
+	 * @param actions the payload of the "gameactions" frame, or null.
+	 * @return the error ID of the "gameactions" message.
+	 * @throws JSONException if the actions are not correctly formed.
+	 */
+	private int receiveActions(Bot bot, JSONObject content, ByteBuffer actions)
+			throws JSONException
 	{
 		int error;
 		// Get the current state of the bot.
@@ -211,24 +276,19 @@ public abstract class Game
 			// Check if the bot has not already played for this round.
 			if (!botInfo.hasPlayed())
 			{
+				// The round is read before the deadline is checked, the game may time out
+				// the round and update the game before the actions are executed.
+				int round = botInfo.getGamestateRound();
 				// Check if the bot has not exceeded the response time limit.
 				if (System.currentTimeMillis() - botInfo.getGamestateTimestampMs() <=
 					responseTimeMs)
 				{
 					botInfo.setPlayed(true);
-					executeActions(bot, content);
+					if (content != null) executeActions(bot, content, round);
+					else executeActions(bot, actions, round);
 					// If all the bots have played for this round, change the ready state
 					// of the game.
-					boolean ok = true;
-					for (Map.Entry<Bot, BotGameInfo> info : botInfos.entrySet())
-					{	// For each bot, test whether it played.
-						if (!info.getValue().hasPlayed())
-						{	// A bot has not played yet.
-							ok = false;
-						}
-					}
-					// I added a boolean 'ok' to avoid modifying 'ready' directly.
-					if (ok) ready = true;
+					if (haveAllPlayed()) turnBarrier.release();
 					error = 0;
 				}
 				else
@@ -251,45 +311,213 @@ public abstract class Game
 	}
 	
 	/**
-	 * Sends the current game state to a bot. A bot which receives a "gamestate" message
+	 * Tests whether all the bots have played for the current round.
+	 * @return true if every bot played, false otherwise.
+	 */
+	private boolean haveAllPlayed()
+	{
+		for (Map.Entry<Bot, BotGameInfo> info : botInfos.entrySet())
+		{	// For each bot, test whether it played.
+			if (!info.getValue().hasPlayed())
+			{	// A bot has not played yet.
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns whether a bot is played by the server itself, in process: such a bot never
+	 * receives game states. By default, no bot is played in process and the fake bots
+	 * receive their game state.
+	 * @param bot the bot to test.
+	 * @return true if the bot is played in process, false if it needs a game state.
+	 */
+	protected boolean isPlayedInProcess(Bot bot)
+	{
+		return false;
+	}
+	
+	/**
+	 * Lets a bot played in process choose its actions for the current round, without
+	 * sending it any game state. The game map must only be read, because this method is
+	 * called in parallel for several bots while the game states are built.
+	 * @see #isPlayedInProcess
+	 * @param bot the bot to play.
+	 */
+	protected void playInProcess(Bot bot)
+	{
+		// Do nothing
+	}
+	
+	/**
+	 * Sends a prepared game state to a bot. A bot which receives a "gamestate" message
 	 * is supposed to return its game action within the imposed response delay.
 	 * @see Documentation/protocol/gamestate.html
 	 * @param bot the bot that will receive the "gamestate" message.
-	 * @param canPlay whether the bot can play for this round. The bot is then supposed to
-	 *        play the game by returning a "gameactions" message within the alloted
-	 *        response time.
+	 * @param content the content of the "gamestate" message for a fake bot that reads
+	 *        the content directly, or null if the message was encoded in the game state
+	 *        encoder of the bot.
+	 * @param payload the payload of a binary "gamestate" frame, or null.
 	 */
-	private void sendGameState(Bot bot, boolean canPlay)
+	private void sendGameState(Bot bot, JSONObject content, byte[] payload)
 	{
 		// Get the current state of the bot.
 		BotGameInfo info = botInfos.get(bot);
-		if (canPlay && !info.isMuted())
-		{	// Memorize the timestamp of the sending.
+		if (!info.isMuted())
+		{	// Memorize the timestamp of the sending, the clock of the bot starts now.
+			info.setGamestateRound(curRound);
 			info.setGamestateTimestampMs(System.currentTimeMillis());
-			// Wait for the bot to play during this round.
-			info.setPlayed(false); // should be set to false BEFORE!
 		}
 		// Send the cooked message.
-		bot.getCommunicator().sendGameState(genGameStateMessageContent(bot));
+		if (payload != null)
+		{
+			bot.getCommunicator().sendBinaryGameState(payload);
+		}
+		else if (content != null)
+		{
+			bot.getCommunicator().sendGameState(content);
+		}
+		else
+		{
+			bot.getCommunicator().sendEncodedGameState();
+		}
 	}
 	
 	/**
 	 * Sends the current game state to the bot(s).
 	 * By default, the method is implemented to send the game state and wait for game
-	 * actions to every bot playing in game.
+	 * actions to every bot playing in game. The game states of the bots are built and
+	 * encoded in parallel on a shared pool, then written one after another, so the
+	 * turn only lasts as long as the slowest game state to build. The bots played in
+	 * process get no game state, they choose their actions on the pool instead, and
+	 * nothing is done for them once they are muted.
 	 */
 	public void sendGameState()
 	{
-		ready = false;
+		turnBarrier.open();
+		final ArrayList<Bot> receivers = new ArrayList<Bot>(bots.size());
 		Iterator<Bot> botIt = bots.iterator();
 		while (botIt.hasNext())
-		{	// For each bot, send the game state and wait for actions.
+		{	// For each bot, wait for actions.
 			Bot bot = botIt.next();
-			if (bot.getCommunicator().isBotLoggedIn())
-				sendGameState(bot, true);
+			if (!bot.getCommunicator().isBotLoggedIn()) continue;
+			BotGameInfo info = botInfos.get(bot);
+			if (info.isMuted() && isPlayedInProcess(bot)) continue;
+			receivers.add(bot);
+			if (!info.isMuted())
+			{	// Wait for the bot to play during this round.
+				info.setPlayed(false); // should be set to false BEFORE!
+			}
+		}
+		// Build and encode the game states in parallel, while the bots played in process
+		// stage their moves. The messages are sent afterwards, one after another, so the
+		// clock of each bot starts when its game state is actually written.
+		final JSONObject[] contents = new JSONObject[receivers.size()];
+		final byte[][] payloads = new byte[receivers.size()][];
+		final boolean[] inProcess = new boolean[receivers.size()];
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(receivers.size());
+		for (int i = 0; i < receivers.size(); i++)
+		{
+			final int index = i;
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					Bot bot = receivers.get(index);
+					if (isPlayedInProcess(bot))
+					{	// The bot is not muted, it stages its moves without game state.
+						playInProcess(bot);
+						inProcess[index] = true;
+						return null;
+					}
+					TCPClientCommunicator com = bot.getCommunicator();
+					if (com.hasBinaryFraming())
+					{	// Use the binary encoding of the game, if it has one.
+						payloads[index] = genBinaryGameStateMessageContent(bot);
+						if (payloads[index] != null) return null;
+					}
+					if (bot.isFake())
+					{	// A fake bot reads the content.
+						contents[index] = genGameStateMessageContent(bot);
+					}
+					else
+					{	// Each bot has its own encoder, they are filled in parallel.
+						writeGameStateMessageContent(bot, com.startGameState());
+					}
+					return null;
+				}
+			});
+		}
+		awaitAll(STATE_POOL.invokeAll(tasks));
+		// The bots played in process already gave their actions.
+		boolean playedInProcess = false;
+		for (int i = 0; i < receivers.size(); i++)
+		{
+			if (inProcess[i])
+			{
+				botInfos.get(receivers.get(i)).setPlayed(true);
+				playedInProcess = true;
+			}
+		}
+		// Send the game states.
+		for (int i = 0; i < receivers.size(); i++)
+		{
+			if (!inProcess[i]) sendGameState(receivers.get(i), contents[i], payloads[i]);
+		}
+		if (playedInProcess && haveAllPlayed()) turnBarrier.release();
+	}
+	
+	/**
+	 * Waits for tasks of the state pool, and throws again the exception of a task that
+	 * failed in the calling thread.
+	 * @param futures the futures of the tasks.
+	 */
+	private static void awaitAll(List<Future<Void>> futures)
+	{
+		for (Future<Void> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch (InterruptedException e)
+			{	// The game is cancelled.
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw new IllegalStateException(cause);
+			}
 		}
 	}
 	
+	/**
+	 * Records the wait for the game actions of the current round in the turn metrics.
+	 * @param waitMs the time spent waiting for game actions (in milliseconds).
+	 * @param reason the reason why the wait ended.
+	 */
+	public void recordTurn(long waitMs, TurnEndReason reason)
+	{
+		turnMetrics.record(waitMs, reason);
+		LOGGER.debug("round {} waited {} ms ({})", curRound, waitMs, reason);
+	}
+	
+	/**
+	 * Sets the task run as soon as all the bots played for the current round, so the game
+	 * can be notified instead of waiting for game actions.
+	 * @param listener the task to run, or null.
+	 */
+	public void setTurnListener(Runnable listener)
+	{
+		turnBarrier.setListener(listener);
+	}
+	
 	/**
 	 * Sends a "gamestart" message to all the bots in the game.
 	 */
@@ -308,12 +536,15 @@ public abstract class Game
 	 */
 	public void sendGameEnd()
 	{
+		// The message is the same for every bot, it is encoded once and its bytes are
+		// shared by the output queues of the clients.
+		byte[] message = TCPClientCommunicator.encodeGameEnd(genGameEndMessageContent());
 		Iterator<Bot> botIt = bots.iterator();
 		while (botIt.hasNext())
-		{	// For each bot, send the game start message.
+		{	// For each bot, send the game end message.
 			Bot bot = botIt.next();
 			if (bot.getCommunicator().isBotLoggedIn())
-				bot.getCommunicator().sendGameEnd(genGameEndMessageContent(bot));
+				bot.getCommunicator().sendGameEnd(message);
 		}
 	}
 	
@@ -325,6 +556,32 @@ public abstract class Game
 	 */
 	protected abstract JSONObject genGameStateMessageContent(Bot bot);
 	
+	/**
+	 * Writes the content of a "gamestate" message for a specific bot on the encoder of
+	 * the message. You should override this method to stream the game state instead of
+	 * building it as a JSON object, by default the content is generated and then written.
+	 * @see Documentation/protocol/gamestate.html
+	 * @param bot the bot that will receive the message.
+	 * @param encoder the encoder of the message, the content is written as one value.
+	 */
+	protected void writeGameStateMessageContent(Bot bot, JSONEncoder encoder)
+	{
+		encoder.value(genGameStateMessageContent(bot));
+	}
+	
+	/**
+	 * Generates the payload of a binary "gamestate" frame for a specific bot, which uses
+	 * binary framing. You should override this method if your game has a binary encoding
+	 * of its game states, by default the game state is sent in a JSON frame.
+	 * @see Documentation/protocol/binary.html
+	 * @param bot the bot that will receive the frame.
+	 * @return the payload of the "gamestate" frame, or null to send a JSON frame.
+	 */
+	protected byte[] genBinaryGameStateMessageContent(Bot bot)
+	{
+		return null;
+	}
+	
 	/**
 	 * Generates the content of a "gamestart" message for a specific bot.
 	 * @see Documentation/protocol/gamestart.html
@@ -334,12 +591,12 @@ public abstract class Game
 	protected abstract JSONObject genGameStartMessageContent(Bot bot);
 	
 	/**
-	 * Generates the content of a "gameend" message for a specific bot.
+	 * Generates the content of the "gameend" message. The message is the same for every
+	 * bot and its content is streamed when the message is encoded.
 	 * @see Documentation/protocol/gameend.html
-	 * @param bot the bot that will receive the message.
 	 * @return the content of the "gameend" message.
 	 */
-	protected abstract JSONObject genGameEndMessageContent(Bot bot);
+	protected abstract StreamedContent genGameEndMessageContent();
 	
 	/**
 	 * Generates the content of a "gamemute" message.
@@ -370,13 +627,32 @@ public abstract class Game
 		return bots.iterator();
 	}
 	
+	/**
+	 * Gets the informations of a bot relative to the game.
+	 * @param bot a bot playing in the game.
+	 * @return the game informations of the bot, or null if the bot is not in the game.
+	 */
+	public BotGameInfo getBotInfo(Bot bot)
+	{
+		return botInfos.get(bot);
+	}
+	
 	/**
 	 * Returns whether the game is ready to update itself for the current round.
 	 * @return true if all bots have played, false otherwise.
 	 */
 	public boolean isReady()
 	{
-		return ready;
+		return turnBarrier.isReady();
+	}
+	
+	/**
+	 * Gets the time spent by the game waiting for game actions.
+	 * @return the turn metrics of the game.
+	 */
+	public TurnMetrics getTurnMetrics()
+	{
+		return turnMetrics;
 	}
 	
 	/**
@@ -22,7 +22,7 @@ package basis;
 /**
  * This interface is used to communicate game-related events to the server.
  * The game manager use this interface to add games in the server, the server then runs
- * this game with a game thread and finally the game thread use it to remove itself from
+ * this game with a game task and finally the game task use it to remove itself from
  * the server, when it has finished its work.
  * @interface
  * @author Nicolas
@@ -36,9 +36,9 @@ public interface GameHandler
 	public void addGame(Game newGame);
 	
 	/**
-	 * Notifies the server that a game thread has terminated its execution and should be
-	 * removed from the game threads list.
-	 * @param gameThread the game thread to remove.
+	 * Notifies the server that a game task has terminated its execution and should be
+	 * removed from the game tasks list.
+	 * @param gameTask the game task to remove.
 	 */
-	public void removeGameThread(GameThread gameThread);
+	public void removeGameTask(GameTask gameTask);
 }
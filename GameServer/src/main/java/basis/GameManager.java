@@ -20,11 +20,7 @@
 package basis;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Random;
-import java.util.Set;
-import java.util.TimerTask;
-import java.util.Vector;
 
 /**
  * This class is responsible for creating games when appropriated.
@@ -33,7 +29,7 @@ import java.util.Vector;
  * @class
  * @author Jonathan, Juliette
  */
-public class GameManager extends TimerTask
+public class GameManager implements Runnable
 {
 	/** The minimum number of bots in a created game. */
 	public static int NB_PLAYERS_MIN;
@@ -44,7 +40,7 @@ public class GameManager extends TimerTask
 	/**
 	 * The time the server has to wait after "gamestart" message. (in milliseconds)
 	 */
-	protected static final int RESPONSE_TIME_MS = 500;
+	public static final int RESPONSE_TIME_MS = 500;
 	
 	/**
 	 * The time of response a bot should respect to send its "gameactions" message after a
@@ -55,9 +51,17 @@ public class GameManager extends TimerTask
 	/**
 	 * The maximum number of round of a game.
 	 */
-	protected static final int MAX_ROUND = 300;
+	public static final int MAX_ROUND = 300;
 	
-	private HashMap<Bot, Vector<Bot>> botMap;
+	/**
+	 * The bots waiting for a game, with the compatibility relation between them.
+	 */
+	private BotLobby lobby;
+	
+	/**
+	 * The matchmaker forming the games from the bots of the lobby.
+	 */
+	private Matchmaker matchmaker = new Matchmaker();
 	
 	private Random rand = new Random();
 	
@@ -76,7 +80,7 @@ public class GameManager extends TimerTask
 	public GameManager(GameHandler gameHandler, int nbPlayersMin, int nbPlayersMax)
 	{
 		this.gameHandler = gameHandler;
-		botMap = new HashMap<>();
+		lobby = new BotLobby();
 		
 		if (nbPlayersMin > nbPlayersMax)
 		{
@@ -112,11 +116,10 @@ public class GameManager extends TimerTask
 	/**
 	 * Creates game for bots if appropriated.
 	 * { @code
-	 *   import java.util.timer;
-	 *   Timer timer = new Timer();
+	 *   GameScheduler scheduler = new GameScheduler();
 	 *   long whenToStart = 0;
 	 *   long interval = 3000;
-	 *   timer.scheduleAtFixedRate(gameManager, whenToStart, interval); }
+	 *   scheduler.scheduleAtFixedRate(gameManager, whenToStart, interval); }
 	 */
 	@Override
 	public void run()
@@ -124,103 +127,23 @@ public class GameManager extends TimerTask
 		int nbPlayers = rand.nextInt(1 + NB_PLAYERS_MAX - NB_PLAYERS_MIN) +
 				NB_PLAYERS_MIN;
 		
-		fillChallengers();
-		ArrayList<ArrayList<Bot>> potentialMatchs = findCompatibleLists(nbPlayers);
-		if (potentialMatchs != null)
-		{	// Null pointer exception fixed.
-			ArrayList<ArrayList<Bot>> fights = chooseFights(potentialMatchs);
-			setBotsInFight(fights);
-		}
+		setBotsInFight(matchBots(nbPlayers));
 	}
 	
 	/**
-	 * Fill the possible challenger for a bot depending of its priority.
-	 * It actually fills the vector of the bot HashMap.
+	 * Increments the priority of the bots in the lobby and forms games from them.
+	 * The bots of a game have compatible scores, the games are formed by the matchmaker
+	 * in O(n log n).
+	 * @param nbPlayers the number of bots in the games to form.
+	 * @return a list of games to create, which can be empty.
 	 */
-	public void fillChallengers()
+	public ArrayList<ArrayList<Bot>> matchBots(int nbPlayers)
 	{
-		Set<Bot> botSet = botMap.keySet();
-		for (Bot bot : botSet)
+		synchronized (lobby)
 		{
-			bot.incPriority();
-			for (Bot canMatchBot : botSet)
-			{
-				if (!canMatchBot.equals(bot))
-				{
-					if ((canMatchBot.getScore() >= bot.getScore() - bot.getPriority())
-							&& (canMatchBot.getScore() <= bot.getScore()
-								+ bot.getPriority()))
-					{
-						if (!botMap.get(bot).contains(canMatchBot))
-						{
-							botMap.get(bot).add(canMatchBot);
-						}
-					}
-				}
-			}
-		}
-	}
-	
-	/**
-	 * Function that chooses which fights should be played.
-	 * It's based on the sum of the priority to the bots.
-	 * It modifies the MatchsList so only chosen fights remain.
-	 * @param matchsList the list of possible matchs.
-	 * @return a list of matchs to do.
-	 */
-	public ArrayList<ArrayList<Bot>> chooseFights(ArrayList<ArrayList<Bot>> matchsList)
-	{
-		ArrayList<ArrayList<Bot>> toRet = new ArrayList<>();
-		while (!isEachListUnique(matchsList))
-		{
-			double[] weight = new double[matchsList.size()];
-			/*
-			 * Setting a weight for each possible match
-			 */
-			for (int i=0; i<matchsList.size(); i++)
-			{
-				weight[i] = 0;
-				for (Bot bot : matchsList.get(i))
-				{
-					weight[i] += bot.getPriority();
-				}
-			}
-			/*
-			 * Get the higher weight
-			 */
-			double compareWeight = -1;
-			int index = -1;
-			for (int i = 0; i < weight.length; i++)
-			{
-				if (weight[i] > compareWeight)
-				{
-					compareWeight = weight[i];
-					index = i;
-				}
-			}
-			
-			/*
-			 * Suppressing lists where bots chosen are in :
-			 * it's not a feasible match
-			 */
-			ArrayList<Bot> listBots = matchsList.get(index);
-			for (Bot b : listBots)
-			{
-				for (int i = 0; i < matchsList.size(); i++)
-				{
-					if (matchsList.get(i).contains(b))
-					{
-						matchsList.remove(i);
-						i--;
-					}
-				}
-			}
-			toRet.add(listBots);
+			lobby.incPriorities();
+			return matchmaker.match(lobby, nbPlayers);
 		}
-		for (ArrayList<Bot> botList : matchsList)
-			toRet.add(botList);
-		
-		return toRet;
 	}
 	
 	/**
@@ -238,227 +161,30 @@ public class GameManager extends TimerTask
 	}
 	
 	/**
-	 * Find the compatible lists in the bot map.
-	 * (this means the matchs possibles)
-	 * @param nbPlayers the number of player we want to make fight each other.
-	 * @return a list of list of possible matchs, null if no match is possible.
-	 */
-	public ArrayList<ArrayList<Bot>> findCompatibleLists(int nbPlayers)
-	{
-		if (botMap.size() >= nbPlayers)
-		{
-			ArrayList<ArrayList<Bot>> toMatch = new ArrayList<>();
-			
-			synchronized (botMap)
-			{
-				for (Bot keyBot : botMap.keySet())
-				{
-					Vector<Bot> botVect = botMap.get(keyBot);
-					
-					if (botVect.size() >= nbPlayers-1)
-					{
-						int[] posToTest = new int[nbPlayers - 1];
-						for (int i = 0; i < posToTest.length; i++)
-							posToTest[i] = i;
-						
-						boolean isFinished = false;
-						
-						while (!isFinished)
-						{
-							boolean isPresent = true;
-							for (int pos : posToTest)
-							{
-								// CAUTION : NULL POINTER EXCEPTION POSSIBLE
-								// IF A BOTVECT CONTAINS A BOT NOT IN HASHMAP KEYS
-								
-								isPresent &= botMap.get(botVect.elementAt(pos))
-										.contains(keyBot);
-								for (int p : posToTest)
-								{
-									if (p != pos)
-									{
-										isPresent &= botMap.get(botVect.elementAt(pos))
-												.contains(botVect.elementAt(p));
-									}
-								}
-							}
-							if (isPresent)
-							{
-								ArrayList<Bot> toAdd = new ArrayList<>();
-								toAdd.add(keyBot);
-								for (int pos : posToTest)
-								{
-									toAdd.add(botVect.elementAt(pos));
-								}
-								
-								if (!isListInMatrix(toAdd, toMatch))
-								{
-									toMatch.add(toAdd);
-								}
-							}
-							isFinished = !incrementPosToTest(posToTest, botVect);
-						}
-					}
-				}
-			}
-			return toMatch;
-		}
-		
-		return null;
-	}
-	
-	/**
-	 * Function to know if a list of bot is in a list of list of bot (in any order).
-	 * @param child the list of bot.
-	 * @param parent the list of list of bot.
-	 * @return true if child is in parent, false otherwise.
-	 */
-	private boolean isListInMatrix(ArrayList<Bot> child, ArrayList<ArrayList<Bot>> parent)
-	{
-		boolean exists = false;
-		for (ArrayList<Bot> CompParent : parent)
-		{
-			for (Bot childToCheck : child)
-			{
-				exists = CompParent.contains(childToCheck);
-				if (!exists) break;
-			}
-			if (exists) return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Checks the uniqueness of each list in the bot matrix.
-	 * Uniqueness is here defined as the presence of a bot in AT MOST ONE list
-	 * @param botMatrix the list of list to check.
-	 * @return true if each list is unique, false otherwise.
-	 */
-	public boolean isEachListUnique(ArrayList<ArrayList<Bot>> botMatrix)
-	{
-		for (int i=0; i<botMatrix.size(); i++)
-		{
-			for (int j=0; j<botMatrix.size(); j++)
-			{
-				if (i!=j)
-				{
-					for (int k=0; k<botMatrix.get(i).size(); k++)
-					{
-						if (botMatrix.get(j).contains(botMatrix.get(i).get(k)))
-						{
-							return false;
-						}
-					}
-				}
-			}
-		}
-		return true;
-	}
-	
-	/**
-	 * Function that enables to update the values in posToTest,
-	 * so it helps explore the tree.
-	 * @param posToTest array to update.
-	 * @param v a vector representing the tree.
-	 * @return a boolean that indicates a success.
-	 */
-	public boolean incrementPosToTest(int posToTest[], Vector<Bot> v) 
-			throws IndexOutOfBoundsException
-	{
-		if (posToTest.length > v.size())
-			throw new IndexOutOfBoundsException(
-					"posToTest ("+
-							posToTest.length+
-							") must be smaller than v ("+
-							v.size()+
-					")");
-		
-		for (int i = posToTest.length-1; i >= 0 ; i--)
-		{
-			if (posToTest[i] >= v.size())
-				throw new IndexOutOfBoundsException(
-						"posToTest["+i+"] ("+
-								posToTest[i]+") must be smaller than v ("+v.size()+")");
-			
-			if (!v.elementAt(posToTest[i]).equals(
-					v.elementAt(v.size() - posToTest.length + i)))
-			{
-				posToTest[i]++;
-				for (int j=i+1; j < posToTest.length; j++)
-				{
-					posToTest[j] = posToTest[j-1] + 1;
-				}
-				return true;
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Exports the bot map as a string.
-	 */
-	@Override
-	public String toString()
-	{
-		StringBuffer sb = new StringBuffer();
-		boolean first = true;
-		for (Bot keyBot : botMap.keySet())
-		{
-			sb.append("[ "+keyBot.getNick()+" | ");
-			for (Bot bot : botMap.get(keyBot))
-			{
-				if (!first)
-				{
-					sb.append(", ");
-				}
-				else
-				{
-					first = false;
-				}
-				sb.append(bot.getNick());
-			}
-			sb.append(" ]\n");
-		}
-		return sb.toString();
-	}
-	
-	/**
-	 * Function used to add a Bot as a key the bot map.
-	 * Sets an empty Vector to this bot.
-	 * @param bot the bot to add in the bot map.
+	 * Function used to add a Bot in the lobby.
+	 * The bot is linked to the bots with compatible scores.
+	 * @param bot the bot to add in the lobby.
 	 */
 	public void addBot(Bot bot)
 	{
-		synchronized (botMap)
+		synchronized (lobby)
 		{
-			if (!botMap.containsKey(bot))
-			{
-				botMap.put(bot, new Vector<Bot>());
-			}
+			lobby.add(bot);
 		}
 	}
 	
 	/**
-	 * Function to remove a bot from the botMap and every occurrence in the vector of
-	 * others bots.
-	 * @param bot the bot to remove from the bot map.
-	 * @return true if the bot was in the bot map.
+	 * Function to remove a bot from the lobby and from the challengers of the other bots.
+	 * @param bot the bot to remove from the lobby.
+	 * @return true if the bot was in the lobby.
 	 */
 	public boolean removeBot(Bot bot)
 	{
-		synchronized (botMap)
+		synchronized (lobby)
 		{
-			if (botMap.containsKey(bot))
+			if (lobby.remove(bot))
 			{
 				bot.resetPriority();
-				botMap.remove(bot);
-				for (Bot key : botMap.keySet())
-				{
-					if (botMap.get(key).contains(bot))
-					{
-						botMap.get(key).remove(bot);
-					}
-				}
 				return true;
 			}
 		}
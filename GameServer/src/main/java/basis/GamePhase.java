@@ -0,0 +1,40 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+/**
+ * The phases a game goes through when it is run by the game scheduler.
+ * @see GameTask
+ * @enum
+ * @author Nicolas
+ */
+public enum GamePhase
+{
+	// The game is being initialized and the "gamestart" message sent.
+	INIT,
+	// The bots are given some time to load their AI.
+	LOAD,
+	// The game waits for the game actions of the current round.
+	AWAIT,
+	// The game state is being updated from the game actions.
+	UPDATE,
+	// The game is terminated, scores are computed and the "gameend" message sent.
+	END;
+}
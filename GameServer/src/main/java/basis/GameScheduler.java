@@ -0,0 +1,155 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The game scheduler runs all the games of a server on a bounded pool of threads.
+ * Games do not own a thread: each phase of a game is a short task run by the pool, and
+ * the waits between phases (load time, response time) are scheduled deadlines instead of
+ * sleeping threads.
+ * @see GameTask
+ * @class
+ * @author Nicolas
+ */
+public class GameScheduler
+{
+	/**
+	 * The pool of threads running the phases of the games.
+	 */
+	private ScheduledThreadPoolExecutor executor;
+	
+	/**
+	 * The games currently run by the scheduler.
+	 */
+	private Set<GameTask> activeGames;
+	
+	/**
+	 * Creates a game scheduler with one thread per available processor.
+	 * @constructor
+	 */
+	public GameScheduler()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates a game scheduler.
+	 * @constructor
+	 * @param threadCount the number of threads running the games.
+	 */
+	public GameScheduler(int threadCount)
+	{
+		executor = new ScheduledThreadPoolExecutor(threadCount);
+		// Cancelled deadlines are dropped from the queue right away.
+		executor.setRemoveOnCancelPolicy(true);
+		activeGames = Collections.newSetFromMap(new ConcurrentHashMap<GameTask, Boolean>());
+	}
+	
+	/**
+	 * Starts running a game.
+	 * @param gameTask the game to run.
+	 */
+	public void start(GameTask gameTask)
+	{
+		activeGames.add(gameTask);
+		execute(gameTask);
+	}
+	
+	/**
+	 * Notifies the scheduler that a game is no longer run.
+	 * @param gameTask the game that ended or was cancelled.
+	 */
+	void finish(GameTask gameTask)
+	{
+		activeGames.remove(gameTask);
+	}
+	
+	/**
+	 * Runs a task as soon as a thread is available.
+	 * @param task the task to run.
+	 */
+	public void execute(Runnable task)
+	{
+		executor.execute(task);
+	}
+	
+	/**
+	 * Runs a task after a delay.
+	 * @param task the task to run.
+	 * @param delayMs the delay before running the task (in milliseconds).
+	 * @return the future of the task, that can be used to cancel it.
+	 */
+	public ScheduledFuture<?> schedule(Runnable task, long delayMs)
+	{
+		return executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Runs a task periodically.
+	 * @param task the task to run.
+	 * @param delayMs the delay before the first run (in milliseconds).
+	 * @param periodMs the time between the start of two runs (in milliseconds).
+	 * @return the future of the task, that can be used to cancel it.
+	 */
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long delayMs,
+			long periodMs)
+	{
+		return executor.scheduleAtFixedRate(task, delayMs, periodMs,
+				TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Gets the number of tasks waiting in the queue of the scheduler, including the
+	 * deadlines that are not reached yet.
+	 * @return the depth of the queue.
+	 */
+	public int getQueueDepth()
+	{
+		return executor.getQueue().size();
+	}
+	
+	/**
+	 * Gets the number of games currently run by the scheduler.
+	 * @return the number of active games.
+	 */
+	public int getActiveGameCount()
+	{
+		return activeGames.size();
+	}
+	
+	/**
+	 * Cancels all the games and stops the threads of the scheduler.
+	 */
+	public void shutdown()
+	{
+		for (GameTask gameTask : activeGames)
+		{
+			gameTask.cancel();
+		}
+		executor.shutdownNow();
+	}
+}
@@ -54,7 +54,12 @@ public class GameServer implements TCPClientHandler, GameHandler
 	/**
 	 * The list of games being played.
 	 */
-	protected ArrayList<GameThread> gameThreads;
+	protected ArrayList<GameTask> gameTasks;
+	
+	/**
+	 * The scheduler running the games of the server on a shared pool of threads.
+	 */
+	protected GameScheduler scheduler;
 	
 	/**
 	 * Whether the server is in the process of closing or not.
@@ -71,9 +76,11 @@ public class GameServer implements TCPClientHandler, GameHandler
 		closing = false;
 		// Setup the database.
 		DBManager.init("dbants", "root", "");
-		// Create client and game threads list
+		// Create client and game tasks list
 		clients = new ArrayList<TCPClientCommunicator>();
-		gameThreads = new ArrayList<GameThread>();
+		gameTasks = new ArrayList<GameTask>();
+		// Create the scheduler that will run the games.
+		scheduler = new GameScheduler();
 		// Create the listener that will receive client.
 		listener = new TCPClientListener(port, this);
 	}
@@ -84,15 +91,14 @@ public class GameServer implements TCPClientHandler, GameHandler
 	public void close()
 	{
 		closing = true;
-		listener.stop();
-		for (GameThread gameThread : gameThreads)
-		{
-			gameThread.interrupt();
-		}
+		// Cancel the games and stop their threads.
+		scheduler.shutdown();
 		while (!clients.isEmpty())
 		{
 			clients.get(0).close("Server is closing");
 		}
+		// Stop the listener last, so it can send the "bye" messages.
+		listener.stop();
 	}
 	
 	/**
@@ -157,16 +163,19 @@ public class GameServer implements TCPClientHandler, GameHandler
 		{
 			gameManager.removeBot(botIt.next());
 		}
-		// Create the game thread.
-		GameThread gameThread = new GameThread(game, this);
-		gameThreads.add(gameThread);
+		// Create the game task.
+		GameTask gameTask = new GameTask(game, this, scheduler);
+		synchronized (gameTasks)
+		{
+			gameTasks.add(gameTask);
+		}
 		// Start the game.
-		gameThread.start();
+		scheduler.start(gameTask);
 		// Log game informations.
 		Iterator<TCPClientCommunicator> clientIt = clients.iterator();
 		TCPClientCommunicator client;
 		int clientsInGame = 0;
-		int gameCount = gameThreads.size();
+		int gameCount = scheduler.getActiveGameCount();
 		while (clientIt.hasNext())
 		{
 			client = clientIt.next();
@@ -177,23 +186,27 @@ public class GameServer implements TCPClientHandler, GameHandler
 		}
 		LOGGER.info("game created (" + clientsInGame + " client"
 				+ (clientsInGame > 1 ? "s are" : " is") + " in " + gameCount + " game"
-				+ (gameCount > 1 ? "s)" : ")"));
+				+ (gameCount > 1 ? "s" : "") + ", " + scheduler.getQueueDepth()
+				+ " queued tasks)");
 	}
 	
 	/**
-	 * Terminates a game thread on the game server.
-	 * @param gameThread the game thread to remove.
+	 * Terminates a game task on the game server.
+	 * @param gameTask the game task to remove.
 	 */
-	public void removeGameThread(GameThread gameThread)
+	public void removeGameTask(GameTask gameTask)
 	{
-		gameThreads.remove(gameThread);
+		synchronized (gameTasks)
+		{
+			gameTasks.remove(gameTask);
+		}
 		// If the server is closing, don't reinsert the bots.
 		if (closing)
 		{
 			return;
 		}
 		// Reinsert bots in the game manager lobby.
-		Iterator<Bot> botIt = gameThread.getGame().getBotIterator();
+		Iterator<Bot> botIt = gameTask.getGame().getBotIterator();
 		while (botIt.hasNext())
 		{
 			Bot bot = botIt.next();
@@ -218,7 +231,7 @@ public class GameServer implements TCPClientHandler, GameHandler
 		Iterator<TCPClientCommunicator> clientIt = clients.iterator();
 		TCPClientCommunicator client;
 		int clientsInGame = 0;
-		int gameCount = gameThreads.size();
+		int gameCount = scheduler.getActiveGameCount();
 		while (clientIt.hasNext())
 		{
 			client = clientIt.next();
@@ -229,6 +242,7 @@ public class GameServer implements TCPClientHandler, GameHandler
 		}
 		LOGGER.info("game terminated (" + clientsInGame + " client"
 				+ (clientsInGame > 1 ? "s are" : " is") + " in " + gameCount + " game"
-				+ (gameCount > 1 ? "s)" : ")"));
+				+ (gameCount > 1 ? "s" : "") + ", " + scheduler.getQueueDepth()
+				+ " queued tasks)");
 	}
 }
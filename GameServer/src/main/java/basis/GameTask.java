@@ -0,0 +1,265 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is responsible for running the mechanics of a game implemented in the game
+ * server. It is a state machine going through the phases init, load, await actions,
+ * update and end. Each phase is run as a task of the game scheduler, and the waits
+ * between phases are deadlines of the scheduler, so a game only uses a thread when it
+ * has something to compute.
+ * @see GamePhase
+ * @class
+ * @author Nicolas
+ */
+public class GameTask implements Runnable
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(GameTask.class);
+	
+	/**
+	 * The game which is runned by the game task.
+	 */
+	private Game game;
+	
+	/**
+	 * The handler used to notify the server when the task has terminated its work.
+	 */
+	private GameHandler gameHandler;
+	
+	/**
+	 * The scheduler running the phases of the game.
+	 */
+	private GameScheduler scheduler;
+	
+	/**
+	 * The next phase to run.
+	 */
+	private volatile GamePhase phase;
+	
+	/**
+	 * The number of the round whose game actions are awaited, or 0 if the game is not
+	 * waiting for game actions. Only one of the bots and the deadline can end a wait.
+	 */
+	private AtomicInteger awaitedRound;
+	
+	/**
+	 * The number of rounds started by the game task.
+	 */
+	private int roundCount;
+	
+	/**
+	 * The time at which the game started waiting for game actions (in nanoseconds).
+	 */
+	private long awaitStartNs;
+	
+	/**
+	 * The deadline of the current wait, or null. It is set before the awaited round is
+	 * published, so the thread ending the wait always cancels the deadline of its round.
+	 */
+	private volatile ScheduledFuture<?> deadline;
+	
+	/**
+	 * Whether the game was cancelled.
+	 */
+	private volatile boolean cancelled;
+	
+	/**
+	 * Creates a new game task from a game instance.
+	 * @constructor
+	 * @param game the game to run with the game task.
+	 * @param gameHandler the handler used to notify the server when the work is done.
+	 * @param scheduler the scheduler running the phases of the game.
+	 */
+	public GameTask(Game game, GameHandler gameHandler, GameScheduler scheduler)
+	{
+		this.game = game;
+		this.gameHandler = gameHandler;
+		this.scheduler = scheduler;
+		phase = GamePhase.INIT;
+		awaitedRound = new AtomicInteger(0);
+		roundCount = 0;
+		cancelled = false;
+		// The bots end the wait for game actions as soon as they all played.
+		game.setTurnListener(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				endAwait(awaitedRound.get(), TurnEndReason.ALL_PLAYED);
+			}
+		});
+	}
+	
+	/**
+	 * Runs the next phase of a generic game.
+	 */
+	public void run()
+	{
+		if (cancelled)
+		{	// Game has been cancelled.
+			end();
+			return;
+		}
+		try
+		{
+			switch (phase)
+			{
+			case INIT:
+				game.init();
+				// Send the "gamestart" message.
+				game.sendGameStart();
+				// Wait for load time.
+				phase = GamePhase.LOAD;
+				scheduler.schedule(this, game.getLoadTimeMs());
+				break;
+			case LOAD:
+			case UPDATE:
+				if (phase == GamePhase.UPDATE)
+				{	// Mute bot(s) that has not played.
+					game.muteNonPlayerBots();
+					// Update the game.
+					game.update();
+				}
+				if (game.isFinished())
+				{
+					phase = GamePhase.END;
+					run();
+				}
+				else
+				{
+					startRound();
+				}
+				break;
+			case END:
+				game.terminate();
+				// Compute new scores.
+				game.computeBotScores();
+				// Send the "gameend" message.
+				game.sendGameEnd();
+				LOGGER.info("game ended after " + game.getTurnMetrics());
+				end();
+				break;
+			default:
+				break;
+			}
+		}
+		catch (RuntimeException e)
+		{	// Never let a broken game hold its bots forever.
+			LOGGER.error("Error while running a game, the game is cancelled", e);
+			end();
+		}
+	}
+	
+	/**
+	 * Sends the current game state to bots and waits for their game actions.
+	 */
+	private void startRound()
+	{
+		int round = ++roundCount;
+		phase = GamePhase.AWAIT;
+		// Send the current game state to bots.
+		game.sendGameState();
+		// Wait for all bots to give actions OR response delay overcame
+		final int timedRound = round;
+		ScheduledFuture<?> timer = scheduler.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				endAwait(timedRound, TurnEndReason.TIMEOUT);
+			}
+		}, game.getResponseTimeMs());
+		deadline = timer;
+		awaitStartNs = System.nanoTime();
+		// From now on, the bots and the deadline can end the wait.
+		awaitedRound.set(round);
+		if (game.isReady())
+		{	// Every bot already played (e.g. fake bots play right away).
+			endAwait(round, TurnEndReason.ALL_PLAYED);
+		}
+		else if (timer.isDone())
+		{	// The deadline was reached before the round was published.
+			endAwait(round, TurnEndReason.TIMEOUT);
+		}
+	}
+	
+	/**
+	 * Ends the wait for the game actions of a round and schedules the update of the game.
+	 * Nothing happens if the wait of this round already ended.
+	 * @param round the number of the round.
+	 * @param reason the reason why the wait ended.
+	 */
+	private void endAwait(int round, TurnEndReason reason)
+	{
+		if (round == 0 || !awaitedRound.compareAndSet(round, 0)) return;
+		ScheduledFuture<?> timer = deadline;
+		deadline = null;
+		if (reason == TurnEndReason.ALL_PLAYED && timer != null)
+		{
+			timer.cancel(false);
+		}
+		game.recordTurn((System.nanoTime() - awaitStartNs) / 1000000, reason);
+		phase = GamePhase.UPDATE;
+		scheduler.execute(this);
+	}
+	
+	/**
+	 * Cancels the game. The game ends at its next phase, without being terminated.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+	
+	/**
+	 * Ends the game properly.
+	 */
+	private void end()
+	{
+		game.setTurnListener(null);
+		scheduler.finish(this);
+		gameHandler.removeGameTask(this);
+		return;
+	}
+	
+	/**
+	 * Gets the current phase of the game.
+	 * @return the next phase to run.
+	 */
+	public GamePhase getPhase()
+	{
+		return phase;
+	}
+	
+	/**
+	 * Gets the game runned by this game task.
+	 * @return the game the task is running.
+	 */
+	public Game getGame()
+	{
+		return game;
+	}
+}
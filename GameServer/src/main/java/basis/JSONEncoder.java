@@ -0,0 +1,429 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+/**
+ * A JSON encoder that writes the JSON text of a message straight into a growable array
+ * of UTF-8 bytes, without building a tree of JSON objects nor any intermediate string.
+ * The output is the same as the one of the org.json library: no whitespace, and the
+ * strings escaped as JSONObject.quote does. The encoder is meant to be reused: the
+ * array is kept between two messages.
+ * The caller is responsible for calling the methods in a valid order, like with a
+ * JSONWriter: a key before each value of an object, and the ends of the objects and
+ * arrays it begins.
+ * @class
+ * @author Nicolas
+ */
+public class JSONEncoder
+{
+	private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7',
+			'8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+	
+	/**
+	 * The maximum nesting of objects and arrays.
+	 */
+	private static final int MAX_DEPTH = 32;
+	
+	/**
+	 * The bytes written so far, followed by free space.
+	 */
+	private byte[] bytes;
+	
+	/**
+	 * The number of bytes written.
+	 */
+	private int size;
+	
+	/**
+	 * Whether each open object or array has no element yet, by nesting level.
+	 */
+	private boolean[] empty;
+	
+	/**
+	 * The number of open objects and arrays.
+	 */
+	private int depth;
+	
+	/**
+	 * Whether a key was just written, so the next value follows it without a comma.
+	 */
+	private boolean afterKey;
+	
+	/**
+	 * Creates an empty encoder.
+	 * @constructor
+	 * @param capacity the number of bytes the encoder can take before growing.
+	 */
+	public JSONEncoder(int capacity)
+	{
+		bytes = new byte[Math.max(capacity, 16)];
+		empty = new boolean[MAX_DEPTH];
+		reset();
+	}
+	
+	/**
+	 * Clears the encoder to write a new message, the array of bytes is kept.
+	 * @return this encoder.
+	 */
+	public JSONEncoder reset()
+	{
+		size = 0;
+		depth = 0;
+		afterKey = false;
+		return this;
+	}
+	
+	/**
+	 * Begins an object.
+	 * @return this encoder.
+	 */
+	public JSONEncoder object()
+	{
+		return open('{');
+	}
+	
+	/**
+	 * Ends the current object.
+	 * @return this encoder.
+	 */
+	public JSONEncoder endObject()
+	{
+		return close('}');
+	}
+	
+	/**
+	 * Begins an array.
+	 * @return this encoder.
+	 */
+	public JSONEncoder array()
+	{
+		return open('[');
+	}
+	
+	/**
+	 * Ends the current array.
+	 * @return this encoder.
+	 */
+	public JSONEncoder endArray()
+	{
+		return close(']');
+	}
+	
+	/**
+	 * Writes the key of the next value of the current object.
+	 * @param key the key.
+	 * @return this encoder.
+	 */
+	public JSONEncoder key(String key)
+	{
+		separate();
+		writeString(key);
+		put((byte) ':');
+		afterKey = true;
+		return this;
+	}
+	
+	/**
+	 * Writes a string value.
+	 * @param value the string.
+	 * @return this encoder.
+	 */
+	public JSONEncoder value(String value)
+	{
+		separate();
+		writeString(value);
+		return this;
+	}
+	
+	/**
+	 * Writes an integer value.
+	 * @param value the integer.
+	 * @return this encoder.
+	 */
+	public JSONEncoder value(long value)
+	{
+		separate();
+		ensureCapacity(20);
+		if (value < 0)
+		{
+			if (value == Long.MIN_VALUE)
+			{	// Its opposite does not fit in a long.
+				writeAscii(Long.toString(value));
+				return this;
+			}
+			bytes[size++] = '-';
+			value = -value;
+		}
+		// Write the digits from the end.
+		int length = 1;
+		for (long rest = value / 10; rest != 0; rest /= 10) length++;
+		for (int i = size + length - 1; i >= size; i--)
+		{
+			bytes[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		size += length;
+		return this;
+	}
+	
+	/**
+	 * Writes a boolean value.
+	 * @param value the boolean.
+	 * @return this encoder.
+	 */
+	public JSONEncoder value(boolean value)
+	{
+		separate();
+		writeAscii(value ? "true" : "false");
+		return this;
+	}
+	
+	/**
+	 * Writes a JSON object value, as its JSON text. This is meant for the small contents
+	 * that are still built as JSON objects.
+	 * @param value the JSON object, or null.
+	 * @return this encoder.
+	 */
+	public JSONEncoder value(JSONObject value)
+	{
+		separate();
+		if (value == null)
+		{
+			writeAscii("null");
+		}
+		else
+		{	// JSON text is already escaped, write its characters as they are.
+			writeChars(value.toString(), false);
+		}
+		return this;
+	}
+	
+	/**
+	 * Writes a line feed, which ends a message of the protocol.
+	 * @return this encoder.
+	 */
+	public JSONEncoder lineFeed()
+	{
+		put((byte) '\n');
+		return this;
+	}
+	
+	/**
+	 * Gets the array the bytes are written in. The array is reused by the next message.
+	 * @return the array holding the bytes written, from index 0 to the size.
+	 */
+	public byte[] getBytes()
+	{
+		return bytes;
+	}
+	
+	/**
+	 * Gets the number of bytes written.
+	 * @return the number of bytes written.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Begins an object or an array.
+	 * @param c the opening character.
+	 * @return this encoder.
+	 */
+	private JSONEncoder open(char c)
+	{
+		separate();
+		put((byte) c);
+		empty[depth++] = true;
+		return this;
+	}
+	
+	/**
+	 * Ends an object or an array.
+	 * @param c the closing character.
+	 * @return this encoder.
+	 */
+	private JSONEncoder close(char c)
+	{
+		depth--;
+		put((byte) c);
+		return this;
+	}
+	
+	/**
+	 * Writes the comma before a value or a key, unless it is the first element of its
+	 * object or array, or the value of a key.
+	 */
+	private void separate()
+	{
+		if (afterKey)
+		{
+			afterKey = false;
+		}
+		else if (depth > 0)
+		{
+			if (!empty[depth - 1]) put((byte) ',');
+			empty[depth - 1] = false;
+		}
+	}
+	
+	/**
+	 * Writes a quoted and escaped string, as JSONObject.quote does.
+	 * @param s the string, null is written as an empty string.
+	 */
+	private void writeString(String s)
+	{
+		put((byte) '"');
+		if (s != null) writeChars(s, true);
+		put((byte) '"');
+	}
+	
+	/**
+	 * Writes the characters of a string in UTF-8.
+	 * @param s the string.
+	 * @param escape whether the characters should be escaped for a JSON string.
+	 */
+	private void writeChars(String s, boolean escape)
+	{
+		int length = s.length();
+		// A character takes 6 bytes at most, when it is escaped.
+		ensureCapacity(length * 6);
+		char previous = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = s.charAt(i);
+			if (escape && (c < ' ' || c == '"' || c == '\\'
+					|| (c == '/' && previous == '<') || (c >= 0x80 && c < 0xA0)
+					|| (c >= 0x2000 && c < 0x2100)))
+			{
+				writeEscaped(c);
+			}
+			else if (c < 0x80)
+			{
+				bytes[size++] = (byte) c;
+			}
+			else if (c < 0x800)
+			{
+				bytes[size++] = (byte) (0xC0 | (c >> 6));
+				bytes[size++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(s.charAt(i + 1)))
+			{	// A supplementary character takes 4 bytes.
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+			}
+			else if (Character.isSurrogate(c))
+			{	// A lone surrogate cannot be encoded, like String.getBytes.
+				bytes[size++] = '?';
+			}
+			else
+			{
+				bytes[size++] = (byte) (0xE0 | (c >> 12));
+				bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[size++] = (byte) (0x80 | (c & 0x3F));
+			}
+			previous = c;
+		}
+	}
+	
+	/**
+	 * Writes an escaped character.
+	 * @param c the character.
+	 */
+	private void writeEscaped(char c)
+	{
+		bytes[size++] = '\\';
+		switch (c)
+		{
+		case '"':
+		case '\\':
+		case '/':
+			bytes[size++] = (byte) c;
+			break;
+		case '\b':
+			bytes[size++] = 'b';
+			break;
+		case '\t':
+			bytes[size++] = 't';
+			break;
+		case '\n':
+			bytes[size++] = 'n';
+			break;
+		case '\f':
+			bytes[size++] = 'f';
+			break;
+		case '\r':
+			bytes[size++] = 'r';
+			break;
+		default:
+			bytes[size++] = 'u';
+			bytes[size++] = HEX_DIGITS[(c >> 12) & 0xF];
+			bytes[size++] = HEX_DIGITS[(c >> 8) & 0xF];
+			bytes[size++] = HEX_DIGITS[(c >> 4) & 0xF];
+			bytes[size++] = HEX_DIGITS[c & 0xF];
+			break;
+		}
+	}
+	
+	/**
+	 * Writes the characters of an ASCII string.
+	 * @param s the string.
+	 */
+	private void writeAscii(String s)
+	{
+		int length = s.length();
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++)
+		{
+			bytes[size++] = (byte) s.charAt(i);
+		}
+	}
+	
+	/**
+	 * Writes a byte.
+	 * @param b the byte.
+	 */
+	private void put(byte b)
+	{
+		ensureCapacity(1);
+		bytes[size++] = b;
+	}
+	
+	/**
+	 * Makes room for a number of bytes.
+	 * @param count the number of bytes about to be written.
+	 */
+	private void ensureCapacity(int count)
+	{
+		if (size + count > bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Forms the games of the bots waiting in the lobby.
+ * A bot accepts to fight the bots whose score is in a window centered on its own score
+ * and widened by its priority; a game is formed from bots which all accept each other,
+ * as told by the compatibility relation kept by the lobby.
+ * The bots are indexed by score, so that a bot only looks for opponents among its
+ * neighbors in the index, and the games are formed in O(n log n).
+ * @class
+ * @author Nicolas
+ */
+public class Matchmaker
+{
+	/**
+	 * The number of candidates a bot looks at, for each player of its game, before giving
+	 * up for this time.
+	 */
+	static final int CANDIDATES_PER_PLAYER = 8;
+	
+	/**
+	 * Orders the bots by score, then by decreasing priority.
+	 */
+	private static final Comparator<Bot> BY_SCORE = new Comparator<Bot>()
+	{
+		@Override
+		public int compare(Bot bot0, Bot bot1)
+		{
+			int comparison = Double.compare(bot0.getScore(), bot1.getScore());
+			return comparison != 0 ? comparison
+					: Integer.compare(bot1.getPriority(), bot0.getPriority());
+		}
+	};
+	
+	/**
+	 * Forms games from the bots of a lobby.
+	 * The bots with the highest priority choose their opponents first, among the bots
+	 * with the closest scores. A bot is in at most one game.
+	 * @param lobby the bots waiting for a game.
+	 * @param nbPlayers the number of bots in a game.
+	 * @return the list of games to create, which can be empty.
+	 */
+	public ArrayList<ArrayList<Bot>> match(BotLobby lobby, int nbPlayers)
+	{
+		ArrayList<ArrayList<Bot>> fights = new ArrayList<>();
+		final Bot[] bots = lobby.getBots().toArray(new Bot[lobby.size()]);
+		int botCount = bots.length;
+		if (nbPlayers < 1 || botCount < nbPlayers)
+		{
+			return fights;
+		}
+		Arrays.sort(bots, BY_SCORE);
+		Integer[] anchors = new Integer[botCount];
+		for (int i = 0; i < botCount; i++)
+		{
+			anchors[i] = i;
+		}
+		Arrays.sort(anchors, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer index0, Integer index1)
+			{
+				return Integer.compare(bots[index1].getPriority(),
+						bots[index0].getPriority());
+			}
+		});
+		// The bots already in a game are skipped with two disjoint-set forests: next[i]
+		// leads to the first free bot from i, prev[i + 1] to the last free one up to i.
+		int[] next = new int[botCount + 1];
+		int[] prev = new int[botCount + 1];
+		for (int i = 0; i <= botCount; i++)
+		{
+			next[i] = i;
+			prev[i] = i;
+		}
+		int[] game = new int[nbPlayers];
+		for (int anchor : anchors)
+		{
+			if (next[anchor] != anchor)
+			{	// The bot is already in a game.
+				continue;
+			}
+			Bot bot = bots[anchor];
+			double score = bot.getScore();
+			double low = score - bot.getPriority();
+			double high = score + bot.getPriority();
+			int size = 0;
+			game[size++] = anchor;
+			int lo = find(prev, anchor) - 1;
+			int hi = find(next, anchor + 1);
+			int budget = CANDIDATES_PER_PLAYER * nbPlayers;
+			while (size < nbPlayers && budget-- > 0)
+			{
+				boolean hasLo = lo >= 0 && bots[lo].getScore() >= low;
+				boolean hasHi = hi < botCount && bots[hi].getScore() <= high;
+				int candidate;
+				if (hasLo && (!hasHi || isCloser(bots[lo], bots[hi], score)))
+				{
+					candidate = lo;
+					lo = find(prev, lo) - 1;
+				}
+				else if (hasHi)
+				{
+					candidate = hi;
+					hi = find(next, hi + 1);
+				}
+				else
+				{	// No bot left in the window of the anchor.
+					break;
+				}
+				if (isCompatible(lobby, bots, game, size, candidate))
+				{
+					game[size++] = candidate;
+				}
+			}
+			if (size == nbPlayers)
+			{
+				ArrayList<Bot> fight = new ArrayList<>(nbPlayers);
+				for (int index : game)
+				{
+					fight.add(bots[index]);
+					next[index] = index + 1;
+					prev[index + 1] = index;
+				}
+				fights.add(fight);
+			}
+		}
+		return fights;
+	}
+	
+	/**
+	 * Returns whether a bot is closer in score to the anchor of a game than another.
+	 * On equal distances, the bot with the highest priority is the closest.
+	 * @param bot the bot.
+	 * @param other the other bot.
+	 * @param score the score of the anchor.
+	 * @return true if the bot should be looked at before the other bot.
+	 */
+	private static boolean isCloser(Bot bot, Bot other, double score)
+	{
+		double distance = Math.abs(bot.getScore() - score);
+		double otherDistance = Math.abs(other.getScore() - score);
+		return distance < otherDistance || (distance == otherDistance
+				&& bot.getPriority() >= other.getPriority());
+	}
+	
+	/**
+	 * Returns whether a candidate and all the bots of a game accept each other.
+	 * @param lobby the lobby keeping the compatibility relation between the bots.
+	 * @param bots the bots of the lobby, indexed by score.
+	 * @param game the indexes of the bots of the game.
+	 * @param size the number of bots in the game.
+	 * @param candidate the index of the candidate.
+	 * @return true if the candidate can join the game.
+	 */
+	private static boolean isCompatible(BotLobby lobby, Bot[] bots, int[] game, int size,
+			int candidate)
+	{
+		Bot bot = bots[candidate];
+		for (int i = 0; i < size; i++)
+		{
+			if (!lobby.accepts(bot, bots[game[i]]) || !lobby.accepts(bots[game[i]], bot))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Finds the root of an element in a disjoint-set forest, halving the path on the way.
+	 * @param parent the parents of the elements.
+	 * @param i the element.
+	 * @return the root of the element.
+	 */
+	private static int find(int[] parent, int i)
+	{
+		while (parent[i] != i)
+		{
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
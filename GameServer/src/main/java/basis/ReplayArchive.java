@@ -0,0 +1,294 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The replay archive writes the replays of the games in a directory, one file per game.
+ * Replays are streamed to the files, optionally compressed with gzip. A file is written
+ * under a temporary name first, so a replay file is always complete.
+ * The replays submitted by the games are written by an I/O thread of the archive, so a
+ * slow disk never holds up the threads running the games. The archive can keep only the
+ * most recent replays.
+ * @class
+ * @author Nicolas
+ */
+public class ReplayArchive
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplayArchive.class);
+	
+	/**
+	 * The charset of the replay files.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * The time given to the I/O thread to write the submitted replays when the archive
+	 * is closed. (in milliseconds)
+	 */
+	private static final long CLOSE_TIMEOUT_MS = 30000;
+	
+	/**
+	 * The directory where the replays are written.
+	 */
+	private File directory;
+	
+	/**
+	 * Whether the replays are compressed with gzip.
+	 */
+	private boolean compressed;
+	
+	/**
+	 * The maximum number of replays kept in the directory, or 0 to keep them all.
+	 */
+	private int maxReplays;
+	
+	/**
+	 * The I/O thread writing the submitted replays, created on the first submission.
+	 */
+	private ExecutorService writer;
+	
+	/**
+	 * Creates a replay archive keeping all the replays.
+	 * @constructor
+	 * @param directory the directory where the replays are written, it is created if it
+	 *        does not exist.
+	 * @param compressed true to compress the replays with gzip.
+	 */
+	public ReplayArchive(File directory, boolean compressed)
+	{
+		this(directory, compressed, 0);
+	}
+	
+	/**
+	 * Creates a replay archive.
+	 * @constructor
+	 * @param directory the directory where the replays are written, it is created if it
+	 *        does not exist.
+	 * @param compressed true to compress the replays with gzip.
+	 * @param maxReplays the maximum number of replays kept in the directory, the oldest
+	 *        ones are deleted. 0 keeps all the replays.
+	 */
+	public ReplayArchive(File directory, boolean compressed, int maxReplays)
+	{
+		if (maxReplays < 0)
+		{
+			throw new IllegalArgumentException("maxReplays shall not be negative");
+		}
+		this.directory = directory;
+		this.compressed = compressed;
+		this.maxReplays = maxReplays;
+	}
+	
+	/**
+	 * Submits a replay to the I/O thread of the archive, which writes it later.
+	 * The replay is read by the I/O thread, so it must no longer change.
+	 * @param name the name of the replay, without extension.
+	 * @param replay the replay to write, as a single JSON value.
+	 */
+	public synchronized void submit(final String name, final StreamedContent replay)
+	{
+		if (writer == null)
+		{
+			writer = Executors.newSingleThreadExecutor();
+		}
+		writer.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					write(name, replay);
+				}
+				catch (IOException e)
+				{
+					LOGGER.error("Cannot archive the replay '" + name + "' ({})",
+							e.getMessage());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Closes the archive, once the submitted replays are written.
+	 */
+	public synchronized void close()
+	{
+		if (writer == null) return;
+		writer.shutdown();
+		try
+		{
+			if (!writer.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+			{
+				LOGGER.error("Some replays could not be archived before closing.");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+	}
+	
+	/**
+	 * Writes a replay in the archive.
+	 * @param name the name of the replay, without extension. The same name always gives
+	 *        the same file.
+	 * @param replay the replay to write, as a single JSON value.
+	 * @return the file of the replay.
+	 * @throws IOException if the replay cannot be written.
+	 */
+	public File write(String name, StreamedContent replay) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create the directory '" + directory + "'");
+		}
+		File file = new File(directory, name + getExtension());
+		File partFile = new File(directory, file.getName() + ".part");
+		OutputStream stream = new FileOutputStream(partFile);
+		if (compressed)
+		{
+			stream = new GZIPOutputStream(stream, 1 << 16);
+		}
+		try (Writer output = new BufferedWriter(new OutputStreamWriter(stream, CHARSET),
+				1 << 16))
+		{
+			replay.write(new JSONWriter(output));
+		}
+		catch (JSONException e)
+		{
+			partFile.delete();
+			throw new IOException("Cannot write the replay '" + name + "'", e);
+		}
+		if (!partFile.renameTo(file))
+		{	// The rename may fail if a file with the same name exists on some systems.
+			file.delete();
+			if (!partFile.renameTo(file))
+			{
+				throw new IOException("Cannot move the replay to '" + file + "'");
+			}
+		}
+		if (maxReplays > 0)
+		{
+			deleteOldReplays();
+		}
+		return file;
+	}
+	
+	/**
+	 * Deletes the oldest replays of the directory, so that at most maxReplays are kept.
+	 */
+	private void deleteOldReplays()
+	{
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		int count = 0;
+		for (File file : files)
+		{
+			if (isReplayFile(file)) files[count++] = file;
+		}
+		if (count <= maxReplays) return;
+		files = Arrays.copyOf(files, count);
+		Arrays.sort(files, new Comparator<File>()
+		{
+			@Override
+			public int compare(File file0, File file1)
+			{
+				int comparison = Long.compare(file0.lastModified(), file1.lastModified());
+				return comparison != 0 ? comparison
+						: file0.getName().compareTo(file1.getName());
+			}
+		});
+		for (int i = 0; i < count - maxReplays; i++)
+		{
+			if (!files[i].delete())
+			{
+				LOGGER.error("Cannot delete the old replay '" + files[i] + "'");
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether a file of the directory is a replay written by the archive.
+	 * @param file the file.
+	 * @return true if the file is a complete replay.
+	 */
+	private boolean isReplayFile(File file)
+	{
+		return file.isFile() && file.getName().endsWith(getExtension());
+	}
+	
+	/**
+	 * Gets the extension of the replay files.
+	 * @return the extension of the replay files, with its leading dot.
+	 */
+	private String getExtension()
+	{
+		return compressed ? ".json.gz" : ".json";
+	}
+	
+	/**
+	 * Gets the directory where the replays are written.
+	 * @return the directory of the archive.
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+	
+	/**
+	 * Returns whether the replays are compressed with gzip.
+	 * @return true if the replays are compressed.
+	 */
+	public boolean isCompressed()
+	{
+		return compressed;
+	}
+	
+	/**
+	 * Gets the maximum number of replays kept in the directory.
+	 * @return the maximum number of replays, or 0 if all the replays are kept.
+	 */
+	public int getMaxReplays()
+	{
+		return maxReplays;
+	}
+}
@@ -0,0 +1,40 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+/**
+ * This interface is implemented by the contents of messages that are written piece by
+ * piece on a JSON writer, instead of being built as a tree of JSON objects first.
+ * It is used for large contents, like the replay sent at the end of a game.
+ * @interface
+ * @author Nicolas
+ */
+public interface StreamedContent
+{
+	/**
+	 * Writes the content as a single JSON value.
+	 * @param writer the JSON writer to write on.
+	 * @throws JSONException if the content cannot be written.
+	 */
+	public void write(JSONWriter writer) throws JSONException;
+}
@@ -19,16 +19,24 @@
 
 package basis;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,7 +46,15 @@ import org.slf4j.LoggerFactory;
  * the server and the client. When the client needs the server to execute a specific
  * command, it should create a JSON message which respects the protocol specification
  * and give the required elements for the execution of the command.
+ * The communicator does not own a thread. The client listener reads the bytes sent by
+ * the client and cuts them into lines, or into binary frames once the client asked for
+ * binary framing, which are then handled one at a time by the worker threads of the
+ * listener. The requests that block on the database are handed to the database worker
+ * of the listener, so that they never hold up the game actions of the other clients.
+ * Outgoing messages are written right away when the
+ * socket can take them, and queued until the socket is writable otherwise.
  * @see Documentation/protocol/
+ * @see TCPClientListener
  * @class
  * @author Nicolas
  */
@@ -48,27 +64,101 @@ public class TCPClientCommunicator implements Runnable
 			TCPClientCommunicator.class);
 	
 	/**
-	 * The socket used to communicate with the client.
+	 * The charset of the messages exchanged with the client.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * The maximum length of a message sent by the client, in bytes. Longer messages are
+	 * dropped and reported to the client as malformed.
+	 */
+	private static final int MAX_LINE_LENGTH = 1 << 20;
+	
+	/**
+	 * The socket channel used to communicate with the client.
 	 * Should be set only once, when you call the constructor.
-	 * @see Socket
+	 * @see SocketChannel
+	 */
+	private SocketChannel channel;
+	
+	/**
+	 * The key of the channel in the selector of the client listener.
+	 */
+	private SelectionKey key;
+	
+	/**
+	 * The client listener that reads the channel and owns the worker threads.
+	 */
+	private TCPClientListener listener;
+	
+	/**
+	 * The bytes of the line being received, a line ends with a '\n' character.
 	 */
-	private Socket socket;
+	private byte[] lineBytes;
 	
 	/**
-	 * The buffered reader used to read text-formatted messages from the client's socket
-	 * input stream. It is created and cached during initialization to avoid creating a
-	 * new BufferedReader every time we have to read a message from the client.
-	 * @see BufferedReader
+	 * The number of bytes of the line being received.
 	 */
-	private BufferedReader __reader__;
+	private int lineLength;
 	
 	/**
-	 * The print writer used to print text-formatted messages on the client's socket
-	 * output stream. It is created and cached during initialization to avoid creating a
-	 * new PrintWriter every time we have to send a message to the client.
-	 * @see PrintWriter
+	 * Whether the line being received is too long and is being dropped.
 	 */
-	private PrintWriter __writer__;
+	private boolean lineOverflow;
+	
+	/**
+	 * The length of the binary frame being received, or -1 while its header is read.
+	 * The bytes of the frame are kept in the line buffer.
+	 */
+	private int frameLength;
+	
+	/**
+	 * The bits of the frame length read so far, and their number.
+	 */
+	private int headerValue;
+	private int headerShift;
+	
+	/**
+	 * The messages received from the client and not handled yet: the lines, as strings,
+	 * and the payloads of the binary game actions, as byte buffers.
+	 * It is also used as the lock of the input state of the communicator.
+	 */
+	private ArrayDeque<Object> inputs;
+	
+	/**
+	 * Whether the communicator is scheduled on a worker thread to handle its inputs.
+	 * Inputs of a client are handled one at a time, in the order they were received.
+	 */
+	private boolean scheduled;
+	
+	/**
+	 * Whether the client closed its side of the connection.
+	 */
+	private boolean endOfStream;
+	
+	/**
+	 * The buffers waiting to be written on the channel.
+	 * It is also used as the lock of the output state of the communicator.
+	 */
+	private ArrayDeque<ByteBuffer> outputs;
+	
+	/**
+	 * Whether the channel should be closed once all the pending buffers are written.
+	 */
+	private boolean closeAfterFlush;
+	
+	/**
+	 * The encoder of the messages sent to the client, reused from one message to the
+	 * next. It is also used as the lock of the encoding of a message.
+	 */
+	private JSONEncoder messageEncoder;
+	
+	/**
+	 * The encoder of the "gamestate" messages, reused from one round to the next. It is
+	 * only used by the game of the bot, which encodes the game state of a round before
+	 * sending it.
+	 */
+	private JSONEncoder gameStateEncoder;
 	
 	/**
 	 * The bot the client is logged in as.
@@ -87,126 +177,697 @@ public class TCPClientCommunicator implements Runnable
 	 */
 	private TCPClientHandler handler;
 	
-	/**
-	 * The client thread is the thread in charge of listening client messages.
-	 * Create a new thread enables us to listen to multiple client at the same time.
-	 * The client communicator is autonomous because it runs its own thread.
-	 * @see Thread
-	 */
-	private Thread clientThread;
-	
 	/**
 	 * Whether the client is muted.
 	 * A muted client can still send messages, but those messages are queued because the
 	 * communicator no longer read those.
 	 */
-	private boolean muted;
+	private volatile boolean muted;
 	
 	/**
-	 * Whether the listening thread is closed.
-	 * Turning this boolean to true will stop the listening thread from running.
-	 * @warning there is no way to restart the client thread.
+	 * Whether the communicator is closed.
+	 * Turning this boolean to true stops the handling of the client messages.
+	 * @warning there is no way to reopen a communicator.
 	 */
-	private boolean closed;
+	private volatile boolean closed;
 
 	/**
-	 * Creates a new TCP client communicator without handler.
+	 * Whether the client asked at login to receive "gamestate" messages as deltas, i.e.
+	 * only the game objects that appeared or disappeared since its previous game state.
+	 * @see Documentation/protocol/gamestate.html
+	 */
+	private boolean deltaGameStates;
+	
+	/**
+	 * Whether the bytes received from the client are cut into binary frames, which the
+	 * client asked for at login. It is only changed under the lock of the inputs.
+	 * @see Documentation/protocol/binary.html
+	 */
+	private boolean binaryInput;
+	
+	/**
+	 * Whether a login asking for binary framing is being handled. The bytes received
+	 * after its line are kept aside and the channel is no longer read, until the login
+	 * tells how they are cut.
+	 */
+	private boolean framingPending;
+	
+	/**
+	 * The bytes received after a login line asking for binary framing, or null.
+	 */
+	private byte[] pendingBytes;
+	
+	/**
+	 * Whether the messages sent to the client are written in binary frames. It is set
+	 * once the response to the login is sent, which is still a JSON line.
+	 */
+	private volatile boolean binaryOutput;
+	
+	/**
+	 * Creates a new TCP client communicator without channel, listener and handler.
 	 * @constructor
-	 * @param socket the socket of the TCP client.
+	 * @param channel the socket channel of the TCP client.
 	 */
-	public TCPClientCommunicator(Socket socket)
+	public TCPClientCommunicator(SocketChannel channel)
 	{
-		this(socket, null);
+		this(channel, null, null, null);
 	}
 	
 	/**
 	 * Creates a new TCP client communicator.
 	 * @constructor
-	 * @param socket the socket of the TCP client.
+	 * @param channel the socket channel of the TCP client.
+	 * @param key the key of the channel in the selector of the listener.
+	 * @param listener the client listener that reads the channel.
 	 * @param handler the client handler used to notify the server a client was created.
 	 */
-	public TCPClientCommunicator(Socket socket, TCPClientHandler handler)
+	public TCPClientCommunicator(SocketChannel channel, SelectionKey key,
+			TCPClientListener listener, TCPClientHandler handler)
 	{
-		this.socket = socket;
-		try
-		{	// At this point, we cache a BufferedReader object and a BufferedWriter object
-			// to avoid excessive object creation during the communication.
-			if (socket != null)
-			{	// (socket is null for fake communicators)
-				__reader__ = new BufferedReader(new InputStreamReader(
-						socket.getInputStream()));
-				__writer__ = new PrintWriter(socket.getOutputStream());
-			}
-		}
-		catch (IOException e)
-		{
-			LOGGER.error("Cannot create reader or writer to communicate with a client\n{}"
-					, e.getMessage());
-		}
+		this.channel = channel;
+		this.key = key;
+		this.listener = listener;
+		lineBytes = new byte[256];
+		lineLength = 0;
+		lineOverflow = false;
+		frameLength = -1;
+		headerValue = 0;
+		headerShift = 0;
+		inputs = new ArrayDeque<Object>();
+		scheduled = false;
+		endOfStream = false;
+		outputs = new ArrayDeque<ByteBuffer>();
+		closeAfterFlush = false;
+		messageEncoder = new JSONEncoder(256);
+		gameStateEncoder = new JSONEncoder(4096);
 		bot = null;
-		dbm = DBManager.getInstance();
+		if (channel != null)
+		{	// (fake communicators never use the database, they can run without it)
+			dbm = DBManager.getInstance();
+		}
 		this.handler = handler;
-		// Create the client thread.
-		clientThread = new Thread(this);
 		muted = false;
 		closed = false;
-		// Start the listening of the client.
-		clientThread.start();
+		deltaGameStates = false;
+		binaryInput = false;
+		framingPending = false;
+		pendingBytes = null;
+		binaryOutput = false;
 		// Notifies the server a new client was created.
 		if (handler != null)
 		{	// (handler is null for fake communicators)
 			handler.handleClientConnected(this);
 		}
-		if (socket != null)
+		if (channel != null)
 		{	// If client accepts network, send the welcome message.
 			sendWelcome();
 		}
 	}
 	
 	/**
-	 * Runs the mechanics of a TCP client communicator which is to read input messages
-	 * from the client. When a message is read, the communicator handles it.
+	 * Reads the bytes available on the channel and cuts them into lines, or into binary
+	 * frames. Complete messages are queued and the communicator is scheduled on a worker
+	 * thread to handle them.
+	 * @note this method is called by the thread of the client listener.
+	 * @param buffer the buffer used to read the channel, shared by all the clients.
 	 */
-	public void run()
+	void handleRead(ByteBuffer buffer)
+	{
+		int count;
+		buffer.clear();
+		try
+		{
+			count = channel.read(buffer);
+		}
+		catch (IOException e)
+		{	// The user might not have closed its socket properly.
+			count = -1;
+		}
+		buffer.flip();
+		boolean received;
+		synchronized (inputs)
+		{	// The framing may only change under the lock, when a login is handled.
+			if (framingPending)
+			{
+				keepPendingBytes(buffer);
+				received = false;
+			}
+			else
+			{
+				received = binaryInput ? readFrames(buffer) : readLines(buffer);
+			}
+		}
+		if (count < 0)
+		{	// A negative count implies the socket was closed on the client side.
+			// Stop reading and let a worker close the communicator once the pending
+			// inputs are handled.
+			key.interestOps(0);
+			synchronized (inputs)
+			{
+				endOfStream = true;
+			}
+			received = true;
+		}
+		if (received) schedule();
+	}
+	
+	/**
+	 * Cuts the bytes read from the channel into lines.
+	 * @param buffer the bytes read from the channel.
+	 * @return true if a line was queued, false otherwise.
+	 */
+	private boolean readLines(ByteBuffer buffer)
 	{
-		while (!closed)
-		{	// Don't read client messages if client is muted.
-			if (!muted)
+		boolean received = false;
+		while (buffer.hasRemaining())
+		{
+			byte b = buffer.get();
+			if (b == '\n')
+			{
+				received |= pushLine();
+				if (framingPending)
+				{	// The next bytes may be binary frames, keep them until the login
+					// is handled.
+					keepPendingBytes(buffer);
+					break;
+				}
+			}
+			else if (lineLength < MAX_LINE_LENGTH)
+			{
+				if (lineLength == lineBytes.length)
+				{
+					lineBytes = Arrays.copyOf(lineBytes, lineBytes.length * 2);
+				}
+				lineBytes[lineLength++] = b;
+			}
+			else
+			{
+				lineOverflow = true;
+			}
+		}
+		return received;
+	}
+	
+	/**
+	 * Cuts the bytes read from the channel into binary frames.
+	 * @see BinaryFrames
+	 * @param buffer the bytes read from the channel.
+	 * @return true if a frame was queued, false otherwise.
+	 */
+	private boolean readFrames(ByteBuffer buffer)
+	{
+		boolean received = false;
+		while (buffer.hasRemaining())
+		{
+			if (frameLength < 0)
+			{	// Read the length of the frame, a varint.
+				byte b = buffer.get();
+				headerValue |= (b & 0x7F) << headerShift;
+				headerShift += 7;
+				if (b < 0 && headerShift < 7 * BinaryFrames.MAX_VARINT_SIZE) continue;
+				// A broken header cannot be recovered from, the frame is never complete.
+				frameLength = b < 0 || headerValue < 0 ? Integer.MAX_VALUE : headerValue;
+				lineOverflow = frameLength > MAX_LINE_LENGTH;
+				headerValue = 0;
+				headerShift = 0;
+			}
+			else
+			{	// Read the bytes of the frame, a frame too long is skipped.
+				int count = Math.min(buffer.remaining(), frameLength - lineLength);
+				if (lineOverflow)
+				{
+					buffer.position(buffer.position() + count);
+				}
+				else
+				{
+					if (lineLength + count > lineBytes.length)
+					{
+						lineBytes = Arrays.copyOf(lineBytes,
+								Math.max(lineBytes.length * 2, lineLength + count));
+					}
+					buffer.get(lineBytes, lineLength, count);
+				}
+				lineLength += count;
+			}
+			if (frameLength >= 0 && lineLength == frameLength)
+			{
+				pushFrame();
+				received = true;
+			}
+		}
+		return received;
+	}
+	
+	/**
+	 * Queues the binary frame being received. A frame that cannot be handled is queued
+	 * as an empty line, hence reported as malformed.
+	 */
+	private void pushFrame()
+	{
+		Object input = "";
+		if (!lineOverflow && lineLength > 0)
+		{
+			if (lineBytes[0] == BinaryFrames.JSON)
+			{
+				input = new String(lineBytes, 1, lineLength - 1, CHARSET);
+			}
+			else if (lineBytes[0] == BinaryFrames.GAMEACTIONS)
+			{
+				input = ByteBuffer.wrap(Arrays.copyOfRange(lineBytes, 1, lineLength));
+			}
+		}
+		frameLength = -1;
+		lineLength = 0;
+		lineOverflow = false;
+		if (lineBytes.length > 4096) lineBytes = new byte[256];
+		synchronized (inputs)
+		{
+			inputs.add(input);
+		}
+	}
+	
+	/**
+	 * Queues the line being received.
+	 * @return true if a line was queued, false if it was empty.
+	 */
+	private boolean pushLine()
+	{
+		int length = lineLength;
+		if (length > 0 && lineBytes[length - 1] == '\r') length--;
+		String line = lineOverflow ? "" : new String(lineBytes, 0, length, CHARSET);
+		boolean overflow = lineOverflow;
+		lineLength = 0;
+		lineOverflow = false;
+		if (lineBytes.length > 4096) lineBytes = new byte[256];
+		if (line.isEmpty() && !overflow) return false;
+		synchronized (inputs)
+		{	// An overflowed line is queued empty, hence reported as malformed.
+			inputs.add(line);
+			if (asksBinaryFraming(line))
+			{	// Stop reading the channel until the login is handled.
+				framingPending = true;
+				listener.setInterest(key, SelectionKey.OP_READ, false);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns whether a line is a login message asking for binary framing.
+	 * @see Documentation/protocol/binary.html
+	 * @param line the line received from the client.
+	 * @return true if the bytes after the line may be binary frames.
+	 */
+	private boolean asksBinaryFraming(String line)
+	{
+		if (listener == null || !line.contains("framing")) return false;
+		try
+		{
+			JSONObject msgObj = new JSONObject(line);
+			if (!msgObj.optString("type").equals("login")) return false;
+			String framing = msgObj.getJSONObject("content").optString("framing");
+			return framing.equalsIgnoreCase("binary");
+		}
+		catch (JSONException e)
+		{	// The worker reports the malformed message.
+			return false;
+		}
+	}
+	
+	/**
+	 * Keeps aside the bytes received while a login asking for binary framing is handled.
+	 * @param buffer the bytes read from the channel.
+	 */
+	private void keepPendingBytes(ByteBuffer buffer)
+	{
+		if (!buffer.hasRemaining()) return;
+		int length = pendingBytes == null ? 0 : pendingBytes.length;
+		pendingBytes = pendingBytes == null ? new byte[buffer.remaining()]
+				: Arrays.copyOf(pendingBytes, length + buffer.remaining());
+		buffer.get(pendingBytes, length, buffer.remaining());
+	}
+	
+	/**
+	 * Ends the handling of a login asking for binary framing: the bytes kept aside are
+	 * cut with the framing given by the login, and the channel is read again.
+	 * @note this method is called by a worker thread, once the login response is sent.
+	 * @param binary true if the login succeeded and the client now sends binary frames.
+	 */
+	private void endFramingNegotiation(boolean binary)
+	{
+		boolean resume;
+		synchronized (inputs)
+		{
+			if (binary) binaryInput = true;
+			if (!framingPending) return;
+			framingPending = false;
+			if (pendingBytes != null)
+			{	// The inputs cut here are handled by the worker, which is scheduled.
+				ByteBuffer buffer = ByteBuffer.wrap(pendingBytes);
+				pendingBytes = null;
+				if (binary) readFrames(buffer);
+				else readLines(buffer);
+			}
+			// The kept bytes may hold another login asking for binary framing.
+			resume = !framingPending;
+		}
+		if (resume && !muted)
+		{
+			listener.setInterest(key, SelectionKey.OP_READ, true);
+		}
+	}
+	
+	/**
+	 * Schedules the communicator on a worker thread, unless it is already scheduled.
+	 */
+	private void schedule()
+	{
+		synchronized (inputs)
+		{
+			if (scheduled || closed) return;
+			scheduled = true;
+		}
+		resume();
+	}
+	
+	/**
+	 * Runs the communicator on a worker thread. The communicator must be scheduled.
+	 */
+	private void resume()
+	{
+		try
+		{
+			listener.getWorkers().execute(this);
+		}
+		catch (RejectedExecutionException e)
+		{	// The listener is stopping, the inputs are no longer handled.
+			synchronized (inputs)
+			{
+				scheduled = false;
+			}
+		}
+	}
+	
+	/**
+	 * Handles a client request on the database worker of the listener, then resumes the
+	 * handling of the next inputs on a worker thread. The communicator stays scheduled
+	 * in the meantime, so the inputs of the client are still handled in order.
+	 * @param msgObj the JSON message containing the request.
+	 */
+	private void receiveOnDatabaseWorker(final JSONObject msgObj)
+	{
+		Runnable request = new Runnable()
+		{
+			@Override
+			public void run()
 			{
 				try
-				{	// Read an input message.
-					String input = __reader__.readLine();
-					// Corrected NullPointException: We cannot create a JSONObject from
-					// a null string.
-					if (input != null)
+				{
+					receive(msgObj);
+				}
+				catch (JSONException e)
+				{
+					sendMalformedError();
+				}
+				catch (RuntimeException e)
+				{
+					LOGGER.error("Error handling a client request\n{}", e.getMessage());
+				}
+				resume();
+			}
+		};
+		try
+		{
+			listener.getDatabaseWorkers().execute(request);
+		}
+		catch (RejectedExecutionException e)
+		{	// The listener is stopping, the inputs are no longer handled.
+			synchronized (inputs)
+			{
+				scheduled = false;
+			}
+		}
+	}
+	
+	/**
+	 * Closes the communicator on the database worker of the listener, since the bot of
+	 * the client is logged out of the database.
+	 */
+	private void closeOnDatabaseWorker()
+	{
+		Runnable closing = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				_close();
+				synchronized (inputs)
+				{
+					scheduled = false;
+				}
+			}
+		};
+		try
+		{
+			listener.getDatabaseWorkers().execute(closing);
+		}
+		catch (RejectedExecutionException e)
+		{	// The listener is stopping, close the communicator right away.
+			closing.run();
+		}
+	}
+	
+	/**
+	 * Returns whether a client request blocks on the database.
+	 * @param msgObj the JSON message containing the request.
+	 * @return true if the request should be handled on the database worker.
+	 */
+	private boolean usesDatabase(JSONObject msgObj)
+	{
+		if (listener == null) return false;
+		String type = msgObj.optString("type");
+		return type.equals("login") || type.equals("logout") || type.equals("token")
+				|| type.equals("killbot") || type.equals("ranking");
+	}
+	
+	/**
+	 * Runs the mechanics of a TCP client communicator which is to handle the input
+	 * messages of the client. Messages are handled one by one until there is no more
+	 * message to handle or the client is muted.
+	 * @note this method is run by a worker thread of the client listener.
+	 */
+	public void run()
+	{
+		while (true)
+		{
+			Object input;
+			synchronized (inputs)
+			{	// Don't read client messages if client is muted.
+				input = closed || muted ? null : inputs.poll();
+				if (input == null && (!endOfStream || closed))
+				{	// Nothing to do until the client sends new messages.
+					scheduled = false;
+					return;
+				}
+			}
+			if (input == null)
+			{	// The socket was closed on the client side and every message was handled.
+				closeOnDatabaseWorker();
+				return;
+			}
+			try
+			{	// Receive the client request.
+				if (input instanceof ByteBuffer)
+				{	// The game actions of a binary frame.
+					receiveGameActions(null, (ByteBuffer) input);
+				}
+				else
+				{
+					JSONObject msgObj = new JSONObject((String) input);
+					if (usesDatabase(msgObj))
+					{	// The database worker resumes the handling of the inputs.
+						receiveOnDatabaseWorker(msgObj);
+						return;
+					}
+					receive(msgObj);
+				}
+			}
+			catch (JSONException e)
+			{	// If there was an error during the JSON parsing, it means that the
+				// input message was not correctly formed. Hence, we return a
+				// malformed message error to the client.
+				sendMalformedError();
+			}
+			catch (RuntimeException e)
+			{	// Never let a request kill the worker thread.
+				LOGGER.error("Error handling a client request\n{}", e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Writes the pending buffers on the channel.
+	 * @note this method is called by the thread of the client listener when the channel
+	 *       is writable.
+	 */
+	void handleWrite()
+	{
+		synchronized (outputs)
+		{
+			try
+			{
+				while (!outputs.isEmpty())
+				{
+					ByteBuffer buffer = outputs.peek();
+					channel.write(buffer);
+					if (buffer.hasRemaining()) return;
+					outputs.poll();
+				}
+			}
+			catch (IOException e)
+			{	// The connection is lost, the pending messages will never be sent.
+				outputs.clear();
+			}
+			listener.setInterest(key, SelectionKey.OP_WRITE, false);
+			if (closeAfterFlush) closeChannel();
+		}
+	}
+	
+	/**
+	 * Writes an encoded message on the channel. The message is a JSON line, it is sent
+	 * in a JSON frame to a client using binary framing.
+	 * @param message the bytes of the message, line feed included.
+	 */
+	private void write(byte[] message)
+	{
+		write(message, message.length, false);
+	}
+	
+	/**
+	 * Writes the message of an encoder on the channel. The bytes of the encoder are only
+	 * copied when the channel cannot take them right away.
+	 * @param encoder the encoder holding the message, line feed included.
+	 */
+	private void write(JSONEncoder encoder)
+	{
+		write(encoder.getBytes(), encoder.size(), true);
+	}
+	
+	/**
+	 * Writes an encoded message on the channel, in a JSON frame for a client using binary
+	 * framing.
+	 * @param message the array holding the bytes of the message, line feed included.
+	 * @param length the number of bytes of the message.
+	 * @param reused whether the array is reused once the method returns.
+	 */
+	private void write(byte[] message, int length, boolean reused)
+	{
+		if (binaryOutput)
+		{	// The frame holds the message without its line feed.
+			length--;
+			write(reused, ByteBuffer.wrap(BinaryFrames.header(BinaryFrames.JSON, length)),
+					ByteBuffer.wrap(message, 0, length));
+		}
+		else
+		{
+			write(reused, ByteBuffer.wrap(message, 0, length));
+		}
+	}
+	
+	/**
+	 * Writes buffers on the channel, or queues them if the channel cannot take them yet.
+	 * The buffers are written one after another, without other messages in between.
+	 * @param reused whether the arrays of the buffers are reused once the method returns,
+	 *        the bytes that could not be written are then copied.
+	 * @param buffers the buffers to write.
+	 */
+	private void write(boolean reused, ByteBuffer... buffers)
+	{
+		if (channel == null) return;
+		synchronized (outputs)
+		{
+			if (closeAfterFlush || !channel.isOpen()) return;
+			for (ByteBuffer buffer : buffers)
+			{
+				if (outputs.isEmpty())
+				{	// Nothing is pending, try to write the buffer right away.
+					try
 					{
-						JSONObject msgObj = new JSONObject(input);
-						// Receive the client request.
-						receive(msgObj);
+						channel.write(buffer);
 					}
-					else
-					{	// A null input implies the socket was closed on the client side.
-						_close();
-						// Closing the client will switch the boolean 'closed' to false
-						// hence we're getting out of the reading loop.
+					catch (IOException e)
+					{	// The connection is lost, the reading side will close the client.
+						return;
 					}
+					if (!buffer.hasRemaining()) continue;
+					// Let the listener write the rest when the channel is writable.
+					listener.setInterest(key, SelectionKey.OP_WRITE, true);
 				}
-				catch (JSONException e)
-				{	// If there was an error during the JSON parsing, it means that the
-					// input message was not correctly formed. Hence, we return a
-					// malformed message error to the client.
-					send("error", 1, "Malformed message, check the syntax in the "
-							+ "documentation", null);
+				if (reused)
+				{	// Keep the rest of the bytes, not the array.
+					buffer = ByteBuffer.wrap(Arrays.copyOfRange(buffer.array(),
+							buffer.position(), buffer.limit()));
 				}
-				catch (IOException e)
-				{	// The user might not have send a null message to disconnect itself.
-					// So we close the communicator properly here.
-					_close();
+				outputs.add(buffer);
+			}
+		}
+	}
+	
+	/**
+	 * Writes what the channel can take of the pending buffers, then closes it.
+	 * @note this method is called by the thread of the client listener when it stops.
+	 */
+	void flushAndClose()
+	{
+		synchronized (outputs)
+		{
+			try
+			{
+				while (!outputs.isEmpty() && channel.write(outputs.peek()) > 0)
+				{
+					if (!outputs.peek().hasRemaining()) outputs.poll();
 				}
 			}
+			catch (IOException e)
+			{	// The connection is lost, the pending messages will never be sent.
+			}
+			outputs.clear();
+			closeChannel();
+		}
+	}
+	
+	/**
+	 * Closes the channel, or defers the closing until the pending buffers are written.
+	 */
+	private void closeChannel()
+	{
+		synchronized (outputs)
+		{
+			if (!outputs.isEmpty() && channel.isOpen())
+			{
+				closeAfterFlush = true;
+				return;
+			}
+			try
+			{	// Close the channel, this also cancels its key.
+				channel.close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.error("Error closing the client socket.");
+			}
 		}
 	}
 	
+	/**
+	 * Sends a malformed message error to the client.
+	 */
+	private void sendMalformedError()
+	{
+		send("error", 1, "Malformed message, check the syntax in the documentation",
+				null);
+	}
+	
 	/**
 	 * Receives a client request.
 	 * @see Documentation/protocol/
@@ -217,7 +878,7 @@ public class TCPClientCommunicator implements Runnable
 		String type = msgObj.getString("type");
 		JSONObject content = msgObj.getJSONObject("content");
 		// For each message type, call the appropriate method.
-		if (type.equals("gameactions"))		receiveGameActions(content);
+		if (type.equals("gameactions"))		receiveGameActions(content, null);
 		else if (type.equals("login"))		receiveLogin(content);
 		else if (type.equals("logout"))		receiveLogout(content);
 		else if (type.equals("setmode"))	receiveSetMode(content);
@@ -236,10 +897,12 @@ public class TCPClientCommunicator implements Runnable
 	 * of the failure.
 	 * @see Documentation/protocol/gameactions.html
 	 * @param content the content of the "gameactions" message, depends on the type of
-	 *        game implemented.
+	 *        game implemented, or null if the actions came in a binary frame.
+	 * @param actions the payload of the binary "gameactions" frame, or null.
 	 * @throws JSONException if the content is not correctly formed.
 	 */
-	private void receiveGameActions(JSONObject content) throws JSONException
+	private void receiveGameActions(JSONObject content, ByteBuffer actions)
+			throws JSONException
 	{
 		// Response message parameters:
 		int error = 0;
@@ -251,7 +914,8 @@ public class TCPClientCommunicator implements Runnable
 			if (bot.isInGame())
 			{
 				// Send bot actions to the game.
-				error = bot.getGame().receiveActions(bot, content);
+				error = content != null ? bot.getGame().receiveActions(bot, content)
+						: bot.getGame().receiveActions(bot, actions);
 				switch(error)
 				{
 				case 104:
@@ -298,11 +962,32 @@ public class TCPClientCommunicator implements Runnable
 	 * @throws JSONException if the content is not correctly formed.
 	 */
 	private void receiveLogin(JSONObject content) throws JSONException
+	{
+		boolean binary = false;
+		try
+		{
+			binary = login(content);
+		}
+		finally
+		{	// The bytes received after the login line wait for the framing to be known.
+			endFramingNegotiation(binary);
+		}
+	}
+	
+	/**
+	 * Logs in the bot of a "login" client request and sends back the response.
+	 * @see Documentation/protocol/login.html
+	 * @param content the content of the "login" message.
+	 * @return true if the client now uses binary framing, false otherwise.
+	 * @throws JSONException if the content is not correctly formed.
+	 */
+	private boolean login(JSONObject content) throws JSONException
 	{
 		// Response message parameters:
 		int error = 0;
 		String outputMessage;
 		JSONObject outputContent = null;
+		boolean framed = false;
 		// First, check if the client is not already logged in as a bot.
 		if (!isBotLoggedIn())
 		{
@@ -318,13 +1003,36 @@ public class TCPClientCommunicator implements Runnable
 			{
 				LOGGER.info("Bot did not specify mode, defaulting to REGULAR.");
 			}
+			// Get the desired game state encoding, default is "full".
+			boolean delta = false;
+			try
+			{	// "gamestate" is not necessarily provided by the client either.
+				delta = content.getString("gamestate").equalsIgnoreCase("delta");
+			}
+			catch (JSONException e)
+			{
+				LOGGER.debug("Bot did not specify game state encoding, defaulting to full.");
+			}
+			// Get the desired framing, default is JSON lines.
+			boolean binary = false;
+			try
+			{	// "framing" is optional too.
+				binary = content.getString("framing").equalsIgnoreCase("binary");
+			}
+			catch (JSONException e)
+			{
+				LOGGER.debug("Bot did not specify framing, defaulting to JSON lines.");
+			}
 			// Get the IP address of the client.
-			String ip = socket.getInetAddress().getHostAddress();
+			String ip = channel.socket().getInetAddress().getHostAddress();
 			try
 			{	// Attempt to login the bot on the database
 				Bot bot = dbm.login(content.getString("token"), this, mode, ip);
 				// No exception caught -> the login was successful.
 				this.bot = bot;
+				deltaGameStates = delta;
+				// The next bytes sent by the client are binary frames.
+				framed = binary;
 				if (handler != null)
 				{	// Notify the server a bot just logged in.
 					handler.handleBotLogin(bot);
@@ -338,6 +1046,8 @@ public class TCPClientCommunicator implements Runnable
 					outputContent = new JSONObject();
 					outputContent.put("nick", bot.getNick());
 					outputContent.put("score", bot.getScore());
+					outputContent.put("gamestate", delta ? "delta" : "full");
+					outputContent.put("framing", binary ? "binary" : "json");
 				}
 				catch (JSONException e)
 				{
@@ -371,6 +1081,9 @@ public class TCPClientCommunicator implements Runnable
 		}
 		// Finally, send the response to the client.
 		send("login", error, outputMessage, outputContent);
+		// The response was the last JSON line, if the client asked for binary framing.
+		if (framed) binaryOutput = true;
+		return framed;
 	}
 	
 	/**
@@ -603,23 +1316,36 @@ public class TCPClientCommunicator implements Runnable
 	{
 		// A closed communicator is not supposed to receive messages. Do nothing.
 		//if (closed = true) return; DO NOT UNCOMMENT THIS LINE OR SERVER NO LONGER WORKS
-		// The JSONObject containing the message.
-		JSONObject msgObj = new JSONObject();
-		try
-		{	// Cook the message.
-			msgObj.put("type", type);
-			msgObj.put("error", error);
-			msgObj.put("message", message);
-			msgObj.put("content", content);
-		}
-		catch (JSONException e)
+		if (channel == null) return;
+		synchronized (messageEncoder)
 		{
-			LOGGER.error("Cannot put message parameters\n" + e.getMessage());
+			messageEncoder.reset();
+			encodeHeader(messageEncoder, type, error, message);
+			if (content != null)
+			{	// A message without content has no "content" key.
+				messageEncoder.key("content").value(content);
+			}
+			messageEncoder.endObject().lineFeed();
+			write(messageEncoder);
 		}
-		// Write the message in the stream.
-		__writer__.println(msgObj.toString());
-		// Flush the buffer so the client can see the message.
-		__writer__.flush();
+	}
+	
+	/**
+	 * Encodes the beginning of a message, the keys in the same order as the JSON objects
+	 * the messages used to be built with.
+	 * @see Documentation/protocol/
+	 * @param encoder the encoder of the message.
+	 * @param type the type of message.
+	 * @param error the error id (0 if no error.)
+	 * @param message a legible string describing the message.
+	 */
+	private static void encodeHeader(JSONEncoder encoder, String type, int error,
+			String message)
+	{
+		encoder.object();
+		encoder.key("type").value(type);
+		encoder.key("error").value(error);
+		encoder.key("message").value(message);
 	}
 	
 	/**
@@ -630,8 +1356,48 @@ public class TCPClientCommunicator implements Runnable
 	 */
 	public void sendGameState(JSONObject content)
 	{
-		send("gamestate", 0, "Current state of the game, please return your actions",
-				content);
+		startGameState().value(content);
+		sendEncodedGameState();
+	}
+	
+	/**
+	 * Starts encoding a "gamestate" message in the game state encoder of the client, so
+	 * that it can be prepared before being sent. The content of the message should then
+	 * be written as a single value on the returned encoder.
+	 * @see Documentation/protocol/gamestate.html
+	 * @see #sendEncodedGameState()
+	 * @return the game state encoder, ready for the content of the message.
+	 */
+	public JSONEncoder startGameState()
+	{
+		gameStateEncoder.reset();
+		encodeHeader(gameStateEncoder, "gamestate", 0,
+				"Current state of the game, please return your actions");
+		return gameStateEncoder.key("content");
+	}
+	
+	/**
+	 * Sends the "gamestate" message prepared in the game state encoder of the client.
+	 * @see Documentation/protocol/gamestate.html
+	 * @see #startGameState()
+	 */
+	public void sendEncodedGameState()
+	{
+		gameStateEncoder.endObject().lineFeed();
+		write(gameStateEncoder);
+	}
+	
+	/**
+	 * Sends a "gamestate" message in a typed binary frame to a client using binary
+	 * framing.
+	 * @see Documentation/protocol/binary.html
+	 * @param payload the payload of the "gamestate" frame, depends on the type of game
+	 *        implemented.
+	 */
+	public void sendBinaryGameState(byte[] payload)
+	{
+		byte[] header = BinaryFrames.header(BinaryFrames.GAMESTATE, payload.length);
+		write(false, ByteBuffer.wrap(header), ByteBuffer.wrap(payload));
 	}
 	
 	/**
@@ -645,14 +1411,49 @@ public class TCPClientCommunicator implements Runnable
 		send("gamestart", 0, "A game just started", content);
 	}
 	
+	/**
+	 * Encodes a "gameend" message once, so that it can be sent to several clients.
+	 * The content is streamed in the message, no JSON object is built for it.
+	 * @see Documentation/protocol/gameend.html
+	 * @param content the content representing the ending game state and replay data.
+	 * @return the bytes of the message, line feed included, or null if the content
+	 *         could not be written.
+	 */
+	public static byte[] encodeGameEnd(StreamedContent content)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (Writer output = new BufferedWriter(new OutputStreamWriter(bytes, CHARSET)))
+		{
+			JSONWriter writer = new JSONWriter(output);
+			writer.object();
+			writer.key("type").value("gameend");
+			writer.key("error").value(0);
+			writer.key("message").value("The game ended");
+			writer.key("content");
+			content.write(writer);
+			writer.endObject();
+			// A message ends with a line feed.
+			output.write('\n');
+		}
+		catch (IOException | JSONException e)
+		{
+			LOGGER.error("Cannot encode the game end message\n" + e.getMessage());
+			return null;
+		}
+		return bytes.toByteArray();
+	}
+	
 	/**
 	 * Sends a "gameend" message to the client indicating that the game just ended.
+	 * The bytes of the message are not copied, they can be shared by several clients.
 	 * @see Documentation/protocol/gameend.html
-	 * @param content the object representing the ending game state and replay data.
+	 * @see #encodeGameEnd(StreamedContent)
+	 * @param message the encoded "gameend" message.
 	 */
-	public void sendGameEnd(JSONObject content)
+	public void sendGameEnd(byte[] message)
 	{
-		send("gameend", 0, "The game ended", content);
+		if (message == null) return;
+		write(message);
 	}
 	
 	/**
@@ -727,10 +1528,16 @@ public class TCPClientCommunicator implements Runnable
 	 * Closes the communicator of a client.
 	 * The server will no longer listen to this client. If the client is logged in with a
 	 * bot, it will be logged out.
-	 * @note this method can be called inside the client thread.
+	 * @note this method can be called by a worker thread.
 	 */
 	private void _close()
 	{
+		synchronized (inputs)
+		{	// Stop handling the client messages by setting 'closed' to true.
+			if (closed) return;
+			closed = true;
+			inputs.clear();
+		}
 		// If the client is logged in, logout it.
 		logout();
 		// Notify the server its client is disconnected
@@ -740,23 +1547,14 @@ public class TCPClientCommunicator implements Runnable
 		}
 		// Once the client is removed on the 'clients' array, there is no more reference
 		// to this instance in the server so it should be garbage collected soon.
-		try
-		{	// Close the socket
-			socket.close();
-		}
-		catch (IOException e)
-		{
-			LOGGER.error("Error closing the client socket.");
-		}
-		// Stop the thread loop by setting 'closed' to true.
-		closed = true;
+		// Close the channel once the last messages are sent.
+		closeChannel();
 	}
 	
 	/**
 	 * Closes the communicator of a client.
 	 * The server will no longer listen to this client. If the client is logged in with a
 	 * bot, it will be logged out.
-	 * @warning this method is supposed to be called outside the client thread itself!
 	 * @param reason the reason of the closing.
 	 */
 	public void close(String reason)
@@ -764,8 +1562,6 @@ public class TCPClientCommunicator implements Runnable
 		sendBye(reason);
 		// Call the _close method that does all the work.
 		_close();
-		// Interrupt the thread so it no longer reads messages from client.
-		clientThread.interrupt();
 	}
 	
 	/**
@@ -799,6 +1595,35 @@ public class TCPClientCommunicator implements Runnable
 		return bot;
 	}
 	
+	/**
+	 * Returns whether the client receives "gamestate" messages as deltas.
+	 * @see Documentation/protocol/gamestate.html
+	 * @return true if the client asked for delta game states at login, false otherwise.
+	 */
+	public boolean hasDeltaGameStates()
+	{
+		return deltaGameStates;
+	}
+	
+	/**
+	 * Sets whether the client receives "gamestate" messages as deltas.
+	 * @param deltaGameStates true to send delta game states to the client.
+	 */
+	public void setDeltaGameStates(boolean deltaGameStates)
+	{
+		this.deltaGameStates = deltaGameStates;
+	}
+	
+	/**
+	 * Returns whether the messages are sent to the client in binary frames.
+	 * @see Documentation/protocol/binary.html
+	 * @return true if the client asked for binary framing at login, false otherwise.
+	 */
+	public boolean hasBinaryFraming()
+	{
+		return binaryOutput;
+	}
+	
 	/**
 	 * Mutes a client.
 	 * A muted client can still send messages, but the server no longer read those.
@@ -806,6 +1631,10 @@ public class TCPClientCommunicator implements Runnable
 	public void mute()
 	{
 		muted = true;
+		if (key != null)
+		{	// Stop reading the channel, so the messages are queued in the socket.
+			listener.setInterest(key, SelectionKey.OP_READ, false);
+		}
 	}
 	
 	/**
@@ -816,5 +1645,10 @@ public class TCPClientCommunicator implements Runnable
 	public void unmute()
 	{
 		muted = false;
+		if (key != null)
+		{
+			listener.setInterest(key, SelectionKey.OP_READ, true);
+			schedule();
+		}
 	}
 }
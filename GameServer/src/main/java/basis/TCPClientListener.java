@@ -16,13 +16,22 @@
  * You should have received a copy of the GNU General Public License
  * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package basis;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +40,12 @@ import org.slf4j.LoggerFactory;
  * The client listener is responsible for accepting incoming TCP connections and
  * creating, for each of those, a communicator that will enable the server to exchange
  * with them.
+ * A single thread multiplexes all the connections of the listener with a selector: it
+ * accepts connections, reads the bytes sent by clients and writes the pending messages.
+ * Client requests themselves are handled by a fixed pool of worker threads, so the
+ * number of threads does not grow with the number of connected clients. The requests
+ * that block on the database are handled by a database worker of their own, so that a
+ * slow database never holds up the game actions.
  * This class can be instantiated multiple times to listen on several network ports.
  * @class
  * @author Nicolas
@@ -40,10 +55,50 @@ public class TCPClientListener implements Runnable
 	private static final Logger LOGGER = LoggerFactory.getLogger(TCPClientListener.class);
 	
 	/**
-	 * The server socket used to accept incoming TCP communications.
-	 * @see ServerSocket
+	 * The size of the buffer used to read the client channels.
+	 */
+	private static final int READ_BUFFER_SIZE = 8192;
+	
+	/**
+	 * The time given to the worker threads to handle their current requests when the
+	 * listener stops. (in milliseconds)
+	 */
+	private static final long STOP_TIMEOUT_MS = 5000;
+	
+	/**
+	 * The server socket channel used to accept incoming TCP communications.
+	 * @see ServerSocketChannel
+	 */
+	private ServerSocketChannel serverChannel;
+	
+	/**
+	 * The selector multiplexing the server channel and the client channels.
+	 * @see Selector
+	 */
+	private Selector selector;
+	
+	/**
+	 * The buffer used to read the client channels, shared by all the clients since they
+	 * are all read by the listener thread.
+	 */
+	private ByteBuffer readBuffer;
+	
+	/**
+	 * The changes of interest operations requested by other threads. They are applied by
+	 * the listener thread before it waits on the selector.
+	 */
+	private ConcurrentLinkedQueue<Runnable> pendingChanges;
+	
+	/**
+	 * The worker threads handling the client requests.
+	 */
+	private ExecutorService workers;
+	
+	/**
+	 * The worker thread handling the client requests that use the database. A single
+	 * thread is enough since the database manager runs its queries one at a time.
 	 */
-	private ServerSocket serverSocket;
+	private ExecutorService databaseWorkers;
 	
 	/**
 	 * The network port on which to listen connections.
@@ -57,6 +112,11 @@ public class TCPClientListener implements Runnable
 	 */
 	private Thread listenerThread;
 	
+	/**
+	 * Whether the listener is stopped.
+	 */
+	private volatile boolean stopped;
+	
 	/**
 	 * The client handler that is passed to created communicators and which enables a
 	 * client to call the server back when specific events occur.
@@ -77,50 +137,217 @@ public class TCPClientListener implements Runnable
 	{
 		this.port = port;
 		this.handler = handler;
+		readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		pendingChanges = new ConcurrentLinkedQueue<Runnable>();
+		stopped = false;
 		try
 		{
-			serverSocket = new ServerSocket();
-			serverSocket.setReuseAddress(true);
-			serverSocket.bind(new InetSocketAddress(port));
-			// Create the thread
-			listenerThread = new Thread(this);
-			listenerThread.start();
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(port));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 		}
 		catch (IOException e)
 		{
 			LOGGER.error("the client listener cannot start. " + e.getMessage());
 			throw new IllegalArgumentException("Port already in use");
 		}
+		// Create the worker threads and the listener thread.
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		workers = Executors.newFixedThreadPool(threadCount);
+		databaseWorkers = Executors.newSingleThreadExecutor();
+		listenerThread = new Thread(this);
+		listenerThread.start();
 	}
 	
 	/**
 	 * Stops the listener.
+	 * The workers first handle the requests they started, while the listener thread still
+	 * writes the pending messages. Then the listener thread flushes what the channels can
+	 * take and closes them.
 	 */
 	public void stop()
 	{
-		listenerThread.interrupt();
+		workers.shutdown();
+		databaseWorkers.shutdown();
+		try
+		{
+			long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MS;
+			workers.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			databaseWorkers.awaitTermination(Math.max(0, deadline
+					- System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		workers.shutdownNow();
+		databaseWorkers.shutdownNow();
+		stopped = true;
+		selector.wakeup();
+		try
+		{
+			listenerThread.join(STOP_TIMEOUT_MS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
 	}
 	
 	/**
 	 * Runs the client listening mechanics which is to listen for incoming TCP
-	 * connections, create communicators and send those back to the game server.
+	 * connections, create communicators and send those back to the game server, then
+	 * read and write the channels of the communicators when they are ready.
 	 */
 	public void run()
 	{
-		while (true)
+		while (!stopped)
 		{
 			try
-			{	// Accept incoming TCP connection. (blocking)
-				Socket socket = serverSocket.accept();
-				// A connection is accepted, create a communicator for it.
-				new TCPClientCommunicator(socket, handler);
+			{	// Apply the changes requested by other threads.
+				Runnable change;
+				while ((change = pendingChanges.poll()) != null)
+				{
+					change.run();
+				}
+				// Wait for a channel to be ready. (blocking)
+				selector.select();
+				Iterator<SelectionKey> keyIt = selector.selectedKeys().iterator();
+				while (keyIt.hasNext())
+				{
+					SelectionKey key = keyIt.next();
+					keyIt.remove();
+					handleKey(key);
+				}
 			}
 			catch (IOException e)
 			{
-				LOGGER.error("Cannot accept a connection on the game server\n{}",
+				LOGGER.error("Error while selecting the ready channels\n{}",
 						e.getMessage());
 			}
 		}
+		// Close the channels, after the last messages of the clients.
+		for (SelectionKey key : selector.keys())
+		{
+			if (key.attachment() instanceof TCPClientCommunicator)
+			{
+				((TCPClientCommunicator) key.attachment()).flushAndClose();
+			}
+			try
+			{
+				key.channel().close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.error("Error closing a channel of the listener.");
+			}
+		}
+		try
+		{
+			selector.close();
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("Error closing the selector of the listener.");
+		}
+	}
+	
+	/**
+	 * Handles a key of the selector that is ready.
+	 * @param key the ready key.
+	 */
+	private void handleKey(SelectionKey key)
+	{
+		try
+		{
+			if (key.isAcceptable())
+			{
+				accept();
+				return;
+			}
+			TCPClientCommunicator client = (TCPClientCommunicator) key.attachment();
+			if (key.isReadable())
+			{
+				client.handleRead(readBuffer);
+			}
+			if (key.isValid() && key.isWritable())
+			{
+				client.handleWrite();
+			}
+		}
+		catch (CancelledKeyException e)
+		{	// The client was closed in the meantime, nothing to do.
+		}
+	}
+	
+	/**
+	 * Accepts an incoming TCP connection and creates a communicator for it.
+	 */
+	private void accept()
+	{
+		try
+		{
+			SocketChannel channel = serverChannel.accept();
+			if (channel == null) return;
+			channel.configureBlocking(false);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			// A connection is accepted, create a communicator for it.
+			key.attach(new TCPClientCommunicator(channel, key, this, handler));
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("Cannot accept a connection on the game server\n{}",
+					e.getMessage());
+		}
+	}
+	
+	/**
+	 * Adds or removes an interest operation of a client channel. The change is applied by
+	 * the listener thread.
+	 * @param key the key of the client channel.
+	 * @param operation the interest operation, such as SelectionKey.OP_WRITE.
+	 * @param enabled true to add the operation, false to remove it.
+	 */
+	void setInterest(final SelectionKey key, final int operation, final boolean enabled)
+	{
+		pendingChanges.add(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (!key.isValid()) return;
+				try
+				{
+					if (enabled) key.interestOps(key.interestOps() | operation);
+					else key.interestOps(key.interestOps() & ~operation);
+				}
+				catch (CancelledKeyException e)
+				{	// The client was closed in the meantime, nothing to do.
+				}
+			}
+		});
+		if (Thread.currentThread() != listenerThread) selector.wakeup();
+	}
+	
+	/**
+	 * Gets the worker threads handling the client requests.
+	 * @return the executor of the worker threads.
+	 */
+	Executor getWorkers()
+	{
+		return workers;
+	}
+	
+	/**
+	 * Gets the worker thread handling the client requests that use the database.
+	 * @return the executor of the database worker.
+	 */
+	Executor getDatabaseWorkers()
+	{
+		return databaseWorkers;
 	}
 	
 	/**
@@ -0,0 +1,86 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+/**
+ * The turn barrier coordinates a game with the bots of the game. The game opens the
+ * barrier when it sends a game state, and is notified by the listener of the barrier
+ * when it is released (every bot played), without consuming any CPU in between.
+ * @class
+ * @author Nicolas
+ */
+public class TurnBarrier
+{
+	/**
+	 * Whether all the bots that should play during the current round have played.
+	 */
+	private volatile boolean ready;
+	
+	/**
+	 * The task run when the barrier is released, or null.
+	 */
+	private volatile Runnable listener;
+	
+	/**
+	 * Creates a new turn barrier, released until it is opened for a round.
+	 * @constructor
+	 */
+	public TurnBarrier()
+	{
+		ready = true;
+	}
+	
+	/**
+	 * Opens the barrier for a new round, the game will wait for it to be released.
+	 */
+	public void open()
+	{
+		ready = false;
+	}
+	
+	/**
+	 * Releases the barrier and runs the listener of the barrier, if any.
+	 */
+	public void release()
+	{
+		ready = true;
+		Runnable listener = this.listener;
+		if (listener != null) listener.run();
+	}
+	
+	/**
+	 * Sets the task run every time the barrier is released. It enables a game to be
+	 * notified as soon as every bot played.
+	 * @param listener the task to run, or null.
+	 */
+	public void setListener(Runnable listener)
+	{
+		this.listener = listener;
+	}
+	
+	/**
+	 * Returns whether the barrier is released.
+	 * @return true if all the bots played for the current round, false otherwise.
+	 */
+	public boolean isReady()
+	{
+		return ready;
+	}
+}
@@ -0,0 +1,116 @@
+/* 
+ * This source file is part of HelloAnt.
+ * 
+ * Coyright(C) 2015 Nicolas Monmarché
+ * 
+ * HelloAnt is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HelloAnt is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HelloAnt.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package basis;
+
+/**
+ * This class gathers the time a game spent waiting for the game actions of the bots, and
+ * why each wait ended.
+ * @class
+ * @author Nicolas
+ */
+public class TurnMetrics
+{
+	/**
+	 * The number of turns that ended because every bot played.
+	 */
+	private int allPlayedCount;
+	
+	/**
+	 * The number of turns that ended because the response time elapsed.
+	 */
+	private int timeoutCount;
+	
+	/**
+	 * The total time spent waiting for game actions (in milliseconds).
+	 */
+	private long totalWaitMs;
+	
+	/**
+	 * The longest time spent waiting for game actions in a turn (in milliseconds).
+	 */
+	private long maxWaitMs;
+	
+	/**
+	 * Records the wait of a turn.
+	 * @param waitMs the time spent waiting for game actions (in milliseconds).
+	 * @param reason the reason why the wait ended.
+	 */
+	public synchronized void record(long waitMs, TurnEndReason reason)
+	{
+		if (reason == TurnEndReason.ALL_PLAYED) allPlayedCount++;
+		else timeoutCount++;
+		totalWaitMs += waitMs;
+		if (waitMs > maxWaitMs) maxWaitMs = waitMs;
+	}
+	
+	/**
+	 * Gets the number of turns recorded.
+	 * @return the number of turns.
+	 */
+	public synchronized int getTurnCount()
+	{
+		return allPlayedCount + timeoutCount;
+	}
+	
+	/**
+	 * Gets the number of turns that ended because every bot played.
+	 * @return the number of turns.
+	 */
+	public synchronized int getAllPlayedCount()
+	{
+		return allPlayedCount;
+	}
+	
+	/**
+	 * Gets the number of turns that ended because the response time elapsed.
+	 * @return the number of turns.
+	 */
+	public synchronized int getTimeoutCount()
+	{
+		return timeoutCount;
+	}
+	
+	/**
+	 * Gets the total time spent waiting for game actions.
+	 * @return the total wait time (in milliseconds).
+	 */
+	public synchronized long getTotalWaitMs()
+	{
+		return totalWaitMs;
+	}
+	
+	/**
+	 * Gets the longest time spent waiting for game actions in a turn.
+	 * @return the longest wait time (in milliseconds).
+	 */
+	public synchronized long getMaxWaitMs()
+	{
+		return maxWaitMs;
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		int turnCount = allPlayedCount + timeoutCount;
+		return turnCount + " turn" + (turnCount > 1 ? "s" : "") + ", " + allPlayedCount
+				+ " all played, " + timeoutCount + " timed out, waited " + totalWaitMs
+				+ " ms (max " + maxWaitMs + " ms)";
+	}
+}
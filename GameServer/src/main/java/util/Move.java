@@ -47,6 +47,24 @@ public enum Move
 		return EAST;
 	}
 	
+	/**
+	 * Gets a move direction from its initial letter.
+	 * @param direction the letter representing a direction.
+	 * @return the move direction associated with the letter.
+	 * @throws IllegalArgumentException if the letter is not a direction.
+	 */
+	public static Move fromChar(char direction)
+	{
+		switch (direction)
+		{
+		case 'N': case 'n': return NORTH;
+		case 'S': case 's': return SOUTH;
+		case 'E': case 'e': return EAST;
+		case 'W': case 'w': return WEST;
+		default: throw new IllegalArgumentException("Unknown direction: " + direction);
+		}
+	}
+	
 	/**
 	 * Gets a string from a move direction.
 	 * @param direction the input move direction.
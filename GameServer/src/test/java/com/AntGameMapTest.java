@@ -1,13 +1,26 @@
 package com;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import basis.Bot;
 import basis.BotMode;
+import util.Move;
 import ants.Ant;
+import ants.AntCombatResolver;
+import ants.AntCompiledMap;
 import ants.AntGameMap;
 import ants.AntGameMapMask;
 import ants.AntGameObject;
+import ants.AntMapCache;
+import ants.AntMapTemplate;
+import ants.AntRegistry;
+import ants.AntWall;
 import junit.framework.TestCase;
 
 public class AntGameMapTest extends TestCase
@@ -37,4 +50,183 @@ public class AntGameMapTest extends TestCase
 		assertEquals(2, test.size());
 		
 	}
+	
+	public void testMaskWrap()
+	{
+		AntGameMap map = new AntGameMap(7, 7);
+		Bot bot = new Bot(null, "Luc", BotMode.TRAINING, 1200, null);
+		map.addGameObject(new Ant(map, 6, 6, bot, 0, 0));
+		map.addGameObject(new Ant(map, 3, 3, bot, 0, 0));
+		AntGameMapMask masque = new AntGameMapMask(2);
+		assertEquals(1, map.applyMask(0, 0, masque).size());
+		assertEquals(1, map.applyMask(3, 4, masque).size());
+		assertEquals(0, map.applyMask(0, 3, masque).size());
+	}
+	
+	public void testVision()
+	{
+		AntGameMap map = new AntGameMap(7, 7);
+		AntGameMapMask masque = new AntGameMapMask(2);
+		map.enableVision(1, masque);
+		Bot bot = new Bot(null, "Luc", BotMode.TRAINING, 1200, null);
+		Ant tAnt = new Ant(map, 0, 0, bot, 0, 0);
+		Ant tAnt2 = new Ant(map, 5, 5, bot, 0, 0);
+		map.addGameObject(tAnt);
+		map.addGameObject(tAnt2);
+		tAnt.move(Move.WEST);
+		tAnt.move(Move.NORTH);
+		HashSet<AntGameObject> visible = new HashSet<AntGameObject>();
+		map.getVisibleGameObjects(0, visible);
+		assertEquals(2, visible.size());
+		tAnt2.kill(1);
+		visible.clear();
+		map.getVisibleGameObjects(0, visible);
+		assertEquals(new HashSet<AntGameObject>(map.applyMask(6, 6, masque)), visible);
+		map.removeGameObject(tAnt);
+		visible.clear();
+		map.getVisibleGameObjects(0, visible);
+		assertEquals(0, visible.size());
+	}
+	
+	public void testCombat()
+	{
+		AntGameMap map = new AntGameMap(10, 10);
+		AntCombatResolver resolver = new AntCombatResolver(map, new AntGameMapMask(5));
+		Bot bot0 = new Bot(null, "Luc", BotMode.TRAINING, 1200, null);
+		Bot bot1 = new Bot(null, "Leo", BotMode.TRAINING, 1200, null);
+		ArrayList<Ant> ants = new ArrayList<Ant>();
+		// Two ants against one.
+		ants.add(new Ant(map, 2, 2, bot0, 0, 0));
+		ants.add(new Ant(map, 4, 2, bot0, 0, 0));
+		ants.add(new Ant(map, 3, 3, bot1, 1, 0));
+		// One against one, across the edge of the map.
+		ants.add(new Ant(map, 0, 7, bot0, 0, 0));
+		ants.add(new Ant(map, 9, 7, bot1, 1, 0));
+		AntRegistry registry = new AntRegistry(2);
+		for (Ant ant : ants)
+		{
+			map.addGameObject(ant);
+			registry.add(ant);
+		}
+		resolver.resolve(registry);
+		assertFalse(ants.get(0).isDead());
+		assertFalse(ants.get(1).isDead());
+		assertTrue(ants.get(2).isDead());
+		assertTrue(ants.get(3).isDead());
+		assertTrue(ants.get(4).isDead());
+	}
+	
+	public void testCompiledMap() throws Exception
+	{
+		char[][] cells = AntTestMaps.landCells(30, 30);
+		cells[2][3] = '0';
+		cells[27][26] = '1';
+		cells[15][15] = '*';
+		Arrays.fill(cells[1], 6, 30, '%');
+		AntMapTemplate template = AntTestMaps.load(cells);
+		AntCompiledMap compiledMap = template.getCompiledMap();
+		assertEquals(24, compiledMap.getWallCount());
+		assertEquals(1, compiledMap.getHillCount(1));
+		assertEquals(27 * 30 + 26, compiledMap.getHillCell(1, 0));
+		assertEquals(15 * 30 + 15, compiledMap.getFoodSpawnCell(0));
+		// The walls are shared by the game maps, not added to them.
+		AntGameMap map = new AntGameMap(compiledMap);
+		AntGameMap other = new AntGameMap(compiledMap);
+		assertTrue(map.isWall(6, 1));
+		assertFalse(map.isWall(5, 1));
+		List<AntGameObject> content = map.getGameObjectsAt(6, 1);
+		assertEquals(1, content.size());
+		assertTrue(content.get(0) instanceof AntWall);
+		assertEquals(6, content.get(0).getCol());
+		assertSame(content.get(0), other.getGameObjectsAt(6, 1).get(0));
+		map.clear();
+		assertTrue(map.isWall(36, 31));
+		// An ant moving into a wall collides with it.
+		Bot bot = new Bot(null, "Luc", BotMode.TRAINING, 1200, null);
+		Ant ant = new Ant(map, 5, 1, bot, 0, 0);
+		map.addGameObject(ant);
+		assertFalse(map.collides(ant));
+		assertTrue(map.isBlocked(5, 1));
+		assertFalse(map.isBlocked(5, 2));
+		ant.move(Move.EAST);
+		assertTrue(map.collides(ant));
+		assertEquals(2, map.getGameObjectsAt(6, 1).size());
+		assertFalse(map.isBlocked(5, 1));
+		assertTrue(map.isBlocked(36, 31));
+	}
+	
+	public void testMapCache() throws Exception
+	{
+		File mapDirectory = Files.createTempDirectory("maps").toFile();
+		File cacheDirectory = new File(mapDirectory, "cache");
+		char[][] cells = AntTestMaps.landCells(30, 40);
+		for (int i = 0; i < 30; i++)
+		{
+			for (int j = 0; j < 40; j++)
+			{
+				if ((i * j) % 11 == 5) cells[i][j] = '%';
+			}
+		}
+		cells[2][3] = '0';
+		cells[27][36] = '1';
+		cells[15][15] = '*';
+		String mapFile = AntTestMaps.toMapFile(cells);
+		File file = new File(mapDirectory, "test.map");
+		Files.write(file.toPath(), mapFile.getBytes(StandardCharsets.UTF_8));
+		AntMapCache cache = new AntMapCache(cacheDirectory);
+		AntMapTemplate parsed = cache.loadMap(file);
+		assertTrue(new File(cacheDirectory, "test.map.bin").isFile());
+		// The second load reads the cache file.
+		AntMapTemplate cached = cache.loadMap(file);
+		assertNotSame(parsed.getCompiledMap(), cached.getCompiledMap());
+		assertEquals(parsed.toJSON().toString(), cached.toJSON().toString());
+		assertEquals(parsed.toJSON().toString(),
+				cached.getCompiledMap().toJSON().toString());
+		assertEquals(40, cached.getCols());
+		assertEquals(2, cached.getBotCount());
+		assertEquals(parsed.getCompiledMap().getWallCount(),
+				cached.getCompiledMap().getWallCount());
+		assertEquals(27 * 40 + 36, cached.getCompiledMap().getHillCell(1, 0));
+		// A changed map file is parsed again.
+		Files.write(file.toPath(), mapFile.replace("players 2", "players 3")
+				.getBytes(StandardCharsets.UTF_8));
+		assertEquals(3, cache.loadMap(file).getBotCount());
+		assertEquals(1, cache.loadMaps(mapDirectory).size());
+		// A map that fails to load does not drop the other maps.
+		Files.write(new File(mapDirectory, "broken.map").toPath(),
+				mapFile.getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(mapDirectory, "other.map").toPath(),
+				mapFile.getBytes(StandardCharsets.UTF_8));
+		AntMapCache brokenCache = new AntMapCache(cacheDirectory)
+		{
+			@Override
+			public AntMapTemplate loadMap(File file)
+			{
+				if (file.getName().equals("broken.map"))
+					throw new IllegalStateException("Cannot read " + file.getName());
+				return super.loadMap(file);
+			}
+		};
+		assertEquals(2, brokenCache.loadMaps(mapDirectory).size());
+	}
+	
+	public void testGeneratedMap()
+	{
+		AntMapTemplate template = new AntMapTemplate();
+		template.generate(2, 60, 40, 42L);
+		AntMapTemplate again = new AntMapTemplate();
+		again.generate(2, 60, 40, 42L);
+		assertEquals(template.toJSON().toString(), again.toJSON().toString());
+		// The map is the same after a rotation by 180 degrees.
+		AntCompiledMap compiledMap = template.getCompiledMap();
+		int hill = compiledMap.getHillCell(0, 0);
+		assertEquals(60 * 40 - 1 - hill, compiledMap.getHillCell(1, 0));
+		int cellCount = 60 * 40;
+		for (int cell = 0; cell < cellCount; cell++)
+		{
+			assertEquals(compiledMap.isWall(cell), compiledMap.isWall(cellCount - 1 - cell));
+		}
+		assertTrue(compiledMap.getWallCount() > 0);
+		assertTrue(compiledMap.getFoodSpawnCount() > 0);
+	}
 }
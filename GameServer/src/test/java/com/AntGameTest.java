@@ -0,0 +1,468 @@
+package com;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import basis.BinaryFrames;
+import basis.Bot;
+import basis.BotMode;
+import basis.FakeCommunicator;
+import basis.GameManager;
+import basis.JSONEncoder;
+import ants.Ant;
+import ants.AntBotGameInfo;
+import ants.AntGame;
+import ants.AntGameMap;
+import ants.AntHill;
+import ants.AntMapTemplate;
+import ants.AntRegistry;
+import ants.AntScoreboard;
+import junit.framework.TestCase;
+
+public class AntGameTest extends TestCase
+{
+	public void testAntRegistry()
+	{
+		AntGameMap map = new AntGameMap(10, 10);
+		AntRegistry registry = new AntRegistry(2);
+		Bot bot0 = new Bot(null, "Luc", BotMode.TRAINING, 1200, null);
+		Bot bot1 = new Bot(null, "Leo", BotMode.TRAINING, 1200, null);
+		Ant ant0 = new Ant(map, 1, 1, bot0, 0, 0);
+		Ant ant1 = new Ant(map, 2, 2, bot1, 1, 0);
+		Ant ant2 = new Ant(map, 3, 3, bot0, 0, 0);
+		int handle0 = registry.add(ant0);
+		registry.add(ant1);
+		int handle2 = registry.add(ant2);
+		assertEquals(3, registry.size());
+		assertEquals(2, registry.getAliveCount(0));
+		// The state of a registered ant is kept by the registry.
+		ant2.setFood(true);
+		ant2.setCol(4);
+		int slot2 = registry.getSlot(handle2);
+		assertTrue(registry.hasFood(slot2));
+		assertEquals(4, registry.getCol(slot2));
+		ant0.kill(1);
+		assertEquals(1, registry.getAliveCount(0));
+		assertEquals(2, registry.getAntCount(0));
+		// The last ant takes the slot of the removed ant and keeps its handle.
+		registry.remove(ant0);
+		assertFalse(registry.isValid(handle0));
+		assertTrue(ant0.isDead());
+		assertEquals(2, registry.size());
+		assertSame(ant2, registry.get(0));
+		assertEquals(0, registry.getSlot(handle2));
+		assertTrue(ant2.hasFood());
+		assertEquals(1, registry.getAntCount(0));
+		// A new ant never gets the handle of a removed ant.
+		int handle3 = registry.add(new Ant(map, 5, 5, bot1, 1, 0));
+		assertTrue(handle3 != handle0);
+		assertEquals(2, registry.getAliveCount(1));
+	}
+	
+	public void testScoreboard()
+	{
+		Random rand = new Random(42);
+		int stabilizedCount = 0;
+		for (int trial = 0; trial < 2000; trial++)
+		{
+			int botCount = 1 + rand.nextInt(6);
+			AntGameMap map = new AntGameMap(10, 10);
+			AntRegistry registry = new AntRegistry(botCount);
+			AntScoreboard scoreboard = new AntScoreboard(botCount);
+			AntBotGameInfo[] botInfos = new AntBotGameInfo[botCount];
+			for (int botId = 0; botId < botCount; botId++)
+			{
+				Bot bot = new Bot(null, "Bot" + botId, BotMode.TRAINING, 1200, null);
+				AntBotGameInfo botInfo = new AntBotGameInfo(botId, registry, scoreboard);
+				botInfo.init(bot);
+				scoreboard.addBot(botInfo);
+				// Some bots have no ant, no hill or are muted.
+				if (rand.nextInt(5) > 0)
+				{
+					registry.add(new Ant(map, botId, 0, bot, botId, 0));
+				}
+				int hillCount = rand.nextInt(4);
+				for (int i = 0; i < hillCount; i++)
+				{
+					botInfo.addHill(new AntHill(map, botId, i + 1, bot, botId));
+				}
+				botInfo.setMuted(rand.nextInt(10) == 0);
+				// Small scores so that many bots share the same score.
+				botInfo.setGameScore(rand.nextInt(8));
+				botInfos[botId] = botInfo;
+			}
+			// Scores change after the bots are on the scoreboard.
+			for (int i = 0; i < botCount; i++)
+			{
+				botInfos[rand.nextInt(botCount)].addGameScore(rand.nextInt(5) - 2);
+			}
+			boolean stabilized = scoreboard.isRankStabilized();
+			assertEquals(isRankStabilizedPairwise(botInfos), stabilized);
+			if (stabilized) stabilizedCount++;
+			scoreboard.rank();
+			for (AntBotGameInfo botInfo : botInfos)
+			{
+				int higherCount = 0;
+				for (AntBotGameInfo other : botInfos)
+				{
+					if (other.getGameScore() > botInfo.getGameScore()) higherCount++;
+				}
+				assertEquals(higherCount, botInfo.getRank());
+			}
+		}
+		// Both outcomes are tested.
+		assertTrue(stabilizedCount > 0 && stabilizedCount < 2000);
+	}
+	
+	/**
+	 * The check of the rank stabilization comparing every pair of bots, which the
+	 * scoreboard replaced.
+	 */
+	private static boolean isRankStabilizedPairwise(AntBotGameInfo[] botInfos)
+	{
+		for (AntBotGameInfo botInfo : botInfos)
+		{
+			if (!botInfo.isAlive() || !botInfo.hasHills()) continue;
+			int maxPlayerScore = botInfo.getGameScore();
+			int minEqualOpponentScore = Integer.MAX_VALUE;
+			int minSuperiorOpponentScore = Integer.MAX_VALUE;
+			for (AntBotGameInfo opponentInfo : botInfos)
+			{
+				if (opponentInfo == botInfo
+						|| botInfo.getGameScore() > opponentInfo.getGameScore())
+				{
+					continue;
+				}
+				int minOpponentScore = opponentInfo.getGameScore();
+				Iterator<AntHill> hillIt = opponentInfo.getHillIterator();
+				while (hillIt.hasNext())
+				{
+					hillIt.next();
+					minOpponentScore -= 1;
+					maxPlayerScore += 2;
+				}
+				if (botInfo.getGameScore() == opponentInfo.getGameScore())
+				{
+					minEqualOpponentScore = Math.min(minEqualOpponentScore,
+							minOpponentScore);
+				}
+				else
+				{
+					minSuperiorOpponentScore = Math.min(minSuperiorOpponentScore,
+							minOpponentScore);
+				}
+			}
+			if (maxPlayerScore >= minSuperiorOpponentScore
+					|| maxPlayerScore > minEqualOpponentScore)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public void testLateActions() throws Exception
+	{
+		SilentCommunicator com = new SilentCommunicator();
+		Bot bot = new Bot(com, "Luc", BotMode.TRAINING, 1200, null);
+		com.setBot(bot);
+		AntGame game = createGameWithAnt(bot);
+		AntBotGameInfo botInfo = (AntBotGameInfo) game.getBotInfo(bot);
+		Ant ant = botInfo.getAntIterator().next();
+		int col = ant.getCol();
+		int row = ant.getRow();
+		JSONObject actions = new JSONObject();
+		actions.put("moves", new JSONArray().put(new JSONArray().put(row).put(col)
+				.put("N")));
+		// The actions arrive after the game timed out the turn and updated the game:
+		// they are dropped instead of moving the ant during the next round.
+		game.sendGameState();
+		game.update();
+		assertEquals(0, game.receiveActions(bot, actions));
+		game.sendGameState();
+		game.update();
+		assertEquals(col, ant.getCol());
+		assertEquals(row, ant.getRow());
+		// The actions arrive in time.
+		game.sendGameState();
+		assertEquals(0, game.receiveActions(bot, actions));
+		game.update();
+		assertEquals(col, ant.getCol());
+		assertEquals(row - 1, ant.getRow());
+	}
+	
+	public void testPackedMoves() throws Exception
+	{
+		SilentCommunicator com = new SilentCommunicator();
+		Bot bot = new Bot(com, "Luc", BotMode.TRAINING, 1200, null);
+		com.setBot(bot);
+		AntGame game = createGameWithAnt(bot);
+		Ant ant = ((AntBotGameInfo) game.getBotInfo(bot)).getAntIterator().next();
+		int col = ant.getCol();
+		int row = ant.getRow();
+		// A trailing separator and empty moves are tolerated.
+		game.sendGameState();
+		assertEquals(0, game.receiveActions(bot, new JSONObject().put("moves",
+				";" + row + "," + col + ",E;;")));
+		game.update();
+		assertEquals(col + 1, ant.getCol());
+		assertEquals(row, ant.getRow());
+		String[] malformedMoves = { row + "," + (col + 1), row + ",E", row + ",,E",
+				row + "," + (col + 1) + ",", row + "," + (col + 1) + ",WE",
+				row + "," + (col + 1) + ",W,", "-1," + col + ",N", row + ",-1,N",
+				"99999999999," + col + ",N", row + "," + col + "0000000000,N", ",,N",
+				row + "," + (col + 1) + ",X" };
+		for (String moves : malformedMoves)
+		{
+			game.sendGameState();
+			try
+			{
+				game.receiveActions(bot, new JSONObject().put("moves", moves));
+				fail("Malformed moves accepted: " + moves);
+			}
+			catch (JSONException e)
+			{
+				// Expected
+			}
+		}
+	}
+	
+	public void testBinaryMoves() throws Exception
+	{
+		SilentCommunicator com = new SilentCommunicator();
+		Bot bot = new Bot(com, "Luc", BotMode.TRAINING, 1200, null);
+		com.setBot(bot);
+		AntGame game = createGameWithAnt(bot);
+		Ant ant = ((AntBotGameInfo) game.getBotInfo(bot)).getAntIterator().next();
+		int col = ant.getCol();
+		int row = ant.getRow();
+		// The moves of a "gameactions" frame: the count, then the row, the column and
+		// the letter of each move.
+		game.sendGameState();
+		assertEquals(0, game.receiveActions(bot, binaryMoves(1, row, col, 'S')));
+		game.update();
+		assertEquals(col, ant.getCol());
+		assertEquals(row + 1, ant.getRow());
+		ByteBuffer[] malformedMoves = { binaryMoves(1, row + 1, col, 'X'),
+				binaryMoves(2, row + 1, col, 'N'), binaryMoves(1, -1, col, 'N'),
+				ByteBuffer.wrap(new byte[] { 1, 2 }) };
+		for (ByteBuffer moves : malformedMoves)
+		{
+			game.sendGameState();
+			try
+			{
+				game.receiveActions(bot, moves);
+				fail("Malformed moves accepted");
+			}
+			catch (JSONException e)
+			{
+				// Expected
+			}
+		}
+	}
+	
+	public void testGameStateEncoding() throws Exception
+	{
+		char[][] cells = AntTestMaps.landCells(30, 30);
+		for (int i = 0; i < 30; i++)
+		{
+			for (int j = 0; j < 30; j++)
+			{
+				if ((i + j) % 7 == 0) cells[i][j] = '*';
+			}
+		}
+		Arrays.fill(cells[8], 3, 30, '%');
+		cells[5][5] = '0';
+		cells[5][11] = '1';
+		AntMapTemplate template = AntTestMaps.load(cells);
+		SilentCommunicator com = new SilentCommunicator();
+		SilentCommunicator deltaCom = new SilentCommunicator();
+		deltaCom.setDeltaGameStates(true);
+		ArrayList<Bot> bots = new ArrayList<Bot>();
+		bots.add(new Bot(com, "Luc", BotMode.TRAINING, 1200, null));
+		bots.add(new Bot(deltaCom, "Mia", BotMode.TRAINING, 1200, null));
+		com.setBot(bots.get(0));
+		deltaCom.setBot(bots.get(1));
+		StateGame game = new StateGame(bots, template);
+		for (Bot bot : bots) bot.setGame(game);
+		game.init();
+		// Keys and strings that need to be escaped, around the game state.
+		String escaped = "</script>\u0001\u001f\t\n\"\\ \u00e9\u2028";
+		List<String> deltaGameObjects = new ArrayList<String>();
+		for (int round = 0; round < 20; round++)
+		{
+			game.sendGameState();
+			JSONObject expected = new JSONObject();
+			expected.put(escaped, game.getGameState(bots.get(0)));
+			expected.put("name", escaped);
+			JSONEncoder encoder = new JSONEncoder(64);
+			encoder.object().key(escaped);
+			game.writeGameState(bots.get(0), encoder);
+			encoder.key("name").value(escaped).endObject();
+			String text = new String(encoder.getBytes(), 0, encoder.size(),
+					StandardCharsets.UTF_8);
+			assertFalse(text.contains("</"));
+			JSONObject content = new JSONObject(text);
+			assertEquals(escaped, content.getString("name"));
+			assertEquals(1, content.getJSONObject(escaped).length());
+			List<String> gameObjects = getGameObjects(content.getJSONObject(escaped)
+					.getJSONArray("gameobjects"));
+			assertEquals(getGameObjects(expected.getJSONObject(escaped)
+					.getJSONArray("gameobjects")), gameObjects);
+			assertFalse(gameObjects.isEmpty());
+			// The delta game states add up to the full game state.
+			JSONArray full = game.getGameState(bots.get(1)).getJSONArray("gameobjects");
+			encoder.reset();
+			game.writeGameState(bots.get(1), encoder);
+			content = new JSONObject(new String(encoder.getBytes(), 0, encoder.size(),
+					StandardCharsets.UTF_8));
+			if (content.getBoolean("full"))
+			{
+				deltaGameObjects = getGameObjects(content.getJSONArray("gameobjects"));
+			}
+			else
+			{
+				List<String> disappeared = getGameObjects(
+						content.getJSONArray("disappeared"));
+				for (String gameObject : disappeared)
+				{
+					assertTrue(deltaGameObjects.remove(gameObject));
+				}
+				deltaGameObjects.addAll(getGameObjects(content.getJSONArray("appeared")));
+				Collections.sort(deltaGameObjects);
+			}
+			assertEquals(getGameObjects(full), deltaGameObjects);
+			for (Bot bot : bots)
+			{	// The ants walk back and forth, eating the food on their way.
+				JSONArray moves = new JSONArray();
+				Iterator<Ant> antIt = ((AntBotGameInfo) game.getBotInfo(bot))
+						.getAntIterator();
+				while (antIt.hasNext())
+				{
+					Ant ant = antIt.next();
+					moves.put(new JSONArray().put(ant.getRow()).put(ant.getCol())
+							.put(round % 4 < 2 ? "S" : "N"));
+				}
+				game.receiveActions(bot, new JSONObject().put("moves", moves));
+			}
+			game.update();
+		}
+	}
+	
+	/**
+	 * Gets the game objects of a "gamestate" message as sorted JSON texts.
+	 */
+	private static List<String> getGameObjects(JSONArray gameObjects) throws Exception
+	{
+		List<String> texts = new ArrayList<String>();
+		for (int i = 0; i < gameObjects.length(); i++)
+		{
+			texts.add(gameObjects.getJSONArray(i).toString());
+		}
+		Collections.sort(texts);
+		return texts;
+	}
+	
+	/**
+	 * Encodes a single move as the payload of a "gameactions" frame.
+	 */
+	private static ByteBuffer binaryMoves(int count, int row, int col, char direction)
+	{
+		byte[] bytes = new byte[3 * BinaryFrames.MAX_VARINT_SIZE + 1];
+		int pos = BinaryFrames.writeVarint(bytes, 0, count);
+		pos = BinaryFrames.writeVarint(bytes, pos, row);
+		pos = BinaryFrames.writeVarint(bytes, pos, col);
+		bytes[pos++] = (byte) direction;
+		return ByteBuffer.wrap(bytes, 0, pos);
+	}
+	
+	/**
+	 * Creates a game on a small map, whose first bot is given and owns one ant.
+	 */
+	private static AntGame createGameWithAnt(Bot bot) throws Exception
+	{
+		char[][] cells = AntTestMaps.landCells(30, 30);
+		cells[5][5] = '0';
+		cells[25][25] = '1';
+		AntMapTemplate template = AntTestMaps.load(cells);
+		ArrayList<Bot> bots = new ArrayList<Bot>();
+		bots.add(bot);
+		AntGame game = new AntGame(bots, GameManager.MAX_ROUND, 60000, 0, template, 25,
+				77.0f, 5.0f);
+		bot.setGame(game);
+		game.init();
+		AntBotGameInfo botInfo = (AntBotGameInfo) game.getBotInfo(bot);
+		for (int i = 0; i < 10 && botInfo.getAntCount() == 0; i++)
+		{	// Let the hill spawn an ant, the bot does not play.
+			game.sendGameState();
+			game.update();
+		}
+		return game;
+	}
+	
+	/**
+	 * A communicator that never plays, so the test sends the actions of its bot.
+	 */
+	static class SilentCommunicator extends FakeCommunicator
+	{
+		void setBot(Bot bot)
+		{
+			this.bot = bot;
+		}
+	
+		@Override
+		public void sendGameState(JSONObject content)
+		{
+			// Do nothing
+		}
+	
+		@Override
+		public void sendGameStart(JSONObject content)
+		{
+			// Do nothing
+		}
+	
+		@Override
+		public void sendGameEnd(byte[] message)
+		{
+			// Do nothing
+		}
+	
+		@Override
+		public void sendGameMute(JSONObject content)
+		{
+			// Do nothing
+		}
+	}
+	
+	/**
+	 * A game whose "gamestate" contents can be generated and written by the test.
+	 */
+	private static class StateGame extends AntGame
+	{
+		StateGame(ArrayList<Bot> bots, AntMapTemplate template)
+		{
+			super(bots, GameManager.MAX_ROUND, 60000, 0, template, 25, 77.0f, 5.0f);
+		}
+	
+		JSONObject getGameState(Bot bot)
+		{
+			return genGameStateMessageContent(bot);
+		}
+	
+		void writeGameState(Bot bot, JSONEncoder encoder)
+		{
+			writeGameStateMessageContent(bot, encoder);
+		}
+	}
+}
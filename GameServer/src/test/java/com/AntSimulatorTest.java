@@ -0,0 +1,30 @@
+package com;
+
+import java.util.List;
+
+import ants.AntSimulationResult;
+import ants.AntSimulator;
+import junit.framework.TestCase;
+
+public class AntSimulatorTest extends TestCase
+{
+	public void testRun() throws Exception
+	{
+		AntSimulator simulator = new AntSimulator(2);
+		simulator.addMap("HA_cell_maze_p02_20.map");
+		simulator.addMap("HA_cell_maze_p04_20.map");
+		simulator.setMaxRound(20);
+		List<AntSimulationResult> results = simulator.run(4);
+		simulator.shutdown();
+		
+		assertEquals(4, results.size());
+		assertEquals("HA_cell_maze_p02_20.map", results.get(0).getMapName());
+		assertEquals(2, results.get(0).getBotCount());
+		assertEquals("HA_cell_maze_p04_20.map", results.get(3).getMapName());
+		assertEquals(4, results.get(3).getBotCount());
+		for (AntSimulationResult result : results)
+		{
+			assertTrue(result.getRoundCount() <= 20);
+		}
+	}
+}
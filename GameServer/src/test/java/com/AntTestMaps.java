@@ -0,0 +1,62 @@
+package com;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import ants.AntMapTemplate;
+
+/**
+ * Builds the small maps of the tests, cell by cell, in the format of the map files.
+ */
+final class AntTestMaps
+{
+	private AntTestMaps()
+	{
+	}
+
+	/**
+	 * Creates the cells of a map made of land only. The tests then place the hills
+	 * ('0', '1', ...), the food ('*') and the walls ('%') by row and column.
+	 */
+	static char[][] landCells(int rows, int cols)
+	{
+		char[][] cells = new char[rows][cols];
+		for (char[] row : cells)
+		{
+			Arrays.fill(row, '.');
+		}
+		return cells;
+	}
+
+	/**
+	 * Writes the map file of some cells, the number of players is given by the hills.
+	 */
+	static String toMapFile(char[][] cells)
+	{
+		int players = 0;
+		StringBuilder lines = new StringBuilder();
+		for (char[] row : cells)
+		{
+			lines.append("m ").append(row).append('\n');
+			for (char cell : row)
+			{
+				if (cell >= '0' && cell <= '9')
+				{
+					players = Math.max(players, cell - '0' + 1);
+				}
+			}
+		}
+		return "players " + players + "\nrows " + cells.length + "\ncols "
+				+ cells[0].length + "\n" + lines;
+	}
+
+	/**
+	 * Loads the map template of some cells.
+	 */
+	static AntMapTemplate load(char[][] cells) throws Exception
+	{
+		AntMapTemplate template = new AntMapTemplate();
+		template.load(new StringReader(toMapFile(cells)));
+		return template;
+	}
+}
@@ -0,0 +1,76 @@
+package com;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import basis.BinaryFrames;
+import junit.framework.TestCase;
+
+public class BinaryFramesTest extends TestCase
+{
+	public void testVarint()
+	{
+		int[] values = { 0, 1, 127, 128, 300, 16383, 16384, (1 << 21) - 1, 1 << 21,
+				(1 << 28) - 1, 1 << 28, Integer.MAX_VALUE };
+		for (int value : values)
+		{
+			byte[] bytes = new byte[BinaryFrames.MAX_VARINT_SIZE + 1];
+			int end = BinaryFrames.writeVarint(bytes, 1, value);
+			assertEquals(BinaryFrames.varintSize(value), end - 1);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, end - 1);
+			assertEquals(value, BinaryFrames.readVarint(buffer));
+			assertFalse(buffer.hasRemaining());
+		}
+		// 300 is written 0xAC 0x02.
+		byte[] bytes = new byte[2];
+		BinaryFrames.writeVarint(bytes, 0, 300);
+		assertTrue(Arrays.equals(new byte[] { (byte) 0xAC, 0x02 }, bytes));
+	}
+	
+	public void testMalformedVarint()
+	{
+		try
+		{	// Truncated varint.
+			BinaryFrames.readVarint(ByteBuffer.wrap(new byte[] { (byte) 0x80 }));
+			fail();
+		}
+		catch (BufferUnderflowException e)
+		{
+			// Expected
+		}
+		try
+		{	// Longer than 5 bytes.
+			byte[] bytes = new byte[BinaryFrames.MAX_VARINT_SIZE + 1];
+			Arrays.fill(bytes, (byte) 0x80);
+			BinaryFrames.readVarint(ByteBuffer.wrap(bytes));
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+	
+	public void testFrame()
+	{
+		int[] lengths = { 0, 1, 126, 127, 128, 20000 };
+		for (int length : lengths)
+		{
+			byte[] payload = new byte[length];
+			for (int i = 0; i < length; i++)
+			{
+				payload[i] = (byte) (i * 31);
+			}
+			byte[] header = BinaryFrames.header(BinaryFrames.GAMESTATE, length);
+			ByteBuffer frame = ByteBuffer.allocate(header.length + length);
+			frame.put(header).put(payload).flip();
+			// The length covers the type and the payload.
+			assertEquals(length + 1, BinaryFrames.readVarint(frame));
+			assertEquals(BinaryFrames.GAMESTATE, frame.get());
+			byte[] read = new byte[frame.remaining()];
+			frame.get(read);
+			assertTrue(Arrays.equals(payload, read));
+		}
+	}
+}
@@ -1,10 +1,12 @@
 package com;
 
 import java.util.ArrayList;
-import java.util.Vector;
+import java.util.HashSet;
+import java.util.Random;
 
 import basis.Bot;
 import basis.GameManager;
+import basis.BotLobby;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -23,54 +25,9 @@ public class GameManagerTest extends TestCase
 	}
 	
 	/**
-	 * Test if the function incrementPosToTest, if the pos are already maxed, return the correct value
+	 * Test if the function matchBots forms the game of the only compatible bots
 	 */
-	public void testIncrementPosToTest_ImpossibleToIncrement(){
-		GameManager gm = new GameManager(null);
-		Vector<Bot> vectBot = new Vector<>();
-		vectBot.add(new Bot(null, null, null, 0, null));
-		vectBot.add(new Bot(null, null, null, 0, null));
-		vectBot.add(new Bot(null, null, null, 0, null));
-		int posToTest[] = new int[3];
-		posToTest[0] = 0;
-		posToTest[1] = 1;
-		posToTest[2] = 2;
-		int[] myClone = posToTest.clone();
-		myClone[2]++;
-
-		assertFalse(gm.incrementPosToTest(posToTest, vectBot));
-	}
-	
-	/**
-	 * Test if the function incrementPosToTest increments correctly the pos
-	 */
-	public void testIncrementPosToTest_IncrementOk()
-	{
-		GameManager gm = new GameManager(null);
-		Vector<Bot> vectBot = new Vector<>();
-		vectBot.add(new Bot(null, null, null, 0, null));
-		vectBot.add(new Bot(null, null, null, 0, null));
-		vectBot.add(new Bot(null, null, null, 0, null));
-		vectBot.add(new Bot(null, null, null, 0, null));
-		int posToTest[] = new int[3];
-		posToTest[0] = 0;
-		posToTest[1] = 1;
-		posToTest[2] = 2;
-		int[] myClone = posToTest.clone();
-		myClone[2]++;
-
-		
-		gm.incrementPosToTest(posToTest, vectBot);
-		assertEquals(myClone.length, posToTest.length);
-		for(int i=0; i<posToTest.length; i++){
-			assertEquals(myClone[i], posToTest[i]);
-		}
-	}
-
-	/**
-	 * Test if the function findCompatibleLists find the good lists
-	 */
-	public void testFindCompatibleLists()
+	public void testMatchBots()
 	{
 		GameManager gm = new GameManager(null);
 		Bot a = new Bot(null, "A", null, 30, null);
@@ -79,150 +36,184 @@ public class GameManagerTest extends TestCase
 		Bot d = new Bot(null, "D", null, 10, null);
 		Bot e = new Bot(null, "E", null, 1, null);
 		Bot f = new Bot(null, "F", null, 0, null);
-		
-		/* B, E and F are the only compatible if we look at score */
-		
 		gm.addBot(a);
 		gm.addBot(b);
 		gm.addBot(c);
 		gm.addBot(d);
 		gm.addBot(e);
 		gm.addBot(f);
-		
-		gm.fillChallengers();
-		
-		ArrayList<ArrayList<Bot>> list = gm.findCompatibleLists(3);
-		
-		assertEquals(1, list.size());
-		
-		ArrayList<Bot> toCheck = list.get(0);
-		assertEquals(3, toCheck.size());
-		assertTrue(toCheck.contains(b));
-		assertTrue(toCheck.contains(e));
-		assertTrue(toCheck.contains(f));
-		
-		ArrayList<ArrayList<Bot>> fights = gm.chooseFights(list);
-		
-		gm.setBotsInFight(fights);
+	
+		ArrayList<ArrayList<Bot>> fights = gm.matchBots(3);
+	
+		assertEquals(1, fights.size());
+		assertEquals(3, fights.get(0).size());
+		assertTrue(fights.get(0).contains(b));
+		assertTrue(fights.get(0).contains(e));
+		assertTrue(fights.get(0).contains(f));
 	}
 	
 	/**
-	 * Test if the function testChooseFights returns the same list if send a list with a unique possibility
+	 * Test if the function matchBots forms the only possible game
 	 */
-	public void testChooseFights_UniqueList()
+	public void testMatchBots_UniqueGame()
 	{
 		Bot a = new Bot(null, "A", null, 0, null);
 		Bot b = new Bot(null, "B", null, 0, null);
 		Bot c = new Bot(null, "C", null, 0, null);
-		
-		ArrayList<ArrayList<Bot>> list = new ArrayList<>();
-		ArrayList<Bot> toAdd = new ArrayList<>();
-		toAdd.add(a);
-		toAdd.add(b);
-		toAdd.add(c);
-		list.add(toAdd);
-		
+	
 		GameManager gm = new GameManager(null);
-		ArrayList<ArrayList<Bot>> fights = gm.chooseFights(list);
-		
-		assertEquals(list.size(), fights.size());
+		gm.addBot(a);
+		gm.addBot(b);
+		gm.addBot(c);
+	
+		ArrayList<ArrayList<Bot>> fights = gm.matchBots(3);
+	
 		assertEquals(1, fights.size());
-		
-		assertEquals(list.get(0).size(), fights.get(0).size());
+		assertEquals(3, fights.get(0).size());
 		assertTrue(fights.get(0).contains(a));
 		assertTrue(fights.get(0).contains(b));
 		assertTrue(fights.get(0).contains(c));
 	}
 	
 	/**
-	 * Test the chooseFights function with a more complete approach (using priority and score)
+	 * Test if the function matchBots forms no game when the lobby is too small
+	 */
+	public void testMatchBots_NotEnoughBots()
+	{
+		GameManager gm = new GameManager(null);
+		gm.addBot(new Bot(null, "A", null, 0, null));
+		gm.addBot(new Bot(null, "B", null, 0, null));
+	
+		assertTrue(gm.matchBots(3).isEmpty());
+	}
+	
+	/**
+	 * Test if a bot is in at most one of the games formed by matchBots
 	 */
-	public void testChooseFights_Complete()
+	public void testMatchBots_UniqueBots()
+	{
+		GameManager gm = new GameManager(null);
+		for (int i = 0; i < 7; i++)
+		{
+			gm.addBot(new Bot(null, "B" + i, null, 0, null));
+		}
+	
+		ArrayList<ArrayList<Bot>> fights = gm.matchBots(3);
+	
+		assertEquals(2, fights.size());
+		HashSet<Bot> inGame = new HashSet<>();
+		for (ArrayList<Bot> fight : fights)
+		{
+			assertEquals(3, fight.size());
+			for (Bot bot : fight)
+			{
+				assertTrue(inGame.add(bot));
+			}
+		}
+	}
+	
+	/**
+	 * Test if the bots with the highest priority are matched first
+	 */
+	public void testMatchBots_Priority()
 	{
-		
 		Bot a = new Bot(null, "A", null, 30, null);
 		Bot b = new Bot(null, "B", null, 30, null);
 		Bot c = new Bot(null, "C", null, 30, null);
 		Bot d = new Bot(null, "D", null, 30, null);
 		Bot e = new Bot(null, "E", null, 30, null);
-
-		/*
-		 * A, B and E should fight together
-		 */
 		a.incPriority();
 		b.incPriority();
 		e.incPriority();
-		
+	
 		GameManager gm = new GameManager(null);
 		gm.addBot(a);
 		gm.addBot(b);
 		gm.addBot(c);
 		gm.addBot(d);
 		gm.addBot(e);
-		
-		gm.fillChallengers();
-		
-		ArrayList<ArrayList<Bot>> list = gm.findCompatibleLists(3);
-		ArrayList<ArrayList<Bot>> fights = gm.chooseFights(list);
-		
+	
+		ArrayList<ArrayList<Bot>> fights = gm.matchBots(3);
+	
 		assertEquals(1, fights.size());
-		
-		assertEquals(3, fights.get(0).size());
-		
 		assertTrue(fights.get(0).contains(a));
 		assertTrue(fights.get(0).contains(b));
 		assertTrue(fights.get(0).contains(e));
 	}
 	
 	/**
-	 * Test the function isEachListUnique, shall return true with an effetively unique list
+	 * Test if the games formed in a large lobby are made of compatible bots
 	 */
-	public void testIsEachListUnique_Unique(){
-		Bot a = new Bot(null, "A", null, 0, null);
-		Bot b = new Bot(null, "B", null, 0, null);
-		Bot c = new Bot(null, "C", null, 0, null);
-		Bot d = new Bot(null, "D", null, 0, null);
-		Bot e = new Bot(null, "E", null, 0, null);
-		Bot f = new Bot(null, "F", null, 0, null);
-
-		ArrayList<Bot> list1 = new ArrayList<>();
-		list1.add(a);
-		list1.add(b);
-		list1.add(c);
-		
-		ArrayList<Bot> list2 = new ArrayList<>();
-		list2.add(d);
-		list2.add(e);
-		list2.add(f);
-		
-		ArrayList<ArrayList<Bot>> toCheck = new ArrayList<>();
-		toCheck.add(list1);
-		toCheck.add(list2);
-		
+	public void testMatchBots_LargeLobby()
+	{
 		GameManager gm = new GameManager(null);
-		assertTrue(gm.isEachListUnique(toCheck));
+		Random rand = new Random(42);
+		for (int i = 0; i < 5000; i++)
+		{
+			Bot bot = new Bot(null, "B" + i, null, rand.nextInt(2000), null);
+			for (int j = rand.nextInt(20); j > 0; j--)
+			{
+				bot.incPriority();
+			}
+			gm.addBot(bot);
+		}
+	
+		ArrayList<ArrayList<Bot>> fights = gm.matchBots(4);
+	
+		assertTrue(fights.size() > 250);
+		HashSet<Bot> inGame = new HashSet<>();
+		for (ArrayList<Bot> fight : fights)
+		{
+			assertEquals(4, fight.size());
+			for (Bot bot : fight)
+			{
+				assertTrue(inGame.add(bot));
+				for (Bot other : fight)
+				{
+					assertTrue(Math.abs(bot.getScore() - other.getScore())
+							<= bot.getPriority());
+				}
+			}
+		}
 	}
 	
 	/**
-	 * Test the isEachListUnique function, shall return false when a bot is present in at least 2 lists
+	 * Test if the lobby keeps the compatibility relation up to date
 	 */
-	public void testIsEachListUnique_NotUnique(){
-		Bot a = new Bot(null, "A", null, 0, null);
-		Bot b = new Bot(null, "B", null, 0, null);
-		Bot c = new Bot(null, "C", null, 0, null);
-
-		ArrayList<Bot> list1 = new ArrayList<>();
-		list1.add(a);
-		list1.add(b);
-		list1.add(c);
-		
-		ArrayList<ArrayList<Bot>> toCheck = new ArrayList<>();
-		toCheck.add(list1);
-		toCheck.add(list1);
-		
-		
-		GameManager gm = new GameManager(null);
-		
-		assertFalse(gm.isEachListUnique(toCheck));
+	public void testBotLobby()
+	{
+		BotLobby lobby = new BotLobby();
+		Random rand = new Random(42);
+		ArrayList<Bot> bots = new ArrayList<>();
+		for (int i = 0; i < 300; i++)
+		{
+			Bot bot = new Bot(null, "B" + i, null, rand.nextInt(100), null);
+			if (rand.nextBoolean())
+			{
+				bot.incPriority();
+			}
+			bots.add(bot);
+			lobby.add(bot);
+			if (rand.nextInt(4) == 0)
+			{
+				lobby.remove(bots.get(rand.nextInt(bots.size())));
+			}
+			if (rand.nextInt(8) == 0)
+			{
+				lobby.incPriorities();
+			}
+		}
+		assertFalse(lobby.add(bots.get(bots.size() - 1)));
+		for (Bot bot : bots)
+		{
+			for (Bot other : bots)
+			{
+				boolean accepts = lobby.contains(bot) && lobby.contains(other)
+						&& bot != other
+						&& Math.abs(bot.getScore() - other.getScore())
+							<= bot.getPriority();
+				assertEquals(accepts, lobby.accepts(bot, other));
+			}
+		}
 	}
 }
@@ -0,0 +1,179 @@
+package com;
+
+import java.util.ArrayList;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import basis.Bot;
+import basis.BotMode;
+import basis.Game;
+import basis.GameHandler;
+import basis.GameManager;
+import basis.GamePhase;
+import basis.GameScheduler;
+import basis.GameTask;
+import basis.TurnMetrics;
+import ants.AntGame;
+import junit.framework.TestCase;
+
+public class GameTaskTest extends TestCase
+{
+	/**
+	 * Test that only one of the bots and the deadline ends the wait of a round, whichever
+	 * comes first, and that the deadline is cancelled when the bots come first
+	 */
+	public void testAwaitRace() throws Exception
+	{
+		AntGameTest.SilentCommunicator com = new AntGameTest.SilentCommunicator();
+		Bot bot = new Bot(com, "Luc", BotMode.TRAINING, 1200, null);
+		com.setBot(bot);
+		ArrayList<Bot> bots = new ArrayList<Bot>();
+		bots.add(bot);
+		char[][] cells = AntTestMaps.landCells(30, 30);
+		cells[5][5] = '0';
+		cells[25][25] = '1';
+		AntGame game = new AntGame(bots, GameManager.MAX_ROUND, 60000, 0,
+				AntTestMaps.load(cells), 25, 77.0f, 5.0f);
+		bot.setGame(game);
+		ManualScheduler scheduler = new ManualScheduler();
+		GameTask task = new GameTask(game, new GameHandler()
+		{
+			@Override
+			public void addGame(Game newGame)
+			{
+				// Do nothing
+			}
+
+			@Override
+			public void removeGameTask(GameTask gameTask)
+			{
+				// Do nothing
+			}
+		}, scheduler);
+		TurnMetrics metrics = game.getTurnMetrics();
+		scheduler.start(task);
+		scheduler.runTasks();
+		// The end of the load time starts the first round.
+		scheduler.runDeadline();
+		assertEquals(GamePhase.AWAIT, task.getPhase());
+
+		// The bots play before the deadline: the deadline is cancelled.
+		Deadline deadline = scheduler.deadline;
+		assertEquals(0, game.receiveActions(bot, noMoves()));
+		assertTrue(deadline.isCancelled());
+		assertEquals(GamePhase.UPDATE, task.getPhase());
+		scheduler.runDeadline();
+		assertEquals(1, metrics.getAllPlayedCount());
+		assertEquals(0, metrics.getTimeoutCount());
+		assertEquals(1, scheduler.tasks.size());
+		scheduler.runTasks();
+
+		// The deadline comes before the bots: the late bot does not end the wait again.
+		assertEquals(GamePhase.AWAIT, task.getPhase());
+		scheduler.runDeadline();
+		assertEquals(GamePhase.UPDATE, task.getPhase());
+		assertEquals(0, game.receiveActions(bot, noMoves()));
+		assertEquals(1, metrics.getAllPlayedCount());
+		assertEquals(1, metrics.getTimeoutCount());
+		assertEquals(1, scheduler.tasks.size());
+
+		// The deadline is reached before the round is published.
+		scheduler.expireAtOnce = true;
+		scheduler.runTasks();
+		assertEquals(GamePhase.UPDATE, task.getPhase());
+		assertEquals(2, metrics.getTimeoutCount());
+		assertEquals(3, metrics.getTurnCount());
+		assertEquals(1, scheduler.tasks.size());
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Creates the content of a "gameactions" message without moves.
+	 */
+	private static JSONObject noMoves() throws Exception
+	{
+		return new JSONObject().put("moves", new JSONArray());
+	}
+
+	/**
+	 * A scheduler run by the test: the tasks are queued, and the last deadline runs when
+	 * the test says so.
+	 */
+	private static class ManualScheduler extends GameScheduler
+	{
+		private ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+
+		private Deadline deadline;
+
+		private boolean expireAtOnce;
+
+		ManualScheduler()
+		{
+			super(1);
+		}
+
+		@Override
+		public void execute(Runnable task)
+		{
+			tasks.add(task);
+		}
+
+		@Override
+		public ScheduledFuture<?> schedule(Runnable task, long delayMs)
+		{
+			deadline = new Deadline(task);
+			if (expireAtOnce) deadline.run();
+			return deadline;
+		}
+
+		/**
+		 * Runs the queued tasks, in order.
+		 */
+		void runTasks()
+		{
+			ArrayList<Runnable> queued = new ArrayList<Runnable>(tasks);
+			tasks.clear();
+			for (Runnable task : queued)
+			{
+				task.run();
+			}
+		}
+
+		/**
+		 * Reaches the last deadline, nothing is run if it was cancelled.
+		 */
+		void runDeadline()
+		{
+			deadline.run();
+		}
+	}
+
+	/**
+	 * A deadline of the manual scheduler, which only runs when the test reaches it.
+	 */
+	private static class Deadline extends FutureTask<Void>
+			implements ScheduledFuture<Void>
+	{
+		Deadline(Runnable task)
+		{
+			super(task, null);
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit)
+		{
+			return 0;
+		}
+
+		@Override
+		public int compareTo(Delayed other)
+		{
+			return 0;
+		}
+	}
+}
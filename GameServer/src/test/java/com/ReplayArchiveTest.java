@@ -0,0 +1,168 @@
+package com;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import basis.ReplayArchive;
+import basis.StreamedContent;
+import junit.framework.TestCase;
+
+public class ReplayArchiveTest extends TestCase
+{
+	/**
+	 * Test that a gzipped replay decompresses and parses back to the streamed JSON
+	 */
+	public void testCompressedReplay() throws Exception
+	{
+		File directory = Files.createTempDirectory("replays").toFile();
+		ReplayArchive archive = new ReplayArchive(new File(directory, "archive"), true);
+		File file = archive.write("game", replay("</script>\u0001\"\u00e9", 50));
+		assertEquals("game.json.gz", file.getName());
+		assertEquals(1, archive.getDirectory().list().length);
+		JSONObject content = new JSONObject(read(file, true));
+		assertEquals("</script>\u0001\"\u00e9", content.getString("name"));
+		JSONArray rounds = content.getJSONArray("rounds");
+		assertEquals(50, rounds.length());
+		assertEquals(49, rounds.getJSONObject(49).getInt("round"));
+		// A replay written again replaces the previous one.
+		archive.write("game", replay("again", 1));
+		assertEquals("again", new JSONObject(read(file, true)).getString("name"));
+		assertEquals(1, archive.getDirectory().list().length);
+	}
+
+	/**
+	 * Test that a replay that cannot be written leaves neither a replay nor a part file
+	 */
+	public void testFailedReplay() throws Exception
+	{
+		File directory = Files.createTempDirectory("replays").toFile();
+		ReplayArchive archive = new ReplayArchive(directory, false);
+		try
+		{
+			archive.write("game", new StreamedContent()
+			{
+				@Override
+				public void write(JSONWriter writer) throws JSONException
+				{
+					writer.object().key("name").value("broken");
+					throw new JSONException("Broken replay");
+				}
+			});
+			fail("Broken replay written");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+		assertEquals(0, directory.list().length);
+		File file = archive.write("game", replay("game", 2));
+		assertEquals("game.json", file.getName());
+		assertEquals("game", new JSONObject(read(file, false)).getString("name"));
+		assertFalse(new File(directory, "game.json.part").exists());
+	}
+
+	/**
+	 * Test that the archive keeps the most recent replays only, and no other file
+	 */
+	public void testOldReplays() throws Exception
+	{
+		File directory = Files.createTempDirectory("replays").toFile();
+		File notes = new File(directory, "notes.txt");
+		Files.write(notes.toPath(), "notes".getBytes(StandardCharsets.UTF_8));
+		notes.setLastModified(1000);
+		ReplayArchive archive = new ReplayArchive(directory, false, 2);
+		archive.write("b", replay("b", 1)).setLastModified(2000);
+		archive.write("c", replay("c", 1)).setLastModified(3000);
+		// The oldest replay is deleted, whatever its name.
+		archive.write("a", replay("a", 1));
+		assertFalse(new File(directory, "b.json").exists());
+		assertTrue(new File(directory, "c.json").exists());
+		assertTrue(new File(directory, "a.json").exists());
+		assertTrue(notes.exists());
+		try
+		{
+			new ReplayArchive(directory, false, -1);
+			fail("Negative number of replays accepted");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+
+	/**
+	 * Test that closing the archive waits for the submitted replays to be written
+	 */
+	public void testSubmittedReplays() throws Exception
+	{
+		File directory = Files.createTempDirectory("replays").toFile();
+		ReplayArchive archive = new ReplayArchive(directory, true);
+		for (int i = 0; i < 20; i++)
+		{
+			archive.submit("game" + i, replay("game" + i, 200));
+		}
+		archive.close();
+		assertEquals(20, directory.list().length);
+		for (int i = 0; i < 20; i++)
+		{
+			File file = new File(directory, "game" + i + ".json.gz");
+			assertEquals("game" + i, new JSONObject(read(file, true)).getString("name"));
+		}
+		// The archive can still be used after it is closed.
+		archive.close();
+		archive.submit("late", replay("late", 1));
+		archive.close();
+		assertTrue(new File(directory, "late.json.gz").isFile());
+	}
+
+	/**
+	 * Creates a replay streaming a name and some rounds.
+	 */
+	private static StreamedContent replay(final String name, final int roundCount)
+	{
+		return new StreamedContent()
+		{
+			@Override
+			public void write(JSONWriter writer) throws JSONException
+			{
+				writer.object().key("name").value(name).key("rounds").array();
+				for (int i = 0; i < roundCount; i++)
+				{
+					writer.object().key("round").value(i).endObject();
+				}
+				writer.endArray().endObject();
+			}
+		};
+	}
+
+	/**
+	 * Reads the text of a replay file.
+	 */
+	private static String read(File file, boolean compressed) throws IOException
+	{
+		InputStream stream = new FileInputStream(file);
+		if (compressed) stream = new GZIPInputStream(stream);
+		StringBuilder text = new StringBuilder();
+		try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8))
+		{
+			char[] buffer = new char[4096];
+			for (int count; (count = reader.read(buffer)) > 0;)
+			{
+				text.append(buffer, 0, count);
+			}
+		}
+		return text.toString();
+	}
+}